@@ -5,6 +5,8 @@ import java.util.StringTokenizer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import simulator.SolverTrace;
+
 public class CapacitorElm extends CircuitElm {
 	
 	static private Logger LOGGER = Logger.getLogger(CapacitorElm.class.getName());
@@ -46,6 +48,27 @@ public class CapacitorElm extends CircuitElm {
 		voltdiff = 1e-3;
 	}
 
+	@Override
+	public int getStateSize() {
+		return super.getStateSize() + 2;
+	}
+
+	@Override
+	public int saveState(double state[], int offset) {
+		offset = super.saveState(state, offset);
+		state[offset++] = voltdiff;
+		state[offset++] = curSourceValue;
+		return offset;
+	}
+
+	@Override
+	public int restoreState(double state[], int offset) {
+		offset = super.restoreState(state, offset);
+		voltdiff = state[offset++];
+		curSourceValue = state[offset++];
+		return offset;
+	}
+
 	@Override
 	public int getDumpType() {
 		return 'c';
@@ -56,6 +79,12 @@ public class CapacitorElm extends CircuitElm {
 		return super.dump() + " " + getCapacitance() + " " + voltdiff;
 	}
 
+	@Override
+	public long getStampHash() {
+		// voltdiff only goes in the right side, in doStep()
+		return hashMix(getPositionHash(), getCapacitance());
+	}
+
 	@Override
 	public void setPoints() {
 		super.setPoints();
@@ -93,13 +122,17 @@ public class CapacitorElm extends CircuitElm {
 		else
 			curSourceValue = -voltdiff / compResistance;
 
-		LOGGER.log(Level.FINE,"CapacitorElm: compResistance = " + compResistance + ", curSourceValue = " + curSourceValue
-				+ ", current = " + current + ", voltdiff =" + voltdiff);
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"CapacitorElm: compResistance = " + compResistance + ", curSourceValue = " + curSourceValue
+					+ ", current = " + current + ", voltdiff =" + voltdiff);
+		}
 	}
 
 	@Override
 	void calculateCurrent() {
-		LOGGER.log(Level.FINE,this.getClass().getSimpleName() + " - volts[0] = " + volts[0] + ", volts[1] = " + volts[1]);
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,this.getClass().getSimpleName() + " - volts[0] = " + volts[0] + ", volts[1] = " + volts[1]);
+		}
 		double voltdiff = volts[0] - volts[1];
 		/*
 		 * we check compResistance because this might get called before stamp(), which
@@ -108,15 +141,19 @@ public class CapacitorElm extends CircuitElm {
 		if (compResistance > 0)
 			current = voltdiff / compResistance + curSourceValue;
 
-		LOGGER.log(Level.FINE,this.getClass().getSimpleName() + " - current set to " + current);
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,this.getClass().getSimpleName() + " - current set to " + current);
+		}
 	}
 
 	double curSourceValue;
 
 	@Override
 	public void doStep() {
-		LOGGER.log(Level.FINE,"CapacitorElm: nodes[0] = " + nodes[0] + ", nodes[1] = " + nodes[1] + ", curSourceValue = "
-				+ curSourceValue);
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"CapacitorElm: nodes[0] = " + nodes[0] + ", nodes[1] = " + nodes[1] + ", curSourceValue = "
+					+ curSourceValue);
+		}
 		sim.stampCurrentSource(nodes[0], nodes[1], curSourceValue);
 	}
 
@@ -72,6 +72,39 @@ public abstract class CircuitElm {
 				+ flags;
 	}
 
+	/**
+	 * Fingerprint of what stamp() puts in the matrix and in the constant right
+	 * side: position, flags and element values. Values that are only used in
+	 * doStep() must be left out. The default relies on dump(), subclasses that are
+	 * analyzed often override it without allocations.
+	 * 
+	 * @return hash of the stamp parameters
+	 */
+	public long getStampHash() {
+		return hashMix(getClass().hashCode(), dump().hashCode());
+	}
+
+	/**
+	 * @return hash of the position and flags of the element
+	 */
+	long getPositionHash() {
+		long h = getClass().hashCode();
+		h = hashMix(h, getX());
+		h = hashMix(h, getY());
+		h = hashMix(h, getX2());
+		h = hashMix(h, getY2());
+		return hashMix(h, flags);
+	}
+
+	static long hashMix(final long h, final long v) {
+		// FNV-1a style mixing of a 64 bit value
+		return (h ^ v) * 0x100000001b3L + (v >>> 32);
+	}
+
+	static long hashMix(final long h, final double v) {
+		return hashMix(h, Double.doubleToLongBits(v));
+	}
+
 	public void reset() {
 		int i;
 		for (i = 0; i != getPostCount() + getInternalNodeCount(); i++)
@@ -79,6 +112,44 @@ public abstract class CircuitElm {
 		curcount = 0;
 	}
 
+	/**
+	 * @return number of values of the state saved by {@link #saveState}
+	 */
+	public int getStateSize() {
+		return volts.length + 2;
+	}
+
+	/**
+	 * Saves the state carried from a time step to the next one: node voltages
+	 * and current; elements with more state add it
+	 * 
+	 * @param state  destination of the values
+	 * @param offset position of the first value
+	 * @return position after the last value
+	 */
+	public int saveState(double state[], int offset) {
+		System.arraycopy(volts, 0, state, offset, volts.length);
+		offset += volts.length;
+		state[offset++] = current;
+		state[offset++] = curcount;
+		return offset;
+	}
+
+	/**
+	 * Restores a state saved by {@link #saveState}
+	 * 
+	 * @param state  saved values
+	 * @param offset position of the first value
+	 * @return position after the last value
+	 */
+	public int restoreState(double state[], int offset) {
+		System.arraycopy(state, offset, volts, 0, volts.length);
+		offset += volts.length;
+		current = state[offset++];
+		curcount = state[offset++];
+		return offset;
+	}
+
 	public void setCurrent(int x, double c) {
 		current = c;
 	}
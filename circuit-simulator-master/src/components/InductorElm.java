@@ -31,6 +31,12 @@ public class InductorElm extends CircuitElm {
 		return super.dump() + " " + getInductance() + " " + current;
 	}
 
+	@Override
+	public long getStampHash() {
+		// the current only goes in the right side, in doStep()
+		return hashMix(getPositionHash(), getInductance());
+	}
+
 	@Override
 	public void setPoints() {
 		super.setPoints();
@@ -53,6 +59,27 @@ public class InductorElm extends CircuitElm {
 		ind.startIteration(volts[0] - volts[1]);
 	}
 
+	@Override
+	public int getStateSize() {
+		return super.getStateSize() + 2;
+	}
+
+	@Override
+	public int saveState(double state[], int offset) {
+		offset = super.saveState(state, offset);
+		state[offset++] = ind.current;
+		state[offset++] = ind.curSourceValue;
+		return offset;
+	}
+
+	@Override
+	public int restoreState(double state[], int offset) {
+		offset = super.restoreState(state, offset);
+		ind.current = state[offset++];
+		ind.curSourceValue = state[offset++];
+		return offset;
+	}
+
 	@Override
 	public boolean nonLinear() {
 		return ind.nonLinear();
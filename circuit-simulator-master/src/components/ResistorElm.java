@@ -6,6 +6,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import simulator.CirSim;
+import simulator.SolverTrace;
 public class ResistorElm extends CircuitElm {
 	
 	static private Logger LOGGER = Logger.getLogger(ResistorElm.class.getName());
@@ -37,6 +38,11 @@ public class ResistorElm extends CircuitElm {
 		return super.dump() + " " + getResistance();
 	}
 
+	@Override
+	public long getStampHash() {
+		return hashMix(getPositionHash(), getResistance());
+	}
+
 	Point ps3, ps4;
 
 	@Override
@@ -49,9 +55,13 @@ public class ResistorElm extends CircuitElm {
 
 	@Override
 	void calculateCurrent() {
-		LOGGER.log(Level.FINE,this.getClass().getSimpleName() + " - volts[0] = " + volts[0] + ", volts[1] = " + volts[1]);
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,this.getClass().getSimpleName() + " - volts[0] = " + volts[0] + ", volts[1] = " + volts[1]);
+		}
 		current = (volts[0] - volts[1]) / getResistance();
-		LOGGER.log(Level.FINE,this.getClass().getSimpleName() + " - current set to " + current);
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,this.getClass().getSimpleName() + " - current set to " + current);
+		}
 	}
 
 	@Override
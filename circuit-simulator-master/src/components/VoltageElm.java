@@ -5,6 +5,8 @@ import java.util.StringTokenizer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import simulator.SolverTrace;
+
 public class VoltageElm extends CircuitElm {
 	
 	static private Logger LOGGER = Logger.getLogger(VoltageElm.class.getName());
@@ -72,6 +74,14 @@ public class VoltageElm extends CircuitElm {
 		return super.dump() + " " + waveform + " " + frequency + " " + getMaxVoltage() + " " + bias + " " + phaseShift + " "
 				+ dutyCycle;
 	}
+
+	@Override
+	public long getStampHash() {
+		final long h = hashMix(getPositionHash(), waveform);
+		// the other waveforms are only updated in doStep()
+		return waveform == WF_DC ? hashMix(h, getVoltage()) : h;
+	}
+
 	/*
 	 * void setCurrent(double c) { current = c; System.out.print("v current set to "
 	 * + c + "\n"); }
@@ -91,7 +101,9 @@ public class VoltageElm extends CircuitElm {
 
 	@Override
 	public void stamp() {
-		LOGGER.log(Level.FINE,"nodes[0]: " + nodes[0] + " nodes[1]: " + nodes[1] + " voltSource: " + voltSource);
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"nodes[0]: " + nodes[0] + " nodes[1]: " + nodes[1] + " voltSource: " + voltSource);
+		}
 		if (waveform == WF_DC)
 			sim.stampVoltageSource(nodes[0], nodes[1], voltSource, getVoltage());
 		else
@@ -15,6 +15,11 @@ public class WireElm extends ResistorElm {
 		super(xa, ya, xb, yb, f, defaultResistance);
 	}
 
+	@Override
+	public long getStampHash() {
+		return hashMix(super.getStampHash(), ideal ? 1 : 0);
+	}
+
 	static final int FLAG_SHOWCURRENT = 1;
 	static final int FLAG_SHOWVOLTAGE = 2;
 
@@ -0,0 +1,70 @@
+package simulator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of a call to {@link CirSim#analyzeCircuit()}; its
+ * phases are recorded by {@link AnalyzePhaseEvent}
+ */
+@Name("simulator.AnalyzeCircuit")
+@Label("Analyze Circuit")
+@Category({ "Lung Simulator", "Solver" })
+@Description("Construction and factorization of the circuit matrix")
+@Enabled(false)
+@StackTrace(false)
+class AnalyzeCircuitEvent extends Event {
+
+	@Label("Elements")
+	int elementCount;
+
+	@Label("Nodes")
+	int nodeCount;
+
+	@Label("Matrix Size")
+	@Description("Unknowns of the full matrix")
+	int matrixSize;
+
+	@Label("Simplified Size")
+	@Description("Unknowns left after the simplification of the matrix")
+	int simplifiedSize;
+
+	@Label("Solved Size")
+	@Description("Unknowns actually solved at each step")
+	int solvedSize;
+
+	@Label("Components")
+	int componentCount;
+
+	@Label("Nonlinear")
+	boolean nonLinear;
+
+	@Label("Factorization Reused")
+	boolean factorizationReused;
+
+	/**
+	 * Only asked whether the event is enabled
+	 */
+	private static final AnalyzeCircuitEvent PROBE = new AnalyzeCircuitEvent();
+
+	/**
+	 * Starts the event only if it is enabled: a disabled event is not even
+	 * allocated, so that a steady step does not allocate. The other events of
+	 * the steps are started in the same way.
+	 * 
+	 * @return started event, null if the event is disabled
+	 */
+	static AnalyzeCircuitEvent startIfEnabled() {
+		if (!PROBE.isEnabled()) {
+			return null;
+		}
+		final AnalyzeCircuitEvent event = new AnalyzeCircuitEvent();
+		event.begin();
+		return event;
+	}
+}
@@ -0,0 +1,46 @@
+package simulator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of a phase of {@link CirSim#analyzeCircuit()}
+ */
+@Name("simulator.AnalyzePhase")
+@Label("Analyze Circuit Phase")
+@Category({ "Lung Simulator", "Solver" })
+@Description("Phase of the construction of the circuit matrix")
+@Enabled(false)
+@StackTrace(false)
+class AnalyzePhaseEvent extends Event {
+
+	@Label("Phase")
+	String phase;
+
+	/**
+	 * @param phase name of the phase
+	 * @return started event of the phase
+	 */
+	static AnalyzePhaseEvent start(final String phase) {
+		final AnalyzePhaseEvent event = new AnalyzePhaseEvent();
+		event.phase = phase;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends this phase and starts the following one
+	 * 
+	 * @param phase name of the following phase
+	 * @return started event of the following phase
+	 */
+	AnalyzePhaseEvent next(final String phase) {
+		commit();
+		return start(phase);
+	}
+}
@@ -3,9 +3,15 @@ package simulator;
 
 import java.awt.Point;
 import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,9 +25,9 @@ import components.CurrentElm;
 import components.GroundElm;
 import components.InductorElm;
 import components.RailElm;
+import components.ResistorElm;
 import components.VoltageElm;
 import components.WireElm;
-import utils.RowInfo;
 
 public class CirSim {
 	
@@ -51,10 +57,103 @@ public class CirSim {
 	 */
 	private List<CircuitElm> elmList;
 
+	/**
+	 * Row/column types used when simplifying the matrix
+	 */
+	static final int ROW_NORMAL = 0; // ordinary value
+	static final int ROW_CONST = 1; // value is constant
+	static final int ROW_EQUAL = 2; // value is equal to another value
+
 	private CircuitElm plotYElm;
-	private double circuitMatrix[][], circuitRightSide[], origRightSide[], origMatrix[][];
-	RowInfo circuitRowInfo[];
+
+	/*
+	 * Full matrix while the circuit is analyzed, then the simplified one; the
+	 * original copies of the simplified system are never factored
+	 */
+	double circuitMatrix[][], circuitRightSide[], origRightSide[], origMatrix[][];
+
+	/*
+	 * Info about each row/column of the matrix for simplification purposes, one
+	 * entry per row of the full matrix
+	 */
+	int circuitRowType[];
+	int circuitRowNodeEq[];
+	int circuitRowMapCol[];
+	int circuitRowMapRow[];
+	double circuitRowValue[];
+	boolean circuitRowRsChanges[]; // row's right side changes
+	boolean circuitRowLsChanges[]; // row's left side changes
+	boolean circuitRowDropRow[]; // row is not needed in matrix
+
+	/*
+	 * Sparse structure of the full matrix: nonzero columns of each row (in
+	 * ascending order) and rows with a nonzero entry in each column
+	 */
+	int circuitRowCols[][];
+	int circuitColRows[][];
 	int circuitPermute[];
+
+	/**
+	 * True if internal nodes of the resistive subnetwork have to be eliminated
+	 * from the matrix of linear circuits
+	 */
+	private boolean modelReduction;
+
+	/**
+	 * Terminals of the elements whose node voltage is read at every step: their
+	 * nodes are never eliminated
+	 */
+	private List<CircuitNodeLink> observedNodes = new ArrayList<>();
+
+	/**
+	 * Independent parts of a linear circuit, each one solved with its own
+	 * system; null if the circuit is nonlinear
+	 */
+	private CircuitComponent components[];
+
+	/**
+	 * Elements that are not connected to any unknown of the matrix
+	 */
+	private CircuitElm sharedElms[];
+
+	/**
+	 * True if the components are big enough to be solved in parallel
+	 */
+	private boolean parallelComponents;
+
+	/**
+	 * Minimum number of unknowns of a component to be worth a parallel task
+	 */
+	static final int PARALLEL_COMPONENT_SIZE = 32;
+
+	/**
+	 * Fingerprint of the stamp parameters and time step of the last linear
+	 * circuit that has been analyzed and factored
+	 */
+	private long factoredHash;
+
+	/**
+	 * Elements of the last factored circuit, in order; null if there is no valid
+	 * factorization to reuse
+	 */
+	private CircuitElm factoredElms[];
+
+	/**
+	 * Calls to analyzeCircuit() that reused the factorization, or that had to
+	 * rebuild it
+	 */
+	private long factorizationHits, factorizationMisses;
+
+	/**
+	 * Ring buffer of the last solved systems, null if they are not recorded
+	 */
+	private SolverTrace trace = SolverTrace.ENABLED ? SolverTrace.fromProperties() : null;
+
+	/**
+	 * Values of the unknowns of the full matrix at the last step, kept only
+	 * for the trace
+	 */
+	private double traceSolution[];
 	boolean circuitNonLinear;
 	int voltageSourceCount;
 	int circuitMatrixSize, circuitMatrixFullSize;
@@ -106,6 +205,44 @@ public class CirSim {
 			return;
 		}
 
+		final AnalyzeCircuitEvent event = AnalyzeCircuitEvent.startIfEnabled();
+
+		// a linear circuit whose stamps did not change keeps its factorization;
+		// only the right side changes at each step
+		final long hash = stampHash();
+		final boolean reused = isFactorizationValid(hash);
+		if (reused) {
+			factorizationHits++;
+		} else {
+			factorizationMisses++;
+			factoredElms = null;
+			buildCircuit(hash);
+		}
+
+		if (event == null)
+			return;
+		event.end();
+		if (event.shouldCommit()) {
+			event.factorizationReused = reused;
+			event.elementCount = elmList.size();
+			event.nodeCount = getNodeList() == null ? 0 : getNodeList().size();
+			event.matrixSize = circuitMatrixFullSize;
+			event.simplifiedSize = circuitMatrixSize;
+			event.solvedSize = getSolvedMatrixSize();
+			event.componentCount = getComponentCount();
+			event.nonLinear = circuitNonLinear;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Allocates the nodes, stamps the elements and builds and factors the
+	 * simplified matrix
+	 * 
+	 * @param hash fingerprint of the stamps, kept with the factorization
+	 */
+	private void buildCircuit(final long hash) {
+		AnalyzePhaseEvent phase = AnalyzePhaseEvent.start("nodes");
 		nodeList = new Vector<>();
 
 		acFirstStep();
@@ -193,30 +330,49 @@ public class CirSim {
 		origMatrix = new double[matrixSize][matrixSize];
 		origRightSide = new double[matrixSize];
 		circuitMatrixSize = circuitMatrixFullSize = matrixSize;
-		circuitRowInfo = new RowInfo[matrixSize];
+		if (trace != null)
+			traceSolution = new double[circuitMatrixFullSize];
+		circuitRowType = new int[matrixSize];
+		circuitRowNodeEq = new int[matrixSize];
+		circuitRowMapCol = new int[matrixSize];
+		circuitRowMapRow = new int[matrixSize];
+		circuitRowValue = new double[matrixSize];
+		circuitRowRsChanges = new boolean[matrixSize];
+		circuitRowLsChanges = new boolean[matrixSize];
+		circuitRowDropRow = new boolean[matrixSize];
 		circuitPermute = new int[matrixSize];
-		for (int i = 0; i != matrixSize; i++)
-			circuitRowInfo[i] = new RowInfo();
 		circuitNeedsMap = false;
 
-		LOGGER.log(Level.FINE,"circuitMatrix: " + Arrays.deepToString(circuitMatrix));
-		LOGGER.log(Level.FINE,"circuitRightSide: " + Arrays.toString(circuitRightSide));
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"circuitMatrix: " + Arrays.deepToString(circuitMatrix));
+			LOGGER.log(Level.FINE,"circuitRightSide: " + Arrays.toString(circuitRightSide));
+		}
 
-		LOGGER.log(Level.FINE,"analyzeCircuit - 3rd step: init circuitMatrix and circuitRightSide");
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"analyzeCircuit - 3rd step: init circuitMatrix and circuitRightSide");
+		}
 
 		// stamp linear circuit elements
+		phase = phase.next("stamp");
 		for (int i = 0; i != getElmList().size(); i++) {
 			CircuitElm ce = getElm(i);
-			LOGGER.log(Level.FINE,"\nanalyzeCircuit - 3rd step: " + ce.getClass().getSimpleName() + " component");
+			if (SolverTrace.ENABLED) {
+				LOGGER.log(Level.FINE,"\nanalyzeCircuit - 3rd step: " + ce.getClass().getSimpleName() + " component");
+			}
 			ce.stamp();
 		}
 
-		LOGGER.log(Level.FINE,"\ncircuitMatrix: " + Arrays.deepToString(circuitMatrix));
-		LOGGER.log(Level.FINE,"circuitRightSide: " + Arrays.toString(circuitRightSide));
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"\ncircuitMatrix: " + Arrays.deepToString(circuitMatrix));
+			LOGGER.log(Level.FINE,"circuitRightSide: " + Arrays.toString(circuitRightSide));
+		}
 
 		// LOGGER.log(Level.FINE,"ac4");
-		LOGGER.log(Level.FINE,"analyzeCircuit - 4th step: determine nodes that are unconnected");
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"analyzeCircuit - 4th step: determine nodes that are unconnected");
+		}
 		// determine nodes that are unconnected
+		phase = phase.next("check");
 		boolean closure[] = new boolean[getNodeList().size()];
 		boolean changed = true;
 		closure[0] = true;
@@ -250,9 +406,11 @@ public class CirSim {
 			// connect unconnected nodes
 			for (int i = 0; i != getNodeList().size(); i++)
 				if (!closure[i] && !getCircuitNode(i).isInternal()) {
-					LOGGER.log(Level.FINE,"node " + i + " unconnected");
-					LOGGER.log(Level.FINE,"analyzeCircuit - 4th step: Node{" + getCircuitNode(i).getX() + "; "
-							+ getCircuitNode(i).getY() + "}");
+					if (SolverTrace.ENABLED) {
+						LOGGER.log(Level.FINE,"node " + i + " unconnected");
+						LOGGER.log(Level.FINE,"analyzeCircuit - 4th step: Node{" + getCircuitNode(i).getX() + "; "
+								+ getCircuitNode(i).getY() + "}");
+					}
 					stampResistor(0, i, 1e8);
 					closure[i] = true;
 					changed = true;
@@ -260,7 +418,9 @@ public class CirSim {
 				}
 		}
 		// LOGGER.log(Level.FINE,"ac5");
-		LOGGER.log(Level.FINE,"analyzeCircuit - 5th step: check for circuit integrity");
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"analyzeCircuit - 5th step: check for circuit integrity");
+		}
 		for (int i = 0; i != getElmList().size(); i++) {
 			CircuitElm ce = getElm(i);
 			// look for inductors with no current path
@@ -268,7 +428,9 @@ public class CirSim {
 				FindPathInfo fpi = new FindPathInfo(FindPathInfo.INDUCT, ce, ce.getNode(1));
 				// first try findPath with maximum depth of 5, to avoid slowdowns
 				if (!fpi.findPath(ce.getNode(0), 5) && !fpi.findPath(ce.getNode(0))) {
-					LOGGER.log(Level.FINE,ce + " no path");
+					if (SolverTrace.ENABLED) {
+						LOGGER.log(Level.FINE,ce + " no path");
+					}
 					ce.reset();
 				}
 			}
@@ -292,7 +454,9 @@ public class CirSim {
 			if (ce instanceof CapacitorElm) {
 				FindPathInfo fpi = new FindPathInfo(FindPathInfo.SHORT, ce, ce.getNode(1));
 				if (fpi.findPath(ce.getNode(0))) {
-					LOGGER.log(Level.FINE,ce + " shorted");
+					if (SolverTrace.ENABLED) {
+						LOGGER.log(Level.FINE,ce + " shorted");
+					}
 					ce.reset();
 				} else {
 					fpi = new FindPathInfo(FindPathInfo.CAP_V, ce, ce.getNode(1));
@@ -304,195 +468,99 @@ public class CirSim {
 			}
 		}
 
-		LOGGER.log(Level.FINE,"circuitRowInfo: ");
-		for (RowInfo ri : circuitRowInfo) {
-			LOGGER.log(Level.FINE,ri.toString());
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"circuitRowInfo: ");
+			for (int i = 0; i != matrixSize; i++) {
+				LOGGER.log(Level.FINE,rowInfoToString(i));
+			}
 		}
 
 		// LOGGER.log(Level.FINE,"ac6");
-		LOGGER.log(Level.FINE,"analyzeCircuit - 6th step: simplify the matrix");
-		LOGGER.log(Level.FINE,"circuitMatrix: " + Arrays.deepToString(circuitMatrix));
-		LOGGER.log(Level.FINE,"circuitRightSide: " + Arrays.toString(circuitRightSide));
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"analyzeCircuit - 6th step: simplify the matrix");
+			LOGGER.log(Level.FINE,"circuitMatrix: " + Arrays.deepToString(circuitMatrix));
+			LOGGER.log(Level.FINE,"circuitRightSide: " + Arrays.toString(circuitRightSide));
+		}
 
 		// simplify the matrix; this speeds things up quite a bit
-		for (int i = 0; i != matrixSize; i++) {
-			int qm = -1, qp = -1;
-			double qv = 0;
-			RowInfo re = circuitRowInfo[i];
-			/*
-			 * LOGGER.log(Level.FINE,"row " + i + " " + re.lsChanges + " " + re.rsChanges + " "
-			 * + re.dropRow);
-			 */
-			if (re.isLsChanges() || re.isDropRow() || re.isRsChanges())
-				continue;
-			double rsadd = 0;
-
-			int maxJ = 0;
-			// look for rows that can be removed
-			for (maxJ = 0; maxJ != matrixSize; maxJ++) {
-				double q = circuitMatrix[i][maxJ];
-				if (circuitRowInfo[maxJ].getType() == RowInfo.ROW_CONST) {
-					// keep a running total of const values that have been
-					// removed already
-					rsadd -= circuitRowInfo[maxJ].getValue() * q;
-					continue;
-				}
-				if (q == 0)
-					continue;
-				if (qp == -1) {
-					qp = maxJ;
-					qv = q;
-					continue;
-				}
-				if (qm == -1 && q == -qv) {
-					qm = maxJ;
-					continue;
-				}
-				break;
-			}
-
-			// LOGGER.log(Level.FINE,"line " + i + " " + qp + " " + qm + " " + j);
-			/*
-			 * if (qp != -1 && circuitRowInfo[qp].lsChanges) {
-			 * LOGGER.log(Level.FINE,"lschanges"); continue; } if (qm != -1 &&
-			 * circuitRowInfo[qm].lsChanges) { LOGGER.log(Level.FINE,"lschanges"); continue; }
-			 */
-			if (maxJ == matrixSize) {
-				if (qp == -1) {
-					stop("Matrix error", null);
-					return;
-				}
-				RowInfo elt = circuitRowInfo[qp];
-				if (qm == -1) {
-					// we found a row with only one nonzero entry; that value
-					// is a constant
-					int k;
-					for (k = 0; elt.getType() == RowInfo.ROW_EQUAL && k < 100; k++) {
-						// follow the chain
-						/*
-						 * LOGGER.log(Level.FINE,"following equal chain from " + i + " " + qp + " to " +
-						 * elt.nodeEq);
-						 */
-						qp = elt.getNodeEq();
-						elt = circuitRowInfo[qp];
-					}
-					if (elt.getType() == RowInfo.ROW_EQUAL) {
-						// break equal chains
-						// LOGGER.log(Level.FINE,"Break equal chain");
-						elt.setType(RowInfo.ROW_NORMAL);
-						continue;
-					}
-					if (elt.getType() != RowInfo.ROW_NORMAL) {
-						LOGGER.log(Level.FINE,"type already " + elt.getType() + " for " + qp + "!");
-						continue;
-					}
-					elt.setType(RowInfo.ROW_CONST);
-					elt.setValue((circuitRightSide[i] + rsadd) / qv);
-					circuitRowInfo[i].setDropRow(true);
-					// LOGGER.log(Level.FINE,qp + " * " + qv + " = const " + elt.value);
-					i = -1; // start over from scratch
-				} else if (circuitRightSide[i] + rsadd == 0) {
-					// we found a row with only two nonzero entries, and one
-					// is the negative of the other; the values are equal
-					if (elt.getType() != RowInfo.ROW_NORMAL) {
-						// LOGGER.log(Level.FINE,"swapping");
-						int qq = qm;
-						qm = qp;
-						qp = qq;
-						elt = circuitRowInfo[qp];
-						if (elt.getType() != RowInfo.ROW_NORMAL) {
-							// we should follow the chain here, but this
-							// hardly ever happens so it's not worth worrying
-							// about
-							LOGGER.log(Level.FINE,"swap failed");
-							continue;
-						}
-					}
-					elt.setType(RowInfo.ROW_EQUAL);
-					elt.setNodeEq(qm);
-					circuitRowInfo[i].setDropRow(true);
-					// LOGGER.log(Level.FINE,qp + " = " + qm);
-				}
-			}
+		phase = phase.next("simplify");
+		buildSparseStructure(matrixSize);
+		if (!simplifyMatrix(matrixSize)) {
+			return;
 		}
 
-		LOGGER.log(Level.FINE,"circuitMatrix: " + Arrays.deepToString(circuitMatrix));
-		LOGGER.log(Level.FINE,"circuitRightSide: " + Arrays.toString(circuitRightSide));
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"circuitMatrix: " + Arrays.deepToString(circuitMatrix));
+			LOGGER.log(Level.FINE,"circuitRightSide: " + Arrays.toString(circuitRightSide));
+		}
 		// LOGGER.log(Level.FINE,"ac7");
-		LOGGER.log(Level.FINE,"analyzeCircuit - 7th step: find size of new matrix");
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"analyzeCircuit - 7th step: find size of new matrix");
+		}
 		// find size of new matrix
+		phase = phase.next("build");
 		int nn = 0;
 		for (int i = 0; i != matrixSize; i++) {
-			RowInfo elt = circuitRowInfo[i];
-			if (elt.getType() == RowInfo.ROW_NORMAL) {
-				elt.setMapCol(nn++);
-				// LOGGER.log(Level.FINE,"col " + i + " maps to " + elt.mapCol);
+			if (circuitRowType[i] == ROW_NORMAL) {
+				circuitRowMapCol[i] = nn++;
+				// LOGGER.log(Level.FINE,"col " + i + " maps to " + mapCol);
 				continue;
 			}
-			if (elt.getType() == RowInfo.ROW_EQUAL) {
-				RowInfo e2 = null;
+			if (circuitRowType[i] == ROW_EQUAL) {
 				// resolve chains of equality; 100 max steps to avoid loops
 				for (int j = 0; j != 100; j++) {
-					e2 = circuitRowInfo[elt.getNodeEq()];
-					if (e2.getType() != RowInfo.ROW_EQUAL)
+					final int e2 = circuitRowNodeEq[i];
+					if (circuitRowType[e2] != ROW_EQUAL)
 						break;
-					if (i == e2.getNodeEq())
+					if (i == circuitRowNodeEq[e2])
 						break;
-					elt.setNodeEq(e2.getNodeEq());
+					circuitRowNodeEq[i] = circuitRowNodeEq[e2];
 				}
 			}
-			if (elt.getType() == RowInfo.ROW_CONST)
-				elt.setMapCol(-1);
+			if (circuitRowType[i] == ROW_CONST)
+				circuitRowMapCol[i] = -1;
 		}
 		for (int i = 0; i != matrixSize; i++) {
-			RowInfo elt = circuitRowInfo[i];
-			if (elt.getType() == RowInfo.ROW_EQUAL) {
-				RowInfo e2 = circuitRowInfo[elt.getNodeEq()];
-				if (e2.getType() == RowInfo.ROW_CONST) {
+			if (circuitRowType[i] == ROW_EQUAL) {
+				final int e2 = circuitRowNodeEq[i];
+				if (circuitRowType[e2] == ROW_CONST) {
 					// if something is equal to a const, it's a const
-					elt.setType(e2.getType());
-					elt.setValue(e2.getValue());
-					elt.setMapCol(-1);
-					// LOGGER.log(Level.FINE,i + " = [late]const " + elt.value);
+					circuitRowType[i] = circuitRowType[e2];
+					circuitRowValue[i] = circuitRowValue[e2];
+					circuitRowMapCol[i] = -1;
+					// LOGGER.log(Level.FINE,i + " = [late]const " + value);
 				} else {
-					elt.setMapCol(e2.getMapCol());
-					// LOGGER.log(Level.FINE,i + " maps to: " + e2.mapCol);
+					circuitRowMapCol[i] = circuitRowMapCol[e2];
+					// LOGGER.log(Level.FINE,i + " maps to: " + mapCol);
 				}
 			}
 		}
 		// LOGGER.log(Level.FINE,"ac8");
-		LOGGER.log(Level.FINE,"analyzeCircuit - 8th step: creation of new matrix");
-		LOGGER.log(Level.FINE,"circuitMatrix: " + Arrays.deepToString(circuitMatrix));
-		LOGGER.log(Level.FINE,"circuitRightSide: " + Arrays.toString(circuitRightSide));
-		/*
-		 * LOGGER.log(Level.FINE,"matrixSize = " + matrixSize);
-		 * 
-		 * for (j = 0; j != circuitMatrixSize; j++) { LOGGER.log(Level.FINE,j + ": "); for
-		 * (i = 0; i != circuitMatrixSize; i++) LOGGER.log(Level.FINE,circuitMatrix[j][i] +
-		 * " "); LOGGER.log(Level.FINE,"  " + circuitRightSide[j] + "\n"); }
-		 * LOGGER.log(Level.FINE,"\n");
-		 */
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"analyzeCircuit - 8th step: creation of new matrix");
+			LOGGER.log(Level.FINE,"circuitMatrix: " + Arrays.deepToString(circuitMatrix));
+			LOGGER.log(Level.FINE,"circuitRightSide: " + Arrays.toString(circuitRightSide));
+		}
 
-		// make the new, simplified matrix
+		// make the new, simplified matrix; only the nonzero entries of each row
+		// contribute
 		int newsize = nn;
 		double newmatx[][] = new double[newsize][newsize];
 		double newrs[] = new double[newsize];
 		int ii = 0;
 		for (int i = 0; i != matrixSize; i++) {
-			RowInfo rri = circuitRowInfo[i];
-			if (rri.isDropRow()) {
-				rri.setMapRow(-1);
+			if (circuitRowDropRow[i]) {
+				circuitRowMapRow[i] = -1;
 				continue;
 			}
 			newrs[ii] = circuitRightSide[i];
-			rri.setMapRow(ii);
+			circuitRowMapRow[i] = ii;
 			// LOGGER.log(Level.FINE,"Row " + i + " maps to " + ii);
-			for (int j = 0; j != matrixSize; j++) {
-				RowInfo ri = circuitRowInfo[j];
-				if (ri.getType() == RowInfo.ROW_CONST)
-					newrs[ii] -= ri.getValue() * circuitMatrix[i][j];
+			for (final int j : circuitRowCols[i]) {
+				if (circuitRowType[j] == ROW_CONST)
+					newrs[ii] -= circuitRowValue[j] * circuitMatrix[i][j];
 				else
-					newmatx[ii][ri.getMapCol()] += circuitMatrix[i][j];
+					newmatx[ii][circuitRowMapCol[j]] += circuitMatrix[i][j];
 			}
 			ii++;
 		}
@@ -507,8 +575,10 @@ public class CirSim {
 				origMatrix[i][j] = circuitMatrix[i][j];
 		circuitNeedsMap = true;
 
-		LOGGER.log(Level.FINE,"circuitMatrix: " + Arrays.deepToString(circuitMatrix));
-		LOGGER.log(Level.FINE,"circuitRightSide: " + Arrays.toString(circuitRightSide));
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"circuitMatrix: " + Arrays.deepToString(circuitMatrix));
+			LOGGER.log(Level.FINE,"circuitRightSide: " + Arrays.toString(circuitRightSide));
+		}
 
 		/*
 		 * LOGGER.log(Level.FINE,"matrixSize = " + matrixSize + " " + circuitNonLinear);
@@ -519,13 +589,391 @@ public class CirSim {
 		 */
 
 		// if a matrix is linear, we can do the lu_factor here instead of
-		// needing to do it every frame
+		// needing to do it every frame; each independent part of the circuit
+		// gets its own system
+		components = null;
+		phase = phase.next("factor");
 		if (!circuitNonLinear) {
-			if (!lu_factor(circuitMatrix, circuitMatrixSize, circuitPermute)) {
-				stop("Singular matrix!", null);
-				return;
+			partitionCircuit();
+			final int elimCols[] = modelReduction ? findEliminableNodes() : null;
+			for (final CircuitComponent component : components) {
+				if (!component.factor(elimCols)) {
+					stop("Singular matrix!", null);
+					return;
+				}
+			}
+			factoredHash = hash;
+			factoredElms = getElmList().toArray(new CircuitElm[0]);
+		}
+		phase.commit();
+	}
+
+	/**
+	 * @return fingerprint of the time step and of the stamp parameters of all the
+	 *         elements
+	 */
+	private long stampHash() {
+		long hash = Double.doubleToLongBits(timeStep) ^ (modelReduction ? 1 : 0);
+		for (int i = 0; i != elmList.size(); i++)
+			hash = hash * 31 + elmList.get(i).getStampHash();
+		return hash;
+	}
+
+	/**
+	 * @param hash fingerprint of the circuit to analyze
+	 * @return true if the circuit is the same as the last factored one
+	 */
+	private boolean isFactorizationValid(final long hash) {
+		if (factoredElms == null || components == null || stopMessage != null || hash != factoredHash
+				|| factoredElms.length != elmList.size())
+			return false;
+		for (int i = 0; i != factoredElms.length; i++)
+			if (factoredElms[i] != elmList.get(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Splits a linear circuit into parts that share no unknowns (only the
+	 * ground), so that each one can be factored and solved on its own. Every
+	 * element is assigned to the part of its nodes.
+	 */
+	private void partitionCircuit() {
+		final int fullSize = circuitMatrixFullSize;
+		final int parent[] = new int[fullSize];
+		for (int i = 0; i != fullSize; i++)
+			parent[i] = i;
+
+		// unknowns that appear in the same row are connected
+		for (int i = 0; i != fullSize; i++)
+			for (final int j : circuitRowCols[i])
+				union(parent, i, j);
+
+		// all the unknowns of an element are connected
+		final Map<CircuitElm, Integer> sourceRows = new IdentityHashMap<>();
+		for (int v = 0; v != voltageSourceCount; v++)
+			sourceRows.putIfAbsent(voltageSources[v], getNodeList().size() - 1 + v);
+		final int elmIndex[] = new int[getElmList().size()];
+		for (int e = 0; e != getElmList().size(); e++) {
+			final CircuitElm ce = getElm(e);
+			int first = -1;
+			for (int k = 0; k != ce.getPostCount() + ce.getInternalNodeCount(); k++) {
+				final int n = ce.getNode(k);
+				if (n <= 0)
+					continue;
+				if (first < 0)
+					first = n - 1;
+				else
+					union(parent, first, n - 1);
+			}
+			final Integer vs = sourceRows.get(ce);
+			if (vs != null) {
+				if (first < 0)
+					first = vs;
+				else
+					union(parent, first, vs);
+			}
+			elmIndex[e] = first;
+		}
+
+		// number the components in order of their first unknown
+		final int compOf[] = new int[fullSize];
+		final int compFirst[] = new int[fullSize];
+		int count = 0;
+		for (int i = 0; i != fullSize; i++) {
+			final int root = find(parent, i);
+			if (root == i)
+				compFirst[count++] = i;
+		}
+		final int rootComp[] = new int[fullSize];
+		for (int c = 0; c != count; c++)
+			rootComp[compFirst[c]] = c;
+		for (int i = 0; i != fullSize; i++)
+			compOf[i] = rootComp[find(parent, i)];
+
+		// a part must have as many equations as unknowns, otherwise solve the
+		// circuit as a whole
+		final int rowCount[] = new int[count];
+		final int colCount[] = new int[count];
+		final boolean colSeen[] = new boolean[circuitMatrixSize];
+		for (int i = 0; i != fullSize; i++) {
+			if (!circuitRowDropRow[i])
+				rowCount[compOf[i]]++;
+			if (circuitRowType[i] != ROW_CONST && !colSeen[circuitRowMapCol[i]]) {
+				colSeen[circuitRowMapCol[i]] = true;
+				colCount[compOf[i]]++;
+			}
+		}
+		for (int c = 0; c != count; c++) {
+			if (rowCount[c] != colCount[c]) {
+				Arrays.fill(compOf, 0);
+				count = 1;
+				break;
+			}
+		}
+
+		final List<List<Integer>> compFull = new ArrayList<>();
+		final List<List<CircuitElm>> compElms = new ArrayList<>();
+		for (int c = 0; c != count; c++) {
+			compFull.add(new ArrayList<>());
+			compElms.add(new ArrayList<>());
+		}
+		for (int i = 0; i != fullSize; i++)
+			compFull.get(compOf[i]).add(i);
+		final List<CircuitElm> shared = new ArrayList<>();
+		for (int e = 0; e != getElmList().size(); e++) {
+			if (elmIndex[e] < 0)
+				shared.add(getElm(e));
+			else
+				compElms.get(compOf[elmIndex[e]]).add(getElm(e));
+		}
+
+		components = new CircuitComponent[count];
+		int bigComponents = 0;
+		for (int c = 0; c != count; c++) {
+			components[c] = new CircuitComponent(compFull.get(c), compElms.get(c));
+			if (components[c].size() >= PARALLEL_COMPONENT_SIZE)
+				bigComponents++;
+		}
+		sharedElms = shared.toArray(new CircuitElm[0]);
+		parallelComponents = bigComponents > 1;
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE, "circuit split in " + count + " components");
+		}
+	}
+
+	private static int find(final int parent[], int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	private static void union(final int parent[], final int i, final int j) {
+		final int ri = find(parent, i);
+		final int rj = find(parent, j);
+		// the lowest index is the root, so components keep the order of the rows
+		if (ri < rj)
+			parent[rj] = ri;
+		else if (rj < ri)
+			parent[ri] = rj;
+	}
+
+	/**
+	 * Collects the nonzero entries of the full matrix, by row and by column, so
+	 * that the simplification only visits the entries that matter
+	 * 
+	 * @param matrixSize size of the full matrix
+	 */
+	private void buildSparseStructure(final int matrixSize) {
+		final int rowCount[] = new int[matrixSize];
+		final int colCount[] = new int[matrixSize];
+		for (int i = 0; i != matrixSize; i++) {
+			for (int j = 0; j != matrixSize; j++) {
+				if (circuitMatrix[i][j] != 0) {
+					rowCount[i]++;
+					colCount[j]++;
+				}
+			}
+		}
+
+		circuitRowCols = new int[matrixSize][];
+		circuitColRows = new int[matrixSize][];
+		for (int i = 0; i != matrixSize; i++) {
+			circuitRowCols[i] = new int[rowCount[i]];
+			circuitColRows[i] = new int[colCount[i]];
+			colCount[i] = 0;
+		}
+		for (int i = 0; i != matrixSize; i++) {
+			int k = 0;
+			for (int j = 0; j != matrixSize; j++) {
+				if (circuitMatrix[i][j] != 0) {
+					circuitRowCols[i][k++] = j;
+					circuitColRows[j][colCount[j]++] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Looks for rows that can be removed from the matrix: rows with a single
+	 * nonzero entry make that value a constant, rows with two opposite entries and
+	 * no right side make two values equal. Rows are kept in a worklist, always
+	 * taking the lowest pending row first; when a value becomes constant only the
+	 * rows that reference it are queued again, together with the rows that were
+	 * skipped because of the type of their values (a broken equal chain, a value
+	 * that is already constant, a failed swap). This gives the same reduced
+	 * system as starting over from the first row after every constant.
+	 * 
+	 * @param matrixSize size of the full matrix
+	 * @return false if the matrix is not valid
+	 */
+	boolean simplifyMatrix(final int matrixSize) {
+		final BitSet pending = new BitSet(matrixSize);
+		final BitSet deferred = new BitSet(matrixSize);
+		pending.set(0, matrixSize);
+
+		for (int i = pending.nextSetBit(0); i >= 0; i = pending.nextSetBit(0)) {
+			pending.clear(i);
+			int qm = -1, qp = -1;
+			double qv = 0;
+			/*
+			 * LOGGER.log(Level.FINE,"row " + i + " " + lsChanges + " " + rsChanges + " " +
+			 * dropRow);
+			 */
+			if (circuitRowLsChanges[i] || circuitRowDropRow[i] || circuitRowRsChanges[i])
+				continue;
+			double rsadd = 0;
+
+			// look for rows that can be removed
+			boolean removable = true;
+			for (final int j : circuitRowCols[i]) {
+				final double q = circuitMatrix[i][j];
+				if (circuitRowType[j] == ROW_CONST) {
+					// keep a running total of const values that have been
+					// removed already
+					rsadd -= circuitRowValue[j] * q;
+					continue;
+				}
+				if (qp == -1) {
+					qp = j;
+					qv = q;
+					continue;
+				}
+				if (qm == -1 && q == -qv) {
+					qm = j;
+					continue;
+				}
+				removable = false;
+				break;
+			}
+
+			// LOGGER.log(Level.FINE,"line " + i + " " + qp + " " + qm);
+			if (!removable)
+				continue;
+			if (qp == -1) {
+				stop("Matrix error", null);
+				return false;
+			}
+			if (qm == -1) {
+				// we found a row with only one nonzero entry; that value
+				// is a constant
+				int k;
+				for (k = 0; circuitRowType[qp] == ROW_EQUAL && k < 100; k++) {
+					// follow the chain
+					/*
+					 * LOGGER.log(Level.FINE,"following equal chain from " + i + " " + qp + " to " +
+					 * nodeEq);
+					 */
+					qp = circuitRowNodeEq[qp];
+				}
+				if (circuitRowType[qp] == ROW_EQUAL) {
+					// break equal chains
+					// LOGGER.log(Level.FINE,"Break equal chain");
+					circuitRowType[qp] = ROW_NORMAL;
+					deferred.set(i);
+					continue;
+				}
+				if (circuitRowType[qp] != ROW_NORMAL) {
+					if (SolverTrace.ENABLED) {
+						LOGGER.log(Level.FINE,"type already " + circuitRowType[qp] + " for " + qp + "!");
+					}
+					deferred.set(i);
+					continue;
+				}
+				circuitRowType[qp] = ROW_CONST;
+				circuitRowValue[qp] = (circuitRightSide[i] + rsadd) / qv;
+				circuitRowDropRow[i] = true;
+				// LOGGER.log(Level.FINE,qp + " * " + qv + " = const " + value);
+
+				// only the rows that reference the new constant can change, besides
+				// the skipped ones
+				for (final int r : circuitColRows[qp]) {
+					if (!circuitRowDropRow[r])
+						pending.set(r);
+				}
+				pending.or(deferred);
+				deferred.clear();
+			} else if (circuitRightSide[i] + rsadd == 0) {
+				// we found a row with only two nonzero entries, and one
+				// is the negative of the other; the values are equal
+				if (circuitRowType[qp] != ROW_NORMAL) {
+					// LOGGER.log(Level.FINE,"swapping");
+					int qq = qm;
+					qm = qp;
+					qp = qq;
+					if (circuitRowType[qp] != ROW_NORMAL) {
+						// we should follow the chain here, but this
+						// hardly ever happens so it's not worth worrying
+						// about
+						if (SolverTrace.ENABLED) {
+							LOGGER.log(Level.FINE,"swap failed");
+						}
+						deferred.set(i);
+						continue;
+					}
+				}
+				circuitRowType[qp] = ROW_EQUAL;
+				circuitRowNodeEq[qp] = qm;
+				circuitRowDropRow[i] = true;
+				// LOGGER.log(Level.FINE,qp + " = " + qm);
 			}
 		}
+		return true;
+	}
+
+	/**
+	 * Finds the nodes of the simplified matrix that are only connected to
+	 * resistors, which can be eliminated (Kron reduction). Nodes with reactive
+	 * elements or sources, nodes merged with other rows and observed nodes are
+	 * kept.
+	 * 
+	 * @return for each row of the simplified matrix, the column of the node to
+	 *         eliminate or -1
+	 */
+	private int[] findEliminableNodes() {
+		final int nodeRows = getNodeList().size() - 1;
+		final int colUse[] = new int[circuitMatrixSize];
+		for (int j = 0; j != circuitMatrixFullSize; j++) {
+			if (circuitRowType[j] != ROW_CONST)
+				colUse[circuitRowMapCol[j]]++;
+		}
+
+		final boolean observed[] = new boolean[nodeRows + 1];
+		for (final CircuitNodeLink link : observedNodes) {
+			final int node = link.getElm().getNode(link.getNum());
+			if (node >= 0 && node <= nodeRows)
+				observed[node] = true;
+		}
+
+		final int elimCols[] = new int[circuitMatrixSize];
+		Arrays.fill(elimCols, -1);
+		for (int j = 0; j != nodeRows; j++) {
+			if (observed[j + 1] || circuitRowType[j] != ROW_NORMAL || circuitRowDropRow[j] || circuitRowRsChanges[j]
+					|| circuitRowLsChanges[j] || colUse[circuitRowMapCol[j]] != 1)
+				continue;
+			final CircuitNode cn = getCircuitNode(j + 1);
+			boolean resistive = !cn.isInternal();
+			for (int k = 0; resistive && k != cn.getLinks().size(); k++)
+				resistive = cn.getLinks().elementAt(k).getElm() instanceof ResistorElm;
+			if (resistive)
+				elimCols[circuitRowMapRow[j]] = circuitRowMapCol[j];
+		}
+		return elimCols;
+	}
+
+	/**
+	 * Describes the simplification info of a row, for debugging purposes
+	 * 
+	 * @param i index of the row in the full matrix
+	 * @return a readable description of the row
+	 */
+	private String rowInfoToString(final int i) {
+		return "RowInfo [nodeEq=" + circuitRowNodeEq[i] + ", type=" + circuitRowType[i] + ", mapCol="
+				+ circuitRowMapCol[i] + ", mapRow=" + circuitRowMapRow[i] + ", value=" + circuitRowValue[i]
+				+ ", rsChanges=" + circuitRowRsChanges[i] + ", lsChanges=" + circuitRowLsChanges[i] + ", dropRow="
+				+ circuitRowDropRow[i] + "]";
 	}
 
 	/**
@@ -672,9 +1120,225 @@ public class CirSim {
 		}
 	}
 
+	/**
+	 * Part of a linear circuit that shares no unknowns with the rest: it has its
+	 * own factored system and its elements only touch its own rows, so the parts
+	 * can be stepped independently
+	 */
+	class CircuitComponent {
+		/**
+		 * Rows and columns of the simplified matrix
+		 */
+		final int rows[], cols[];
+
+		/**
+		 * Unknowns of the full matrix, with their position among cols (-1 if
+		 * constant)
+		 */
+		final int fullIndices[], localCols[];
+		final CircuitElm elms[];
+		double matrix[][];
+		int permute[];
+		double work[];
+		KronReduction kronReduction;
+
+		/**
+		 * True for the unknowns of fullIndices eliminated by the reduction
+		 */
+		boolean eliminated[];
+
+		/**
+		 * True if the eliminated unknowns of the last step are not given back to
+		 * the elements yet
+		 */
+		boolean recoveryPending;
+
+		/**
+		 * Multiply-adds of the solves without reduction
+		 */
+		long multiplyAdds;
+		boolean invalid;
+
+		CircuitComponent(final List<Integer> full, final List<CircuitElm> elmList) {
+			elms = elmList.toArray(new CircuitElm[0]);
+			fullIndices = new int[full.size()];
+			localCols = new int[full.size()];
+			final int colLocal[] = new int[circuitMatrixSize];
+			Arrays.fill(colLocal, -1);
+			final int rowBuf[] = new int[full.size()];
+			final int colBuf[] = new int[full.size()];
+			int nr = 0, nc = 0;
+			for (int k = 0; k != full.size(); k++) {
+				final int j = full.get(k);
+				fullIndices[k] = j;
+				if (!circuitRowDropRow[j])
+					rowBuf[nr++] = circuitRowMapRow[j];
+				if (circuitRowType[j] != ROW_CONST && colLocal[circuitRowMapCol[j]] < 0) {
+					colLocal[circuitRowMapCol[j]] = 0;
+					colBuf[nc++] = circuitRowMapCol[j];
+				}
+			}
+			rows = Arrays.copyOf(rowBuf, nr);
+			cols = Arrays.copyOf(colBuf, nc);
+			Arrays.sort(rows);
+			Arrays.sort(cols);
+			for (int c = 0; c != cols.length; c++)
+				colLocal[cols[c]] = c;
+			for (int k = 0; k != fullIndices.length; k++) {
+				final int j = fullIndices[k];
+				localCols[k] = circuitRowType[j] == ROW_CONST ? -1 : colLocal[circuitRowMapCol[j]];
+			}
+		}
+
+		int size() {
+			return rows.length;
+		}
+
+		/**
+		 * Copies the part of the simplified matrix and factors it
+		 * 
+		 * @param elimCols columns of the nodes to eliminate for each row, or null
+		 * @return false if the matrix is singular
+		 */
+		boolean factor(final int elimCols[]) {
+			final int n = rows.length;
+			matrix = new double[n][n];
+			permute = new int[n];
+			work = new double[n];
+			for (int i = 0; i != n; i++) {
+				for (int j = 0; j != n; j++) {
+					final double x = circuitMatrix[rows[i]][cols[j]];
+					if (Double.isNaN(x) || Double.isInfinite(x))
+						invalid = true;
+					matrix[i][j] = x;
+				}
+			}
+
+			kronReduction = null;
+			eliminated = null;
+			recoveryPending = false;
+			if (elimCols != null) {
+				final int elimRows[] = new int[n];
+				final int elimLocalCols[] = new int[n];
+				int count = 0;
+				for (int i = 0; i != n; i++) {
+					final int c = elimCols[rows[i]] < 0 ? -1 : Arrays.binarySearch(cols, elimCols[rows[i]]);
+					if (c >= 0) {
+						elimRows[count] = i;
+						elimLocalCols[count] = c;
+						count++;
+					}
+				}
+				if (count > 0) {
+					kronReduction = KronReduction.build(matrix, n, Arrays.copyOf(elimRows, count),
+							Arrays.copyOf(elimLocalCols, count));
+					if (kronReduction == null) {
+						// fall back to the whole system
+						if (SolverTrace.ENABLED) {
+							LOGGER.log(Level.FINE, "model reduction failed, singular block");
+						}
+					} else {
+						eliminated = new boolean[fullIndices.length];
+						for (int k = 0; k != fullIndices.length; k++)
+							eliminated[k] = localCols[k] >= 0 && kronReduction.isEliminated(localCols[k]);
+						if (SolverTrace.ENABLED) {
+							LOGGER.log(Level.FINE, "model reduction: " + kronReduction.getEliminatedCount()
+									+ " nodes eliminated, " + kronReduction.getReducedSize() + " unknowns left");
+						}
+					}
+				}
+			}
+			return kronReduction != null || lu_factor(matrix, n, permute);
+		}
+
+		/**
+		 * @return size of the system solved at each step
+		 */
+		int solvedSize() {
+			return kronReduction != null ? kronReduction.getReducedSize() : rows.length;
+		}
+
+		/**
+		 * Steps the elements, solves the system and gives back the node voltages
+		 * and source currents to the elements; the eliminated node voltages wait
+		 * for {@link #recover()}
+		 */
+		void step() {
+			for (final CircuitElm ce : elms)
+				ce.doStep();
+
+			for (int i = 0; i != rows.length; i++)
+				work[i] = circuitRightSide[rows[i]];
+			if (kronReduction != null) {
+				kronReduction.solve(work);
+				recoveryPending = true;
+			} else {
+				lu_solve(matrix, rows.length, permute, work);
+				multiplyAdds += (long) rows.length * rows.length;
+			}
+
+			for (int k = 0; k != fullIndices.length; k++) {
+				if (eliminated != null && eliminated[k])
+					continue;
+				final int j = fullIndices[k];
+				final double res = localCols[k] < 0 ? circuitRowValue[j] : work[localCols[k]];
+				if (Double.isNaN(res)) {
+					setConverged(false);
+					break;
+				}
+				applyResult(j, res);
+			}
+		}
+
+		/**
+		 * Gives the eliminated node voltages of the last step back to the
+		 * elements
+		 */
+		void recover() {
+			if (!recoveryPending)
+				return;
+			recoveryPending = false;
+			kronReduction.recover(work);
+			for (int k = 0; k != fullIndices.length; k++)
+				if (eliminated[k])
+					applyResult(fullIndices[k], work[localCols[k]]);
+		}
+
+		/**
+		 * @return multiply-adds done by the solves of the component so far
+		 */
+		long getMultiplyAdds() {
+			return kronReduction != null ? kronReduction.getMultiplyAdds() : multiplyAdds;
+		}
+	}
+
+	/**
+	 * Steps a range of components, splitting it among the threads of the pool
+	 */
+	class ComponentStep extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from, to;
+
+		ComponentStep(final int from, final int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				components[from].step();
+				return;
+			}
+			final int mid = (from + to) >>> 1;
+			invokeAll(new ComponentStep(from, mid), new ComponentStep(mid, to));
+		}
+	}
+
 	public void stop(String s, CircuitElm ce) {
 		stopMessage = s;
 		circuitMatrix = null;
+		factoredElms = null;
 	}
 
 	// control voltage source vs with voltage from n1 to n2 (must
@@ -725,7 +1389,9 @@ public class CirSim {
 			a /= a;
 		}
 
-		LOGGER.log(Level.FINE,"nodes[0]: " + n1 + " nodes[1]: " + n2 + " r0: " + r0);
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"nodes[0]: " + n1 + " nodes[1]: " + n2 + " r0: " + r0);
+		}
 		stampMatrix(n1, n1, r0);
 		stampMatrix(n2, n2, r0);
 		stampMatrix(n1, n2, -r0);
@@ -765,24 +1431,27 @@ public class CirSim {
 	public void stampMatrix(int i, int j, double x) {
 		if (i > 0 && j > 0) {
 			if (circuitNeedsMap) {
-				i = circuitRowInfo[i - 1].getMapRow();
-				RowInfo ri = circuitRowInfo[j - 1];
-				if (ri.getType() == RowInfo.ROW_CONST) {
+				i = circuitRowMapRow[i - 1];
+				if (circuitRowType[j - 1] == ROW_CONST) {
 					// LOGGER.log(Level.FINE,"Stamping constant " + i + " " + j + " " + x);
-					circuitRightSide[i] -= x * ri.getValue();
+					circuitRightSide[i] -= x * circuitRowValue[j - 1];
 					return;
 				}
-				j = ri.getMapCol();
+				j = circuitRowMapCol[j - 1];
 				// LOGGER.log(Level.FINE,"stamping " + i + " " + j + " " + x);
 			} else {
 				i--;
 				j--;
 			}
-			LOGGER.log(Level.FINE,"circuitMatrix[" + i + "][" + j + "]: " + circuitMatrix[i][j] + " + x = " + x + " --> ");
+			if (SolverTrace.ENABLED) {
+				LOGGER.log(Level.FINE,"circuitMatrix[" + i + "][" + j + "]: " + circuitMatrix[i][j] + " + x = " + x + " --> ");
+			}
 
 			circuitMatrix[i][j] += x;
 
-			LOGGER.log(Level.FINE,"circuitMatrix[" + i + "][" + j + "]: " + circuitMatrix[i][j]);
+			if (SolverTrace.ENABLED) {
+				LOGGER.log(Level.FINE,"circuitMatrix[" + i + "][" + j + "]: " + circuitMatrix[i][j]);
+			}
 		}
 	}
 
@@ -793,16 +1462,20 @@ public class CirSim {
 	public void stampRightSide(int i, double x) {
 		if (i > 0) {
 			if (circuitNeedsMap) {
-				i = circuitRowInfo[i - 1].getMapRow();
+				i = circuitRowMapRow[i - 1];
 				// LOGGER.log(Level.FINE,"stamping " + i + " " + x);
 			} else
 				i--;
 
-			LOGGER.log(Level.FINE,"circuitRightSide[" + i + "]: " + circuitRightSide[i] + " + x = " + x + " --> ");
+			if (SolverTrace.ENABLED) {
+				LOGGER.log(Level.FINE,"circuitRightSide[" + i + "]: " + circuitRightSide[i] + " + x = " + x + " --> ");
+			}
 
 			circuitRightSide[i] += x;
 
-			LOGGER.log(Level.FINE,"circuitRightSide[" + i + "]: " + circuitRightSide[i]);
+			if (SolverTrace.ENABLED) {
+				LOGGER.log(Level.FINE,"circuitRightSide[" + i + "]: " + circuitRightSide[i]);
+			}
 		}
 	}
 
@@ -815,9 +1488,13 @@ public class CirSim {
 		// LOGGER.log(Level.FINE,"rschanges true " + (i-1));
 
 		if (i > 0) {
-			LOGGER.log(Level.FINE,"circuitRowInfo[" + (i - 1) + "]: " + circuitRowInfo[i - 1] + " --> ");
-			circuitRowInfo[i - 1].setRsChanges(true);
-			LOGGER.log(Level.FINE,"circuitRowInfo[" + (i - 1) + "]: " + circuitRowInfo[i - 1]);
+			if (SolverTrace.ENABLED) {
+				LOGGER.log(Level.FINE,"circuitRowInfo[" + (i - 1) + "]: " + rowInfoToString(i - 1) + " --> ");
+			}
+			circuitRowRsChanges[i - 1] = true;
+			if (SolverTrace.ENABLED) {
+				LOGGER.log(Level.FINE,"circuitRowInfo[" + (i - 1) + "]: " + rowInfoToString(i - 1));
+			}
 		}
 
 	}
@@ -825,7 +1502,7 @@ public class CirSim {
 	// indicate that the values on the left side of row i change in doStep()
 	public void stampNonLinear(int i) {
 		if (i > 0)
-			circuitRowInfo[i - 1].setLsChanges(true);
+			circuitRowLsChanges[i - 1] = true;
 	}
 
 	private boolean converged;
@@ -835,16 +1512,25 @@ public class CirSim {
 	public boolean loopAndContinue(boolean debugprint) {
 		int i, j, k, subiter;
 
-		LOGGER.log(Level.FINE,"loopAndContinue - 1st step: start iteration");
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"loopAndContinue - 1st step: start iteration");
+		}
 		for (i = 0; i != getElmList().size(); i++) {
 			CircuitElm ce = getElm(i);
 			ce.startIteration();
 		}
 
 		steps++;
+		if (components != null)
+			return stepComponents();
+
 		final int subiterCount = 5000;
-		LOGGER.log(Level.FINE,"loopAndContinue - 2nd step: doStep");
+		if (SolverTrace.ENABLED) {
+			LOGGER.log(Level.FINE,"loopAndContinue - 2nd step: doStep");
+		}
 		for (subiter = 0; subiter != subiterCount; subiter++) {
+			final SubIterationEvent event = SubIterationEvent.startIfEnabled();
+			final boolean timed = event != null;
 			setConverged(true);
 			setSubIterations(subiter);
 
@@ -880,7 +1566,7 @@ public class CirSim {
 			}
 
 			// print circuitMatrix | circuitRightSide
-			if (printit) {
+			if (printit && SolverTrace.ENABLED) {
 				for (j = 0; j != circuitMatrixSize; j++) {
 					for (i = 0; i != circuitMatrixSize; i++)
 						LOGGER.log(Level.FINE,circuitMatrix[j][i] + ",");
@@ -890,33 +1576,49 @@ public class CirSim {
 			}
 
 			if (circuitNonLinear) {
-				if (isConverged() && subiter > 0)
+				if (isConverged() && subiter > 0) {
+					commitSubIteration(event, subiter);
 					break;
+				}
+				if (trace != null)
+					trace.recordSystem(steps, subiter, getT(), circuitMatrix, circuitRightSide, circuitMatrixSize);
+				final long start = timed ? System.nanoTime() : 0;
 				if (!lu_factor(circuitMatrix, circuitMatrixSize, circuitPermute)) {
 					stop("Singular matrix!", null);
 					return false;
 				}
+				if (timed)
+					event.factorTime = System.nanoTime() - start;
+			} else if (trace != null)
+				trace.recordSystem(steps, subiter, getT(), origMatrix, circuitRightSide, circuitMatrixSize);
+
+			if (SolverTrace.ENABLED) {
+				LOGGER.log(Level.FINE,"loopAndContinue - 3rd step: lu_solve");
+				LOGGER.log(Level.FINE,"circuitMatrix: " + Arrays.deepToString(circuitMatrix));
+				LOGGER.log(Level.FINE,"circuitRightSide: " + Arrays.toString(circuitRightSide));
 			}
 
-			LOGGER.log(Level.FINE,"loopAndContinue - 3rd step: lu_solve");
-			LOGGER.log(Level.FINE,"circuitMatrix: " + Arrays.deepToString(circuitMatrix));
-			LOGGER.log(Level.FINE,"circuitRightSide: " + Arrays.toString(circuitRightSide));
-
+			final long start = timed ? System.nanoTime() : 0;
 			lu_solve(circuitMatrix, circuitMatrixSize, circuitPermute, circuitRightSide);
+			if (timed)
+				event.solveTime = System.nanoTime() - start;
 
-			LOGGER.log(Level.FINE,"circuitMatrix: " + Arrays.deepToString(circuitMatrix));
-			LOGGER.log(Level.FINE,"circuitRightSide: " + Arrays.toString(circuitRightSide));
+			if (SolverTrace.ENABLED) {
+				LOGGER.log(Level.FINE,"circuitMatrix: " + Arrays.deepToString(circuitMatrix));
+				LOGGER.log(Level.FINE,"circuitRightSide: " + Arrays.toString(circuitRightSide));
+			}
 
 			for (j = 0; j != circuitMatrixFullSize; j++) {
-				RowInfo ri = circuitRowInfo[j];
 				double res = 0;
-				if (ri.getType() == RowInfo.ROW_CONST)
-					res = ri.getValue();
+				if (circuitRowType[j] == ROW_CONST)
+					res = circuitRowValue[j];
 				else
-					res = circuitRightSide[ri.getMapCol()];
+					res = circuitRightSide[circuitRowMapCol[j]];
 
-				LOGGER.log(Level.FINE,
-						"\nj = " + j + ", res = " + res + ", type = " + ri.getType() + ", mapCol = " + ri.getMapCol());
+				if (SolverTrace.ENABLED) {
+					LOGGER.log(Level.FINE,
+							"\nj = " + j + ", res = " + res + ", type = " + circuitRowType[j] + ", mapCol = " + circuitRowMapCol[j]);
+				}
 
 				if (Double.isNaN(res)) {
 					setConverged(false);
@@ -924,24 +1626,17 @@ public class CirSim {
 					break;
 				}
 
-				if (j < getNodeList().size() - 1) {
-					CircuitNode cn = getCircuitNode(j + 1);
-					for (k = 0; k != cn.getLinks().size(); k++) {
-						CircuitNodeLink cnl = cn.getLinks().elementAt(k);
-						cnl.getElm().setNodeVoltage(cnl.getNum(), res);
-					}
-				} else {
-					int ji = j - (getNodeList().size() - 1);
-					// LOGGER.log(Level.FINE,"setting vsrc " + ji + " to " + res);
-					voltageSources[ji].setCurrent(ji, res);
-				}
+				applyResult(j, res);
 			}
+			if (trace != null)
+				trace.recordSolution(traceSolution, circuitMatrixFullSize);
+			commitSubIteration(event, subiter);
 
 			if (!circuitNonLinear)
 				break;
 		}
 
-		if (subiter > 5)
+		if (subiter > 5 && SolverTrace.ENABLED)
 			LOGGER.log(Level.FINE,"converged after " + subiter + " iterations\n");
 		if (subiter == subiterCount) {
 			stop("Convergence failed!", null);
@@ -953,12 +1648,95 @@ public class CirSim {
 
 		return true;
 	}
+
+	/**
+	 * Step of a linear circuit: every component solves its own system, in
+	 * parallel if they are big enough
+	 * 
+	 * @return false if the simulation has to stop
+	 */
+	private boolean stepComponents() {
+		if (stopMessage != null)
+			return false;
+		setConverged(true);
+		setSubIterations(0);
+		for (final CircuitComponent component : components) {
+			if (component.invalid) {
+				stop("nan/infinite matrix!", null);
+				return false;
+			}
+		}
+
+		final SubIterationEvent event = SubIterationEvent.startIfEnabled();
+		System.arraycopy(origRightSide, 0, circuitRightSide, 0, circuitMatrixSize);
+		for (final CircuitElm ce : sharedElms)
+			ce.doStep();
+
+		// the factorization is reused, the solve time includes the steps of the
+		// elements of each component
+		final long start = event != null ? System.nanoTime() : 0;
+		if (parallelComponents) {
+			ForkJoinPool.commonPool().invoke(new ComponentStep(0, components.length));
+		} else {
+			for (final CircuitComponent component : components)
+				component.step();
+		}
+		if (event != null)
+			event.solveTime = System.nanoTime() - start;
+		if (stopMessage != null)
+			return false;
+		commitSubIteration(event, 0);
+		if (trace != null) {
+			recoverEliminatedNodes();
+			trace.recordSystem(steps, 0, getT(), origMatrix, circuitRightSide, circuitMatrixSize);
+			trace.recordSolution(traceSolution, circuitMatrixFullSize);
+		}
+
+		setT(getT() + getTimeStep());
+		return true;
+	}
+
+	private void commitSubIteration(final SubIterationEvent event, final int subiter) {
+		if (event == null)
+			return;
+		event.end();
+		if (event.shouldCommit()) {
+			event.step = steps;
+			event.subIteration = subiter;
+			event.matrixSize = circuitMatrixSize;
+			event.componentCount = getComponentCount();
+			event.converged = isConverged();
+			event.commit();
+		}
+	}
+
+	/**
+	 * Gives the value of an unknown of the full matrix back to the elements
+	 * 
+	 * @param j   index of the unknown: node voltage or voltage source current
+	 * @param res its value
+	 */
+	private void applyResult(final int j, final double res) {
+		if (traceSolution != null)
+			traceSolution[j] = res;
+		if (j < getNodeList().size() - 1) {
+			final CircuitNode cn = getCircuitNode(j + 1);
+			for (int k = 0; k != cn.getLinks().size(); k++) {
+				final CircuitNodeLink cnl = cn.getLinks().elementAt(k);
+				cnl.getElm().setNodeVoltage(cnl.getNum(), res);
+			}
+		} else {
+			final int ji = j - (getNodeList().size() - 1);
+			// LOGGER.log(Level.FINE,"setting vsrc " + ji + " to " + res);
+			voltageSources[ji].setCurrent(ji, res);
+		}
+	}
 	
 	// factors a matrix into upper and lower triangular matrices by
 	// gaussian elimination. On entry, a[0..n-1][0..n-1] is the
 	// matrix to be factored. ipvt[] returns an integer vector of pivot
 	// indices, used in the lu_solve() routine.
-	private boolean lu_factor(double a[][], int n, int ipvt[]) {
+	static boolean lu_factor(double a[][], int n, int ipvt[]) {
 		double scaleFactors[];
 		int i, j, k;
 
@@ -1021,7 +1799,9 @@ public class CirSim {
 
 			// avoid zeros
 			if (a[j][j] == 0.0) {
-				LOGGER.log(Level.FINE,"avoided zero");
+				if (SolverTrace.ENABLED) {
+					LOGGER.log(Level.FINE,"avoided zero");
+				}
 				a[j][j] = 1e-18;
 			}
 
@@ -1044,7 +1824,7 @@ public class CirSim {
 	 * @param ipvt
 	 * @param b
 	 */
-	private void lu_solve(double a[][], int n, int ipvt[], double b[]) {
+	static void lu_solve(double a[][], int n, int ipvt[], double b[]) {
 		int i;
 
 		// find first nonzero b element
@@ -1098,6 +1878,137 @@ public class CirSim {
 		this.t = t;
 	}
 
+	/**
+	 * Saves the state of the circuit carried from a time step to the next one,
+	 * so that a step can be solved again from it
+	 * 
+	 * @param state buffer of a previous call, reused if it has the size of the
+	 *              state, or null
+	 * @return saved state
+	 */
+	public double[] saveState(double state[]) {
+		int size = 1;
+		for (int i = 0; i != getElmList().size(); i++)
+			size += getElm(i).getStateSize();
+		if (state == null || state.length != size)
+			state = new double[size];
+		state[0] = t;
+		int offset = 1;
+		for (int i = 0; i != getElmList().size(); i++)
+			offset = getElm(i).saveState(state, offset);
+		return state;
+	}
+
+	/**
+	 * Restores a state saved by {@link #saveState}, with the same elements
+	 * 
+	 * @param state saved state
+	 */
+	public void restoreState(double state[]) {
+		t = state[0];
+		int offset = 1;
+		for (int i = 0; i != getElmList().size(); i++)
+			offset = getElm(i).restoreState(state, offset);
+	}
+
+	public boolean isModelReduction() {
+		return modelReduction;
+	}
+
+	public long getFactorizationHits() {
+		return factorizationHits;
+	}
+
+	public long getFactorizationMisses() {
+		return factorizationMisses;
+	}
+
+	/**
+	 * @return ring buffer of the last solved systems, null if they are not
+	 *         recorded
+	 */
+	public SolverTrace getTrace() {
+		return trace;
+	}
+
+	/**
+	 * Starts or stops recording the solved systems; by default they are recorded
+	 * only if {@link SolverTrace#ENABLED} is set
+	 * 
+	 * @param trace ring buffer to record into, null to stop recording
+	 */
+	public void setTrace(final SolverTrace trace) {
+		this.trace = trace;
+		traceSolution = trace != null ? new double[circuitMatrixFullSize] : null;
+	}
+
+	/**
+	 * Enables the elimination of the internal nodes of the resistive subnetwork
+	 * for linear circuits; it takes effect at the next analyzeCircuit()
+	 * 
+	 * @param modelReduction true to reduce the model
+	 */
+	public void setModelReduction(final boolean modelReduction) {
+		this.modelReduction = modelReduction;
+	}
+
+	/**
+	 * Sets the terminals whose node voltage is read at every step, which the
+	 * model reduction keeps; it takes effect at the next analyzeCircuit()
+	 * 
+	 * @param observedNodes element and post of each observed terminal
+	 */
+	public void setObservedNodes(final List<CircuitNodeLink> observedNodes) {
+		this.observedNodes = new ArrayList<>(observedNodes);
+		factoredElms = null;
+	}
+
+	/**
+	 * Gives the voltages of the nodes eliminated by the model reduction back to
+	 * the elements, with the currents of the resistors around them; the last
+	 * step computed only the kept nodes. Does nothing if no node is eliminated.
+	 */
+	public void recoverEliminatedNodes() {
+		if (components == null)
+			return;
+		for (final CircuitComponent component : components)
+			component.recover();
+	}
+
+	/**
+	 * @return multiply-adds done by the solves of the current linear system and
+	 *         by the recoveries of its eliminated nodes, 0 if the circuit is
+	 *         nonlinear
+	 */
+	public long getSolveMultiplyAdds() {
+		if (components == null)
+			return 0;
+		long multiplyAdds = 0;
+		for (final CircuitComponent component : components)
+			multiplyAdds += component.getMultiplyAdds();
+		return multiplyAdds;
+	}
+
+	/**
+	 * @return size of the system actually solved at each step
+	 */
+	public int getSolvedMatrixSize() {
+		if (components == null)
+			return circuitMatrixSize;
+		int size = 0;
+		for (final CircuitComponent component : components)
+			size += component.solvedSize();
+		return size;
+	}
+
+	/**
+	 * @return number of independent parts of a linear circuit, 1 if the circuit
+	 *         is nonlinear
+	 */
+	public int getComponentCount() {
+		return components == null ? 1 : components.length;
+	}
+
 	public CircuitElm getPlotYElm() {
 		return plotYElm;
 	}
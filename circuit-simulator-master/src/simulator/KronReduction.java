@@ -0,0 +1,303 @@
+package simulator;
+
+import java.util.Arrays;
+
+/**
+ * Kron reduction of a linear circuit matrix: a set of unknowns (internal nodes
+ * of the resistive subnetwork) is eliminated through the Schur complement, so
+ * that each step only factors and solves the smaller system of the kept
+ * unknowns. The eliminated unknowns are not needed by the next step; they are
+ * recovered exactly, on demand, from the kept ones, hence every node voltage
+ * and element current is the same as with the full matrix.
+ */
+class KronReduction {
+
+	/**
+	 * Rows and columns of the kept unknowns in the simplified matrix
+	 */
+	private final int keptRows[], keptCols[];
+
+	/**
+	 * Rows and columns of the eliminated unknowns in the simplified matrix
+	 */
+	private final int elimRows[], elimCols[];
+
+	/**
+	 * Factored Schur complement S = A_KK - A_KE A_EE^-1 A_EK
+	 */
+	private final double schur[][];
+	private final int schurPermute[];
+
+	/**
+	 * A_EE^-1
+	 */
+	private final double elimInverse[][];
+
+	/**
+	 * A_KE A_EE^-1, folds the right side of the eliminated rows into the kept ones
+	 */
+	private final double coupling[][];
+
+	/**
+	 * A_EE^-1 A_EK, recovers the eliminated unknowns from the kept ones
+	 */
+	private final double recovery[][];
+
+	/**
+	 * Nonzero entries of each row of recovery: an eliminated node only depends
+	 * on the kept nodes around its resistive cluster
+	 */
+	private final int recoveryCols[][];
+	private final double recoveryValues[][];
+
+	/**
+	 * Right side of the eliminated rows of the last solve; it only changes with
+	 * the sources, so the terms derived from it are kept until it changes
+	 */
+	private final double elimRhs[];
+
+	/**
+	 * A_KE A_EE^-1 b_E, subtracted from the right side of the kept rows
+	 */
+	private final double keptOffset[];
+
+	/**
+	 * A_EE^-1 b_E, added to the recovered unknowns
+	 */
+	private final double elimOffset[];
+
+	/**
+	 * Solution of the kept unknowns of the last solve
+	 */
+	private final double keptRhs[];
+
+	/**
+	 * Multiply-adds done by the solves and recoveries
+	 */
+	private long multiplyAdds;
+
+	private KronReduction(final int keptRows[], final int keptCols[], final int elimRows[], final int elimCols[]) {
+		this.keptRows = keptRows;
+		this.keptCols = keptCols;
+		this.elimRows = elimRows;
+		this.elimCols = elimCols;
+		final int k = keptRows.length;
+		final int m = elimRows.length;
+		schur = new double[k][k];
+		schurPermute = new int[k];
+		elimInverse = new double[m][m];
+		coupling = new double[k][m];
+		recovery = new double[m][k];
+		recoveryCols = new int[m][];
+		recoveryValues = new double[m][];
+		keptRhs = new double[k];
+		elimRhs = new double[m];
+		keptOffset = new double[k];
+		elimOffset = new double[m];
+	}
+
+	/**
+	 * Builds the reduced system
+	 *
+	 * @param a        simplified matrix, left untouched
+	 * @param n        size of the simplified matrix
+	 * @param elimRows rows of the unknowns to eliminate
+	 * @param elimCols columns of the unknowns to eliminate, paired with elimRows
+	 * @return the reduction, or null if the eliminated block or the Schur
+	 *         complement is singular
+	 */
+	static KronReduction build(final double a[][], final int n, final int elimRows[], final int elimCols[]) {
+		final boolean rowElim[] = new boolean[n];
+		final boolean colElim[] = new boolean[n];
+		for (int i = 0; i != elimRows.length; i++) {
+			rowElim[elimRows[i]] = true;
+			colElim[elimCols[i]] = true;
+		}
+		final int k = n - elimRows.length;
+		final int keptRows[] = new int[k];
+		final int keptCols[] = new int[k];
+		int r = 0, c = 0;
+		for (int i = 0; i != n; i++) {
+			if (!rowElim[i])
+				keptRows[r++] = i;
+			if (!colElim[i])
+				keptCols[c++] = i;
+		}
+
+		final KronReduction kr = new KronReduction(keptRows, keptCols, elimRows.clone(), elimCols.clone());
+		return kr.factor(a) ? kr : null;
+	}
+
+	private boolean factor(final double a[][]) {
+		final int k = keptRows.length;
+		final int m = elimRows.length;
+
+		// A_EE^-1, one column at a time
+		final double elim[][] = new double[m][m];
+		for (int i = 0; i != m; i++)
+			for (int j = 0; j != m; j++)
+				elim[i][j] = a[elimRows[i]][elimCols[j]];
+		final int elimPermute[] = new int[m];
+		if (!CirSim.lu_factor(elim, m, elimPermute))
+			return false;
+		final double unit[] = new double[m];
+		for (int j = 0; j != m; j++) {
+			for (int i = 0; i != m; i++)
+				unit[i] = (i == j) ? 1 : 0;
+			CirSim.lu_solve(elim, m, elimPermute, unit);
+			for (int i = 0; i != m; i++)
+				elimInverse[i][j] = unit[i];
+		}
+
+		// coupling = A_KE A_EE^-1
+		for (int i = 0; i != k; i++) {
+			final double row[] = a[keptRows[i]];
+			for (int j = 0; j != m; j++) {
+				double q = 0;
+				for (int l = 0; l != m; l++)
+					q += row[elimCols[l]] * elimInverse[l][j];
+				coupling[i][j] = q;
+			}
+		}
+
+		// recovery = A_EE^-1 A_EK
+		for (int i = 0; i != m; i++) {
+			for (int j = 0; j != k; j++) {
+				double q = 0;
+				for (int l = 0; l != m; l++)
+					q += elimInverse[i][l] * a[elimRows[l]][keptCols[j]];
+				recovery[i][j] = q;
+			}
+		}
+
+		final int nonzero[] = new int[k];
+		for (int i = 0; i != m; i++) {
+			int count = 0;
+			for (int j = 0; j != k; j++)
+				if (recovery[i][j] != 0)
+					nonzero[count++] = j;
+			recoveryCols[i] = Arrays.copyOf(nonzero, count);
+			recoveryValues[i] = new double[count];
+			for (int j = 0; j != count; j++)
+				recoveryValues[i][j] = recovery[i][nonzero[j]];
+		}
+
+		// S = A_KK - A_KE A_EE^-1 A_EK
+		for (int i = 0; i != k; i++) {
+			final double row[] = a[keptRows[i]];
+			for (int j = 0; j != k; j++) {
+				double q = row[keptCols[j]];
+				for (int l = 0; l != m; l++)
+					q -= row[elimCols[l]] * recovery[l][j];
+				schur[i][j] = q;
+			}
+		}
+		return CirSim.lu_factor(schur, k, schurPermute);
+	}
+
+	/**
+	 * Solves the kept unknowns of the simplified system. On input b[] is the
+	 * right hand side, indexed by row; on output the kept unknowns are in b[],
+	 * indexed by column, as lu_solve would do on the full simplified matrix,
+	 * and the eliminated ones are left to {@link #recover(double[])}.
+	 *
+	 * @param b right side of the simplified matrix
+	 */
+	void solve(final double b[]) {
+		final int k = keptRows.length;
+		final int m = elimRows.length;
+
+		boolean changed = false;
+		for (int j = 0; j != m; j++) {
+			final double x = b[elimRows[j]];
+			if (x != elimRhs[j]) {
+				elimRhs[j] = x;
+				changed = true;
+			}
+		}
+		if (changed)
+			updateOffsets();
+
+		for (int i = 0; i != k; i++)
+			keptRhs[i] = b[keptRows[i]] - keptOffset[i];
+		CirSim.lu_solve(schur, k, schurPermute, keptRhs);
+		multiplyAdds += (long) k * k;
+
+		for (int i = 0; i != k; i++)
+			b[keptCols[i]] = keptRhs[i];
+	}
+
+	/**
+	 * Folds the right side of the eliminated rows, after a change of the
+	 * sources
+	 */
+	private void updateOffsets() {
+		final int k = keptRows.length;
+		final int m = elimRows.length;
+		for (int i = 0; i != m; i++) {
+			double q = 0;
+			final double inv[] = elimInverse[i];
+			for (int j = 0; j != m; j++)
+				q += inv[j] * elimRhs[j];
+			elimOffset[i] = q;
+		}
+		for (int i = 0; i != k; i++) {
+			double q = 0;
+			final double row[] = coupling[i];
+			for (int j = 0; j != m; j++)
+				q += row[j] * elimRhs[j];
+			keptOffset[i] = q;
+		}
+		multiplyAdds += (long) (k + m) * m;
+	}
+
+	/**
+	 * Recovers the eliminated unknowns of the last solve
+	 *
+	 * @param b solution of the last solve, indexed by column; on output it also
+	 *          contains the eliminated unknowns
+	 */
+	void recover(final double b[]) {
+		for (int i = 0; i != elimRows.length; i++) {
+			double q = elimOffset[i];
+			final int cols[] = recoveryCols[i];
+			final double values[] = recoveryValues[i];
+			for (int j = 0; j != cols.length; j++)
+				q -= values[j] * keptRhs[cols[j]];
+			b[elimCols[i]] = q;
+			multiplyAdds += cols.length;
+		}
+	}
+
+	/**
+	 * @param col column of the simplified matrix
+	 * @return true if the unknown of the column is eliminated
+	 */
+	boolean isEliminated(final int col) {
+		for (final int c : elimCols)
+			if (c == col)
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return multiply-adds done by the solves and the recoveries so far
+	 */
+	long getMultiplyAdds() {
+		return multiplyAdds;
+	}
+
+	/**
+	 * @return size of the system that is actually factored
+	 */
+	int getReducedSize() {
+		return keptRows.length;
+	}
+
+	/**
+	 * @return number of eliminated unknowns
+	 */
+	int getEliminatedCount() {
+		return elimRows.length;
+	}
+}
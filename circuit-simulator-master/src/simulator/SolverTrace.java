@@ -0,0 +1,180 @@
+package simulator;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Tracing facility of the solver. The switch {@link #ENABLED} is read once
+ * from the system property {@value #ENABLED_PROPERTY}: every debug message of
+ * the simulator is guarded by it, so when it is off the JIT drops the message
+ * construction altogether.
+ *
+ * An instance is a ring buffer with the linear systems (matrix, right side and
+ * solution) of the last steps, written in binary form by
+ * {@link #dump(OutputStream)} for post-mortem analysis. The slots are
+ * allocated once and reused, so recording does not create garbage while the
+ * size of the circuit does not change.
+ */
+public final class SolverTrace {
+
+	public static final String ENABLED_PROPERTY = "simulator.trace";
+	public static final String STEPS_PROPERTY = "simulator.trace.steps";
+
+	/**
+	 * True if the debug messages of the solver have to be built and logged
+	 */
+	public static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+	/**
+	 * Default number of systems kept by the ring buffer
+	 */
+	public static final int DEFAULT_STEPS = 16;
+
+	/**
+	 * Header of the binary dump: "MNAT" and format version
+	 */
+	public static final int MAGIC = 0x4d4e4154;
+	public static final int VERSION = 1;
+
+	/**
+	 * One recorded system: the matrix is stored row by row
+	 */
+	private static final class Frame {
+		private long step;
+		private int subIteration;
+		private double t;
+		private int size;
+		private double matrix[] = new double[0];
+		private double rightSide[] = new double[0];
+		private int solutionSize;
+		private double solution[] = new double[0];
+	}
+
+	private final Frame frames[];
+
+	/**
+	 * Slot of the last recorded system
+	 */
+	private int last = -1;
+
+	/**
+	 * Number of valid slots
+	 */
+	private int count;
+
+	/**
+	 * @param steps number of systems to keep
+	 */
+	public SolverTrace(final int steps) {
+		if (steps <= 0) {
+			throw new IllegalArgumentException("steps must be positive: " + steps);
+		}
+		frames = new Frame[steps];
+		for (int i = 0; i != steps; i++)
+			frames[i] = new Frame();
+	}
+
+	/**
+	 * @return ring buffer sized by the system property {@value #STEPS_PROPERTY}
+	 */
+	public static SolverTrace fromProperties() {
+		return new SolverTrace(Integer.getInteger(STEPS_PROPERTY, DEFAULT_STEPS));
+	}
+
+	/**
+	 * Records a new system, overwriting the oldest one if the buffer is full
+	 *
+	 * @param step         step of the simulation
+	 * @param subIteration subiteration of a nonlinear circuit, 0 otherwise
+	 * @param t            time of the simulation
+	 * @param a            matrix before factoring
+	 * @param b            right side
+	 * @param n            size of the system
+	 */
+	void recordSystem(final long step, final int subIteration, final double t, final double a[][], final double b[],
+			final int n) {
+		last = (last + 1) % frames.length;
+		if (count < frames.length)
+			count++;
+		final Frame frame = frames[last];
+		frame.step = step;
+		frame.subIteration = subIteration;
+		frame.t = t;
+		frame.size = n;
+		if (frame.matrix.length < n * n) {
+			frame.matrix = new double[n * n];
+			frame.rightSide = new double[n];
+		}
+		for (int i = 0; i != n; i++)
+			System.arraycopy(a[i], 0, frame.matrix, i * n, n);
+		System.arraycopy(b, 0, frame.rightSide, 0, n);
+		frame.solutionSize = 0;
+	}
+
+	/**
+	 * Attaches the solution to the last recorded system
+	 *
+	 * @param x    values of the unknowns of the full matrix: node voltages and
+	 *             voltage source currents
+	 * @param size number of unknowns
+	 */
+	void recordSolution(final double x[], final int size) {
+		if (last < 0)
+			return;
+		final Frame frame = frames[last];
+		if (frame.solution.length < size)
+			frame.solution = new double[size];
+		System.arraycopy(x, 0, frame.solution, 0, size);
+		frame.solutionSize = size;
+	}
+
+	/**
+	 * @return number of systems currently kept
+	 */
+	public int size() {
+		return count;
+	}
+
+	public int getCapacity() {
+		return frames.length;
+	}
+
+	public void clear() {
+		last = -1;
+		count = 0;
+	}
+
+	/**
+	 * Writes the kept systems, oldest first. The format is big-endian: MAGIC,
+	 * VERSION and the number of systems as int, then for each system step
+	 * (long), subiteration (int), time (double), size n (int), n*n matrix
+	 * entries row by row, n right side entries, solution size m (int) and m
+	 * solution entries.
+	 *
+	 * @param out stream to write to, not closed
+	 * @throws IOException if the stream cannot be written
+	 */
+	public void dump(final OutputStream out) throws IOException {
+		final DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeInt(count);
+		for (int k = count - 1; k >= 0; k--) {
+			final Frame frame = frames[(last - k + frames.length) % frames.length];
+			final int n = frame.size;
+			data.writeLong(frame.step);
+			data.writeInt(frame.subIteration);
+			data.writeDouble(frame.t);
+			data.writeInt(n);
+			for (int i = 0; i != n * n; i++)
+				data.writeDouble(frame.matrix[i]);
+			for (int i = 0; i != n; i++)
+				data.writeDouble(frame.rightSide[i]);
+			data.writeInt(frame.solutionSize);
+			for (int i = 0; i != frame.solutionSize; i++)
+				data.writeDouble(frame.solution[i]);
+		}
+		data.flush();
+	}
+}
@@ -0,0 +1,64 @@
+package simulator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event of a subiteration of
+ * {@link CirSim#loopAndContinue(boolean)}; a linear circuit has a single
+ * subiteration per step
+ */
+@Name("simulator.SubIteration")
+@Label("Solver Subiteration")
+@Category({ "Lung Simulator", "Solver" })
+@Description("Stamping, factorization and solution of the circuit matrix")
+@Enabled(false)
+@StackTrace(false)
+class SubIterationEvent extends Event {
+
+	@Label("Step")
+	long step;
+
+	@Label("Subiteration")
+	int subIteration;
+
+	@Label("Matrix Size")
+	int matrixSize;
+
+	@Label("Components")
+	int componentCount;
+
+	@Label("Factor Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long factorTime;
+
+	@Label("Solve Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long solveTime;
+
+	@Label("Converged")
+	boolean converged;
+
+	/**
+	 * Only asked whether the event is enabled
+	 */
+	private static final SubIterationEvent PROBE = new SubIterationEvent();
+
+	/**
+	 * @return started event, null if the event is disabled
+	 */
+	static SubIterationEvent startIfEnabled() {
+		if (!PROBE.isEnabled()) {
+			return null;
+		}
+		final SubIterationEvent event = new SubIterationEvent();
+		event.begin();
+		return event;
+	}
+}
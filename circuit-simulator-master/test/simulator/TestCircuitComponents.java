@@ -0,0 +1,93 @@
+package simulator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import components.CapacitorElm;
+import components.CircuitElm;
+import components.DCVoltageElm;
+import components.GroundElm;
+import components.ResistorElm;
+
+public class TestCircuitComponents {
+
+	/**
+	 * RC ladder with its own ground, placed at the given row so that several
+	 * ladders do not share any node
+	 */
+	private List<CircuitElm> buildLadder(final int row, final double voltage, final int length) {
+		final List<CircuitElm> elements = new ArrayList<>();
+		final GroundElm ground = new GroundElm(1000, row);
+		ground.setX2Y2(1000, row);
+		elements.add(ground);
+
+		final DCVoltageElm battery = new DCVoltageElm(1000, row);
+		battery.setX2Y2(0, row);
+		battery.setMaxVoltage(voltage);
+		elements.add(battery);
+
+		for (int i = 0; i < length; i++) {
+			final ResistorElm series = new ResistorElm(i, row);
+			series.setX2Y2(i + 1, row);
+			series.setResistance(1 + i * 0.1);
+			elements.add(series);
+			final CapacitorElm shunt = new CapacitorElm(i + 1, row);
+			shunt.setX2Y2(1000, row);
+			shunt.setCapacitance(0.01 + i * 0.001);
+			elements.add(shunt);
+		}
+		return elements;
+	}
+
+	private double[][] simulate(final List<CircuitElm> elements, final int steps) {
+		for (final CircuitElm c : elements) {
+			c.setPoints();
+		}
+		final CirSim cirSim = new CirSim();
+		cirSim.setElmList(elements);
+		CircuitElm.sim = cirSim;
+		cirSim.setTimeStep(0.001);
+		cirSim.analyzeCircuit();
+
+		final double[][] values = new double[steps][elements.size()];
+		for (int i = 0; i < steps; i++) {
+			cirSim.loopAndContinue(false);
+			for (int j = 0; j < elements.size(); j++) {
+				values[i][j] = elements.get(j).getCurrent();
+			}
+		}
+		return values;
+	}
+
+	@Test
+	public void componentsMatchSeparateCircuits() {
+		final int length = 2 * CirSim.PARALLEL_COMPONENT_SIZE;
+		final double[][] first = simulate(buildLadder(10, 5, length), 50);
+		final double[][] second = simulate(buildLadder(20, 12, length), 50);
+
+		final List<CircuitElm> both = buildLadder(10, 5, length);
+		both.addAll(buildLadder(20, 12, length));
+		for (final CircuitElm c : both) {
+			c.setPoints();
+		}
+		final CirSim cirSim = new CirSim();
+		cirSim.setElmList(both);
+		CircuitElm.sim = cirSim;
+		cirSim.setTimeStep(0.001);
+		cirSim.analyzeCircuit();
+		assertEquals(2, cirSim.getComponentCount());
+
+		final int half = both.size() / 2;
+		for (int i = 0; i < first.length; i++) {
+			cirSim.loopAndContinue(false);
+			for (int j = 0; j < half; j++) {
+				assertEquals(first[i][j], both.get(j).getCurrent(), 1e-9);
+				assertEquals(second[i][j], both.get(half + j).getCurrent(), 1e-9);
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import components.CapacitorElm;
+import components.CircuitElm;
+import components.DCVoltageElm;
+import components.InductorElm;
+import components.ResistorElm;
+
+public class TestFactorizationCache {
+
+	@Test
+	public void factorizationIsReusedUntilTheCircuitChanges() {
+		final ResistorElm resistor = new ResistorElm(1, 1);
+		resistor.setX2Y2(1, 0);
+		resistor.setResistance(10);
+
+		final CapacitorElm cap = new CapacitorElm(0, 0);
+		cap.setX2Y2(1, 1);
+		cap.setCapacitance(0.002);
+
+		final DCVoltageElm battery = new DCVoltageElm(1, 0);
+		battery.setX2Y2(0, 0);
+		battery.setMaxVoltage(20);
+
+		final List<CircuitElm> elements = Arrays.asList(resistor, cap, battery);
+		for (final CircuitElm c : elements) {
+			c.setPoints();
+		}
+		final CirSim cirSim = new CirSim();
+		cirSim.setElmList(elements);
+		CircuitElm.sim = cirSim;
+		cirSim.setTimeStep(0.001);
+
+		for (int i = 0; i < 10; i++) {
+			cirSim.analyzeCircuit();
+			cirSim.loopAndContinue(false);
+		}
+		assertEquals(1, cirSim.getFactorizationMisses());
+		assertEquals(9, cirSim.getFactorizationHits());
+
+		// a lower resistance gives a higher current, so the matrix has changed
+		final double current = resistor.getCurrent();
+		resistor.setResistance(5);
+		cirSim.analyzeCircuit();
+		cirSim.loopAndContinue(false);
+		assertEquals(2, cirSim.getFactorizationMisses());
+		assertTrue(resistor.getCurrent() > 1.5 * current);
+
+		battery.setMaxVoltage(5);
+		cirSim.analyzeCircuit();
+		assertEquals(3, cirSim.getFactorizationMisses());
+
+		cirSim.setTimeStep(0.002);
+		cirSim.analyzeCircuit();
+		assertEquals(4, cirSim.getFactorizationMisses());
+		assertEquals(9, cirSim.getFactorizationHits());
+	}
+
+	@Test
+	public void factorizationIsReusedWhileTheInductorCurrentChanges() {
+		final ResistorElm resistor = new ResistorElm(1, 1);
+		resistor.setX2Y2(1, 0);
+		resistor.setResistance(10);
+
+		final InductorElm inductor = new InductorElm(0, 0);
+		inductor.setX2Y2(1, 1);
+		inductor.setInductance(0.5);
+
+		final DCVoltageElm battery = new DCVoltageElm(1, 0);
+		battery.setX2Y2(0, 0);
+		battery.setMaxVoltage(20);
+
+		final List<CircuitElm> elements = Arrays.asList(resistor, inductor, battery);
+		for (final CircuitElm c : elements) {
+			c.setPoints();
+		}
+		final CirSim cirSim = new CirSim();
+		cirSim.setElmList(elements);
+		CircuitElm.sim = cirSim;
+		cirSim.setTimeStep(0.001);
+
+		double current = 0;
+		for (int i = 0; i < 10; i++) {
+			cirSim.analyzeCircuit();
+			cirSim.loopAndContinue(false);
+			// the current rises towards 2 at every step
+			assertTrue(inductor.getCurrent() > current);
+			current = inductor.getCurrent();
+		}
+		assertEquals(1, cirSim.getFactorizationMisses());
+		assertEquals(9, cirSim.getFactorizationHits());
+
+		inductor.setInductance(0.25);
+		cirSim.analyzeCircuit();
+		assertEquals(2, cirSim.getFactorizationMisses());
+	}
+}
@@ -0,0 +1,249 @@
+package simulator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import components.CapacitorElm;
+import components.CircuitElm;
+import components.DCVoltageElm;
+import components.ExternalVoltageElm;
+import components.GroundElm;
+import components.ResistorElm;
+
+public class TestMatrixSimplification {
+
+	/**
+	 * Folder of the lung models bundled with the simulator library
+	 */
+	private static final Path LUNG_MODELS = Paths.get("..", "lungsimulator-lib", "resources", "resourcereader");
+
+	private static final Pattern TYPE = Pattern.compile("^\\s*type:\\s*(\\w+)");
+
+	private static final Pattern POSITION = Pattern
+			.compile("position:\\s*\\{x1:\\s*(\\d+),\\s*y1:\\s*(\\d+),\\s*x2:\\s*(\\d+),\\s*y2:\\s*(\\d+)\\}");
+
+	/**
+	 * Equal values in a row, longer than the 100 links followed when a constant
+	 * is found
+	 */
+	private static final int CHAIN_LENGTH = 150;
+
+	/**
+	 * Simplifies the matrix as it was done before the worklist: scanning the rows
+	 * in order and starting over from the first row after every constant
+	 */
+	private static class RestartCirSim extends CirSim {
+
+		@Override
+		boolean simplifyMatrix(final int matrixSize) {
+			for (int i = 0; i != matrixSize; i++) {
+				int qm = -1, qp = -1;
+				double qv = 0;
+				if (circuitRowLsChanges[i] || circuitRowDropRow[i] || circuitRowRsChanges[i])
+					continue;
+				double rsadd = 0;
+
+				int maxJ = 0;
+				for (maxJ = 0; maxJ != matrixSize; maxJ++) {
+					final double q = circuitMatrix[i][maxJ];
+					if (circuitRowType[maxJ] == ROW_CONST) {
+						rsadd -= circuitRowValue[maxJ] * q;
+						continue;
+					}
+					if (q == 0)
+						continue;
+					if (qp == -1) {
+						qp = maxJ;
+						qv = q;
+						continue;
+					}
+					if (qm == -1 && q == -qv) {
+						qm = maxJ;
+						continue;
+					}
+					break;
+				}
+
+				if (maxJ == matrixSize) {
+					if (qp == -1) {
+						stop("Matrix error", null);
+						return false;
+					}
+					if (qm == -1) {
+						for (int k = 0; circuitRowType[qp] == ROW_EQUAL && k < 100; k++)
+							qp = circuitRowNodeEq[qp];
+						if (circuitRowType[qp] == ROW_EQUAL) {
+							circuitRowType[qp] = ROW_NORMAL;
+							continue;
+						}
+						if (circuitRowType[qp] != ROW_NORMAL)
+							continue;
+						circuitRowType[qp] = ROW_CONST;
+						circuitRowValue[qp] = (circuitRightSide[i] + rsadd) / qv;
+						circuitRowDropRow[i] = true;
+						i = -1; // start over from scratch
+					} else if (circuitRightSide[i] + rsadd == 0) {
+						if (circuitRowType[qp] != ROW_NORMAL) {
+							final int qq = qm;
+							qm = qp;
+							qp = qq;
+							if (circuitRowType[qp] != ROW_NORMAL)
+								continue;
+						}
+						circuitRowType[qp] = ROW_EQUAL;
+						circuitRowNodeEq[qp] = qm;
+						circuitRowDropRow[i] = true;
+					}
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Builds the elements of a bundled lung model, with a value for each element
+	 * that only depends on its position in the model
+	 */
+	private static List<CircuitElm> buildLungModel(final Path file) throws IOException {
+		final List<CircuitElm> elements = new ArrayList<>();
+		String type = null;
+		for (final String line : Files.readAllLines(file)) {
+			final Matcher typeMatcher = TYPE.matcher(line);
+			if (typeMatcher.find()) {
+				type = typeMatcher.group(1);
+				continue;
+			}
+			final Matcher position = POSITION.matcher(line);
+			if (!position.find())
+				continue;
+
+			final CircuitElm elm;
+			final int index = elements.size();
+			if ("ResistorElm".equals(type)) {
+				final ResistorElm resistor = new ResistorElm(1, 1);
+				resistor.setResistance(1 + index * 0.1);
+				elm = resistor;
+			} else if ("CapacitorElm".equals(type)) {
+				final CapacitorElm capacitor = new CapacitorElm(0, 0);
+				capacitor.setCapacitance(0.01 + index * 0.001);
+				elm = capacitor;
+			} else if ("ExternalVoltageElm".equals(type)) {
+				elm = new ExternalVoltageElm(1, 1, 28);
+			} else {
+				final DCVoltageElm source = new DCVoltageElm(1, 1);
+				source.setMaxVoltage(index);
+				elm = source;
+			}
+			elm.setX(Integer.parseInt(position.group(1)));
+			elm.setY(Integer.parseInt(position.group(2)));
+			elm.setX2Y2(Integer.parseInt(position.group(3)), Integer.parseInt(position.group(4)));
+			elements.add(elm);
+		}
+		return elements;
+	}
+
+	/**
+	 * Chain of zero volt sources from a battery to a load, with the load end fixed
+	 * by a second battery: the chain is longer than the links followed when
+	 * looking for a constant, so it is broken
+	 */
+	private static List<CircuitElm> buildEqualChain() {
+		final List<CircuitElm> elements = new ArrayList<>();
+		final GroundElm ground = new GroundElm(1000, 0);
+		ground.setX2Y2(1000, 0);
+		elements.add(ground);
+
+		for (int i = 0; i < CHAIN_LENGTH; i++) {
+			final DCVoltageElm link = new DCVoltageElm(i, 0);
+			link.setX2Y2(i + 1, 0);
+			link.setMaxVoltage(0);
+			elements.add(link);
+		}
+
+		final ResistorElm load = new ResistorElm(CHAIN_LENGTH, 0);
+		load.setX2Y2(CHAIN_LENGTH + 1, 0);
+		load.setResistance(10);
+		elements.add(load);
+
+		final CapacitorElm cap = new CapacitorElm(CHAIN_LENGTH + 1, 0);
+		cap.setX2Y2(1000, 0);
+		cap.setCapacitance(0.01);
+		elements.add(cap);
+
+		final DCVoltageElm battery = new DCVoltageElm(1000, 0);
+		battery.setX2Y2(0, 0);
+		battery.setMaxVoltage(5);
+		elements.add(battery);
+
+		final DCVoltageElm tail = new DCVoltageElm(1000, 0);
+		tail.setX2Y2(CHAIN_LENGTH + 2, 0);
+		tail.setMaxVoltage(3);
+		elements.add(tail);
+
+		final ResistorElm tailLoad = new ResistorElm(CHAIN_LENGTH + 2, 0);
+		tailLoad.setX2Y2(1000, 0);
+		tailLoad.setResistance(5);
+		elements.add(tailLoad);
+		return elements;
+	}
+
+	private static CirSim analyze(final CirSim cirSim, final List<CircuitElm> elements) {
+		for (final CircuitElm c : elements) {
+			c.setPoints();
+		}
+		cirSim.setElmList(elements);
+		CircuitElm.sim = cirSim;
+		cirSim.setTimeStep(0.001);
+		cirSim.analyzeCircuit();
+		assertTrue(cirSim.getSolvedMatrixSize() > 0);
+		return cirSim;
+	}
+
+	private static void assertSameReducedSystem(final CirSim expected, final CirSim actual) {
+		assertArrayEquals(expected.circuitRowType, actual.circuitRowType);
+		assertArrayEquals(expected.circuitRowMapCol, actual.circuitRowMapCol);
+		assertArrayEquals(expected.circuitRowMapRow, actual.circuitRowMapRow);
+		assertEquals(expected.circuitMatrixSize, actual.circuitMatrixSize);
+		final int size = expected.circuitMatrixSize;
+		for (int i = 0; i != size; i++) {
+			assertArrayEquals(Arrays.copyOf(expected.origMatrix[i], size), Arrays.copyOf(actual.origMatrix[i], size),
+					0);
+		}
+		assertArrayEquals(Arrays.copyOf(expected.origRightSide, size), Arrays.copyOf(actual.origRightSide, size), 0);
+	}
+
+	@Test
+	public void lungModelsGiveTheSameReducedSystem() throws IOException {
+		int models = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(LUNG_MODELS, "lung-model-*.yaml")) {
+			for (final Path file : files) {
+				final CirSim expected = analyze(new RestartCirSim(), buildLungModel(file));
+				final CirSim actual = analyze(new CirSim(), buildLungModel(file));
+				assertSameReducedSystem(expected, actual);
+				models++;
+			}
+		}
+		assertTrue(models > 0);
+	}
+
+	@Test
+	public void brokenEqualChainGivesTheSameReducedSystem() {
+		final CirSim expected = analyze(new RestartCirSim(), buildEqualChain());
+		final CirSim actual = analyze(new CirSim(), buildEqualChain());
+		assertSameReducedSystem(expected, actual);
+	}
+}
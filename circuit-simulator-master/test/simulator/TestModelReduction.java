@@ -0,0 +1,172 @@
+package simulator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import components.CapacitorElm;
+import components.CircuitElm;
+import components.CircuitNodeLink;
+import components.DCVoltageElm;
+import components.GroundElm;
+import components.ResistorElm;
+
+public class TestModelReduction {
+
+	/**
+	 * Size of the system solved by the last simulation of probeVoltages
+	 */
+	private int solvedSize;
+
+	/**
+	 * Resistive ladder with a capacitor at the end: the internal nodes of the
+	 * ladder can be eliminated
+	 */
+	private List<CircuitElm> buildLadder() {
+		final List<CircuitElm> elements = new ArrayList<>();
+		final GroundElm ground = new GroundElm(50, 0);
+		ground.setX2Y2(50, 0);
+		elements.add(ground);
+
+		final DCVoltageElm battery = new DCVoltageElm(50, 0);
+		battery.setX2Y2(0, 0);
+		battery.setMaxVoltage(10);
+		elements.add(battery);
+
+		for (int i = 0; i < 10; i++) {
+			final ResistorElm series = new ResistorElm(i, 0);
+			series.setX2Y2(i + 1, 0);
+			series.setResistance(1 + i * 0.1);
+			elements.add(series);
+			final ResistorElm shunt = new ResistorElm(i + 1, 0);
+			shunt.setX2Y2(50, 0);
+			shunt.setResistance(20 + i);
+			elements.add(shunt);
+		}
+
+		final CapacitorElm cap = new CapacitorElm(10, 0);
+		cap.setX2Y2(50, 0);
+		cap.setCapacitance(0.01);
+		elements.add(cap);
+
+		for (final CircuitElm c : elements) {
+			c.setPoints();
+		}
+		return elements;
+	}
+
+	private double[][] simulate(final boolean reduce, final int steps) {
+		final List<CircuitElm> elements = buildLadder();
+		final CirSim cirSim = new CirSim();
+		cirSim.setElmList(elements);
+		cirSim.setModelReduction(reduce);
+		CircuitElm.sim = cirSim;
+		cirSim.setTimeStep(0.001);
+		cirSim.analyzeCircuit();
+		if (reduce) {
+			assertTrue(cirSim.getSolvedMatrixSize() < cirSim.circuitMatrixSize);
+		}
+
+		final double[][] values = new double[steps][elements.size() * 2];
+		for (int i = 0; i < steps; i++) {
+			cirSim.loopAndContinue(false);
+			cirSim.recoverEliminatedNodes();
+			for (int j = 0; j < elements.size(); j++) {
+				values[i][2 * j] = elements.get(j).getCurrent();
+				values[i][2 * j + 1] = elements.get(j).getVoltageDiff();
+			}
+		}
+		return values;
+	}
+
+	@Test
+	public void reducedMatchesFull() {
+		final double[][] full = simulate(false, 100);
+		final double[][] reduced = simulate(true, 100);
+		for (int i = 0; i < full.length; i++) {
+			for (int j = 0; j < full[i].length; j++) {
+				assertEquals(full[i][j], reduced[i][j], 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void stepsOnlySolveTheKeptNodes() {
+		final List<CircuitElm> elements = buildLadder();
+		final CirSim cirSim = new CirSim();
+		cirSim.setElmList(elements);
+		cirSim.setModelReduction(true);
+		CircuitElm.sim = cirSim;
+		cirSim.setTimeStep(0.001);
+		cirSim.analyzeCircuit();
+		final int full = cirSim.circuitMatrixSize;
+		final int kept = cirSim.getSolvedMatrixSize();
+
+		// the right side of the eliminated rows is folded once
+		cirSim.loopAndContinue(false);
+		final long folded = cirSim.getSolveMultiplyAdds();
+		final int steps = 100;
+		for (int i = 0; i < steps; i++) {
+			cirSim.loopAndContinue(false);
+		}
+		final long solves = cirSim.getSolveMultiplyAdds() - folded;
+		assertEquals((long) steps * kept * kept, solves);
+
+		// recovering the eliminated nodes is sparse and still cheaper than a
+		// full solve
+		cirSim.recoverEliminatedNodes();
+		final long recovery = cirSim.getSolveMultiplyAdds() - folded - solves;
+		assertTrue(recovery > 0);
+		assertTrue(kept * kept + recovery < full * full);
+		cirSim.recoverEliminatedNodes();
+		assertEquals(folded + solves + recovery, cirSim.getSolveMultiplyAdds());
+	}
+
+	/**
+	 * @return voltage, at each step, of the node between the fifth and the
+	 *         sixth series resistors, observed or not
+	 */
+	private double[] probeVoltages(final boolean reduce, final boolean observe, final int steps) {
+		final List<CircuitElm> elements = buildLadder();
+		final CirSim cirSim = new CirSim();
+		cirSim.setElmList(elements);
+		cirSim.setModelReduction(reduce);
+		final CircuitElm probe = elements.get(2 + 2 * 5);
+		if (observe) {
+			final CircuitNodeLink link = new CircuitNodeLink();
+			link.setElm(probe);
+			link.setNum(0);
+			cirSim.setObservedNodes(Arrays.asList(link));
+		}
+		CircuitElm.sim = cirSim;
+		cirSim.setTimeStep(0.001);
+		cirSim.analyzeCircuit();
+		solvedSize = cirSim.getSolvedMatrixSize();
+
+		final double[] voltages = new double[steps];
+		for (int i = 0; i < steps; i++) {
+			cirSim.loopAndContinue(false);
+			voltages[i] = probe.getVoltZero();
+		}
+		return voltages;
+	}
+
+	@Test
+	public void observedNodesAreKept() {
+		final double[] full = probeVoltages(false, false, 50);
+		probeVoltages(true, false, 1);
+		final int reduced = solvedSize;
+
+		// the observed voltage is solved at every step, without recovering the
+		// eliminated nodes
+		final double[] observed = probeVoltages(true, true, 50);
+		assertEquals(reduced + 1, solvedSize);
+		assertArrayEquals(full, observed, 1e-9);
+	}
+}
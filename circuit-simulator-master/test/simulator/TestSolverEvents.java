@@ -0,0 +1,101 @@
+package simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import components.CapacitorElm;
+import components.CircuitElm;
+import components.DCVoltageElm;
+import components.ResistorElm;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class TestSolverEvents {
+
+	@Test
+	public void eventsAreRecordedOnlyWhenEnabled() throws IOException {
+		final ResistorElm resistor = new ResistorElm(1, 1);
+		resistor.setX2Y2(1, 0);
+		resistor.setResistance(10);
+
+		final CapacitorElm cap = new CapacitorElm(0, 0);
+		cap.setX2Y2(1, 1);
+		cap.setCapacitance(0.002);
+
+		final DCVoltageElm battery = new DCVoltageElm(1, 0);
+		battery.setX2Y2(0, 0);
+		battery.setMaxVoltage(20);
+
+		final List<CircuitElm> elements = Arrays.asList(resistor, cap, battery);
+		for (final CircuitElm c : elements) {
+			c.setPoints();
+		}
+		final CirSim cirSim = new CirSim();
+		cirSim.setElmList(elements);
+		CircuitElm.sim = cirSim;
+		cirSim.setTimeStep(0.001);
+
+		final Path file = Files.createTempFile("solver", ".jfr");
+		try (Recording recording = new Recording()) {
+			// the solver events are disabled by default
+			recording.start();
+			cirSim.analyzeCircuit();
+			cirSim.loopAndContinue(false);
+			recording.stop();
+			recording.dump(file);
+			for (final RecordedEvent event : RecordingFile.readAllEvents(file)) {
+				assertFalse(event.getEventType().getName().startsWith("simulator."));
+			}
+		}
+
+		try (Recording recording = new Recording()) {
+			recording.enable("simulator.AnalyzeCircuit");
+			recording.enable("simulator.AnalyzePhase");
+			recording.enable("simulator.SubIteration");
+			recording.start();
+			cirSim.setTimeStep(0.002);
+			for (int i = 0; i < 5; i++) {
+				cirSim.analyzeCircuit();
+				cirSim.loopAndContinue(false);
+			}
+			recording.stop();
+			recording.dump(file);
+
+			int analyze = 0, phases = 0, subIterations = 0;
+			for (final RecordedEvent event : RecordingFile.readAllEvents(file)) {
+				switch (event.getEventType().getName()) {
+				case "simulator.AnalyzeCircuit":
+					assertEquals(3, event.getInt("elementCount"));
+					assertEquals(analyze > 0, event.getBoolean("factorizationReused"));
+					analyze++;
+					break;
+				case "simulator.AnalyzePhase":
+					phases++;
+					break;
+				case "simulator.SubIteration":
+					assertEquals(cirSim.getSolvedMatrixSize(), event.getInt("matrixSize"));
+					assertTrue(event.getBoolean("converged"));
+					subIterations++;
+					break;
+				default:
+					break;
+				}
+			}
+			assertEquals(5, analyze);
+			assertEquals(6, phases);
+			assertEquals(5, subIterations);
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import components.CapacitorElm;
+import components.CircuitElm;
+import components.DCVoltageElm;
+import components.ResistorElm;
+
+public class TestSolverTrace {
+
+	@Test
+	public void keepsTheLastSteps() throws IOException {
+		final ResistorElm resistor = new ResistorElm(1, 1);
+		resistor.setX2Y2(1, 0);
+		resistor.setResistance(10);
+
+		final CapacitorElm cap = new CapacitorElm(0, 0);
+		cap.setX2Y2(1, 1);
+		cap.setCapacitance(0.002);
+
+		final DCVoltageElm battery = new DCVoltageElm(1, 0);
+		battery.setX2Y2(0, 0);
+		battery.setMaxVoltage(20);
+
+		final List<CircuitElm> elements = Arrays.asList(resistor, cap, battery);
+		for (final CircuitElm c : elements) {
+			c.setPoints();
+		}
+		final CirSim cirSim = new CirSim();
+		cirSim.setElmList(elements);
+		CircuitElm.sim = cirSim;
+		cirSim.setTimeStep(0.001);
+		cirSim.setTrace(new SolverTrace(4));
+
+		for (int i = 0; i < 10; i++) {
+			cirSim.analyzeCircuit();
+			cirSim.loopAndContinue(false);
+		}
+		assertEquals(4, cirSim.getTrace().size());
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		cirSim.getTrace().dump(out);
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(SolverTrace.MAGIC, in.readInt());
+		assertEquals(SolverTrace.VERSION, in.readInt());
+		assertEquals(4, in.readInt());
+		for (int step = 7; step <= 10; step++) {
+			assertEquals(step, in.readLong());
+			assertEquals(0, in.readInt());
+			assertEquals((step - 1) * 0.001, in.readDouble(), 1e-12);
+			final int n = in.readInt();
+			assertTrue(n > 0);
+			for (int i = 0; i < n * n + n; i++) {
+				assertTrue(Double.isFinite(in.readDouble()));
+			}
+			final int m = in.readInt();
+			assertTrue(m >= n);
+			final double solution[] = new double[m];
+			for (int i = 0; i < m; i++) {
+				solution[i] = in.readDouble();
+			}
+			// the current of the only voltage source is the last unknown
+			if (step == 10) {
+				assertEquals(battery.getCurrent(), solution[m - 1], 1e-9);
+			}
+		}
+		assertEquals(-1, in.read());
+	}
+}
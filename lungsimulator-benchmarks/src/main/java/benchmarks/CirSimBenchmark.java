@@ -0,0 +1,86 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import components.CircuitElm;
+import components.ResistorElm;
+import simulator.CirSim;
+
+/**
+ * Construction and stepping of RC ladders of growing size
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CirSimBenchmark {
+
+	@Param({ "10", "100", "500" })
+	private int sections;
+
+	private CirSim cirSim;
+
+	/**
+	 * Its resistance is changed to force the construction of a new matrix
+	 */
+	private ResistorElm firstResistor;
+
+	private boolean toggle;
+
+	@Setup
+	public void setUp() {
+		final List<CircuitElm> elements = SyntheticCircuits.rcLadder(sections);
+		firstResistor = (ResistorElm) elements.get(2);
+		cirSim = SyntheticCircuits.simulator(elements, 0.001);
+		cirSim.analyzeCircuit();
+	}
+
+	/**
+	 * Full construction: nodes, stamps, simplification and factorization
+	 */
+	@Benchmark
+	public CirSim analyzeCircuit() {
+		toggle = !toggle;
+		firstResistor.setResistance(toggle ? 1.0 : 1.1);
+		cirSim.analyzeCircuit();
+		return cirSim;
+	}
+
+	/**
+	 * Unchanged circuit, the factorization is reused
+	 */
+	@Benchmark
+	public CirSim analyzeCircuitCached() {
+		cirSim.analyzeCircuit();
+		return cirSim;
+	}
+
+	@Benchmark
+	public boolean loopAndContinue() {
+		return cirSim.loopAndContinue(false);
+	}
+
+	/**
+	 * A step as done by the lung simulator
+	 */
+	@Benchmark
+	public boolean step() {
+		cirSim.analyzeCircuit();
+		return cirSim.loopAndContinue(false);
+	}
+}
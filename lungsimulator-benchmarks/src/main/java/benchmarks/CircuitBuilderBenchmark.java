@@ -0,0 +1,101 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.components.Archetype;
+import lungsimulator.utils.YamlReader;
+import simulator.CirSim;
+
+/**
+ * Formula evaluation and data collection of CircuitBuilder
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CircuitBuilderBenchmark {
+
+	/**
+	 * Synthetic circuit with a given number of time dependent formulas; they
+	 * are evaluated by updateCircuitSimulator through resolveFormula
+	 */
+	@State(Scope.Thread)
+	public static class Formulas {
+
+		@Param({ "1", "10", "100" })
+		private int formulas;
+
+		private CircuitBuilder circuitBuilder;
+		private Archetype archetype;
+		private double time;
+
+		@Setup
+		public void setUp() {
+			final Map<String, String> parameters = new HashMap<>();
+			parameters.put("r", "1.5");
+			parameters.put("c", "0.1");
+			archetype = new Archetype();
+			archetype.setParameters(parameters);
+			circuitBuilder = new CircuitBuilder();
+			circuitBuilder.buildCircuitSimulator(SyntheticCircuits.timeDependentPatient(formulas), archetype);
+		}
+	}
+
+	/**
+	 * Bundled model after some simulated steps
+	 */
+	@State(Scope.Thread)
+	public static class Model {
+
+		@Param({ "Albanese", "Baker", "Al-Naggar", "Campbell-Brown", "Jain" })
+		private String model;
+
+		private CircuitBuilder circuitBuilder;
+		private double time;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			final YamlReader yamlReader = new YamlReader(model);
+			circuitBuilder = new CircuitBuilder();
+			final CirSim cirSim = circuitBuilder.buildCircuitSimulator(yamlReader.readPatientModel(),
+					yamlReader.readArchetypeParameters());
+			cirSim.setTimeStep(0.1);
+			for (int i = 0; i < 10; i++) {
+				cirSim.analyzeCircuit();
+				cirSim.loopAndContinue(false);
+			}
+		}
+	}
+
+	@Benchmark
+	public CircuitBuilder updateCircuitSimulator(final Formulas state) {
+		state.time += 0.1;
+		state.circuitBuilder.updateCircuitSimulator(state.archetype, state.time);
+		return state.circuitBuilder;
+	}
+
+	@Benchmark
+	public CircuitBuilder updateData(final Model state) {
+		state.time += 0.1;
+		state.circuitBuilder.updateData(state.time);
+		return state.circuitBuilder;
+	}
+}
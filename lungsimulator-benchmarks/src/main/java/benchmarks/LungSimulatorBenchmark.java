@@ -0,0 +1,94 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQException;
+
+import lungsimulator.LungSimulator;
+
+/**
+ * End-to-end step of the lung simulator for each bundled model, including
+ * the round trip to a ventilator that answers at once
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LungSimulatorBenchmark {
+
+	/**
+	 * Endpoint the lung simulator connects to
+	 */
+	private static final String VENTILATOR = "tcp://localhost:5555";
+
+	@Param({ "Albanese", "Baker", "Al-Naggar", "Campbell-Brown", "Jain" })
+	private String model;
+
+	/**
+	 * True to eliminate the internal nodes of the resistive airways
+	 */
+	@Param({ "false", "true" })
+	private boolean modelReduction;
+
+	private ZContext context;
+	private Thread ventilator;
+	private LungSimulator lungSimulator;
+	private double time;
+
+	@Setup
+	public void setUp() throws IOException {
+		context = new ZContext();
+		final ZMQ.Socket socket = context.createSocket(SocketType.REP);
+		socket.bind(VENTILATOR);
+		ventilator = new Thread(() -> {
+			try {
+				while (!Thread.currentThread().isInterrupted()) {
+					if (socket.recv(0) != null) {
+						socket.send("10".getBytes(ZMQ.CHARSET), 0);
+					}
+				}
+			} catch (ZMQException e) {
+				// context closed by the tear down
+			}
+		}, "ventilator");
+		ventilator.setDaemon(true);
+		ventilator.start();
+
+		lungSimulator = new LungSimulator();
+		lungSimulator.initSchema(model);
+		lungSimulator.modelValidation();
+		lungSimulator.getCircuitBuilder().setModelReduction(modelReduction);
+		lungSimulator.simulationSetUp();
+	}
+
+	@TearDown
+	public void tearDown() {
+		ventilator.interrupt();
+		context.close();
+	}
+
+	@Benchmark
+	public LungSimulator miniSimulation() {
+		time += 0.1;
+		lungSimulator.miniSimulation(time, 0.1);
+		return lungSimulator;
+	}
+}
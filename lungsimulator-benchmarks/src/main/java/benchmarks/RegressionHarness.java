@@ -0,0 +1,425 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.components.Archetype;
+import lungsimulator.components.Patient;
+import lungsimulator.metrics.LatencyHistogram;
+import lungsimulator.utils.Validator;
+import lungsimulator.utils.YamlReader;
+import simulator.CirSim;
+
+/**
+ * Throughput and accuracy regression check of the whole simulation step. Every
+ * bundled model is run headlessly for fixed scenarios, with the ventilator
+ * pressure given by a function of time instead of the ZMQ ventilator; the
+ * pressure and flow waveforms are compared with the golden traces and steps
+ * per second and allocation per step with the performance baseline. The exit
+ * status is 1 if any of them regressed. The p99 step time, the median of the
+ * p99 of the measured runs, still depends more on the scheduling of the
+ * machine than on the code, so a slower p99 is only reported as a warning.
+ *
+ * Run from the module folder with
+ * {@code java -cp target/benchmarks.jar benchmarks.RegressionHarness}; add
+ * {@code -record} to write new golden traces and baseline after a change that
+ * is meant to alter the results, or on the machine that runs the check, and
+ * {@code -modelReduction -skipPerformance} to check that the reduced models
+ * match the same golden traces.
+ */
+public final class RegressionHarness {
+
+	/**
+	 * Deterministic ventilator input
+	 */
+	enum Scenario {
+		/**
+		 * Pressure controlled ventilation: 15 cmH2O for 1 s, 5 cmH2O of PEEP for
+		 * 2 s
+		 */
+		PCV(0.01, 6) {
+			@Override
+			double pressure(final double time) {
+				return time % 3 < 1 ? 15 : 5;
+			}
+		},
+		/**
+		 * Sinusoidal pressure around 10 cmH2O with a period of 4 s
+		 */
+		SINE(0.02, 8) {
+			@Override
+			double pressure(final double time) {
+				return 10 + 5 * Math.sin(2 * Math.PI * time / 4);
+			}
+		};
+
+		private final double timeStep;
+		private final int steps;
+
+		Scenario(final double timeStep, final double duration) {
+			this.timeStep = timeStep;
+			this.steps = (int) Math.round(duration / timeStep);
+		}
+
+		abstract double pressure(double time);
+
+		String getName() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	private static final String[] MODELS = { "Albanese", "Baker", "Al-Naggar", "Campbell-Brown", "Jain" };
+
+	/**
+	 * A sample of the waveforms is stored every this many steps
+	 */
+	private static final int SAMPLE_EVERY = 5;
+
+	private static final String BASELINE = "performance.properties";
+
+	private Path directory = Paths.get("golden");
+	private boolean record;
+	private boolean checkPerformance = true;
+	private boolean modelReduction;
+	private double tolerance = 0.3;
+	private double latencyTolerance = 1;
+	private double accuracy = 2e-3;
+	private int warmupRuns = 30;
+	private int measuredRuns = 20;
+	private List<String> models = Arrays.asList(MODELS);
+
+	private final List<String> failures = new ArrayList<>();
+	private final List<String> warnings = new ArrayList<>();
+
+	/**
+	 * Waveforms of a run and its performance
+	 */
+	private static final class Run {
+		private final List<String> columns = new ArrayList<>();
+		private final List<double[]> samples = new ArrayList<>();
+		private long nanos;
+		private long allocatedBytes;
+	}
+
+	private RegressionHarness() {
+	}
+
+	public static void main(final String[] args) throws IOException {
+		final RegressionHarness harness = new RegressionHarness();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-record":
+				harness.record = true;
+				break;
+			case "-dir":
+				harness.directory = Paths.get(args[++i]);
+				break;
+			case "-tolerance":
+				harness.tolerance = Double.parseDouble(args[++i]);
+				break;
+			case "-latencyTolerance":
+				harness.latencyTolerance = Double.parseDouble(args[++i]);
+				break;
+			case "-accuracy":
+				harness.accuracy = Double.parseDouble(args[++i]);
+				break;
+			case "-runs":
+				harness.measuredRuns = Integer.parseInt(args[++i]);
+				break;
+			case "-warmup":
+				harness.warmupRuns = Integer.parseInt(args[++i]);
+				break;
+			case "-models":
+				harness.models = Arrays.asList(args[++i].split(","));
+				break;
+			case "-skipPerformance":
+				harness.checkPerformance = false;
+				break;
+			case "-modelReduction":
+				harness.modelReduction = true;
+				break;
+			default:
+				System.err.println("Usage: RegressionHarness [-record] [-dir golden] [-tolerance 0.3] "
+						+ "[-latencyTolerance 1] [-accuracy 0.002] [-runs 20] [-warmup 30] [-models Jain,Baker] [-skipPerformance] [-modelReduction]");
+				System.exit(2);
+			}
+		}
+
+		harness.execute();
+		if (!harness.warnings.isEmpty()) {
+			System.out.println();
+			System.out.println(harness.warnings.size() + " warnings:");
+			for (final String warning : harness.warnings) {
+				System.out.println("  " + warning);
+			}
+		}
+		if (!harness.failures.isEmpty()) {
+			System.out.println();
+			System.out.println(harness.failures.size() + " regressions:");
+			for (final String failure : harness.failures) {
+				System.out.println("  " + failure);
+			}
+			System.exit(1);
+		}
+	}
+
+	private void execute() throws IOException {
+		final Properties baseline = new Properties();
+		final Path baselineFile = directory.resolve(BASELINE);
+		if (!record && checkPerformance) {
+			try (InputStream input = Files.newInputStream(baselineFile)) {
+				baseline.load(input);
+			}
+		}
+		final Map<String, String> measured = new TreeMap<>();
+
+		System.out.println(String.format(Locale.ROOT, "%-16s %-6s %12s %10s %12s %12s", "model", "case",
+				"steps/s", "p99 [us]", "bytes/step", "max error"));
+		for (final String model : models) {
+			final YamlReader yamlReader = new YamlReader(model);
+			final Patient patient = yamlReader.readPatientModel();
+			final Archetype archetype = yamlReader.readArchetypeParameters();
+			new Validator().evaluate(patient, archetype, yamlReader.readDemographicData());
+
+			for (final Scenario scenario : Scenario.values()) {
+				final String key = model + "." + scenario.getName();
+				final Path golden = directory.resolve(model + "-" + scenario.getName() + ".csv");
+				final Run reference = run(patient, archetype, scenario, new LatencyHistogram());
+				final double error = record ? 0 : compare(key, readGolden(golden), reference);
+				if (record) {
+					writeGolden(golden, reference);
+				}
+
+				double stepsPerSecond = 0;
+				double p99Micros = 0;
+				double bytesPerStep = -1;
+				if (checkPerformance || record) {
+					for (int i = 0; i < warmupRuns; i++) {
+						run(patient, archetype, scenario, new LatencyHistogram());
+					}
+					final LatencyHistogram latency = new LatencyHistogram();
+					final double[] runP99Micros = new double[measuredRuns];
+					// the fastest run is the least disturbed by the rest of the machine
+					long nanos = Long.MAX_VALUE;
+					long bytes = 0;
+					for (int i = 0; i < measuredRuns; i++) {
+						latency.reset();
+						final Run timed = run(patient, archetype, scenario, latency);
+						runP99Micros[i] = latency.snapshot().getValueAtPercentile(99) / 1e3;
+						nanos = Math.min(nanos, timed.nanos);
+						bytes = timed.allocatedBytes < 0 || bytes < 0 ? -1 : bytes + timed.allocatedBytes;
+					}
+					stepsPerSecond = scenario.steps * 1e9 / nanos;
+					// a collection or a descheduling spoils the p99 of a single run
+					Arrays.sort(runP99Micros);
+					p99Micros = runP99Micros[measuredRuns / 2];
+					bytesPerStep = bytes < 0 ? -1 : (double) bytes / ((long) measuredRuns * scenario.steps);
+					measured.put(key + ".stepsPerSecond", format(stepsPerSecond));
+					measured.put(key + ".p99Micros", format(p99Micros));
+					measured.put(key + ".bytesPerStep", format(bytesPerStep));
+					if (!record) {
+						checkPerformance(key, baseline, stepsPerSecond, p99Micros, bytesPerStep);
+					}
+				}
+
+				System.out.println(String.format(Locale.ROOT, "%-16s %-6s %12.0f %10.1f %12.0f %12.2g", model,
+						scenario.getName(), stepsPerSecond, p99Micros, bytesPerStep, error));
+			}
+		}
+
+		if (record) {
+			try (BufferedWriter writer = Files.newBufferedWriter(baselineFile, StandardCharsets.ISO_8859_1)) {
+				writer.write("# Performance baseline of RegressionHarness, rewritten by -record");
+				writer.newLine();
+				for (final Map.Entry<String, String> entry : measured.entrySet()) {
+					writer.write(entry.getKey() + "=" + entry.getValue());
+					writer.newLine();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Simulates a scenario with the same sequence of calls as
+	 * LungSimulator.miniSimulation
+	 *
+	 * @param latency histogram where the duration of each step is recorded
+	 */
+	private Run run(final Patient patient, final Archetype archetype, final Scenario scenario,
+			final LatencyHistogram latency) {
+		final Run run = new Run();
+		final CircuitBuilder circuitBuilder = new CircuitBuilder();
+		circuitBuilder.setModelReduction(modelReduction);
+		final CirSim cirSim = circuitBuilder.buildCircuitSimulator(patient, archetype);
+		run.columns.add("ventilator");
+		for (final String id : circuitBuilder.getFlowIds()) {
+			run.columns.add("flow:" + id);
+		}
+		for (final String id : circuitBuilder.getPressureIds()) {
+			run.columns.add("pressure:" + id);
+		}
+
+		final com.sun.management.ThreadMXBean threads = threadBean();
+		final long threadId = Thread.currentThread().getId();
+		final long allocatedBefore = threads == null ? -1 : threads.getThreadAllocatedBytes(threadId);
+		final long start = System.nanoTime();
+		for (int step = 0; step < scenario.steps; step++) {
+			final long stepStart = System.nanoTime();
+			final double time = step * scenario.timeStep;
+			circuitBuilder.updateVentilatorValue(scenario.pressure(time));
+			if (circuitBuilder.isTimeDependentCir()) {
+				circuitBuilder.updateCircuitSimulator(archetype, time);
+			}
+			cirSim.setTimeStep(scenario.timeStep);
+			cirSim.setT(time);
+			cirSim.analyzeCircuit();
+			cirSim.loopAndContinue(false);
+			circuitBuilder.updateData(time);
+			latency.record(System.nanoTime() - stepStart);
+
+			if (step % SAMPLE_EVERY == 0) {
+				run.samples.add(sample(circuitBuilder, time));
+			}
+		}
+		run.nanos = System.nanoTime() - start;
+		run.allocatedBytes = threads == null ? -1 : threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+		return run;
+	}
+
+	private static com.sun.management.ThreadMXBean threadBean() {
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+			final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+					.getThreadMXBean();
+			if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+				return threads;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return time, ventilator pressure, flows and pressures of the last step
+	 */
+	private static double[] sample(final CircuitBuilder circuitBuilder, final double time) {
+		final double[] sample = new double[2 + circuitBuilder.getFlowIds().size()
+				+ circuitBuilder.getPressureIds().size()];
+		int column = 0;
+		sample[column++] = time;
+		sample[column++] = last(circuitBuilder.getInitdataVentilatorPressure());
+		for (final String id : circuitBuilder.getFlowIds()) {
+			sample[column++] = last(circuitBuilder.getInitdataFlow().get(id));
+		}
+		for (final String id : circuitBuilder.getPressureIds()) {
+			sample[column++] = last(circuitBuilder.getInitdataPressure().get(id));
+		}
+		return sample;
+	}
+
+	private static double last(final List<Double> values) {
+		return values.get(values.size() - 1);
+	}
+
+	/**
+	 * @return largest absolute difference from the golden trace
+	 */
+	private double compare(final String key, final Run golden, final Run actual) {
+		if (!golden.columns.equals(actual.columns)) {
+			failures.add(key + ": columns " + actual.columns + " instead of " + golden.columns);
+			return Double.NaN;
+		}
+		if (golden.samples.size() != actual.samples.size()) {
+			failures.add(key + ": " + actual.samples.size() + " samples instead of " + golden.samples.size());
+			return Double.NaN;
+		}
+		double maxError = 0;
+		for (int row = 0; row < golden.samples.size(); row++) {
+			final double[] expected = golden.samples.get(row);
+			final double[] values = actual.samples.get(row);
+			for (int column = 1; column < expected.length; column++) {
+				final double error = Math.abs(values[column] - expected[column]);
+				// NaN fails as well
+				if (!(error <= accuracy)) {
+					failures.add(String.format(Locale.ROOT, "%s: %s at t=%.2f is %s instead of %s", key,
+							golden.columns.get(column - 1), expected[0], values[column], expected[column]));
+					return error;
+				}
+				maxError = Math.max(maxError, error);
+			}
+		}
+		return maxError;
+	}
+
+	private void checkPerformance(final String key, final Properties baseline, final double stepsPerSecond,
+			final double p99Micros, final double bytesPerStep) {
+		final String expectedSteps = baseline.getProperty(key + ".stepsPerSecond");
+		if (expectedSteps == null) {
+			failures.add(key + ": missing from the performance baseline");
+			return;
+		}
+		if (stepsPerSecond < Double.parseDouble(expectedSteps) * (1 - tolerance)) {
+			failures.add(key + ": " + format(stepsPerSecond) + " steps/s instead of " + expectedSteps);
+		}
+		final String expectedP99 = baseline.getProperty(key + ".p99Micros");
+		if (p99Micros > Double.parseDouble(expectedP99) * (1 + latencyTolerance)) {
+			warnings.add(key + ": p99 of " + format(p99Micros) + " us instead of " + expectedP99);
+		}
+		// a few bytes of slack for the allocations of the measurement itself
+		final double expectedBytes = Double.parseDouble(baseline.getProperty(key + ".bytesPerStep"));
+		if (bytesPerStep >= 0 && expectedBytes >= 0 && bytesPerStep > expectedBytes * (1 + tolerance) + 16) {
+			failures.add(key + ": " + format(bytesPerStep) + " bytes/step instead of " + format(expectedBytes));
+		}
+	}
+
+	private static Run readGolden(final Path file) throws IOException {
+		final Run golden = new Run();
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			final String[] header = reader.readLine().split(",");
+			golden.columns.addAll(Arrays.asList(header).subList(1, header.length));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String[] fields = line.split(",");
+				final double[] sample = new double[fields.length];
+				for (int i = 0; i < fields.length; i++) {
+					sample[i] = Double.parseDouble(fields[i]);
+				}
+				golden.samples.add(sample);
+			}
+		}
+		return golden;
+	}
+
+	private static void writeGolden(final Path file, final Run run) throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write("time," + String.join(",", run.columns));
+			writer.newLine();
+			for (final double[] sample : run.samples) {
+				final StringBuilder line = new StringBuilder(format(sample[0]));
+				for (int i = 1; i < sample.length; i++) {
+					line.append(',').append(sample[i]);
+				}
+				writer.write(line.toString());
+				writer.newLine();
+			}
+		}
+	}
+
+	private static String format(final double value) {
+		return String.format(Locale.ROOT, "%.2f", value);
+	}
+}
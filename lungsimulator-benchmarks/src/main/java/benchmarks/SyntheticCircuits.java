@@ -0,0 +1,112 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import components.CapacitorElm;
+import components.CircuitElm;
+import components.DCVoltageElm;
+import components.GroundElm;
+import components.ResistorElm;
+import lungsimulator.components.Element;
+import lungsimulator.components.Formula;
+import lungsimulator.components.Patient;
+import simulator.CirSim;
+
+/**
+ * Circuits of parameterised size for the benchmarks
+ */
+public final class SyntheticCircuits {
+
+	private SyntheticCircuits() {
+	}
+
+	/**
+	 * RC ladder driven by a battery: each section is a series resistor and a
+	 * shunt capacitor to ground, as in a chain of airways and alveoli
+	 * 
+	 * @param sections number of sections
+	 * @return elements of the circuit, the first resistor is at index 2
+	 */
+	public static List<CircuitElm> rcLadder(final int sections) {
+		final int ground = sections + 1;
+		final List<CircuitElm> elements = new ArrayList<>();
+		final GroundElm groundElm = new GroundElm(ground, 1);
+		groundElm.setX2Y2(ground, 1);
+		elements.add(groundElm);
+
+		final DCVoltageElm battery = new DCVoltageElm(ground, 1);
+		battery.setX2Y2(0, 0);
+		battery.setMaxVoltage(10);
+		elements.add(battery);
+
+		for (int i = 0; i < sections; i++) {
+			final ResistorElm series = new ResistorElm(i, 0);
+			series.setX2Y2(i + 1, 0);
+			series.setResistance(1 + i * 0.01);
+			elements.add(series);
+			final CapacitorElm shunt = new CapacitorElm(i + 1, 0);
+			shunt.setX2Y2(ground, 1);
+			shunt.setCapacitance(0.01 + i * 0.001);
+			elements.add(shunt);
+		}
+		return elements;
+	}
+
+	/**
+	 * @param elements circuit elements
+	 * @param timeStep time step of the simulation
+	 * @return simulator of the circuit, not analyzed yet
+	 */
+	public static CirSim simulator(final List<CircuitElm> elements, final double timeStep) {
+		for (final CircuitElm c : elements) {
+			c.setPoints();
+		}
+		final CirSim cirSim = new CirSim();
+		cirSim.setElmList(elements);
+		CircuitElm.sim = cirSim;
+		cirSim.setTimeStep(timeStep);
+		return cirSim;
+	}
+
+	/**
+	 * Patient with a chain of time dependent resistors closed by a compliance
+	 * on the ventilator
+	 * 
+	 * @param formulas number of time dependent resistors
+	 * @return patient model, its archetype needs the parameters r and c
+	 */
+	public static Patient timeDependentPatient(final int formulas) {
+		final List<Element> elements = new ArrayList<>();
+		elements.add(element("Ventilator", "DCVoltageElm", "10", false, formulas + 1, 1, 0, 0));
+		for (int i = 0; i < formulas; i++) {
+			elements.add(element("R" + i, "ResistorElm", "r + 0.1 * sin(TIME)", true, i, 0, i + 1, 0));
+		}
+		elements.add(element("C", "CapacitorElm", "c", false, formulas, 0, formulas + 1, 1));
+		final Patient patient = new Patient();
+		patient.setElementsList(elements);
+		return patient;
+	}
+
+	private static Element element(final String name, final String type, final String formula,
+			final boolean timeDependent, final int x, final int y, final int x1, final int y1) {
+		final Formula elementFormula = new Formula();
+		elementFormula.setFormula(formula);
+		elementFormula.setIsTimeDependent(timeDependent);
+		if (timeDependent) {
+			elementFormula.setVariables(Arrays.asList("r", "TIME"));
+		} else {
+			elementFormula.setVariables(formula.matches("[a-z]+") ? Arrays.asList(formula) : List.of());
+		}
+		final Element element = new Element();
+		element.setElementName(name);
+		element.setType(type);
+		element.setAssociatedFormula(elementFormula);
+		element.setX(x);
+		element.setY(y);
+		element.setX1(x1);
+		element.setY1(y1);
+		return element;
+	}
+}
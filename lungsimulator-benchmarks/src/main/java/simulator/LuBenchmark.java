@@ -0,0 +1,98 @@
+package simulator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Dense LU factorization and solution of CirSim across matrix sizes; it is in
+ * the simulator package to reach the package-private solver
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LuBenchmark {
+
+	@Param({ "8", "32", "128", "512" })
+	private int size;
+
+	/**
+	 * Diagonally dominant matrix, as the ones of the lung circuits
+	 */
+	private double[][] matrix;
+
+	/**
+	 * Copy of the matrix factored at each invocation
+	 */
+	private double[][] work;
+	private int[] permute;
+
+	private double[][] factored;
+	private int[] factoredPermute;
+	private double[] rightSide;
+	private double[] solution;
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(42);
+		matrix = new double[size][size];
+		for (int i = 0; i < size; i++) {
+			double sum = 0;
+			for (int j = 0; j < size; j++) {
+				if (i != j && random.nextInt(4) == 0) {
+					matrix[i][j] = -random.nextDouble();
+					sum -= matrix[i][j];
+				}
+			}
+			matrix[i][i] = sum + 1;
+		}
+		work = new double[size][size];
+		permute = new int[size];
+
+		factored = new double[size][size];
+		for (int i = 0; i < size; i++) {
+			System.arraycopy(matrix[i], 0, factored[i], 0, size);
+		}
+		factoredPermute = new int[size];
+		CirSim.lu_factor(factored, size, factoredPermute);
+
+		rightSide = new double[size];
+		for (int i = 0; i < size; i++) {
+			rightSide[i] = random.nextDouble();
+		}
+		solution = new double[size];
+	}
+
+	/**
+	 * Includes the copy of the matrix, which is factored in place
+	 */
+	@Benchmark
+	public double[][] luFactor() {
+		for (int i = 0; i < size; i++) {
+			System.arraycopy(matrix[i], 0, work[i], 0, size);
+		}
+		CirSim.lu_factor(work, size, permute);
+		return work;
+	}
+
+	@Benchmark
+	public double[] luSolve() {
+		System.arraycopy(rightSide, 0, solution, 0, size);
+		CirSim.lu_solve(factored, size, factoredPermute, solution);
+		return solution;
+	}
+}
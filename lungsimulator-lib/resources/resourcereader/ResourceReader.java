@@ -11,14 +11,16 @@ import lungsimulator.components.Patient;
 import lungsimulator.components.SimulatorParams;
 
 public class ResourceReader {
+	/**
+	 * Shared by the reads: a configured ObjectMapper is thread safe
+	 */
+	private static final ObjectMapper MAPPER = new ObjectMapper(new YAMLFactory());
+
 	public static Patient readPatientModel(String modelName) throws IOException {
 		InputStream input = ResourceReader.class.getResourceAsStream("lung-model-" + modelName + ".yaml");
 		
-		// Instantiating a new ObjectMapper as a YAMLFactory
-		final ObjectMapper objectMapper = new ObjectMapper(new YAMLFactory());
-
 		// Mapping the lung model from the YAML file to the Patient class
-		final Patient patient = objectMapper.readValue(input, Patient.class);
+		final Patient patient = MAPPER.readValue(input, Patient.class);
 		
 		input.close();
 		
@@ -28,11 +30,8 @@ public class ResourceReader {
 	public static Archetype readArchetypeModel(String modelName) throws IOException {
 		InputStream input = ResourceReader.class.getResourceAsStream("archetype-" + modelName + ".yaml");
 		
-		// Instantiating a new ObjectMapper as a YAMLFactory
-		final ObjectMapper objectMapper = new ObjectMapper(new YAMLFactory());
-
 		// Mapping the lung model from the YAML file to the Patient class
-		final Archetype archetype = objectMapper.readValue(input, Archetype.class);
+		final Archetype archetype = MAPPER.readValue(input, Archetype.class);
 		
 		input.close();
 		
@@ -42,11 +41,8 @@ public class ResourceReader {
 	public static SimulatorParams readDemographicModel() throws IOException {
 		InputStream input = ResourceReader.class.getResourceAsStream("patient-demographic-data.yaml");
 		
-		// Instantiating a new ObjectMapper as a YAMLFactory
-		final ObjectMapper objectMapper = new ObjectMapper(new YAMLFactory());
-
 		// Mapping the lung model from the YAML file to the Patient class
-		final SimulatorParams demographicData = objectMapper.readValue(input, SimulatorParams.class);
+		final SimulatorParams demographicData = MAPPER.readValue(input, SimulatorParams.class);
 		
 		input.close();
 		
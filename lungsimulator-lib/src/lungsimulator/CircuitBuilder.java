@@ -3,17 +3,18 @@ package lungsimulator;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
-import org.apache.commons.math3.util.Precision;
+import java.util.Set;
 
 import com.udojava.evalex.Expression;
 
 import components.ACVoltageElm;
 import components.CapacitorElm;
 import components.CircuitElm;
+import components.CircuitNodeLink;
 import components.DCVoltageElm;
 import components.ExternalVoltageElm;
 import components.ResistorElm;
@@ -21,6 +22,9 @@ import lungsimulator.components.Archetype;
 import lungsimulator.components.Element;
 import lungsimulator.components.Formula;
 import lungsimulator.components.Patient;
+import lungsimulator.templates.ModelTemplate;
+import lungsimulator.utils.DoubleRingList;
+import lungsimulator.utils.SymmetryLumper;
 import lungsimulator.utils.Utils;
 import simulator.CirSim;
 
@@ -59,6 +63,18 @@ public class CircuitBuilder {
 	 */
 	private transient double currentVentValue;
 
+	/**
+	 * Column in the sample of the flow through the airway opening, -1 if it is
+	 * not known
+	 */
+	private transient int airwayFlowColumn = -1;
+
+	/**
+	 * True if the element of the airway flow points towards the ventilator, so
+	 * its flow is negative during the inspiration
+	 */
+	private transient boolean airwayFlowReversed;
+
 	/**
 	 * Ids list for relevant flows
 	 */
@@ -94,6 +110,100 @@ public class CircuitBuilder {
 	 */
 	private Map<String, String> pressureCoord = new LinkedHashMap<>();
 
+	/**
+	 * True if the identical branches of the patient model have to be lumped
+	 */
+	private boolean symmetryLumping;
+
+	/**
+	 * Lumping of the patient model, null if disabled
+	 */
+	private transient SymmetryLumper lumper;
+
+	/**
+	 * Elements removed by the lumping and the kept circuit element of each one,
+	 * in arrays so that collecting the data does not allocate iterators
+	 */
+	private transient String[] lumpedFlowIds;
+	private transient CircuitElm[] lumpedFlowElms;
+
+	/**
+	 * Pressures of the elements removed by the lumping and the kept circuit
+	 * element of each one
+	 */
+	private transient String[] lumpedPressureIds;
+	private transient CircuitElm[] lumpedPressureElms;
+
+	/**
+	 * Names of the elements of the patient model in the circuit, lumped or not,
+	 * in the order of the patient model: the positions used by the element
+	 * values
+	 */
+	private transient List<String> branchIds = new ArrayList<>();
+
+	/**
+	 * Circuit element that stands for each element of branchIds
+	 */
+	private transient CircuitElm[] branchElms = new CircuitElm[0];
+
+	/**
+	 * Position of the ventilator in branchIds, -1 if there is none
+	 */
+	private transient int ventilatorBranch = -1;
+
+	/**
+	 * Values of the last step, see getSampleColumns
+	 */
+	private transient double[] sample;
+
+	/**
+	 * Series shown by the charts for each column of the sample
+	 */
+	private transient DoubleRingList[] sampleSeries;
+
+	/**
+	 * Column of the sample of the left and right pressures and of the flow of
+	 * each element, -1 if it has none
+	 */
+	private transient int[] leftColumns;
+	private transient int[] rightColumns;
+	private transient int[] flowColumns;
+
+	/**
+	 * Column of the sample of each element and pressure removed by the lumping
+	 */
+	private transient int[] lumpedFlowColumns;
+	private transient int[] lumpedPressureColumns;
+
+	/**
+	 * Receivers of the values of each step, in an array so that notifying them
+	 * does not allocate
+	 */
+	private transient volatile SampleListener[] sampleListeners = new SampleListener[0];
+
+	/**
+	 * Receiver of the sample in place of the listeners and of the chart series,
+	 * e.g. the queue of a pipeline that calls {@link #publishSample(double[])}
+	 * and {@link #pushSeries(double[])} on other threads; null to do both in
+	 * {@link #updateData(double)}
+	 */
+	private transient volatile SampleListener sampleSink;
+
+	/**
+	 * Column of the time in the sample
+	 */
+	public static final int TIME_COLUMN = 0;
+
+	/**
+	 * Column of the ventilator pressure in the sample
+	 */
+	public static final int VENTILATOR_COLUMN = 1;
+
+	/**
+	 * First column of the pressures in the sample, the flows follow them
+	 */
+	private static final int FIRST_PRESSURE_COLUMN = 2;
+
 	/**
 	 * Unit of measure for resistance element
 	 */
@@ -128,6 +238,28 @@ public class CircuitBuilder {
 	 * @return the circuit
 	 */
 	public CirSim buildCircuitSimulator(final Patient patient, final Archetype archetype) {
+		return buildCircuitSimulator(patient, archetype, null);
+	}
+
+	/**
+	 * The method builds a circuit from a compiled model, whose formulas are
+	 * already resolved
+	 * 
+	 * @param template compiled model
+	 * @return the circuit
+	 */
+	public CirSim buildCircuitSimulator(final ModelTemplate template) {
+		// the lumped elements have their own formulas
+		return buildCircuitSimulator(template.getPatient(), template.getArchetype(),
+				symmetryLumping ? null : template.getInitialValues());
+	}
+
+	/**
+	 * @param initialValues value of each element at time 0, NaN if it has no
+	 *                      formula; null to resolve the formulas
+	 */
+	private CirSim buildCircuitSimulator(final Patient patient, final Archetype archetype,
+			final double[] initialValues) {
 		// cirSim.setTimeStep(0.1);
 		ResistorElm resistance;
 		CapacitorElm capacitance;
@@ -135,15 +267,30 @@ public class CircuitBuilder {
 		DCVoltageElm dcVoltage;
 		ExternalVoltageElm externalVoltage;
 
-		for (final Element element : patient.getElementsList()) {
-			final String value = resolveFormula(element.getAssociatedFormula(), archetype.getParameters(), "0");
+		Patient model = patient;
+		if (symmetryLumping) {
+			lumper = new SymmetryLumper(patient);
+			model = lumper.getLumpedPatient();
+		}
 
-			if (!value.isEmpty()) {
+		final List<Element> modelElements = model.getElementsList();
+		for (int index = 0; index < modelElements.size(); index++) {
+			final Element element = modelElements.get(index);
+			final double value;
+			if (initialValues == null) {
+				final String resolved = resolveFormula(element.getAssociatedFormula(), archetype.getParameters(), "0");
+				value = resolved.isEmpty() ? Double.NaN : Double.parseDouble(resolved);
+			} else {
+				value = initialValues[index];
+				timeDependentCir |= dependsOnTime(element.getAssociatedFormula());
+			}
+
+			if (!Double.isNaN(value)) {
 				// resistance
 				if ("ResistorElm".equals(element.getType())) {
 					resistance = new ResistorElm(1, 1);
-					resistance.setResistance(Double.parseDouble(value));
-					resistance.setValue(Double.parseDouble(value));
+					resistance.setResistance(value);
+					resistance.setValue(value);
 					resistance.setUnit(UMRES);
 					circuitElmSetUp(element, resistance);
 					flowIds.add(element.getElementName());
@@ -152,8 +299,8 @@ public class CircuitBuilder {
 				// capacitor
 				if ("CapacitorElm".equals(element.getType())) {
 					capacitance = new CapacitorElm(0, 0);
-					capacitance.setCapacitance(Double.parseDouble(value));
-					capacitance.setValue(Double.parseDouble(value));
+					capacitance.setCapacitance(value);
+					capacitance.setValue(value);
 					capacitance.setUnit(UMCAP);
 					circuitElmSetUp(element, capacitance);
 					flowIds.add(element.getElementName());
@@ -162,8 +309,8 @@ public class CircuitBuilder {
 				// acVoltage
 				if ("ACVoltageElm".equals(element.getType())) {
 					acVoltage = new ACVoltageElm(1, 1);
-					acVoltage.setMaxVoltage(Double.parseDouble(value));
-					acVoltage.setValue(Double.parseDouble(value));
+					acVoltage.setMaxVoltage(value);
+					acVoltage.setValue(value);
 					acVoltage.setUnit(UMGEN);
 					circuitElmSetUp(element, acVoltage);
 					flowIds.add(element.getElementName());
@@ -172,8 +319,8 @@ public class CircuitBuilder {
 				// dcVoltage
 				if ("DCVoltageElm".equals(element.getType())) {
 					dcVoltage = new DCVoltageElm(1, 1);
-					dcVoltage.setMaxVoltage(Double.parseDouble(value));
-					dcVoltage.setValue(Double.parseDouble(value));
+					dcVoltage.setMaxVoltage(value);
+					dcVoltage.setValue(value);
 					dcVoltage.setUnit(UMGEN);
 					circuitElmSetUp(element, dcVoltage);
 					flowIds.add(element.getElementName());
@@ -189,7 +336,13 @@ public class CircuitBuilder {
 			}
 		}
 
+		if (lumper != null) {
+			lumpedDataInit(patient);
+		}
+		branchInit(patient);
 		dataInit();
+		airwayFlowInit();
+		observedNodesInit();
 
 		for (final CircuitElm circuitElm : elements) {
 			circuitElm.setPoints();
@@ -205,11 +358,153 @@ public class CircuitBuilder {
 		pressureIds = new ArrayList<>(pressureCoord.keySet());
 		initdataPressure = Utils.initMap(pressureIds);
 
-		initdataVentilatorPressure = new ArrayList<>(Arrays.asList(0.0));
+		initdataVentilatorPressure = Utils.initList();
 
 		initdataFlow = Utils.initMap(flowIds);
 
-		timeline = new ArrayList<>(Arrays.asList(0.0));
+		timeline = Utils.initList();
+
+		// column of every value collected at each step
+		sample = new double[FIRST_PRESSURE_COLUMN + pressureIds.size() + flowIds.size()];
+		sampleSeries = new DoubleRingList[sample.length];
+		sampleSeries[TIME_COLUMN] = (DoubleRingList) timeline;
+		sampleSeries[VENTILATOR_COLUMN] = (DoubleRingList) initdataVentilatorPressure;
+		for (final String id : pressureIds) {
+			sampleSeries[getPressureColumn(id)] = (DoubleRingList) initdataPressure.get(id);
+		}
+		for (final String id : flowIds) {
+			sampleSeries[getFlowColumn(id)] = (DoubleRingList) initdataFlow.get(id);
+		}
+
+		leftColumns = new int[elements.size()];
+		rightColumns = new int[elements.size()];
+		flowColumns = new int[elements.size()];
+		for (int i = 0; i < elements.size(); i++) {
+			final CircuitElm cir = elements.get(i);
+			leftColumns[i] = "left".equals(pressureCoord.get(cir.getIdLeft())) ? getPressureColumn(cir.getIdLeft())
+					: -1;
+			rightColumns[i] = "right".equals(pressureCoord.get(cir.getIdRight()))
+					? getPressureColumn(cir.getIdRight())
+					: -1;
+			flowColumns[i] = cir instanceof ExternalVoltageElm ? -1 : getFlowColumn(cir.getId());
+		}
+
+		if (lumper != null) {
+			lumpedFlowColumns = new int[lumpedFlowIds.length];
+			for (int i = 0; i < lumpedFlowIds.length; i++) {
+				lumpedFlowColumns[i] = getFlowColumn(lumpedFlowIds[i]);
+			}
+			lumpedPressureColumns = new int[lumpedPressureIds.length];
+			for (int i = 0; i < lumpedPressureIds.length; i++) {
+				lumpedPressureColumns[i] = getPressureColumn(lumpedPressureIds[i]);
+			}
+		}
+	}
+
+	/**
+	 * Tells the simulator the nodes of the pressures and of the ventilator, which
+	 * the model reduction must keep
+	 */
+	private void observedNodesInit() {
+		final List<CircuitNodeLink> observed = new ArrayList<>();
+		for (int i = 0; i < elements.size(); i++) {
+			final CircuitElm cir = elements.get(i);
+			if (leftColumns[i] >= 0 || cir instanceof ExternalVoltageElm) {
+				observed.add(nodeLink(cir, 0));
+			}
+			if (rightColumns[i] >= 0 || cir instanceof ExternalVoltageElm) {
+				observed.add(nodeLink(cir, 1));
+			}
+		}
+		if (lumper != null) {
+			for (int i = 0; i < lumpedPressureIds.length; i++) {
+				final boolean left = "left".equals(pressureCoord.get(lumpedPressureIds[i]));
+				observed.add(nodeLink(lumpedPressureElms[i], left ? 0 : 1));
+			}
+		}
+		cirSim.setObservedNodes(observed);
+	}
+
+	private static CircuitNodeLink nodeLink(final CircuitElm cir, final int post) {
+		final CircuitNodeLink link = new CircuitNodeLink();
+		link.setElm(cir);
+		link.setNum(post);
+		return link;
+	}
+
+	/**
+	 * Maps each element of the patient model to the circuit element that stands
+	 * for it: itself, or the kept element of its lumped branch
+	 * 
+	 * @param patient patient model before the lumping
+	 */
+	private void branchInit(final Patient patient) {
+		final Map<String, CircuitElm> circuitElements = new HashMap<>();
+		for (final CircuitElm circuitElm : elements) {
+			circuitElements.put(circuitElm.getId(), circuitElm);
+		}
+		branchIds = new ArrayList<>();
+		final List<CircuitElm> branches = new ArrayList<>();
+		ventilatorBranch = -1;
+		for (final Element element : patient.getElementsList()) {
+			final String name = element.getElementName();
+			final CircuitElm circuitElm = circuitElements
+					.get(lumper == null ? name : lumper.getRepresentative(name));
+			if (circuitElm != null) {
+				if (circuitElm instanceof ExternalVoltageElm) {
+					ventilatorBranch = branches.size();
+				}
+				branchIds.add(name);
+				branches.add(circuitElm);
+			}
+		}
+		branchElms = branches.toArray(new CircuitElm[0]);
+	}
+
+	/**
+	 * Restores flows and pressures of the elements removed by the lumping, in the
+	 * order of the patient model
+	 * 
+	 * @param patient patient model before the lumping
+	 */
+	private void lumpedDataInit(final Patient patient) {
+		final Map<String, CircuitElm> keptElements = new HashMap<>();
+		for (final CircuitElm circuitElm : elements) {
+			keptElements.put(circuitElm.getId(), circuitElm);
+		}
+		final Set<String> keptFlows = new HashSet<>(flowIds);
+
+		final Map<String, CircuitElm> lumpedFlows = new LinkedHashMap<>();
+		final Map<String, CircuitElm> lumpedPressures = new HashMap<>();
+		flowIds = new ArrayList<>();
+		pressureCoord = new LinkedHashMap<>();
+		for (final Element element : patient.getElementsList()) {
+			final String name = element.getElementName();
+			final String kept = lumper.getRepresentative(name);
+			if (!kept.equals(name)) {
+				lumpedFlows.put(name, keptElements.get(kept));
+				if (element.isShowLeft()) {
+					lumpedPressures.put(element.getIdLeft(), keptElements.get(kept));
+				}
+				if (element.isShowRight()) {
+					lumpedPressures.put(element.getIdRight(), keptElements.get(kept));
+				}
+			}
+			if (keptFlows.contains(name) || !kept.equals(name)) {
+				flowIds.add(name);
+			}
+			if (element.isShowLeft()) {
+				pressureCoord.put(element.getIdLeft(), "left");
+			}
+			if (element.isShowRight()) {
+				pressureCoord.put(element.getIdRight(), "right");
+			}
+		}
+
+		lumpedFlowIds = lumpedFlows.keySet().toArray(new String[0]);
+		lumpedFlowElms = lumpedFlows.values().toArray(new CircuitElm[0]);
+		lumpedPressureIds = lumpedPressures.keySet().toArray(new String[0]);
+		lumpedPressureElms = lumpedPressures.values().toArray(new CircuitElm[0]);
 	}
 
 	/**
@@ -218,32 +513,153 @@ public class CircuitBuilder {
 	 * @param time x-axis value that has to be added
 	 */
 	public void updateData(final double time) {
+		final UpdateDataEvent event = UpdateDataEvent.startIfEnabled();
+
+		// the flows of the resistors around the eliminated nodes need them
+		cirSim.recoverEliminatedNodes();
+
+		// indexed loops and primitive series: collecting the data of a step does
+		// not allocate
+		sample[TIME_COLUMN] = time;
+		for (int i = 0; i < elements.size(); i++) {
+			final CircuitElm cir = elements.get(i);
+			if (leftColumns[i] >= 0) {
+				sample[leftColumns[i]] = cir.getVoltZero();
+			}
+			if (rightColumns[i] >= 0) {
+				sample[rightColumns[i]] = cir.getVoltOne();
+			}
+			if (flowColumns[i] >= 0) {
+				sample[flowColumns[i]] = branchCurrent(cir);
+			} else if (cir instanceof ExternalVoltageElm) {
+				sample[VENTILATOR_COLUMN] = cir.getVoltageDiff();
+			}
+		}
+
+		if (lumper != null) {
+			for (int i = 0; i < lumpedFlowColumns.length; i++) {
+				sample[lumpedFlowColumns[i]] = branchCurrent(lumpedFlowElms[i]);
+			}
+			for (int i = 0; i < lumpedPressureColumns.length; i++) {
+				final CircuitElm cir = lumpedPressureElms[i];
+				sample[lumpedPressureColumns[i]] = "left".equals(pressureCoord.get(lumpedPressureIds[i]))
+						? cir.getVoltZero()
+						: cir.getVoltOne();
+			}
+		}
+
+		final SampleListener sink = sampleSink;
+		if (sink == null) {
+			pushSeries(sample);
+			publishSample(sample);
+		} else {
+			sink.onSample(sample);
+		}
+
+		if (event == null) {
+			return;
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.elementCount = elements.size();
+			event.flowCount = flowIds.size();
+			event.pressureCount = pressureIds.size();
+			event.commit();
+		}
+	}
+
+	/**
+	 * Adds the values of a step to the series shown by the charts
+	 * 
+	 * @param values sample of the step
+	 */
+	public void pushSeries(final double[] values) {
+		// the charts show the time with 2 decimals, pressures and flows with 3
+		sampleSeries[TIME_COLUMN].push(Utils.round(values[TIME_COLUMN], 2));
+		for (int column = VENTILATOR_COLUMN; column < values.length; column++) {
+			sampleSeries[column].push(Utils.round(values[column], 3));
+		}
+	}
+
+	/**
+	 * Passes the values of a step to the sample listeners
+	 * 
+	 * @param values sample of the step
+	 */
+	public void publishSample(final double[] values) {
+		for (final SampleListener listener : sampleListeners) {
+			listener.onSample(values);
+		}
+	}
+
+	/**
+	 * @param sink receiver of the sample of every following step in place of
+	 *             the chart series and of the listeners, null to update them in
+	 *             {@link #updateData(double)}
+	 */
+	public void setSampleSink(final SampleListener sink) {
+		sampleSink = sink;
+	}
 
-		// Update time
-		timeline = Utils.updateDoubleList(timeline, Precision.round(time, 2));
+	/**
+	 * Current of a single branch: a lumped element carries the current of all
+	 * its copies
+	 * 
+	 * @param cir circuit element
+	 * @return current of the element
+	 */
+	private double branchCurrent(final CircuitElm cir) {
+		return lumper == null ? cir.getCurrent() : cir.getCurrent() / lumper.getCopies(cir.getId());
+	}
 
+	/**
+	 * Finds the flow through the airway opening: the flow of the element
+	 * connected to the second terminal of the ventilator, the first one being
+	 * grounded
+	 */
+	private void airwayFlowInit() {
+		airwayFlowColumn = -1;
+		if (ventilatorIndex >= elements.size() || !(elements.get(ventilatorIndex) instanceof ExternalVoltageElm)) {
+			return;
+		}
+		final CircuitElm ventilator = elements.get(ventilatorIndex);
 		for (final CircuitElm cir : elements) {
-			if (cir.getIdLeft() != null && pressureCoord.containsKey(cir.getIdLeft())
-					&& pressureCoord.get(cir.getIdLeft()).equals("left")) {
-				initdataPressure = Utils.updateMap(initdataPressure, cir.getIdLeft(),
-						Precision.round(cir.getVoltZero(), 3));
+			final int column = getFlowColumn(cir.getId());
+			if (cir == ventilator || column < 0) {
+				continue;
 			}
-
-			if (cir.getIdRight() != null && pressureCoord.containsKey(cir.getIdRight())
-					&& pressureCoord.get(cir.getIdRight()).equals("right")) {
-				initdataPressure = Utils.updateMap(initdataPressure, cir.getIdRight(),
-						Precision.round(cir.getVoltOne(), 3));
+			if (cir.getX() == ventilator.getX2() && cir.getY() == ventilator.getY2()) {
+				airwayFlowColumn = column;
+				airwayFlowReversed = false;
+				return;
 			}
-
-			if (cir.getClass().getSimpleName().equals("ExternalVoltageElm")) {
-				initdataVentilatorPressure = Utils.updateDoubleList(initdataVentilatorPressure,
-						Precision.round(cir.getVoltageDiff(), 3));
-			} else {
-				initdataFlow = Utils.updateMap(initdataFlow, cir.getId(), Precision.round(cir.getCurrent(), 3));
+			if (cir.getX2() == ventilator.getX2() && cir.getY2() == ventilator.getY2()) {
+				airwayFlowColumn = column;
+				airwayFlowReversed = true;
+				return;
 			}
 		}
 	}
 
+	/**
+	 * Factor between the value of a single branch and the value of a lumped
+	 * element: its resistance is divided and its capacitance is multiplied by the
+	 * number of copies
+	 * 
+	 * @param cir circuit element
+	 * @return value of the branch over value of the element
+	 */
+	private double branchScale(final CircuitElm cir) {
+		final int branches = lumper == null ? 1 : lumper.getCopies(cir.getId());
+		if (cir instanceof ResistorElm) {
+			return branches;
+		}
+		if (cir instanceof CapacitorElm) {
+			return 1.0 / branches;
+		}
+		return 1;
+	}
+
 	private void circuitElmSetUp(final Element element, final CircuitElm circuitElm) {
 		circuitElm.setId(element.getElementName());
 		circuitElm.setX(element.getX());
@@ -276,6 +692,24 @@ public class CircuitBuilder {
 	 */
 	private String resolveFormula(final Formula elementFormula, final Map<String, String> parameters,
 			final String time) {
+		timeDependentCir |= dependsOnTime(elementFormula);
+		return evaluateFormula(elementFormula, parameters, time);
+	}
+
+	private static boolean dependsOnTime(final Formula elementFormula) {
+		return elementFormula.getFormula() != null && elementFormula.getVariables().contains("TIME");
+	}
+
+	/**
+	 * Calculate element value
+	 * 
+	 * @param elementFormula formula description
+	 * @param parameters     known values
+	 * @param time           time value (it will be assigned only if there is TIME)
+	 * @return element value, empty if the element has no formula
+	 */
+	public static String evaluateFormula(final Formula elementFormula, final Map<String, String> parameters,
+			final String time) {
 		String value = "";
 		// if element has a formula
 		if (elementFormula.getFormula() != null) {
@@ -286,7 +720,6 @@ public class CircuitBuilder {
 					formula = formula.setVariable(var, parameters.get(var));
 				} else {
 					formula = formula.setVariable(var, time);
-					timeDependentCir = true;
 				}
 			}
 			// resolve
@@ -303,9 +736,12 @@ public class CircuitBuilder {
 	 * @param time      new time for variable TIME
 	 */
 	public void updateCircuitSimulator(final Archetype archetype, final double time) {
+		final FormulaEvaluationEvent event = FormulaEvaluationEvent.startIfEnabled();
 
+		int formulaCount = 0;
 		for (final CircuitElm circuitElement : cirSim.getElmList()) {
 			if (timeDependentElm.containsKey(circuitElement.getId())) {
+				formulaCount++;
 				final String value = resolveFormula(timeDependentElm.get(circuitElement.getId()),
 						archetype.getParameters(), String.valueOf(time));
 
@@ -336,6 +772,16 @@ public class CircuitBuilder {
 				}
 			}
 		}
+
+		if (event == null) {
+			return;
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.formulaCount = formulaCount;
+			event.elementCount = cirSim.getElmList().size();
+			event.commit();
+		}
 	}
 
 	/**
@@ -350,13 +796,15 @@ public class CircuitBuilder {
 	}
 
 	/**
-	 * Update the element value at indexElm position
+	 * Update the element value at indexElm position; with the lumping, the
+	 * value applies to every branch lumped with the element
 	 * 
-	 * @param value    the new element value
-	 * @param indexElm the index of the element in circuit elements list
+	 * @param branchValue the new element value, for a single branch
+	 * @param indexElm    the position of the element in {@link #getBranchIds()}
 	 */
-	public void updateElementValue(final double value, final int indexElm) {
-		final CircuitElm circuitElement = cirSim.getElmList().get(indexElm);
+	public void updateElementValue(final double branchValue, final int indexElm) {
+		final CircuitElm circuitElement = branchElms[indexElm];
+		final double value = branchValue / branchScale(circuitElement);
 		circuitElement.setValue(value);
 
 		// resistance
@@ -386,13 +834,45 @@ public class CircuitBuilder {
 	}
 
 	/**
-	 * Get index element value of circuit elements list
+	 * Get index element value of the elements of the patient model
 	 * 
-	 * @param index index of the element wanted
-	 * @return value of the element in index position
+	 * @param index position of the element in {@link #getBranchIds()}
+	 * @return value of the element in index position, for a single branch
 	 */
 	public double getElementValue(final int index) {
-		return cirSim.getElmList().get(index).getValue();
+		final CircuitElm circuitElement = branchElms[index];
+		return circuitElement.getValue() * branchScale(circuitElement);
+	}
+
+	/**
+	 * @param index position of the element in {@link #getBranchIds()}
+	 * @return unit of measure of the element
+	 */
+	public String getElementUnit(final int index) {
+		return branchElms[index].getUnit();
+	}
+
+	/**
+	 * Enable or disable the elimination of the internal nodes of the resistive
+	 * airways from the circuit matrix. The nodes of the pressures and of the
+	 * ventilator are kept; pressures and flows are unchanged, only the size of
+	 * the system solved at each step is reduced.
+	 *
+	 * @param modelReduction true to reduce the model
+	 */
+	public void setModelReduction(final boolean modelReduction) {
+		cirSim.setModelReduction(modelReduction);
+	}
+
+	/**
+	 * Enable or disable the lumping of the identical branches of the patient
+	 * model; it has to be set before the circuit is built. Flows, pressures and
+	 * element values are still reported for every branch.
+	 *
+	 * @param symmetryLumping true to lump the model
+	 */
+	public void setSymmetryLumping(final boolean symmetryLumping) {
+		this.symmetryLumping = symmetryLumping;
 	}
 
 	public boolean isTimeDependentCir() {
@@ -403,8 +883,26 @@ public class CircuitBuilder {
 		this.timeDependentCir = hasTimeDependency;
 	}
 
+	/**
+	 * @return names of the time dependent elements of the patient model,
+	 *         including the ones lumped with them
+	 */
 	public List<String> getTimeDependentElm() {
-		return new ArrayList<String>(timeDependentElm.keySet());
+		final List<String> names = new ArrayList<>();
+		for (int i = 0; i < branchElms.length; i++) {
+			if (timeDependentElm.containsKey(branchElms[i].getId())) {
+				names.add(branchIds.get(i));
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * @return names of the elements of the patient model in the circuit, in
+	 *         the order of the patient model, lumped elements included
+	 */
+	public List<String> getBranchIds() {
+		return branchIds;
 	}
 
 	public List<CircuitElm> getElements() {
@@ -415,6 +913,60 @@ public class CircuitBuilder {
 		return flowIds;
 	}
 
+	/**
+	 * @return names of the values passed to the sample listeners: time,
+	 *         ventilator, then "pressure:" and "flow:" followed by each
+	 *         pressure and flow id
+	 */
+	public List<String> getSampleColumns() {
+		final List<String> columns = new ArrayList<>();
+		columns.add("time");
+		columns.add("ventilator");
+		for (final String id : pressureIds) {
+			columns.add("pressure:" + id);
+		}
+		for (final String id : flowIds) {
+			columns.add("flow:" + id);
+		}
+		return columns;
+	}
+
+	/**
+	 * @param id pressure id
+	 * @return column of the pressure in the sample, -1 if it does not exist
+	 */
+	public int getPressureColumn(final String id) {
+		final int index = pressureIds.indexOf(id);
+		return index < 0 ? -1 : FIRST_PRESSURE_COLUMN + index;
+	}
+
+	/**
+	 * @param id flow id
+	 * @return column of the flow in the sample, -1 if it does not exist
+	 */
+	public int getFlowColumn(final String id) {
+		final int index = flowIds.indexOf(id);
+		return index < 0 ? -1 : FIRST_PRESSURE_COLUMN + pressureIds.size() + index;
+	}
+
+	/**
+	 * @param listener receiver of the values of every following step
+	 */
+	public synchronized void addSampleListener(final SampleListener listener) {
+		final SampleListener[] listeners = Arrays.copyOf(sampleListeners, sampleListeners.length + 1);
+		listeners[sampleListeners.length] = listener;
+		sampleListeners = listeners;
+	}
+
+	/**
+	 * @param listener receiver that has not to be notified anymore
+	 */
+	public synchronized void removeSampleListener(final SampleListener listener) {
+		final List<SampleListener> listeners = new ArrayList<>(Arrays.asList(sampleListeners));
+		listeners.remove(listener);
+		sampleListeners = listeners.toArray(new SampleListener[0]);
+	}
+
 	public void setFlowIds(final List<String> flowIds) {
 		this.flowIds = flowIds;
 	}
@@ -439,10 +991,34 @@ public class CircuitBuilder {
 		return ventilatorIndex;
 	}
 
+	/**
+	 * @return position of the ventilator in {@link #getBranchIds()}, -1 if
+	 *         there is none
+	 */
+	public int getVentilatorBranch() {
+		return ventilatorBranch;
+	}
+
 	public double getCurrentVentValue() {
 		return currentVentValue;
 	}
 
+	/**
+	 * @return column in the sample of the flow through the airway opening, -1
+	 *         if no element is connected to the ventilator
+	 */
+	public int getAirwayFlowColumn() {
+		return airwayFlowColumn;
+	}
+
+	/**
+	 * @return true if the airway flow of the sample is negative during the
+	 *         inspiration
+	 */
+	public boolean isAirwayFlowReversed() {
+		return airwayFlowReversed;
+	}
+
 	public List<Double> getTimeline() {
 		return timeline;
 	}
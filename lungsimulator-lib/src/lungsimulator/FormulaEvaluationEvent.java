@@ -0,0 +1,45 @@
+package lungsimulator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of the evaluation of the formulas of the time
+ * dependent elements
+ */
+@Name("lungsimulator.FormulaEvaluation")
+@Label("Formula Evaluation")
+@Category({ "Lung Simulator", "Model" })
+@Description("Evaluation of the formulas of the time dependent elements")
+@Enabled(false)
+@StackTrace(false)
+class FormulaEvaluationEvent extends Event {
+
+	@Label("Formulas")
+	int formulaCount;
+
+	@Label("Elements")
+	int elementCount;
+
+	/**
+	 * Only asked whether the event is enabled
+	 */
+	private static final FormulaEvaluationEvent PROBE = new FormulaEvaluationEvent();
+
+	/**
+	 * @return started event, null if the event is disabled
+	 */
+	static FormulaEvaluationEvent startIfEnabled() {
+		if (!PROBE.isEnabled()) {
+			return null;
+		}
+		final FormulaEvaluationEvent event = new FormulaEvaluationEvent();
+		event.begin();
+		return event;
+	}
+}
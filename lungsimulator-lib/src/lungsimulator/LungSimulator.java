@@ -3,6 +3,9 @@ package lungsimulator;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -11,10 +14,23 @@ import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
 import org.zeromq.ZMQ.Socket;
 
+import lungsimulator.alarms.AlarmEngine;
+import lungsimulator.alarms.AlarmListener;
+import lungsimulator.alarms.AlarmRule;
 import lungsimulator.components.Archetype;
 import lungsimulator.components.Patient;
 import lungsimulator.components.SimulatorParams;
-import lungsimulator.utils.Validator;
+import lungsimulator.broadcast.SimulationHub;
+import lungsimulator.history.CompressedHistory;
+import lungsimulator.history.MinMaxPyramid;
+import lungsimulator.metrics.BreathAnalyzer;
+import lungsimulator.metrics.SimulationMetrics;
+import lungsimulator.metrics.SimulationMetrics.Counter;
+import lungsimulator.metrics.SimulationMetrics.Phase;
+import lungsimulator.recorder.SimulationRecorder;
+import lungsimulator.templates.ModelTemplate;
+import lungsimulator.templates.ModelTemplates;
+import lungsimulator.utils.Utils;
 import lungsimulator.utils.YamlReader;
 import simulator.CirSim;
 
@@ -52,11 +68,113 @@ public class LungSimulator {
 	 */
 	private final static String MESSAGE = "getPressure";
 
+	/**
+	 * Encoded message, sent at every step
+	 */
+	private static final byte[] REQUEST = MESSAGE.getBytes(ZMQ.CHARSET);
+
+	/**
+	 * Receives the reply of the ventilator, reused at every step
+	 */
+	private final transient byte[] replyBuffer = new byte[64];
+
 	/**
 	 * Circuit
 	 */
 	private transient CirSim myCircSim;
 
+	/**
+	 * Latencies of the steps and counters of the anomalies
+	 */
+	private final transient SimulationMetrics metrics = new SimulationMetrics();
+
+	/**
+	 * True if the last step of the solver failed
+	 */
+	private transient boolean solverFailed;
+
+	/**
+	 * True if the steps are solved while the ventilator replies, see
+	 * {@link #setSpeculative(boolean)}
+	 */
+	private transient boolean speculative;
+
+	/**
+	 * State of the circuit before a speculative step, reused by every step
+	 */
+	private transient double[] solverState;
+
+	/**
+	 * Compressed history of the session, for the scroll-back of the charts
+	 */
+	private transient CompressedHistory history;
+
+	/**
+	 * Downsampled views of the session, for the charts of long windows
+	 */
+	private transient MinMaxPyramid pyramid;
+
+	/**
+	 * Rows kept in the history: about 17 minutes at 1 kHz, hours at the step
+	 * of the user interfaces
+	 */
+	private static final long HISTORY_ROWS = 1 << 20;
+
+	/**
+	 * Clinical values of the breaths, null if the model has no airway flow
+	 */
+	private transient BreathAnalyzer breathAnalyzer;
+
+	/**
+	 * Alarms evaluated at every step
+	 */
+	private transient AlarmEngine alarmEngine;
+
+	/**
+	 * Rules of the alarms, null for the default ones
+	 */
+	private transient List<AlarmRule> alarmRules;
+
+	/**
+	 * Receivers of the alarms, kept when the circuit is set up again
+	 */
+	private final transient List<AlarmListener> alarmListeners = new ArrayList<>();
+
+	/**
+	 * Default alarm on the airway pressure, in cmH2O, and the time it has to
+	 * be exceeded, in seconds
+	 */
+	private static final double MAX_AIRWAY_PRESSURE = 40;
+	private static final double MAX_AIRWAY_PRESSURE_TIME = 0.2;
+
+	/**
+	 * Default apnea alarm: seconds without an inspiratory flow above the
+	 * threshold, in L/s
+	 */
+	private static final double APNEA_TIME = 10;
+	private static final double APNEA_FLOW = 0.005;
+
+	/**
+	 * Full resolution recording of the steps, null when not recording
+	 */
+	private transient SimulationRecorder recorder;
+
+	/**
+	 * Broadcast of the steps to observers, null when not shared
+	 */
+	private transient SimulationHub hub;
+
+	/**
+	 * Name of the built-in schema of the model, null for a custom model
+	 */
+	private transient String schemaName;
+
+	/**
+	 * Compiled model shared with the other simulations, null until a custom
+	 * model is validated
+	 */
+	private transient ModelTemplate template;
+
 	/**
 	 * Internal logger for info report
 	 */
@@ -79,14 +197,14 @@ public class LungSimulator {
 	 *                               correct
 	 */
 	public void initSchema(final String chosenSchema) throws FileNotFoundException, IOException {
-		final YamlReader yamlReader = new YamlReader(chosenSchema);
-
 		if (chosenSchema != null) {
-			// Read patient model and patient archetype
-			patient = yamlReader.readPatientModel();
-			archetype = yamlReader.readArchetypeParameters();
-			demographicData = yamlReader.readDemographicData();
+			// the model is read and validated once, then shared by the simulations
+			template = ModelTemplates.get(chosenSchema);
+			patient = template.getPatient();
+			archetype = template.getArchetype();
+			demographicData = template.newDemographicData();
 		}
+		schemaName = chosenSchema;
 	}
 
 	/**
@@ -99,6 +217,8 @@ public class LungSimulator {
 	public void initCustomPatient(final InputStream input) throws FileNotFoundException, IOException {
 		final YamlReader yamlReader = new YamlReader("Custom");
 		patient = yamlReader.readPatientModel(input);
+		schemaName = null;
+		template = null;
 	}
 
 	/**
@@ -111,6 +231,8 @@ public class LungSimulator {
 	public void initCustomArchetype(final InputStream input) throws FileNotFoundException, IOException {
 		final YamlReader yamlReader = new YamlReader("Custom");
 		archetype = yamlReader.readArchetypeParameters(input);
+		schemaName = null;
+		template = null;
 	}
 
 	/**
@@ -124,22 +246,51 @@ public class LungSimulator {
 	public void initCustomDemographic(final InputStream input) throws FileNotFoundException, IOException {
 		final YamlReader yamlReader = new YamlReader("Custom");
 		demographicData = yamlReader.readDemographicData(input);
+		schemaName = null;
+		template = null;
 	}
 
 	/**
 	 * Validation of the chosen model
 	 */
 	public void modelValidation() {
+		if (template != null && template.isCompiledFrom(patient, archetype)) {
+			// the rest of the model has been validated at its compilation
+			template.validate(demographicData);
+			return;
+		}
 		// Validation
-		final Validator validator = new Validator();
-		validator.evaluate(patient, archetype, demographicData);
+		template = ModelTemplate.compile(null, patient, archetype, demographicData);
+		patient = template.getPatient();
+		archetype = template.getArchetype();
 	}
 
 	/**
 	 * Init the circuit and the connection to the ventilator
 	 */
 	public void simulationSetUp() {
-		myCircSim = circuitBuilder.buildCircuitSimulator(patient, archetype);
+		stopBroadcast();
+		myCircSim = template != null && template.isCompiledFrom(patient, archetype)
+				? circuitBuilder.buildCircuitSimulator(template)
+				: circuitBuilder.buildCircuitSimulator(patient, archetype);
+		if (history != null) {
+			circuitBuilder.removeSampleListener(history);
+			circuitBuilder.removeSampleListener(pyramid);
+		}
+		if (breathAnalyzer != null) {
+			circuitBuilder.removeSampleListener(breathAnalyzer);
+			breathAnalyzer = null;
+		}
+		history = new CompressedHistory(circuitBuilder.getSampleColumns(), HISTORY_ROWS);
+		circuitBuilder.addSampleListener(history);
+		pyramid = new MinMaxPyramid(circuitBuilder.getSampleColumns());
+		circuitBuilder.addSampleListener(pyramid);
+		if (circuitBuilder.getAirwayFlowColumn() >= 0) {
+			breathAnalyzer = new BreathAnalyzer(CircuitBuilder.VENTILATOR_COLUMN, circuitBuilder.getAirwayFlowColumn(),
+					circuitBuilder.isAirwayFlowReversed());
+			circuitBuilder.addSampleListener(breathAnalyzer);
+		}
+		alarmSetUp();
 
 		// ZMQ settings
 		final ZContext context = new ZContext();
@@ -147,6 +298,39 @@ public class LungSimulator {
 		socket.connect("tcp://localhost:5555");
 	}
 
+	/**
+	 * Compiles the alarm rules against the columns of the circuit
+	 */
+	private synchronized void alarmSetUp() {
+		if (alarmEngine != null) {
+			circuitBuilder.removeSampleListener(alarmEngine);
+		}
+		alarmEngine = new AlarmEngine(circuitBuilder.getSampleColumns(),
+				alarmRules == null ? defaultAlarmRules() : alarmRules);
+		for (final AlarmListener listener : alarmListeners) {
+			alarmEngine.addAlarmListener(listener);
+		}
+		circuitBuilder.addSampleListener(alarmEngine);
+	}
+
+	/**
+	 * @return alarm on the airway pressure and, if the model has an airway
+	 *         flow, apnea alarm
+	 */
+	private List<AlarmRule> defaultAlarmRules() {
+		final List<String> columns = circuitBuilder.getSampleColumns();
+		final List<AlarmRule> rules = new ArrayList<>();
+		rules.add(AlarmRule.above("High airway pressure", columns.get(CircuitBuilder.VENTILATOR_COLUMN),
+				MAX_AIRWAY_PRESSURE, MAX_AIRWAY_PRESSURE_TIME));
+		final int airwayFlow = circuitBuilder.getAirwayFlowColumn();
+		if (airwayFlow >= 0) {
+			rules.add(circuitBuilder.isAirwayFlowReversed()
+					? AlarmRule.above("Apnea", columns.get(airwayFlow), -APNEA_FLOW, APNEA_TIME)
+					: AlarmRule.below("Apnea", columns.get(airwayFlow), APNEA_FLOW, APNEA_TIME));
+		}
+		return rules;
+	}
+
 	/**
 	 * Executes a simulation step
 	 * 
@@ -154,30 +338,305 @@ public class LungSimulator {
 	 * @param timeStep range between two step execution
 	 */
 	public void miniSimulation(final double initialT, final double timeStep) {
-		// Update ventilator value
-		socket.send(MESSAGE.getBytes(), 0);
-		final byte[] reply = socket.recv(0);
-		if (reply != null) {
-			final String replyMessage = new String(reply, ZMQ.CHARSET);
-			final double ventilatorValue = Double.parseDouble(replyMessage);
+		if (speculative) {
+			speculativeStep(initialT, timeStep);
+			return;
+		}
+		final long stepStart = System.nanoTime();
+		final double ventilatorValue = requestVentilatorValue();
+		final boolean received = !Double.isNaN(ventilatorValue);
+		if (!received || System.nanoTime() - stepStart > (long) (timeStep * 1e9)) {
+			metrics.increment(Counter.VENTILATOR_STALE);
+		}
+		if (received) {
+			circuitBuilder.updateVentilatorValue(ventilatorValue);
+		}
+		solveStep(initialT, timeStep, stepStart);
+	}
+
+	/**
+	 * Asks the ventilator its pressure; the socket is not thread safe, so a
+	 * simulation calls it on a single thread
+	 * 
+	 * @return pressure of the ventilator, NaN if it did not reply
+	 */
+	public double requestVentilatorValue() {
+		final long start = System.nanoTime();
+		final VentilatorWaitEvent waitEvent = VentilatorWaitEvent.startIfEnabled();
+		socket.send(REQUEST, 0);
+		return receiveVentilatorValue(start, waitEvent);
+	}
+
+	/**
+	 * Waits the reply to a request sent to the ventilator
+	 * 
+	 * @param start     {@link System#nanoTime()} at the start of the wait
+	 * @param waitEvent event of the wait, null if it is not recorded
+	 * @return pressure of the ventilator, NaN if it did not reply
+	 */
+	private double receiveVentilatorValue(final long start, final VentilatorWaitEvent waitEvent) {
+		final int replyLength = socket.recv(replyBuffer, 0, replyBuffer.length, 0);
+		if (waitEvent != null) {
+			waitEvent.end();
+		}
+		metrics.record(Phase.VENTILATOR, System.nanoTime() - start);
+		final double ventilatorValue = replyLength >= 0 ? Utils.parseDouble(replyBuffer, replyLength) : Double.NaN;
+		if (waitEvent != null) {
+			waitEvent.received = replyLength >= 0;
+			waitEvent.pressure = ventilatorValue;
+			waitEvent.commit();
+		}
+		return ventilatorValue;
+	}
+
+	/**
+	 * Executes the part of a simulation step that follows the update of the
+	 * ventilator value: formulas, solver and collection of the data
+	 * 
+	 * @param initialT  moment of time at which the step begins
+	 * @param timeStep  range between two step execution
+	 * @param stepStart {@link System#nanoTime()} at the start of the step,
+	 *                  for the deadline of the step
+	 */
+	public void solveStep(final double initialT, final double timeStep, final long stepStart) {
+		commitStep(initialT, timeStep, stepStart, solveCircuit(initialT, timeStep));
+	}
+
+	/**
+	 * Executes a step while the ventilator replies: the request is sent, the
+	 * circuit is solved with the last ventilator value, and it is solved again
+	 * from the saved state only if the reply differs. Under a pressure that is
+	 * constant within each phase of the breath, almost every step pays only the
+	 * longest of the solver and the round trip.
+	 * 
+	 * @param initialT moment of time at which the step begins
+	 * @param timeStep range between two step execution
+	 */
+	private void speculativeStep(final double initialT, final double timeStep) {
+		final long stepStart = System.nanoTime();
+		socket.send(REQUEST, 0);
+		final double assumed = circuitBuilder.getCurrentVentValue();
+		solverState = myCircSim.saveState(solverState);
+		boolean converged = solveCircuit(initialT, timeStep);
+
+		// only the wait left after the solver is recorded
+		final double ventilatorValue = receiveVentilatorValue(System.nanoTime(),
+				VentilatorWaitEvent.startIfEnabled());
+		final boolean received = !Double.isNaN(ventilatorValue);
+		if (!received || System.nanoTime() - stepStart > (long) (timeStep * 1e9)) {
+			metrics.increment(Counter.VENTILATOR_STALE);
+		}
+		if (received && Double.compare(ventilatorValue, assumed) != 0) {
+			metrics.increment(Counter.SPECULATION_MISSES);
+			myCircSim.restoreState(solverState);
 			circuitBuilder.updateVentilatorValue(ventilatorValue);
+			converged = solveCircuit(initialT, timeStep);
 		}
+		commitStep(initialT, timeStep, stepStart, converged);
+	}
 
+	/**
+	 * Updates the time dependent components and solves the circuit
+	 * 
+	 * @param initialT moment of time at which the step begins
+	 * @param timeStep range between two step execution
+	 * @return true if the solver converged
+	 */
+	private boolean solveCircuit(final double initialT, final double timeStep) {
 		// update values for time dependent components
 		if (circuitBuilder.isTimeDependentCir()) {
+			final long start = System.nanoTime();
 			circuitBuilder.updateCircuitSimulator(archetype, initialT);
+			metrics.record(Phase.FORMULAS, System.nanoTime() - start);
 		}
 
 		myCircSim.setTimeStep(timeStep);
 		myCircSim.setT(initialT);
 
-		if (LOGGER.isLoggable(Level.INFO)) {
-			LOGGER.log(Level.INFO, "timeStep: " + timeStep + " - initialT " + initialT);
+		if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.log(Level.FINE, "timeStep: " + timeStep + " - initialT " + initialT);
 		}
 
+		final long solverStart = System.nanoTime();
 		myCircSim.analyzeCircuit();
-		myCircSim.loopAndContinue(false);
+		final boolean converged = myCircSim.loopAndContinue(false);
+		metrics.record(Phase.SOLVER, System.nanoTime() - solverStart);
+		return converged;
+	}
+
+	/**
+	 * Counts the outcome of the solver and collects the data of a step
+	 * 
+	 * @param initialT  moment of time at which the step begins
+	 * @param timeStep  range between two step execution
+	 * @param stepStart {@link System#nanoTime()} at the start of the step
+	 * @param converged true if the solver converged
+	 */
+	private void commitStep(final double initialT, final double timeStep, final long stepStart,
+			final boolean converged) {
+		if (solverFailed) {
+			metrics.increment(Counter.SOLVER_RESTARTS);
+		}
+		solverFailed = !converged;
+		if (solverFailed) {
+			metrics.increment(Counter.CONVERGENCE_FAILURES);
+		}
+
+		final long dataStart = System.nanoTime();
 		circuitBuilder.updateData(initialT);
+		final long stepEnd = System.nanoTime();
+		metrics.record(Phase.UPDATE_DATA, stepEnd - dataStart);
+		metrics.record(Phase.STEP, stepEnd - stepStart);
+		if (stepEnd - stepStart > (long) (timeStep * 1e9)) {
+			metrics.increment(Counter.DEADLINE_MISSES);
+		}
+	}
+
+	/**
+	 * Records every following step in a folder, to be read with
+	 * {@link lungsimulator.recorder.RecordingReader}; the circuit must be set
+	 * up
+	 * 
+	 * @param directory folder of the recording
+	 * @throws IOException if the folder cannot be written
+	 */
+	public void startRecording(final Path directory) throws IOException {
+		stopRecording();
+		recorder = new SimulationRecorder(directory, circuitBuilder.getSampleColumns());
+		circuitBuilder.addSampleListener(recorder);
+	}
+
+	/**
+	 * Stops the recording, if any, after writing the pending steps
+	 * 
+	 * @throws IOException if the recording could not be written
+	 */
+	public void stopRecording() throws IOException {
+		if (recorder != null) {
+			circuitBuilder.removeSampleListener(recorder);
+			final SimulationRecorder stopped = recorder;
+			recorder = null;
+			stopped.close();
+			if (stopped.getDroppedRows() > 0 && LOGGER.isLoggable(Level.WARNING)) {
+				LOGGER.log(Level.WARNING, "Steps not recorded: {0}", stopped.getDroppedRows());
+			}
+		}
+	}
+
+	/**
+	 * Shares the steps with observers through a hub; the circuit must be set
+	 * up, and setting it up again ends the broadcast
+	 * 
+	 * @return hub of the simulation, the running one if already shared
+	 */
+	public synchronized SimulationHub startBroadcast() {
+		if (hub == null) {
+			hub = new SimulationHub(this, SimulationHub.DEFAULT_CAPACITY);
+			circuitBuilder.addSampleListener(hub);
+		}
+		return hub;
+	}
+
+	/**
+	 * Ends the broadcast, if any
+	 */
+	public synchronized void stopBroadcast() {
+		if (hub != null) {
+			circuitBuilder.removeSampleListener(hub);
+			hub.close();
+			hub = null;
+		}
+	}
+
+	/**
+	 * @return hub of the observers, null when not shared
+	 */
+	public SimulationHub getHub() {
+		return hub;
+	}
+
+	public CompressedHistory getHistory() {
+		return history;
+	}
+
+	public MinMaxPyramid getPyramid() {
+		return pyramid;
+	}
+
+	/**
+	 * @return alarms of the circuit, null before it is set up
+	 */
+	public AlarmEngine getAlarmEngine() {
+		return alarmEngine;
+	}
+
+	/**
+	 * Replaces the alarm rules; they are compiled at once if the circuit is set
+	 * up, otherwise when it will be
+	 * 
+	 * @param rules rules of the alarms, null for the default ones
+	 */
+	public synchronized void setAlarmRules(final List<AlarmRule> rules) {
+		alarmRules = rules == null ? null : new ArrayList<>(rules);
+		if (alarmEngine != null) {
+			alarmSetUp();
+		}
+	}
+
+	/**
+	 * @param listener receiver of the alarms of this and of the following
+	 *                 circuits
+	 */
+	public synchronized void addAlarmListener(final AlarmListener listener) {
+		alarmListeners.add(listener);
+		if (alarmEngine != null) {
+			alarmEngine.addAlarmListener(listener);
+		}
+	}
+
+	/**
+	 * @param listener receiver that has not to be notified anymore
+	 */
+	public synchronized void removeAlarmListener(final AlarmListener listener) {
+		alarmListeners.remove(listener);
+		if (alarmEngine != null) {
+			alarmEngine.removeAlarmListener(listener);
+		}
+	}
+
+	/**
+	 * @return clinical values of the breaths, null if the model has no element
+	 *         connected to the ventilator
+	 */
+	public BreathAnalyzer getBreathAnalyzer() {
+		return breathAnalyzer;
+	}
+
+	/**
+	 * Reads the points of a chart of a column between two times: all the
+	 * values if they fit in the destinations, otherwise the extremes of buckets
+	 * from the level of the pyramid with the right resolution, or decoded from
+	 * the history if that level no longer retains the range
+	 * 
+	 * @param column   index of the column, see
+	 *                 {@link CircuitBuilder#getSampleColumns()}
+	 * @param fromTime first time, included
+	 * @param toTime   last time, included
+	 * @param times    destination of the times
+	 * @param values   destination of the values
+	 * @return number of points
+	 */
+	public int readChartSeries(final int column, final double fromTime, final double toTime, final double[] times,
+			final double[] values) {
+		if (history == null) {
+			return 0;
+		}
+		final int count = pyramid.read(column, fromTime, toTime, times, values);
+		return count >= 0 ? count : history.readExtremes(column, fromTime, toTime, times, values);
+	}
+
+	public SimulationRecorder getRecorder() {
+		return recorder;
 	}
 
 	public Patient getPatient() {
@@ -207,4 +666,34 @@ public class LungSimulator {
 	public CircuitBuilder getCircuitBuilder() {
 		return circuitBuilder;
 	}
+
+	/**
+	 * @return true if the steps are solved while the ventilator replies
+	 */
+	public boolean isSpeculative() {
+		return speculative;
+	}
+
+	/**
+	 * Solves each step of {@link #miniSimulation(double, double)} while the
+	 * ventilator replies, assuming the pressure did not change, and solves it
+	 * again if it did; the samples are the same as without speculation
+	 * 
+	 * @param speculative true to hide the round trip to the ventilator
+	 */
+	public void setSpeculative(final boolean speculative) {
+		this.speculative = speculative;
+	}
+
+	public SimulationMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return name of the built-in schema of the model, null if at least one of
+	 *         its files was loaded from a custom input
+	 */
+	public String getSchemaName() {
+		return schemaName;
+	}
 }
@@ -0,0 +1,26 @@
+package lungsimulator;
+
+/**
+ * Receives the values of every simulation step, on the thread that publishes
+ * the samples, always the same one during a simulation:
+ * <ul>
+ * <li>the thread that calls {@link CircuitBuilder#updateData(double)}, i.e.
+ * the simulation thread, when the circuit has no sample sink</li>
+ * <li>the derived stage of a {@link lungsimulator.pipeline.SimulationPipeline},
+ * a step after the solver</li>
+ * <li>the thread of the coordinator for a
+ * {@link lungsimulator.worker.RemoteSimulation}</li>
+ * </ul>
+ * An implementation has to be quick and must not block, e.g. it copies the
+ * values to a queue read by another thread.
+ */
+@FunctionalInterface
+public interface SampleListener {
+
+	/**
+	 * @param sample values of the step in the order of
+	 *               {@link CircuitBuilder#getSampleColumns()}; the array is
+	 *               reused at the next step, so it must be copied to be kept
+	 */
+	void onSample(double[] sample);
+}
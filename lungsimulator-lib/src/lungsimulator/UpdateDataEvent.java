@@ -0,0 +1,47 @@
+package lungsimulator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of {@link CircuitBuilder#updateData(double)}
+ */
+@Name("lungsimulator.UpdateData")
+@Label("Update Data")
+@Category({ "Lung Simulator", "Model" })
+@Description("Collection of the flows and pressures of a step")
+@Enabled(false)
+@StackTrace(false)
+class UpdateDataEvent extends Event {
+
+	@Label("Elements")
+	int elementCount;
+
+	@Label("Flows")
+	int flowCount;
+
+	@Label("Pressures")
+	int pressureCount;
+
+	/**
+	 * Only asked whether the event is enabled
+	 */
+	private static final UpdateDataEvent PROBE = new UpdateDataEvent();
+
+	/**
+	 * @return started event, null if the event is disabled
+	 */
+	static UpdateDataEvent startIfEnabled() {
+		if (!PROBE.isEnabled()) {
+			return null;
+		}
+		final UpdateDataEvent event = new UpdateDataEvent();
+		event.begin();
+		return event;
+	}
+}
@@ -0,0 +1,44 @@
+package lungsimulator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of the request of the ventilator pressure
+ */
+@Name("lungsimulator.VentilatorWait")
+@Label("Ventilator Wait")
+@Category({ "Lung Simulator", "Ventilator" })
+@Description("Round trip of the request of the ventilator pressure")
+@Enabled(false)
+@StackTrace(false)
+class VentilatorWaitEvent extends Event {
+
+	@Label("Received")
+	boolean received;
+
+	@Label("Pressure")
+	double pressure;
+
+	/**
+	 * Only asked whether the event is enabled
+	 */
+	private static final VentilatorWaitEvent PROBE = new VentilatorWaitEvent();
+
+	/**
+	 * @return started event, null if the event is disabled
+	 */
+	static VentilatorWaitEvent startIfEnabled() {
+		if (!PROBE.isEnabled()) {
+			return null;
+		}
+		final VentilatorWaitEvent event = new VentilatorWaitEvent();
+		event.begin();
+		return event;
+	}
+}
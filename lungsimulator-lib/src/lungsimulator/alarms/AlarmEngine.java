@@ -0,0 +1,185 @@
+package lungsimulator.alarms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import lungsimulator.SampleListener;
+import lungsimulator.exceptions.InspireException;
+
+/**
+ * Evaluates a set of alarm rules at every simulation step. The rules are
+ * compiled once against the columns of the samples into flat arrays of
+ * columns, conditions, thresholds and hold times, so a step runs a single
+ * loop over primitive values, without allocations, and hundreds of rules cost
+ * a few microseconds. A change of state of an alarm is delivered to the
+ * listeners with the sample that caused it, on the thread that publishes the
+ * samples, so the latency of an alarm is bounded by its hold time plus a
+ * step, plus the wait of the sample in the queue of a pipeline.
+ */
+public class AlarmEngine implements SampleListener {
+
+	/**
+	 * Column of the time, as in {@link lungsimulator.CircuitBuilder#TIME_COLUMN}
+	 */
+	private static final int TIME_COLUMN = 0;
+
+	private final AlarmRule[] rules;
+
+	/**
+	 * Compiled rules: an entry for each rule
+	 */
+	private final int[] columns;
+	private final AlarmRule.Condition[] conditions;
+	private final double[] thresholds;
+	private final double[] holdTimes;
+
+	/**
+	 * Time since which the condition of a rule holds, NaN if it does not
+	 */
+	private final double[] since;
+
+	/**
+	 * Peak of the column since it became positive, for
+	 * {@link AlarmRule.Condition#BELOW_PEAK_FRACTION}
+	 */
+	private final double[] peaks;
+
+	/**
+	 * 1 for the raised alarms, readable by any thread
+	 */
+	private final AtomicIntegerArray raised;
+
+	/**
+	 * Changes of state of the alarms so far; written by the thread that
+	 * publishes the samples only
+	 */
+	private volatile long changeCount;
+
+	private volatile AlarmListener[] listeners = new AlarmListener[0];
+
+	/**
+	 * @param sampleColumns names of the values of a sample, the first one is
+	 *                      the time
+	 * @param rules         rules to evaluate
+	 */
+	public AlarmEngine(final List<String> sampleColumns, final List<AlarmRule> rules) {
+		this.rules = rules.toArray(new AlarmRule[0]);
+		final int size = this.rules.length;
+		columns = new int[size];
+		conditions = new AlarmRule.Condition[size];
+		thresholds = new double[size];
+		holdTimes = new double[size];
+		since = new double[size];
+		peaks = new double[size];
+		raised = new AtomicIntegerArray(size);
+		for (int i = 0; i < size; i++) {
+			final AlarmRule rule = this.rules[i];
+			columns[i] = sampleColumns.indexOf(rule.getColumn());
+			if (columns[i] <= TIME_COLUMN) {
+				throw new InspireException("Unknown column of the alarm rule " + rule);
+			}
+			conditions[i] = rule.getCondition();
+			thresholds[i] = rule.getThreshold();
+			holdTimes[i] = rule.getHoldTime();
+		}
+		Arrays.fill(since, Double.NaN);
+	}
+
+	@Override
+	public void onSample(final double[] sample) {
+		final double time = sample[TIME_COLUMN];
+		for (int i = 0; i < columns.length; i++) {
+			final double value = sample[columns[i]];
+			final boolean holds;
+			if (conditions[i] == AlarmRule.Condition.ABOVE) {
+				holds = value > thresholds[i];
+			} else if (conditions[i] == AlarmRule.Condition.BELOW) {
+				holds = value < thresholds[i];
+			} else {
+				peaks[i] = value > 0 ? Math.max(peaks[i], value) : 0;
+				holds = value > 0 && value < thresholds[i] * peaks[i];
+			}
+
+			if (!holds) {
+				since[i] = Double.NaN;
+				if (raised.get(i) != 0) {
+					raised.set(i, 0);
+					changeCount++;
+					notifyListeners(i, false, time);
+				}
+			} else {
+				if (Double.isNaN(since[i])) {
+					since[i] = time;
+				}
+				if (raised.get(i) == 0 && time - since[i] >= holdTimes[i]) {
+					raised.set(i, 1);
+					changeCount++;
+					notifyListeners(i, true, time);
+				}
+			}
+		}
+	}
+
+	private void notifyListeners(final int rule, final boolean isRaised, final double time) {
+		for (final AlarmListener listener : listeners) {
+			listener.onAlarm(rules[rule], isRaised, time);
+		}
+	}
+
+	/**
+	 * @param listener receiver of the following changes of the alarms
+	 */
+	public synchronized void addAlarmListener(final AlarmListener listener) {
+		final AlarmListener[] copy = Arrays.copyOf(listeners, listeners.length + 1);
+		copy[listeners.length] = listener;
+		listeners = copy;
+	}
+
+	/**
+	 * @param listener receiver that has not to be notified anymore
+	 */
+	public synchronized void removeAlarmListener(final AlarmListener listener) {
+		final List<AlarmListener> copy = new ArrayList<>(Arrays.asList(listeners));
+		copy.remove(listener);
+		listeners = copy.toArray(new AlarmListener[0]);
+	}
+
+	/**
+	 * @return evaluated rules, in the order of the indexes
+	 */
+	public List<AlarmRule> getRules() {
+		return Collections.unmodifiableList(Arrays.asList(rules));
+	}
+
+	/**
+	 * @param rule index of the rule
+	 * @return true if the alarm of the rule is raised
+	 */
+	public boolean isRaised(final int rule) {
+		return raised.get(rule) != 0;
+	}
+
+	/**
+	 * @return number of times an alarm has been raised or cleared, to detect a
+	 *         change without listening to the alarms
+	 */
+	public long getChangeCount() {
+		return changeCount;
+	}
+
+	/**
+	 * @return rules whose alarm is raised
+	 */
+	public List<AlarmRule> getRaisedRules() {
+		final List<AlarmRule> result = new ArrayList<>();
+		for (int i = 0; i < rules.length; i++) {
+			if (raised.get(i) != 0) {
+				result.add(rules[i]);
+			}
+		}
+		return result;
+	}
+}
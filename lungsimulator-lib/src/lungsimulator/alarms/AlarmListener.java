@@ -0,0 +1,19 @@
+package lungsimulator.alarms;
+
+/**
+ * Receives the alarms raised and cleared by an {@link AlarmEngine}, on the
+ * thread that publishes the samples (see {@link lungsimulator.SampleListener})
+ * while the sample that changed them is published: an implementation has to
+ * be quick and must not block.
+ */
+@FunctionalInterface
+public interface AlarmListener {
+
+	/**
+	 * @param rule   rule of the alarm
+	 * @param raised true if the alarm has been raised, false if it has been
+	 *               cleared
+	 * @param time   time of the step
+	 */
+	void onAlarm(AlarmRule rule, boolean raised, double time);
+}
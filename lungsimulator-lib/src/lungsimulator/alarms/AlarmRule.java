@@ -0,0 +1,135 @@
+package lungsimulator.alarms;
+
+import lungsimulator.exceptions.InspireException;
+
+/**
+ * Declarative description of an alarm: a condition on a column of the
+ * samples that raises the alarm when it holds for a minimum time, and clears
+ * it as soon as it stops holding. The rules are compiled against the columns
+ * of a circuit by {@link AlarmEngine}.
+ */
+public final class AlarmRule {
+
+	/**
+	 * Conditions on the value of a column
+	 */
+	public enum Condition {
+		/**
+		 * The value is greater than the threshold
+		 */
+		ABOVE(">"),
+		/**
+		 * The value is less than the threshold
+		 */
+		BELOW("<"),
+		/**
+		 * The value is positive and less than the threshold times the peak it
+		 * reached since it became positive, e.g. the inspiratory flow dropping
+		 * below a fraction of its peak
+		 */
+		BELOW_PEAK_FRACTION("< peak x");
+
+		private final String symbol;
+
+		Condition(final String symbol) {
+			this.symbol = symbol;
+		}
+
+		public String getSymbol() {
+			return symbol;
+		}
+	}
+
+	private final String name;
+	private final String column;
+	private final Condition condition;
+	private final double threshold;
+
+	/**
+	 * Seconds the condition has to hold before the alarm is raised
+	 */
+	private final double holdTime;
+
+	/**
+	 * @param name      name shown to the user
+	 * @param column    name of the column of the samples, as in
+	 *                  {@link lungsimulator.CircuitBuilder#getSampleColumns()}
+	 * @param condition condition on the value of the column
+	 * @param threshold value compared to the column, a fraction for
+	 *                  {@link Condition#BELOW_PEAK_FRACTION}
+	 * @param holdTime  seconds the condition has to hold before the alarm is
+	 *                  raised
+	 */
+	public AlarmRule(final String name, final String column, final Condition condition, final double threshold,
+			final double holdTime) {
+		if (name == null || column == null || condition == null || Double.isNaN(threshold) || !(holdTime >= 0)) {
+			throw new InspireException("Invalid alarm rule " + name);
+		}
+		this.name = name;
+		this.column = column;
+		this.condition = condition;
+		this.threshold = threshold;
+		this.holdTime = holdTime;
+	}
+
+	/**
+	 * @param name      name shown to the user
+	 * @param column    name of the column of the samples
+	 * @param threshold value that must not be exceeded
+	 * @param holdTime  seconds before the alarm is raised
+	 * @return rule raised while the column is above the threshold
+	 */
+	public static AlarmRule above(final String name, final String column, final double threshold,
+			final double holdTime) {
+		return new AlarmRule(name, column, Condition.ABOVE, threshold, holdTime);
+	}
+
+	/**
+	 * @param name      name shown to the user
+	 * @param column    name of the column of the samples
+	 * @param threshold value the column must reach
+	 * @param holdTime  seconds before the alarm is raised
+	 * @return rule raised while the column is below the threshold
+	 */
+	public static AlarmRule below(final String name, final String column, final double threshold,
+			final double holdTime) {
+		return new AlarmRule(name, column, Condition.BELOW, threshold, holdTime);
+	}
+
+	/**
+	 * @param name     name shown to the user
+	 * @param column   name of the column of the samples
+	 * @param fraction fraction of the peak, between 0 and 1
+	 * @param holdTime seconds before the alarm is raised
+	 * @return rule raised while the column is below a fraction of its peak
+	 */
+	public static AlarmRule belowPeakFraction(final String name, final String column, final double fraction,
+			final double holdTime) {
+		return new AlarmRule(name, column, Condition.BELOW_PEAK_FRACTION, fraction, holdTime);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getColumn() {
+		return column;
+	}
+
+	public Condition getCondition() {
+		return condition;
+	}
+
+	public double getThreshold() {
+		return threshold;
+	}
+
+	public double getHoldTime() {
+		return holdTime;
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + column + " " + condition.getSymbol() + " " + threshold + " for " + holdTime + " s";
+	}
+}
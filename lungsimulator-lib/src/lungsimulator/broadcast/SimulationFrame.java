@@ -0,0 +1,70 @@
+package lungsimulator.broadcast;
+
+import java.util.List;
+
+import lungsimulator.alarms.AlarmRule;
+import lungsimulator.metrics.BreathMetrics;
+
+/**
+ * Immutable state of a shared simulation after a step: the values of the
+ * sample, the last complete breath and the raised alarms. Frames are shared by
+ * all the observers, which only read them; the breath and the alarms are the
+ * same objects as in the previous frame until they change.
+ */
+public final class SimulationFrame {
+
+	private final long sequence;
+
+	/**
+	 * Values of the step, in the order of the sample columns
+	 */
+	private final double[] sample;
+
+	private final BreathMetrics breath;
+
+	private final List<AlarmRule> raisedAlarms;
+
+	SimulationFrame(final long sequence, final double[] sample, final BreathMetrics breath,
+			final List<AlarmRule> raisedAlarms) {
+		this.sequence = sequence;
+		this.sample = sample;
+		this.breath = breath;
+		this.raisedAlarms = raisedAlarms;
+	}
+
+	/**
+	 * @return position of the frame since the start of the broadcast, from 1
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return time of the step
+	 */
+	public double getTime() {
+		return sample[0];
+	}
+
+	/**
+	 * @param column column of the sample
+	 * @return value of the column at this step
+	 */
+	public double getValue(final int column) {
+		return sample[column];
+	}
+
+	/**
+	 * @return last complete breath, not valid if none
+	 */
+	public BreathMetrics getBreath() {
+		return breath;
+	}
+
+	/**
+	 * @return unmodifiable list of the rules whose alarm is raised
+	 */
+	public List<AlarmRule> getRaisedAlarms() {
+		return raisedAlarms;
+	}
+}
@@ -0,0 +1,184 @@
+package lungsimulator.broadcast;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.LungSimulator;
+import lungsimulator.SampleListener;
+import lungsimulator.alarms.AlarmEngine;
+import lungsimulator.alarms.AlarmRule;
+import lungsimulator.exceptions.InspireException;
+import lungsimulator.metrics.BreathAnalyzer;
+import lungsimulator.metrics.BreathMetrics;
+
+/**
+ * Shares a running simulation with many observers. At every step the hub
+ * publishes an immutable {@link SimulationFrame} in a ring of the last frames;
+ * the observers read the frames after the last one they have seen, each at
+ * its own pace and with its own choice of columns, without locks and without
+ * ever delaying the simulation. An observer slower than the ring loses the
+ * oldest frames and is told so, to redraw from the frames still available.
+ * The cost of the simulation does not depend on the number of observers.
+ */
+public class SimulationHub implements SampleListener {
+
+	/**
+	 * Frames kept for the observers: about 100 seconds at the step of the user
+	 * interfaces
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final LungSimulator lungSimulator;
+
+	private final List<String> sampleColumns;
+	private final List<String> pressureIds;
+	private final List<String> flowIds;
+	private final int[] pressureColumns;
+	private final int[] flowColumns;
+
+	private final AtomicReferenceArray<SimulationFrame> frames;
+	private final int mask;
+
+	/**
+	 * Sequence of the last published frame, 0 if none
+	 */
+	private volatile long lastSequence;
+
+	private volatile boolean closed;
+
+	/**
+	 * Breath and alarms of the last frame, reused until they change; written by
+	 * the thread of the sample listeners only
+	 */
+	private final BreathMetrics breathProbe = new BreathMetrics();
+	private BreathMetrics breath = new BreathMetrics();
+	private List<AlarmRule> raisedAlarms = Collections.emptyList();
+	private AlarmEngine alarmEngine;
+	private long alarmChanges;
+
+	/**
+	 * @param lungSimulator simulation whose circuit is set up
+	 * @param capacity      frames kept for the observers, a power of two
+	 */
+	public SimulationHub(final LungSimulator lungSimulator, final int capacity) {
+		if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+			throw new InspireException("Invalid hub capacity: " + capacity);
+		}
+		this.lungSimulator = lungSimulator;
+		final CircuitBuilder circuitBuilder = lungSimulator.getCircuitBuilder();
+		sampleColumns = Collections.unmodifiableList(circuitBuilder.getSampleColumns());
+		pressureIds = Collections.unmodifiableList(new ArrayList<>(circuitBuilder.getPressureIds()));
+		flowIds = Collections.unmodifiableList(new ArrayList<>(circuitBuilder.getFlowIds()));
+		pressureColumns = new int[pressureIds.size()];
+		for (int i = 0; i < pressureColumns.length; i++) {
+			pressureColumns[i] = circuitBuilder.getPressureColumn(pressureIds.get(i));
+		}
+		flowColumns = new int[flowIds.size()];
+		for (int i = 0; i < flowColumns.length; i++) {
+			flowColumns[i] = circuitBuilder.getFlowColumn(flowIds.get(i));
+		}
+		frames = new AtomicReferenceArray<>(capacity);
+		mask = capacity - 1;
+	}
+
+	@Override
+	public void onSample(final double[] sample) {
+		final BreathAnalyzer analyzer = lungSimulator.getBreathAnalyzer();
+		if (analyzer != null
+				&& analyzer.copyLatest(breathProbe).getBreathCount() != breath.getBreathCount()) {
+			breath = analyzer.getLatest();
+		}
+		final AlarmEngine engine = lungSimulator.getAlarmEngine();
+		if (engine != alarmEngine || engine != null && engine.getChangeCount() != alarmChanges) {
+			alarmEngine = engine;
+			alarmChanges = engine == null ? 0 : engine.getChangeCount();
+			raisedAlarms = engine == null ? Collections.emptyList()
+					: Collections.unmodifiableList(engine.getRaisedRules());
+		}
+
+		final long sequence = lastSequence + 1;
+		frames.set((int) (sequence & mask), new SimulationFrame(sequence, sample.clone(), breath, raisedAlarms));
+		lastSequence = sequence;
+	}
+
+	/**
+	 * Copies the frames published after a given one, oldest first; called by
+	 * any thread
+	 *
+	 * @param after       sequence of the last frame already read, 0 for all
+	 *                    the frames still kept
+	 * @param destination receiver of the frames
+	 * @return false if some frames after the given one were lost because the
+	 *         ring was overwritten
+	 */
+	public boolean read(final long after, final List<SimulationFrame> destination) {
+		final long last = lastSequence;
+		final long first = Math.max(after + 1, last - mask);
+		boolean complete = first == after + 1 || after == 0;
+		for (long sequence = first; sequence <= last; sequence++) {
+			final SimulationFrame frame = frames.get((int) (sequence & mask));
+			if (frame == null || frame.getSequence() != sequence) {
+				// overwritten by the simulation while reading
+				complete = false;
+			} else {
+				destination.add(frame);
+			}
+		}
+		return complete;
+	}
+
+	/**
+	 * @return sequence of the last published frame, 0 if none
+	 */
+	public long getLastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	 * Ends the broadcast: no frame will follow
+	 */
+	public void close() {
+		closed = true;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return names of the columns of the samples, as in
+	 *         {@link CircuitBuilder#getSampleColumns()}
+	 */
+	public List<String> getSampleColumns() {
+		return sampleColumns;
+	}
+
+	public List<String> getPressureIds() {
+		return pressureIds;
+	}
+
+	public List<String> getFlowIds() {
+		return flowIds;
+	}
+
+	/**
+	 * @param id pressure id
+	 * @return column of the pressure in the frames, -1 if it does not exist
+	 */
+	public int getPressureColumn(final String id) {
+		final int index = pressureIds.indexOf(id);
+		return index < 0 ? -1 : pressureColumns[index];
+	}
+
+	/**
+	 * @param id flow id
+	 * @return column of the flow in the frames, -1 if it does not exist
+	 */
+	public int getFlowColumn(final String id) {
+		final int index = flowIds.indexOf(id);
+		return index < 0 ? -1 : flowColumns[index];
+	}
+}
@@ -1,6 +1,7 @@
 package lungsimulator.components;
 
 import java.util.HashMap;
+import java.util.Map;
 
 import lungsimulator.exceptions.InspireException;
 
@@ -129,7 +130,9 @@ public class Element {
 	}
 
 	public void setX(final int x) {
-		position.put("x1", x);
+		if (position != null) {
+			position.put("x1", x);
+		}
 		this.x = x;
 	}
 
@@ -142,7 +145,9 @@ public class Element {
 
 	public void setY(final int y) {
 		this.y = y;
-		position.put("y1", y);
+		if (position != null) {
+			position.put("y1", y);
+		}
 	}
 
 	public int getX1() {
@@ -154,7 +159,9 @@ public class Element {
 
 	public void setX1(final int x1) {
 		this.x1 = x1;
-		position.put("x2", x1);
+		if (position != null) {
+			position.put("x2", x1);
+		}
 	}
 
 	public int getY1() {
@@ -197,10 +204,20 @@ public class Element {
 	}
 
 	public void setY1(final int y1) {
-		position.put("y2", y1);
+		if (position != null) {
+			position.put("y2", y1);
+		}
 		this.y1 = y1;
 	}
 
+	public Map<String, Integer> getPosition() {
+		return position;
+	}
+
+	public void setPosition(final Map<String, Integer> position) {
+		this.position = position == null ? null : new HashMap<>(position);
+	}
+
 	public Formula getAssociatedFormula() {
 		return associatedFormula;
 	}
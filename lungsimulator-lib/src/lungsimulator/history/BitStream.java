@@ -0,0 +1,95 @@
+package lungsimulator.history;
+
+import java.util.Arrays;
+
+/**
+ * Sequence of bits packed in longs, most significant bit first. The words are
+ * allocated by the caller, so appending does not allocate; {@link #trim()}
+ * returns the words actually used once the stream is complete.
+ */
+final class BitStream {
+
+	private final long[] words;
+	private int length;
+
+	BitStream(final int capacityBits) {
+		words = new long[(capacityBits + Long.SIZE - 1) / Long.SIZE];
+	}
+
+	BitStream(final long[] words, final int length) {
+		this.words = words;
+		this.length = length;
+	}
+
+	/**
+	 * Appends the lowest bits of a value
+	 *
+	 * @param value bits to write, right aligned
+	 * @param bits  number of bits, from 1 to 64
+	 */
+	void write(final long value, final int bits) {
+		final long masked = bits == Long.SIZE ? value : value & (1L << bits) - 1;
+		final int word = length >>> 6;
+		final int used = length & 63;
+		final int free = Long.SIZE - used;
+		if (bits <= free) {
+			words[word] |= masked << free - bits;
+		} else {
+			words[word] |= masked >>> bits - free;
+			words[word + 1] = masked << Long.SIZE - (bits - free);
+		}
+		length += bits;
+	}
+
+	void writeBit(final boolean bit) {
+		if (bit) {
+			words[length >>> 6] |= 1L << 63 - (length & 63);
+		}
+		length++;
+	}
+
+	/**
+	 * @param position index of the first bit
+	 * @param bits     number of bits, from 1 to 64
+	 * @return the bits, right aligned
+	 */
+	long read(final int position, final int bits) {
+		final int word = position >>> 6;
+		final int used = position & 63;
+		final int available = Long.SIZE - used;
+		long value;
+		if (bits <= available) {
+			value = words[word] >>> available - bits;
+		} else {
+			value = words[word] << bits - available | words[word + 1] >>> Long.SIZE - (bits - available);
+		}
+		return bits == Long.SIZE ? value : value & (1L << bits) - 1;
+	}
+
+	boolean readBit(final int position) {
+		return (words[position >>> 6] << (position & 63)) < 0;
+	}
+
+	int length() {
+		return length;
+	}
+
+	void clear() {
+		Arrays.fill(words, 0, Math.min(words.length, (length >>> 6) + 1), 0);
+		length = 0;
+	}
+
+	/**
+	 * @return copy of the stream without the unused words
+	 */
+	BitStream trim() {
+		return new BitStream(Arrays.copyOf(words, (length + Long.SIZE - 1) / Long.SIZE), length);
+	}
+
+	/**
+	 * @return bytes used by the bits of the stream
+	 */
+	int byteSize() {
+		return (length + Byte.SIZE - 1) / Byte.SIZE;
+	}
+}
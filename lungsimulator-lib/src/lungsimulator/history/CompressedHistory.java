@@ -0,0 +1,615 @@
+package lungsimulator.history;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import lungsimulator.SampleListener;
+import lungsimulator.exceptions.InspireException;
+
+/**
+ * In-memory history of the samples of a simulation, compressed as in the
+ * Gorilla time series database: the times are stored as integer ticks with a
+ * delta-of-delta encoding, which takes a single bit for a constant time step,
+ * and every other column stores the XOR of each value with the previous one,
+ * which takes a single bit for a repeated value and only the changed bits
+ * otherwise. The rows are grouped in blocks of a fixed number of rows, each
+ * with its own time range, so a range is decoded starting from the first block
+ * that overlaps it. The oldest blocks are discarded once the retained rows are
+ * exceeded.
+ * <p>
+ * The noise in the last bits of the values computed by the solver defeats the
+ * XOR encoding, so the values are rounded to a multiple of a power of two,
+ * 2^-12 by default, finer than the three decimals shown by the charts: the
+ * rounded values end with zero bits that are not stored. The rounding can be
+ * disabled with {@link #LOSSLESS}. The times are rounded to ticks, of a
+ * microsecond by default, and compared as ticks.
+ * Samples are appended on the thread that publishes them and read by the user
+ * interface, so the methods are synchronized.
+ */
+public class CompressedHistory implements SampleListener {
+
+	public static final int DEFAULT_BLOCK_ROWS = 1024;
+
+	/**
+	 * Times are rounded to the microsecond
+	 */
+	public static final double DEFAULT_TICKS_PER_SECOND = 1e6;
+
+	/**
+	 * Values are rounded to multiples of 2^-12
+	 */
+	public static final int DEFAULT_PRECISION_BITS = 12;
+
+	/**
+	 * Precision that keeps the values unchanged
+	 */
+	public static final int LOSSLESS = -1;
+
+	/**
+	 * Column of the time, as in {@link lungsimulator.CircuitBuilder#TIME_COLUMN}
+	 */
+	private static final int TIME_COLUMN = 0;
+
+	/**
+	 * Bits of the four sizes of a delta-of-delta, the largest being a full long
+	 */
+	private static final int[] DOD_BITS = { 7, 9, 12, Long.SIZE };
+
+	/**
+	 * Worst case bits of a value after the first one of a block: control bits,
+	 * leading zeros, length and a full long
+	 */
+	private static final int MAX_VALUE_BITS = 2 + 5 + 6 + Long.SIZE;
+
+	private final List<String> columns;
+	private final int blockRows;
+	private final double ticksPerSecond;
+	private final int maxBlocks;
+
+	/**
+	 * 2^precision, 0 for lossless values
+	 */
+	private final double scale;
+
+	/**
+	 * Complete blocks, oldest first
+	 */
+	private final List<Block> blocks = new ArrayList<>();
+
+	/**
+	 * Block being appended, with buffers large enough for any value
+	 */
+	private final Block open;
+
+	/**
+	 * Encoder state of the open block
+	 */
+	private long previousTick;
+	private long previousDelta;
+	private final long[] previousBits;
+	private final int[] previousLeading;
+	private final int[] previousTrailing;
+
+	private long rowCount;
+
+	/**
+	 * Sealed blocks hold their streams in trimmed arrays
+	 */
+	private long sealedBytes;
+
+	/**
+	 * @param columns     names of the values of a sample, the first one is the
+	 *                    time
+	 * @param retainedRows rows kept before the oldest blocks are discarded
+	 */
+	public CompressedHistory(final List<String> columns, final long retainedRows) {
+		this(columns, retainedRows, DEFAULT_BLOCK_ROWS, DEFAULT_TICKS_PER_SECOND, DEFAULT_PRECISION_BITS);
+	}
+
+	/**
+	 * @param columns      names of the values of a sample, the first one is the
+	 *                     time
+	 * @param retainedRows rows kept before the oldest blocks are discarded
+	 * @param blockRows    rows of a block
+	 * @param ticksPerSecond times are rounded to multiples of 1 / ticksPerSecond
+	 * @param precision    values are rounded to multiples of 2^-precision,
+	 *                     {@link #LOSSLESS} to keep them unchanged
+	 */
+	public CompressedHistory(final List<String> columns, final long retainedRows, final int blockRows,
+			final double ticksPerSecond, final int precision) {
+		if (columns.isEmpty() || blockRows < 2 || retainedRows < blockRows || ticksPerSecond <= 0 || precision > 52) {
+			throw new InspireException("Invalid history size");
+		}
+		this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+		this.blockRows = blockRows;
+		this.ticksPerSecond = ticksPerSecond;
+		this.scale = precision < 0 ? 0 : Math.scalb(1.0, precision);
+		this.maxBlocks = (int) Math.min(Integer.MAX_VALUE, (retainedRows + blockRows - 1) / blockRows);
+
+		final int width = columns.size();
+		final BitStream[] streams = new BitStream[width];
+		for (int column = 0; column < width; column++) {
+			streams[column] = new BitStream(Long.SIZE + blockRows * MAX_VALUE_BITS);
+		}
+		open = new Block(streams);
+		previousBits = new long[width];
+		previousLeading = new int[width];
+		previousTrailing = new int[width];
+	}
+
+	@Override
+	public void onSample(final double[] sample) {
+		append(sample);
+	}
+
+	/**
+	 * Compresses a sample; the time must not decrease
+	 *
+	 * @param sample values in the order of the columns
+	 */
+	public synchronized void append(final double[] sample) {
+		if (open.rows == blockRows) {
+			seal();
+		}
+		final long tick = toTick(sample[TIME_COLUMN]);
+		final BitStream[] streams = open.streams;
+		if (open.rows == 0) {
+			open.firstTick = tick;
+			streams[TIME_COLUMN].write(tick, Long.SIZE);
+			for (int column = 1; column < streams.length; column++) {
+				final long bits = Double.doubleToRawLongBits(quantize(sample[column]));
+				streams[column].write(bits, Long.SIZE);
+				previousBits[column] = bits;
+				previousLeading[column] = -1;
+			}
+		} else {
+			writeTick(streams[TIME_COLUMN], tick, open.rows == 1);
+			for (int column = 1; column < streams.length; column++) {
+				writeValue(streams[column], column, Double.doubleToRawLongBits(quantize(sample[column])));
+			}
+		}
+		previousTick = tick;
+		open.lastTick = tick;
+		open.rows++;
+		rowCount++;
+	}
+
+	/**
+	 * @return the value rounded to the precision; the division by a power of
+	 *         two is exact
+	 */
+	private double quantize(final double value) {
+		return scale == 0 ? value : Math.rint(value * scale) / scale;
+	}
+
+	private long toTick(final double time) {
+		if (time == Double.NEGATIVE_INFINITY) {
+			return Long.MIN_VALUE;
+		}
+		return time == Double.POSITIVE_INFINITY ? Long.MAX_VALUE : Math.round(time * ticksPerSecond);
+	}
+
+	private void writeTick(final BitStream stream, final long tick, final boolean second) {
+		final long delta = tick - previousTick;
+		if (second) {
+			stream.write(delta, Long.SIZE);
+		} else {
+			final long dod = delta - previousDelta;
+			if (dod == 0) {
+				stream.writeBit(false);
+			} else {
+				int size = 0;
+				while (size < DOD_BITS.length - 1 && !fits(dod, DOD_BITS[size])) {
+					size++;
+				}
+				// prefix of size + 1 ones, ended by a zero except for the largest size
+				for (int i = 0; i <= size; i++) {
+					stream.writeBit(true);
+				}
+				if (size < DOD_BITS.length - 1) {
+					stream.writeBit(false);
+				}
+				stream.write(dod, DOD_BITS[size]);
+			}
+		}
+		previousDelta = delta;
+	}
+
+	private static boolean fits(final long value, final int bits) {
+		return value >= -(1L << bits - 1) && value < 1L << bits - 1;
+	}
+
+	private void writeValue(final BitStream stream, final int column, final long bits) {
+		final long xor = bits ^ previousBits[column];
+		previousBits[column] = bits;
+		if (xor == 0) {
+			stream.writeBit(false);
+			return;
+		}
+		stream.writeBit(true);
+		final int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+		final int trailing = Long.numberOfTrailingZeros(xor);
+		if (previousLeading[column] >= 0 && leading >= previousLeading[column]
+				&& trailing >= previousTrailing[column]) {
+			// the changed bits fall in the window of the previous value
+			stream.writeBit(false);
+			stream.write(xor >>> previousTrailing[column],
+					Long.SIZE - previousLeading[column] - previousTrailing[column]);
+		} else {
+			final int meaningful = Long.SIZE - leading - trailing;
+			stream.writeBit(true);
+			stream.write(leading, 5);
+			stream.write(meaningful - 1, 6);
+			stream.write(xor >>> trailing, meaningful);
+			previousLeading[column] = leading;
+			previousTrailing[column] = trailing;
+		}
+	}
+
+	/**
+	 * Moves the open block to the complete ones
+	 */
+	private void seal() {
+		final BitStream[] trimmed = new BitStream[open.streams.length];
+		for (int column = 0; column < trimmed.length; column++) {
+			trimmed[column] = open.streams[column].trim();
+			open.streams[column].clear();
+		}
+		final Block sealed = new Block(trimmed);
+		sealed.firstTick = open.firstTick;
+		sealed.lastTick = open.lastTick;
+		sealed.rows = open.rows;
+		blocks.add(sealed);
+		sealedBytes += sealed.byteSize();
+		open.rows = 0;
+		if (blocks.size() > maxBlocks) {
+			final Block removed = blocks.remove(0);
+			sealedBytes -= removed.byteSize();
+			rowCount -= removed.rows;
+		}
+	}
+
+	/**
+	 * Decodes the values of a column between two times
+	 *
+	 * @param column   index of the column
+	 * @param fromTime first time, included
+	 * @param toTime   last time, included
+	 * @param times    destination of the times
+	 * @param values   destination of the values
+	 * @return number of rows decoded, at most the length of the destinations
+	 */
+	public synchronized int read(final int column, final double fromTime, final double toTime, final double[] times,
+			final double[] values) {
+		if (column < 0 || column >= columns.size()) {
+			throw new IndexOutOfBoundsException("Column " + column);
+		}
+		final long fromTick = toTick(fromTime);
+		final long toTick = toTick(toTime);
+		final int limit = Math.min(times.length, values.length);
+		final Cursor cursor = new Cursor();
+		int count = 0;
+		for (int index = firstBlock(fromTick); index <= blocks.size() && count < limit; index++) {
+			final Block block = index < blocks.size() ? blocks.get(index) : open;
+			if (block.rows == 0 || block.firstTick > toTick) {
+				break;
+			}
+			cursor.start(block, column);
+			for (int row = 0; row < block.rows && count < limit; row++) {
+				final long tick = cursor.nextTick(row);
+				final double value = cursor.nextValue(row);
+				if (tick > toTick) {
+					break;
+				}
+				if (tick >= fromTick) {
+					times[count] = tick / ticksPerSecond;
+					values[count] = value;
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Decodes the values of a column between two times, reduced to the minimum
+	 * and the maximum of buckets of equal duration when the rows do not fit in
+	 * the destinations, as a chart of the range would show them
+	 *
+	 * @param column   index of the column
+	 * @param fromTime first time, included
+	 * @param toTime   last time, included
+	 * @param times    destination of the times: first and last time of each
+	 *                 bucket
+	 * @param values   destination of the values: minimum and maximum of each
+	 *                 bucket, in the order they were reached
+	 * @return number of points, at most the length of the destinations
+	 */
+	public synchronized int readExtremes(final int column, final double fromTime, final double toTime,
+			final double[] times, final double[] values) {
+		final int limit = Math.min(times.length, values.length);
+		if (limit < 2 || count(fromTime, toTime) <= limit) {
+			return read(column, fromTime, toTime, times, values);
+		}
+		final long startTick = blocks.isEmpty() ? open.firstTick : blocks.get(0).firstTick;
+		final long endTick = open.rows > 0 ? open.lastTick : blocks.get(blocks.size() - 1).lastTick;
+		final long fromTick = Math.max(toTick(fromTime), startTick);
+		final long toTick = Math.min(toTick(toTime), endTick);
+		final long bucketTicks = Math.max(1, (toTick - fromTick) / (limit / 2) + 1);
+
+		final Cursor cursor = new Cursor();
+		int count = 0;
+		long bucket = -1;
+		long firstTick = 0;
+		long lastTick = 0;
+		double min = 0;
+		double max = 0;
+		boolean minFirst = true;
+		for (int index = firstBlock(fromTick); index <= blocks.size(); index++) {
+			final Block block = index < blocks.size() ? blocks.get(index) : open;
+			if (block.rows == 0 || block.firstTick > toTick) {
+				break;
+			}
+			cursor.start(block, column);
+			for (int row = 0; row < block.rows; row++) {
+				final long tick = cursor.nextTick(row);
+				final double value = cursor.nextValue(row);
+				if (tick > toTick) {
+					break;
+				}
+				if (tick < fromTick) {
+					continue;
+				}
+				final long rowBucket = (tick - fromTick) / bucketTicks;
+				if (rowBucket != bucket) {
+					if (bucket >= 0) {
+						count = emit(firstTick, lastTick, min, max, minFirst, times, values, count, limit);
+					}
+					bucket = rowBucket;
+					firstTick = tick;
+					min = value;
+					max = value;
+					minFirst = true;
+				} else if (value < min) {
+					min = value;
+					minFirst = false;
+				} else if (value > max) {
+					max = value;
+					minFirst = true;
+				}
+				lastTick = tick;
+			}
+		}
+		if (bucket >= 0) {
+			count = emit(firstTick, lastTick, min, max, minFirst, times, values, count, limit);
+		}
+		return count;
+	}
+
+	/**
+	 * Adds the extremes of a bucket, a single point for a bucket of one row
+	 */
+	private int emit(final long firstTick, final long lastTick, final double min, final double max,
+			final boolean minFirst, final double[] times, final double[] values, final int count, final int limit) {
+		int next = count;
+		if (next < limit) {
+			times[next] = firstTick / ticksPerSecond;
+			values[next++] = minFirst ? min : max;
+		}
+		if (lastTick != firstTick && next < limit) {
+			times[next] = lastTick / ticksPerSecond;
+			values[next++] = minFirst ? max : min;
+		}
+		return next;
+	}
+
+	/**
+	 * @param fromTime first time, included
+	 * @param toTime   last time, included
+	 * @return number of rows between the two times
+	 */
+	public synchronized int count(final double fromTime, final double toTime) {
+		final long fromTick = toTick(fromTime);
+		final long toTick = toTick(toTime);
+		final Cursor cursor = new Cursor();
+		long count = 0;
+		for (int index = firstBlock(fromTick); index <= blocks.size(); index++) {
+			final Block block = index < blocks.size() ? blocks.get(index) : open;
+			if (block.rows == 0 || block.firstTick > toTick) {
+				break;
+			}
+			if (block.firstTick >= fromTick && block.lastTick <= toTick) {
+				count += block.rows;
+				continue;
+			}
+			cursor.start(block, TIME_COLUMN);
+			for (int row = 0; row < block.rows; row++) {
+				final long tick = cursor.nextTick(row);
+				if (tick > toTick) {
+					break;
+				}
+				if (tick >= fromTick) {
+					count++;
+				}
+			}
+		}
+		return (int) Math.min(Integer.MAX_VALUE, count);
+	}
+
+	/**
+	 * @return index of the first block that ends at or after the tick, the
+	 *         number of complete blocks for the open one
+	 */
+	private int firstBlock(final long tick) {
+		int low = 0;
+		int high = blocks.size() - 1;
+		int first = blocks.size();
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			if (blocks.get(mid).lastTick >= tick) {
+				first = mid;
+				high = mid - 1;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return first;
+	}
+
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @param name name of the column, e.g. "pressure:a" or "flow:R1"
+	 * @return index of the column, -1 if the history does not have it
+	 */
+	public int getColumn(final String name) {
+		return columns.indexOf(name);
+	}
+
+	/**
+	 * @return rows retained
+	 */
+	public synchronized long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return time of the oldest row retained, NaN if the history is empty
+	 */
+	public synchronized double getStartTime() {
+		if (!blocks.isEmpty()) {
+			return blocks.get(0).firstTick / ticksPerSecond;
+		}
+		return open.rows == 0 ? Double.NaN : open.firstTick / ticksPerSecond;
+	}
+
+	/**
+	 * @return time of the last row, NaN if the history is empty
+	 */
+	public synchronized double getEndTime() {
+		if (open.rows > 0) {
+			return open.lastTick / ticksPerSecond;
+		}
+		return blocks.isEmpty() ? Double.NaN : blocks.get(blocks.size() - 1).lastTick / ticksPerSecond;
+	}
+
+	/**
+	 * @return bytes used by the compressed rows
+	 */
+	public synchronized long getCompressedBytes() {
+		return sealedBytes + open.byteSize();
+	}
+
+	/**
+	 * Discards all the rows
+	 */
+	public synchronized void clear() {
+		blocks.clear();
+		for (final BitStream stream : open.streams) {
+			stream.clear();
+		}
+		open.rows = 0;
+		rowCount = 0;
+		sealedBytes = 0;
+	}
+
+	/**
+	 * Rows between two times, with a compressed stream for each column
+	 */
+	private static final class Block {
+		private final BitStream[] streams;
+		private long firstTick;
+		private long lastTick;
+		private int rows;
+
+		private Block(final BitStream[] streams) {
+			this.streams = streams;
+		}
+
+		private long byteSize() {
+			long size = 0;
+			for (final BitStream stream : streams) {
+				size += stream.byteSize();
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * Decoder of the time and of one column of a block
+	 */
+	private final class Cursor {
+		private BitStream timeStream;
+		private BitStream valueStream;
+		private int timePosition;
+		private int valuePosition;
+		private long tick;
+		private long delta;
+		private long bits;
+		private int leading;
+		private int trailing;
+
+		private void start(final Block block, final int column) {
+			timeStream = block.streams[TIME_COLUMN];
+			valueStream = block.streams[column];
+			timePosition = 0;
+			valuePosition = 0;
+		}
+
+		private long nextTick(final int row) {
+			if (row == 0) {
+				tick = timeStream.read(0, Long.SIZE);
+				timePosition = Long.SIZE;
+			} else if (row == 1) {
+				delta = timeStream.read(timePosition, Long.SIZE);
+				timePosition += Long.SIZE;
+				tick += delta;
+			} else {
+				int size = 0;
+				while (size < DOD_BITS.length && timeStream.readBit(timePosition)) {
+					timePosition++;
+					size++;
+				}
+				if (size > 0) {
+					if (size < DOD_BITS.length) {
+						// the zero that ends the prefix
+						timePosition++;
+					}
+					final int width = DOD_BITS[size - 1];
+					final long raw = timeStream.read(timePosition, width);
+					timePosition += width;
+					delta += raw << Long.SIZE - width >> Long.SIZE - width;
+				} else {
+					timePosition++;
+				}
+				tick += delta;
+			}
+			return tick;
+		}
+
+		private double nextValue(final int row) {
+			if (valueStream == timeStream) {
+				return tick / ticksPerSecond;
+			}
+			if (row == 0) {
+				bits = valueStream.read(0, Long.SIZE);
+				valuePosition = Long.SIZE;
+				leading = -1;
+			} else if (valueStream.readBit(valuePosition++)) {
+				if (valueStream.readBit(valuePosition++)) {
+					leading = (int) valueStream.read(valuePosition, 5);
+					final int meaningful = (int) valueStream.read(valuePosition + 5, 6) + 1;
+					valuePosition += 11;
+					trailing = Long.SIZE - leading - meaningful;
+				}
+				final int meaningful = Long.SIZE - leading - trailing;
+				bits ^= valueStream.read(valuePosition, meaningful) << trailing;
+				valuePosition += meaningful;
+			}
+			return Double.longBitsToDouble(bits);
+		}
+	}
+}
@@ -0,0 +1,406 @@
+package lungsimulator.history;
+
+import java.util.List;
+
+import lungsimulator.SampleListener;
+import lungsimulator.exceptions.InspireException;
+
+/**
+ * Downsampled views of the samples of a simulation at several resolutions,
+ * for charts of long windows. Level k keeps the minimum and the maximum of
+ * each column over buckets of factor^k samples, level 0 being the samples
+ * themselves; a chart draws the two extremes of each bucket, so the peaks stay
+ * visible at any zoom. The levels are updated incrementally: a complete bucket
+ * of a level is merged in the open bucket of the next one, so a sample costs a
+ * constant amount of work. Each level retains its last buckets in a ring of
+ * fixed size, so the memory does not grow with the session and the coarser
+ * levels reach further back in time.
+ */
+public class MinMaxPyramid implements SampleListener {
+
+	public static final int DEFAULT_FACTOR = 4;
+
+	/**
+	 * Eleven levels of factor 4 reach buckets of about a million samples
+	 */
+	public static final int DEFAULT_LEVELS = 11;
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * Column of the time, as in {@link lungsimulator.CircuitBuilder#TIME_COLUMN}
+	 */
+	private static final int TIME_COLUMN = 0;
+
+	private final int width;
+	private final int factor;
+	private final Level[] levels;
+
+	/**
+	 * Times of the first and of the last sample, to estimate the time step
+	 */
+	private double startTime = Double.NaN;
+	private double endTime = Double.NaN;
+	private long sampleCount;
+
+	/**
+	 * @param columns names of the values of a sample, the first one is the
+	 *                time
+	 */
+	public MinMaxPyramid(final List<String> columns) {
+		this(columns, DEFAULT_FACTOR, DEFAULT_LEVELS, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param columns  names of the values of a sample, the first one is the
+	 *                 time
+	 * @param factor   samples of a bucket of a level for each sample of a bucket
+	 *                 of the previous one
+	 * @param levels   number of levels
+	 * @param capacity buckets retained by each level
+	 */
+	public MinMaxPyramid(final List<String> columns, final int factor, final int levels, final int capacity) {
+		if (columns.isEmpty() || factor < 2 || levels < 1 || capacity < 1) {
+			throw new InspireException("Invalid pyramid size");
+		}
+		this.width = columns.size();
+		this.factor = factor;
+		this.levels = new Level[levels];
+		for (int level = 0; level < levels; level++) {
+			this.levels[level] = new Level(width, capacity);
+		}
+	}
+
+	@Override
+	public void onSample(final double[] sample) {
+		append(sample);
+	}
+
+	/**
+	 * Adds a sample to every level; the time must not decrease
+	 *
+	 * @param sample values in the order of the columns
+	 */
+	public synchronized void append(final double[] sample) {
+		final double time = sample[TIME_COLUMN];
+		if (sampleCount == 0) {
+			startTime = time;
+		}
+		endTime = time;
+		sampleCount++;
+
+		// a sample is a complete bucket of level 0
+		final Level first = levels[0];
+		final int slot = first.nextSlot();
+		first.firstTimes[slot] = time;
+		first.lastTimes[slot] = time;
+		final int offset = slot * width;
+		for (int column = 1; column < width; column++) {
+			first.mins[offset + column] = sample[column];
+			first.maxs[offset + column] = sample[column];
+			first.minFirst[offset + column] = true;
+		}
+		propagate(slot);
+	}
+
+	/**
+	 * Merges the bucket just completed in level 0 in the open bucket of level 1,
+	 * and so on while the open buckets are completed after factor buckets
+	 */
+	private void propagate(final int slot) {
+		int current = 0;
+		int currentSlot = slot;
+		while (current + 1 < levels.length) {
+			final Level source = levels[current];
+			final Level target = levels[current + 1];
+			final int offset = currentSlot * width;
+			if (target.openCount == 0) {
+				target.openFirstTime = source.firstTimes[currentSlot];
+				System.arraycopy(source.mins, offset, target.openMins, 0, width);
+				System.arraycopy(source.maxs, offset, target.openMaxs, 0, width);
+				System.arraycopy(source.minFirst, offset, target.openMinFirst, 0, width);
+			} else {
+				for (int column = 1; column < width; column++) {
+					// the extremes of the later bucket come after the ones kept so far
+					final boolean newMin = source.mins[offset + column] < target.openMins[column];
+					final boolean newMax = source.maxs[offset + column] > target.openMaxs[column];
+					if (newMin) {
+						target.openMins[column] = source.mins[offset + column];
+					}
+					if (newMax) {
+						target.openMaxs[column] = source.maxs[offset + column];
+					}
+					if (newMin && newMax) {
+						target.openMinFirst[column] = source.minFirst[offset + column];
+					} else if (newMin) {
+						target.openMinFirst[column] = false;
+					} else if (newMax) {
+						target.openMinFirst[column] = true;
+					}
+				}
+			}
+			target.openLastTime = source.lastTimes[currentSlot];
+			target.openCount++;
+			if (target.openCount < factor) {
+				return;
+			}
+			currentSlot = target.commitOpen();
+			current++;
+		}
+	}
+
+	/**
+	 * Reads the extremes of a column between two times from the finest level
+	 * with no more points than the destinations can hold, the coarsest level if
+	 * none of them
+	 *
+	 * @param column   index of the column
+	 * @param fromTime first time, included
+	 * @param toTime   last time, included
+	 * @param times    destination of the times: first and last time of each
+	 *                 bucket
+	 * @param values   destination of the values: minimum and maximum of each
+	 *                 bucket, in the order they were reached
+	 * @return number of points, -1 if the level with the right resolution no
+	 *         longer retains the start of the range
+	 */
+	public synchronized int read(final int column, final double fromTime, final double toTime, final double[] times,
+			final double[] values) {
+		if (column < 0 || column >= width) {
+			throw new IndexOutOfBoundsException("Column " + column);
+		}
+		final int maxPoints = Math.min(times.length, values.length);
+		if (sampleCount == 0 || toTime < startTime || fromTime > endTime) {
+			return 0;
+		}
+
+		// samples in the range, from the average time step
+		final double from = Math.max(fromTime, startTime);
+		final double to = Math.min(toTime, endTime);
+		final double step = sampleCount > 1 ? (endTime - startTime) / (sampleCount - 1) : 1;
+		final double samples = step > 0 ? (to - from) / step + 1 : sampleCount;
+
+		double bucketSamples = 1;
+		for (int level = 0; level < levels.length; level++, bucketSamples *= factor) {
+			final Level candidate = levels[level];
+			final boolean last = level == levels.length - 1;
+			if (!candidate.retains(from)) {
+				// the finer levels would be used if they had not discarded the range
+				if (!last && (level == 0 ? samples : 2 * Math.ceil(samples / bucketSamples)) <= maxPoints) {
+					return -1;
+				}
+				continue;
+			}
+			// the open buckets are drawn as one more bucket
+			final long buckets = candidate.countBuckets(fromTime, toTime) + (level > 0 ? 1 : 0);
+			if (last || (level == 0 ? buckets : 2 * buckets) <= maxPoints) {
+				int count = candidate.read(level == 0, column, fromTime, toTime, times, values, maxPoints);
+				if (level > 0 && count < maxPoints) {
+					count = readTail(level, column, fromTime, toTime, times, values, count, maxPoints);
+				}
+				return count;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Emits the samples not yet in a complete bucket of a level as a last
+	 * bucket: the open buckets of the level and of the finer ones, from the
+	 * oldest to the newest
+	 */
+	private int readTail(final int level, final int column, final double fromTime, final double toTime,
+			final double[] times, final double[] values, final int count, final int maxPoints) {
+		double firstTime = Double.NaN;
+		double lastTime = Double.NaN;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		boolean minFirst = true;
+		for (int current = level; current > 0; current--) {
+			final Level open = levels[current];
+			if (open.openCount == 0) {
+				continue;
+			}
+			if (Double.isNaN(firstTime)) {
+				firstTime = open.openFirstTime;
+			}
+			lastTime = open.openLastTime;
+			if (column == TIME_COLUMN) {
+				continue;
+			}
+			final boolean newMin = open.openMins[column] < min;
+			final boolean newMax = open.openMaxs[column] > max;
+			if (newMin) {
+				min = open.openMins[column];
+			}
+			if (newMax) {
+				max = open.openMaxs[column];
+			}
+			if (newMin && newMax) {
+				minFirst = open.openMinFirst[column];
+			} else if (newMin) {
+				minFirst = false;
+			} else if (newMax) {
+				minFirst = true;
+			}
+		}
+		if (Double.isNaN(firstTime) || firstTime > toTime || lastTime < fromTime) {
+			return count;
+		}
+		if (column == TIME_COLUMN) {
+			return Level.emit(false, firstTime, lastTime, firstTime, lastTime, true, times, values, count, maxPoints);
+		}
+		return Level.emit(false, firstTime, lastTime, min, max, minFirst, times, values, count, maxPoints);
+	}
+
+	/**
+	 * Discards all the samples
+	 */
+	public synchronized void clear() {
+		for (final Level level : levels) {
+			level.committed = 0;
+			level.openCount = 0;
+		}
+		sampleCount = 0;
+		startTime = Double.NaN;
+		endTime = Double.NaN;
+	}
+
+	/**
+	 * Buckets of one resolution: a ring of complete buckets and the open one
+	 */
+	private static final class Level {
+		private final int width;
+		private final int capacity;
+		private final double[] firstTimes;
+		private final double[] lastTimes;
+		private final double[] mins;
+		private final double[] maxs;
+		private final boolean[] minFirst;
+
+		/**
+		 * Buckets completed since the start, the last capacity ones are retained
+		 */
+		private long committed;
+
+		private int openCount;
+		private double openFirstTime;
+		private double openLastTime;
+		private final double[] openMins;
+		private final double[] openMaxs;
+		private final boolean[] openMinFirst;
+
+		private Level(final int width, final int capacity) {
+			this.width = width;
+			this.capacity = capacity;
+			firstTimes = new double[capacity];
+			lastTimes = new double[capacity];
+			mins = new double[capacity * width];
+			maxs = new double[capacity * width];
+			minFirst = new boolean[capacity * width];
+			openMins = new double[width];
+			openMaxs = new double[width];
+			openMinFirst = new boolean[width];
+		}
+
+		private int slotOf(final long bucket) {
+			return (int) (bucket % capacity);
+		}
+
+		/**
+		 * @return slot of a new complete bucket, overwriting the oldest one
+		 */
+		private int nextSlot() {
+			return slotOf(committed++);
+		}
+
+		private int commitOpen() {
+			final int slot = nextSlot();
+			firstTimes[slot] = openFirstTime;
+			lastTimes[slot] = openLastTime;
+			System.arraycopy(openMins, 0, mins, slot * width, width);
+			System.arraycopy(openMaxs, 0, maxs, slot * width, width);
+			System.arraycopy(openMinFirst, 0, minFirst, slot * width, width);
+			openCount = 0;
+			return slot;
+		}
+
+		/**
+		 * @return true if the oldest retained bucket is not after the time
+		 */
+		private boolean retains(final double time) {
+			return committed <= capacity || firstTimes[slotOf(committed - capacity)] <= time;
+		}
+
+		/**
+		 * @return first retained bucket that ends at or after the time
+		 */
+		private long firstBucket(final double time) {
+			long low = Math.max(0, committed - capacity);
+			long high = committed;
+			while (low < high) {
+				final long mid = (low + high) >>> 1;
+				if (lastTimes[slotOf(mid)] < time) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * @return number of complete buckets that overlap a range
+		 */
+		private long countBuckets(final double fromTime, final double toTime) {
+			final long first = firstBucket(fromTime);
+			long low = first;
+			long high = committed;
+			while (low < high) {
+				final long mid = (low + high) >>> 1;
+				if (firstTimes[slotOf(mid)] <= toTime) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low - first;
+		}
+
+		/**
+		 * Emits the complete buckets that overlap a range
+		 */
+		private int read(final boolean samples, final int column, final double fromTime,
+				final double toTime, final double[] times, final double[] values, final int maxPoints) {
+			int count = 0;
+			for (long bucket = firstBucket(fromTime); bucket < committed && count < maxPoints; bucket++) {
+				final int slot = slotOf(bucket);
+				if (firstTimes[slot] > toTime) {
+					return count;
+				}
+				final int offset = slot * width + column;
+				if (column == TIME_COLUMN) {
+					count = emit(samples, firstTimes[slot], lastTimes[slot], firstTimes[slot], lastTimes[slot], true,
+							times, values, count, maxPoints);
+				} else {
+					count = emit(samples, firstTimes[slot], lastTimes[slot], mins[offset], maxs[offset],
+							minFirst[offset], times, values, count, maxPoints);
+				}
+			}
+			return count;
+		}
+
+		private static int emit(final boolean sample, final double firstTime, final double lastTime,
+				final double min, final double max, final boolean minFirst, final double[] times,
+				final double[] values, final int count, final int maxPoints) {
+			int next = count;
+			times[next] = firstTime;
+			values[next++] = minFirst ? min : max;
+			if (!sample && next < maxPoints) {
+				times[next] = lastTime;
+				values[next++] = minFirst ? max : min;
+			}
+			return next;
+		}
+	}
+}
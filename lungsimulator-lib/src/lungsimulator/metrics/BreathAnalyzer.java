@@ -0,0 +1,184 @@
+package lungsimulator.metrics;
+
+import lungsimulator.SampleListener;
+import lungsimulator.exceptions.InspireException;
+
+/**
+ * Measures the clinical values of each breath from the samples of the
+ * simulation: the airway flow is integrated to a volume and its sign changes
+ * mark the phases, an inspiration starting when the flow rises above a
+ * threshold and ending when it falls below the opposite one, so the noise
+ * around zero flow does not split a breath. A sample updates a few running
+ * values in constant time and without allocations; the metrics of a breath
+ * are published when the next one starts.
+ */
+public class BreathAnalyzer implements SampleListener {
+
+	/**
+	 * Flow in L/s above which the air is entering the lungs
+	 */
+	public static final double DEFAULT_FLOW_THRESHOLD = 0.005;
+
+	/**
+	 * Column of the time, as in {@link lungsimulator.CircuitBuilder#TIME_COLUMN}
+	 */
+	private static final int TIME_COLUMN = 0;
+
+	private final int pressureColumn;
+	private final int flowColumn;
+
+	/**
+	 * 1 if the flow of the column is positive during the inspiration, -1
+	 * otherwise
+	 */
+	private final double flowSign;
+
+	private final double flowThreshold;
+
+	/**
+	 * Values of the previous sample
+	 */
+	private double lastTime = Double.NaN;
+	private double lastPressure;
+	private double lastFlow;
+
+	/**
+	 * Integral of the airway flow since the start of the simulation
+	 */
+	private double volume;
+
+	/**
+	 * True from the start of an inspiration to the start of the expiration
+	 */
+	private boolean inspiring;
+
+	/**
+	 * Breath in progress, written only by the thread that publishes the samples
+	 */
+	private final BreathMetrics current = new BreathMetrics();
+
+	private double startVolume;
+	private double inspirationEnd = Double.NaN;
+
+	/**
+	 * Last complete breath, guarded by itself
+	 */
+	private final BreathMetrics published = new BreathMetrics();
+
+	/**
+	 * @param pressureColumn column of the airway pressure in the sample
+	 * @param flowColumn     column of the airway flow in the sample
+	 * @param reversed       true if the flow is negative during the
+	 *                       inspiration
+	 */
+	public BreathAnalyzer(final int pressureColumn, final int flowColumn, final boolean reversed) {
+		this(pressureColumn, flowColumn, reversed, DEFAULT_FLOW_THRESHOLD);
+	}
+
+	/**
+	 * @param pressureColumn column of the airway pressure in the sample
+	 * @param flowColumn     column of the airway flow in the sample
+	 * @param reversed       true if the flow is negative during the
+	 *                       inspiration
+	 * @param flowThreshold  flow in L/s that starts an inspiration or an
+	 *                       expiration
+	 */
+	public BreathAnalyzer(final int pressureColumn, final int flowColumn, final boolean reversed,
+			final double flowThreshold) {
+		if (pressureColumn <= TIME_COLUMN || flowColumn <= TIME_COLUMN || !(flowThreshold > 0)) {
+			throw new InspireException("Invalid breath analyzer settings");
+		}
+		this.pressureColumn = pressureColumn;
+		this.flowColumn = flowColumn;
+		this.flowSign = reversed ? -1 : 1;
+		this.flowThreshold = flowThreshold;
+	}
+
+	@Override
+	public void onSample(final double[] sample) {
+		append(sample[TIME_COLUMN], sample[pressureColumn], flowSign * sample[flowColumn]);
+	}
+
+	/**
+	 * Adds the values of a step; the time must not decrease
+	 *
+	 * @param time     time of the step
+	 * @param pressure airway pressure
+	 * @param flow     airway flow, positive during the inspiration
+	 */
+	public void append(final double time, final double pressure, final double flow) {
+		if (Double.isNaN(lastTime)) {
+			lastTime = time;
+			lastPressure = pressure;
+			lastFlow = flow;
+			return;
+		}
+		volume += 0.5 * (flow + lastFlow) * (time - lastTime);
+
+		if (inspiring) {
+			if (flow < -flowThreshold) {
+				inspiring = false;
+				inspirationEnd = time;
+			} else {
+				current.tidalVolume = Math.max(current.tidalVolume, volume - startVolume);
+				if (flow <= flowThreshold) {
+					current.plateauPressure = pressure;
+				}
+			}
+		} else if (flow > flowThreshold && lastFlow <= flowThreshold) {
+			startBreath(time);
+		}
+		if (!Double.isNaN(current.startTime)) {
+			current.peakPressure = Math.max(current.peakPressure, pressure);
+		}
+
+		lastTime = time;
+		lastPressure = pressure;
+		lastFlow = flow;
+	}
+
+	/**
+	 * Publishes the breath in progress, if complete, and starts a new one
+	 *
+	 * @param time start of the new breath
+	 */
+	private void startBreath(final double time) {
+		if (!Double.isNaN(inspirationEnd)) {
+			current.inspiratoryTime = inspirationEnd - current.startTime;
+			current.expiratoryTime = time - inspirationEnd;
+			current.breathCount = published.breathCount + 1;
+			synchronized (published) {
+				published.copyFrom(current);
+			}
+		}
+		inspiring = true;
+		inspirationEnd = Double.NaN;
+		startVolume = volume;
+		current.startTime = time;
+		current.tidalVolume = 0;
+		current.peakPressure = lastPressure;
+		current.plateauPressure = Double.NaN;
+		current.peep = lastPressure;
+	}
+
+	/**
+	 * Copies the last complete breath, without allocations
+	 *
+	 * @param destination receiver of the values
+	 * @return the destination, not valid if no breath has been completed
+	 */
+	public BreathMetrics copyLatest(final BreathMetrics destination) {
+		synchronized (published) {
+			destination.copyFrom(published);
+		}
+		return destination;
+	}
+
+	/**
+	 * @return a copy of the last complete breath, not valid if no breath has
+	 *         been completed
+	 */
+	public BreathMetrics getLatest() {
+		return copyLatest(new BreathMetrics());
+	}
+}
@@ -0,0 +1,122 @@
+package lungsimulator.metrics;
+
+/**
+ * Clinical values of a complete breath, from the start of its inspiration to
+ * the start of the next one. Pressures are in cmH2O, volumes in L, times in
+ * seconds; a value that cannot be measured is NaN.
+ */
+public class BreathMetrics {
+
+	/**
+	 * Breaths completed since the start of the simulation, 0 if none
+	 */
+	long breathCount;
+
+	/**
+	 * Time of the start of the breath
+	 */
+	double startTime = Double.NaN;
+
+	/**
+	 * Volume inspired during the breath
+	 */
+	double tidalVolume = Double.NaN;
+
+	/**
+	 * Highest airway pressure of the breath
+	 */
+	double peakPressure = Double.NaN;
+
+	/**
+	 * Airway pressure at the end of the inspiration while the flow is about
+	 * zero, NaN if the flow did not stop before the expiration
+	 */
+	double plateauPressure = Double.NaN;
+
+	/**
+	 * Airway pressure at the end of the previous expiration
+	 */
+	double peep = Double.NaN;
+
+	double inspiratoryTime = Double.NaN;
+
+	double expiratoryTime = Double.NaN;
+
+	/**
+	 * Copies the values of another breath
+	 *
+	 * @param other breath to copy
+	 */
+	void copyFrom(final BreathMetrics other) {
+		breathCount = other.breathCount;
+		startTime = other.startTime;
+		tidalVolume = other.tidalVolume;
+		peakPressure = other.peakPressure;
+		plateauPressure = other.plateauPressure;
+		peep = other.peep;
+		inspiratoryTime = other.inspiratoryTime;
+		expiratoryTime = other.expiratoryTime;
+	}
+
+	/**
+	 * @return true if at least a breath has been completed
+	 */
+	public boolean isValid() {
+		return breathCount > 0;
+	}
+
+	public long getBreathCount() {
+		return breathCount;
+	}
+
+	public double getStartTime() {
+		return startTime;
+	}
+
+	public double getTidalVolume() {
+		return tidalVolume;
+	}
+
+	public double getPeakPressure() {
+		return peakPressure;
+	}
+
+	public double getPlateauPressure() {
+		return plateauPressure;
+	}
+
+	public double getPeep() {
+		return peep;
+	}
+
+	public double getInspiratoryTime() {
+		return inspiratoryTime;
+	}
+
+	public double getExpiratoryTime() {
+		return expiratoryTime;
+	}
+
+	/**
+	 * @return breaths per minute
+	 */
+	public double getRespiratoryRate() {
+		return 60 / (inspiratoryTime + expiratoryTime);
+	}
+
+	/**
+	 * @return inspiratory time over expiratory time, e.g. 0.5 for 1:2
+	 */
+	public double getIeRatio() {
+		return inspiratoryTime / expiratoryTime;
+	}
+
+	/**
+	 * @return tidal volume over the difference between peak pressure and PEEP,
+	 *         in L/cmH2O; NaN if the pressure did not rise
+	 */
+	public double getDynamicCompliance() {
+		final double drivingPressure = peakPressure - peep;
+		return drivingPressure > 0 ? tidalVolume / drivingPressure : Double.NaN;
+	}
+}
@@ -0,0 +1,179 @@
+package lungsimulator.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets, in the style
+ * of HdrHistogram: values up to 127 ns are counted exactly, larger values fall
+ * in one of 64 linear sub-buckets of their power of two, so every percentile
+ * is reported with a relative error below 1/64. The buckets are allocated once
+ * and recording is lock-free, so the simulation thread can record while
+ * another thread takes snapshots.
+ */
+public final class LatencyHistogram {
+
+	/**
+	 * Sub-buckets per power of two
+	 */
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Enough buckets for any positive long value
+	 */
+	private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * @param nanos latency to record, negative values are counted as 0
+	 */
+	public void record(final long nanos) {
+		final long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucketIndex(value));
+		totalCount.incrementAndGet();
+		totalNanos.addAndGet(value);
+		long max = maxNanos.get();
+		while (value > max && !maxNanos.compareAndSet(max, value)) {
+			max = maxNanos.get();
+		}
+	}
+
+	static int bucketIndex(final long value) {
+		if (value < 2 * SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * @return highest value that falls in the bucket
+	 */
+	static long highestValue(final int index) {
+		if (index < 2 * SUB_BUCKETS) {
+			return index;
+		}
+		final int shift = index / SUB_BUCKETS - 1;
+		final long lowest = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	public void reset() {
+		for (int i = 0; i != BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		totalCount.set(0);
+		totalNanos.set(0);
+		maxNanos.set(0);
+	}
+
+	/**
+	 * @return copy of the current state; values recorded while it is taken may
+	 *         be missing from it
+	 */
+	public Snapshot snapshot() {
+		final long[] copy = new long[BUCKETS];
+		for (int i = 0; i != BUCKETS; i++) {
+			copy[i] = counts.get(i);
+		}
+		return new Snapshot(copy, totalCount.get(), totalNanos.get(), maxNanos.get());
+	}
+
+	/**
+	 * Immutable state of a histogram
+	 */
+	public static final class Snapshot {
+
+		private final long[] counts;
+		private final long count;
+		private final long totalNanos;
+		private final long maxNanos;
+
+		private Snapshot(final long[] counts, final long count, final long totalNanos, final long maxNanos) {
+			this.counts = counts;
+			this.count = count;
+			this.totalNanos = totalNanos;
+			this.maxNanos = maxNanos;
+		}
+
+		/**
+		 * @param previous earlier snapshot of the same histogram
+		 * @return values recorded after the earlier snapshot; the maximum is the
+		 *         highest value of the interval within the bucket precision
+		 */
+		public Snapshot since(final Snapshot previous) {
+			final long[] delta = new long[BUCKETS];
+			long max = 0;
+			for (int i = 0; i != BUCKETS; i++) {
+				delta[i] = counts[i] - previous.counts[i];
+				if (delta[i] > 0) {
+					max = Math.min(highestValue(i), maxNanos);
+				}
+			}
+			return new Snapshot(delta, count - previous.count, totalNanos - previous.totalNanos, max);
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @param percentile value between 0 and 100
+		 * @return latency in nanoseconds below which the given percentage of the
+		 *         values falls, 0 if nothing has been recorded
+		 */
+		public long getValueAtPercentile(final double percentile) {
+			final long total = Math.min(count, sum());
+			if (total == 0) {
+				return 0;
+			}
+			final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+			long seen = 0;
+			for (int i = 0; i != BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(highestValue(i), maxNanos);
+				}
+			}
+			return maxNanos;
+		}
+
+		private long sum() {
+			long sum = 0;
+			for (final long bucket : counts) {
+				sum += bucket;
+			}
+			return sum;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+
+		public double getMeanNanos() {
+			return count == 0 ? 0 : (double) totalNanos / count;
+		}
+
+		/**
+		 * @param percentile value between 0 and 100
+		 * @return latency in milliseconds
+		 */
+		public double getMillisAtPercentile(final double percentile) {
+			return toMillis(getValueAtPercentile(percentile));
+		}
+
+		public double getMaxMillis() {
+			return toMillis(maxNanos);
+		}
+
+		private static double toMillis(final long nanos) {
+			return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package lungsimulator.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of the metrics of a simulation: a latency histogram for each phase
+ * of a step and a set of event counters. Recording is lock-free; the user
+ * interfaces read it through snapshots, either cumulative or limited to the
+ * interval since the previous periodic snapshot.
+ */
+public class SimulationMetrics {
+
+	/**
+	 * Timed phases of a simulation step, and of the updates of the user
+	 * interface
+	 */
+	public enum Phase {
+		/**
+		 * Whole step
+		 */
+		STEP("Step"),
+		/**
+		 * Round trip of the request of the ventilator pressure
+		 */
+		VENTILATOR("Ventilator"),
+		/**
+		 * Evaluation of the formulas of the time dependent elements
+		 */
+		FORMULAS("Formulas"),
+		/**
+		 * Construction of the matrix and solution of the circuit
+		 */
+		SOLVER("Solver"),
+		/**
+		 * Collection of the flows and pressures
+		 */
+		UPDATE_DATA("Update data"),
+		/**
+		 * From the scheduling of an update of the user interface to its
+		 * acknowledgement by the browser
+		 */
+		UI_PUSH("UI push round trip");
+
+		private final String label;
+
+		Phase(final String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/**
+	 * Counted events
+	 */
+	public enum Counter {
+		/**
+		 * The solver was built again after a failed step
+		 */
+		SOLVER_RESTARTS("Solver restarts"),
+		/**
+		 * The solver stopped without a solution
+		 */
+		CONVERGENCE_FAILURES("Convergence failures"),
+		/**
+		 * The ventilator pressure was missing or arrived later than a step
+		 */
+		VENTILATOR_STALE("Stale ventilator values"),
+		/**
+		 * A step lasted longer than its time step
+		 */
+		DEADLINE_MISSES("Deadline misses"),
+		/**
+		 * An update of the user interface was skipped because the previous one
+		 * was still pending
+		 */
+		DROPPED_UI_UPDATES("Dropped UI updates"),
+		/**
+		 * A sample was dropped by a full queue of the simulation pipeline
+		 */
+		PIPELINE_DROPS("Dropped samples"),
+		/**
+		 * A speculative step was solved again with the reply of the ventilator
+		 */
+		SPECULATION_MISSES("Speculation misses");
+
+		private final String label;
+
+		Counter(final String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	private final Map<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+	private final Map<Counter, AtomicLong> counters = new EnumMap<>(Counter.class);
+
+	/**
+	 * Last periodic snapshot, the next interval starts from it
+	 */
+	private Snapshot lastInterval;
+
+	/**
+	 * Init the histograms and the counters
+	 */
+	public SimulationMetrics() {
+		for (final Phase phase : Phase.values()) {
+			histograms.put(phase, new LatencyHistogram());
+		}
+		for (final Counter counter : Counter.values()) {
+			counters.put(counter, new AtomicLong());
+		}
+	}
+
+	/**
+	 * @param phase timed phase
+	 * @param nanos duration of the phase
+	 */
+	public void record(final Phase phase, final long nanos) {
+		histograms.get(phase).record(nanos);
+	}
+
+	public void increment(final Counter counter) {
+		counters.get(counter).incrementAndGet();
+	}
+
+	public void add(final Counter counter, final long delta) {
+		counters.get(counter).addAndGet(delta);
+	}
+
+	public long getCount(final Counter counter) {
+		return counters.get(counter).get();
+	}
+
+	public LatencyHistogram getHistogram(final Phase phase) {
+		return histograms.get(phase);
+	}
+
+	/**
+	 * @return everything recorded since the creation or the last reset
+	 */
+	public Snapshot snapshot() {
+		final Map<Phase, LatencyHistogram.Snapshot> phases = new EnumMap<>(Phase.class);
+		for (final Phase phase : Phase.values()) {
+			phases.put(phase, histograms.get(phase).snapshot());
+		}
+		final Map<Counter, Long> counts = new EnumMap<>(Counter.class);
+		for (final Counter counter : Counter.values()) {
+			counts.put(counter, counters.get(counter).get());
+		}
+		return new Snapshot(System.currentTimeMillis(), phases, counts);
+	}
+
+	/**
+	 * Snapshot to be taken periodically, e.g. by a reporter that logs or exports
+	 * the metrics
+	 *
+	 * @return what has been recorded since the previous call
+	 */
+	public synchronized Snapshot intervalSnapshot() {
+		final Snapshot current = snapshot();
+		final Snapshot interval = lastInterval == null ? current : current.since(lastInterval);
+		lastInterval = current;
+		return interval;
+	}
+
+	public synchronized void reset() {
+		for (final LatencyHistogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+		for (final AtomicLong counter : counters.values()) {
+			counter.set(0);
+		}
+		lastInterval = null;
+	}
+
+	/**
+	 * Immutable state of the registry
+	 */
+	public static final class Snapshot {
+
+		/**
+		 * Time of the snapshot in milliseconds since the epoch
+		 */
+		private final long timestamp;
+		private final Map<Phase, LatencyHistogram.Snapshot> phases;
+		private final Map<Counter, Long> counts;
+
+		private Snapshot(final long timestamp, final Map<Phase, LatencyHistogram.Snapshot> phases,
+				final Map<Counter, Long> counts) {
+			this.timestamp = timestamp;
+			this.phases = Collections.unmodifiableMap(phases);
+			this.counts = Collections.unmodifiableMap(counts);
+		}
+
+		private Snapshot since(final Snapshot previous) {
+			final Map<Phase, LatencyHistogram.Snapshot> deltaPhases = new EnumMap<>(Phase.class);
+			for (final Phase phase : Phase.values()) {
+				deltaPhases.put(phase, phases.get(phase).since(previous.phases.get(phase)));
+			}
+			final Map<Counter, Long> deltaCounts = new EnumMap<>(Counter.class);
+			for (final Counter counter : Counter.values()) {
+				deltaCounts.put(counter, counts.get(counter) - previous.counts.get(counter));
+			}
+			return new Snapshot(timestamp, deltaPhases, deltaCounts);
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public LatencyHistogram.Snapshot getPhase(final Phase phase) {
+			return phases.get(phase);
+		}
+
+		public long getCount(final Counter counter) {
+			return counts.get(counter);
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package lungsimulator.pipeline;
+
+/**
+ * What the producer of a stage of the pipeline does when the queue to the
+ * next stage is full
+ */
+public enum Backpressure {
+	/**
+	 * Waits until the next stage frees a row: nothing is lost, but a slow
+	 * consumer slows the producer down
+	 */
+	BLOCK,
+	/**
+	 * Drops the row and counts it: the producer never waits
+	 */
+	DROP
+}
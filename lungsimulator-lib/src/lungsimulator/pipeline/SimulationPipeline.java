@@ -0,0 +1,286 @@
+package lungsimulator.pipeline;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.DoubleSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.LungSimulator;
+import lungsimulator.SampleListener;
+import lungsimulator.exceptions.InspireException;
+import lungsimulator.metrics.SimulationMetrics;
+import lungsimulator.metrics.SimulationMetrics.Counter;
+import lungsimulator.utils.SpscRowQueue;
+
+/**
+ * Runs a simulation as a pipeline of stages, each on its own thread,
+ * connected by single producer single consumer queues allocated once:
+ * <ol>
+ * <li>ventilator: asks the ventilator its pressure once per time step and
+ * queues it; the solver takes the newest value, so it never waits for the
+ * network</li>
+ * <li>solver: the thread that calls {@link #step(double, double)} evaluates
+ * the formulas, solves the circuit and queues the sample of the step</li>
+ * <li>derived values and recording: passes the samples in batches to the
+ * sample listeners of the circuit, i.e. history, breath metrics, alarms and
+ * recorder, then queues them for the charts</li>
+ * <li>charts: {@link #publishCharts()}, on the thread of the user interface,
+ * adds the queued samples to the chart series, which are then read by that
+ * thread only</li>
+ * </ol>
+ * The queue to the derived values follows a {@link Backpressure} policy; the
+ * queue to the charts always drops the samples the user interface is too slow
+ * to take, counted as dropped UI updates, so rendering never delays the
+ * solver.
+ */
+public class SimulationPipeline {
+
+	public static final int DEFAULT_QUEUE_ROWS = 4096;
+
+	/**
+	 * Ventilator values that can wait for the solver
+	 */
+	private static final int VENTILATOR_ROWS = 64;
+
+	/**
+	 * Maximum number of samples handled by a wake up of the derived stage
+	 */
+	private static final int BATCH = 256;
+
+	/**
+	 * Busy waits of a stage before it starts to pause
+	 */
+	private static final int SPINS = 100;
+
+	/**
+	 * Pause of a stage without work, in nanoseconds
+	 */
+	private static final long IDLE_NANOS = 100_000;
+
+	/**
+	 * Wait for the ventilator thread when the pipeline stops, in milliseconds:
+	 * it may be blocked on a ventilator that does not reply
+	 */
+	private static final long VENTILATOR_JOIN_MILLIS = 1000;
+
+	private static final Logger LOGGER = Logger.getLogger(SimulationPipeline.class.getName());
+
+	private final LungSimulator lungSimulator;
+	private final CircuitBuilder circuitBuilder;
+	private final SimulationMetrics metrics;
+	private final DoubleSupplier ventilator;
+	private final long ventilatorPeriodNanos;
+	private final Backpressure backpressure;
+
+	private final SpscRowQueue ventilatorQueue;
+	private final SpscRowQueue sampleQueue;
+	private final SpscRowQueue chartQueue;
+
+	/**
+	 * Rows of each stage, reused at every step
+	 */
+	private final double[] ventilatorRow = new double[1];
+	private final double[] solverRow = new double[1];
+	private final double[] derivedRow;
+	private final double[] chartRow;
+
+	private final SampleListener solverSink = this::queueSample;
+	private final SpscRowQueue.RowHandler derivedHandler = this::derive;
+	private final SpscRowQueue.RowHandler chartHandler = this::chart;
+
+	private volatile boolean running;
+	private Thread ventilatorThread;
+	private Thread derivedThread;
+
+	/**
+	 * Pipeline asking the ventilator of the simulation its pressure, which
+	 * blocks the solver when the derived values fall behind
+	 *
+	 * @param lungSimulator simulation whose circuit is set up
+	 * @param timeStep      seconds between two requests to the ventilator
+	 */
+	public SimulationPipeline(final LungSimulator lungSimulator, final double timeStep) {
+		this(lungSimulator, lungSimulator::requestVentilatorValue, timeStep, Backpressure.BLOCK, DEFAULT_QUEUE_ROWS);
+	}
+
+	/**
+	 * @param lungSimulator simulation whose circuit is set up
+	 * @param ventilator    source of the ventilator pressure, NaN if it is
+	 *                      missing; called on the ventilator thread only
+	 * @param timeStep      seconds between two requests to the ventilator
+	 * @param backpressure  policy of the solver when the derived values fall
+	 *                      behind
+	 * @param queueRows     samples that can wait for the derived values and
+	 *                      for the charts
+	 */
+	public SimulationPipeline(final LungSimulator lungSimulator, final DoubleSupplier ventilator,
+			final double timeStep, final Backpressure backpressure, final int queueRows) {
+		if (!(timeStep > 0) || queueRows < 1) {
+			throw new InspireException("Invalid pipeline settings");
+		}
+		this.lungSimulator = lungSimulator;
+		this.circuitBuilder = lungSimulator.getCircuitBuilder();
+		this.metrics = lungSimulator.getMetrics();
+		this.ventilator = ventilator;
+		this.ventilatorPeriodNanos = (long) (timeStep * 1e9);
+		this.backpressure = backpressure;
+		final int width = circuitBuilder.getSampleColumns().size();
+		ventilatorQueue = new SpscRowQueue(1, VENTILATOR_ROWS);
+		sampleQueue = new SpscRowQueue(width, queueRows);
+		chartQueue = new SpscRowQueue(width, queueRows);
+		derivedRow = new double[width];
+		chartRow = new double[width];
+	}
+
+	/**
+	 * Starts the ventilator and the derived values stages; from now on the
+	 * sample listeners and the chart series are updated by the pipeline
+	 */
+	public synchronized void start() {
+		if (running) {
+			throw new InspireException("Pipeline already running");
+		}
+		running = true;
+		circuitBuilder.setSampleSink(solverSink);
+		ventilatorThread = new Thread(this::ventilatorLoop, "simulation-ventilator");
+		ventilatorThread.setDaemon(true);
+		derivedThread = new Thread(this::derivedLoop, "simulation-derived");
+		derivedThread.setDaemon(true);
+		derivedThread.start();
+		ventilatorThread.start();
+	}
+
+	/**
+	 * Waits for the derived values of the queued samples and stops the stages;
+	 * the chart queue can still be published. The solver must not be running.
+	 */
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		try {
+			derivedThread.join();
+			ventilatorThread.join(VENTILATOR_JOIN_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		circuitBuilder.setSampleSink(null);
+		if (ventilatorThread.isAlive() && LOGGER.isLoggable(Level.WARNING)) {
+			LOGGER.log(Level.WARNING, "The ventilator thread is still waiting for a reply");
+		}
+	}
+
+	/**
+	 * Executes a simulation step with the newest ventilator value; solver stage
+	 *
+	 * @param initialT moment of time at which the step begins
+	 * @param timeStep range between two step execution
+	 */
+	public void step(final double initialT, final double timeStep) {
+		final long stepStart = System.nanoTime();
+		boolean received = false;
+		while (ventilatorQueue.poll(solverRow)) {
+			received = true;
+		}
+		if (received) {
+			circuitBuilder.updateVentilatorValue(solverRow[0]);
+		} else {
+			metrics.increment(Counter.VENTILATOR_STALE);
+		}
+		lungSimulator.solveStep(initialT, timeStep, stepStart);
+	}
+
+	/**
+	 * Adds the samples queued since the previous call to the chart series;
+	 * always called by the same thread, usually the one of the user interface
+	 *
+	 * @return number of samples added
+	 */
+	public int publishCharts() {
+		return chartQueue.drain(chartHandler, Integer.MAX_VALUE);
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return samples waiting for the derived values, approximate
+	 */
+	public int getQueuedSamples() {
+		return sampleQueue.size();
+	}
+
+	private void ventilatorLoop() {
+		long next = System.nanoTime();
+		while (running) {
+			final double value = ventilator.getAsDouble();
+			if (!Double.isNaN(value)) {
+				ventilatorRow[0] = value;
+				// a full queue means the solver is paused: the value would be
+				// superseded anyway
+				ventilatorQueue.offer(ventilatorRow);
+			}
+			next += ventilatorPeriodNanos;
+			final long wait = next - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			} else {
+				next = System.nanoTime();
+			}
+		}
+	}
+
+	/**
+	 * Queues the sample of a step; called on the solver thread by the circuit
+	 */
+	private void queueSample(final double[] sample) {
+		if (sampleQueue.offer(sample)) {
+			return;
+		}
+		if (backpressure == Backpressure.BLOCK) {
+			int spins = 0;
+			while (derivedThread.isAlive()) {
+				idle(spins++);
+				if (sampleQueue.offer(sample)) {
+					return;
+				}
+			}
+		}
+		metrics.increment(Counter.PIPELINE_DROPS);
+	}
+
+	private void derivedLoop() {
+		int spins = 0;
+		while (running || sampleQueue.size() > 0) {
+			if (sampleQueue.drain(derivedHandler, BATCH) > 0) {
+				spins = 0;
+			} else {
+				idle(spins++);
+			}
+		}
+	}
+
+	private void derive(final double[] rows, final int offset, final int width) {
+		System.arraycopy(rows, offset, derivedRow, 0, width);
+		circuitBuilder.publishSample(derivedRow);
+		if (!chartQueue.offer(derivedRow)) {
+			metrics.increment(Counter.DROPPED_UI_UPDATES);
+		}
+	}
+
+	private void chart(final double[] rows, final int offset, final int width) {
+		System.arraycopy(rows, offset, chartRow, 0, width);
+		circuitBuilder.pushSeries(chartRow);
+	}
+
+	private static void idle(final int spins) {
+		if (spins < SPINS) {
+			Thread.onSpinWait();
+		} else {
+			LockSupport.parkNanos(IDLE_NANOS);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package lungsimulator.recorder;
+
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+
+/**
+ * Layout of a recording on disk. A recording is a folder with the names of
+ * the columns in {@value #COLUMNS_FILE}, one per line, and a sequence of
+ * segment files of the same size. A segment starts with a header of
+ * {@value #HEADER_SIZE} bytes, followed by a block of values for each column,
+ * so that a column of a segment is contiguous:
+ *
+ * <pre>
+ * offset  type    content
+ *  0      int     magic number
+ *  4      int     version
+ *  8      int     number of columns
+ * 12      int     rows per segment
+ * 16      int     rows written, updated after each batch
+ * 20      int     index of the segment
+ * 24      long    index in the recording of the first row of the segment
+ * 32      double  time of the first row
+ * 40      double  time of the last row written
+ * 64      double  rows per segment values of column 0, then column 1...
+ * </pre>
+ *
+ * The first and last times of the headers form the time index of the
+ * recording; the time column is not decreasing, so a row is found by time
+ * with a binary search. Values are little endian.
+ */
+final class RecordingFormat {
+
+	static final int MAGIC = 0x4C53494D;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+
+	static final int COLUMNS_OFFSET = 8;
+	static final int CAPACITY_OFFSET = 12;
+	static final int ROWS_OFFSET = 16;
+	static final int SEGMENT_OFFSET = 20;
+	static final int FIRST_ROW_OFFSET = 24;
+	static final int FIRST_TIME_OFFSET = 32;
+	static final int LAST_TIME_OFFSET = 40;
+
+	static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	static final String COLUMNS_FILE = "columns.txt";
+	static final String SEGMENT_PREFIX = "segment-";
+	static final String SEGMENT_SUFFIX = ".dat";
+
+	/**
+	 * Column of the time, which orders the rows
+	 */
+	static final int TIME_COLUMN = 0;
+
+	private RecordingFormat() {
+	}
+
+	static Path segmentPath(final Path directory, final int segment) {
+		return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+	}
+
+	static long segmentSize(final int columns, final int rows) {
+		return HEADER_SIZE + (long) columns * rows * Double.BYTES;
+	}
+
+	/**
+	 * @return position in the segment of a value
+	 */
+	static int valueOffset(final int rows, final int column, final int row) {
+		return HEADER_SIZE + (column * rows + row) * Double.BYTES;
+	}
+}
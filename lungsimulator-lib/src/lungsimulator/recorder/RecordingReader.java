@@ -0,0 +1,311 @@
+package lungsimulator.recorder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import lungsimulator.exceptions.InspireException;
+
+/**
+ * Reads a recording written by {@link SimulationRecorder}, also while it is
+ * being written: {@link #refresh()} picks up the new rows and segments. The
+ * segments are memory mapped, so a value is read without loading the rest of
+ * the recording and a scan reads only the pages it touches.
+ */
+public class RecordingReader implements Closeable {
+
+	private final Path directory;
+	private final List<String> columns;
+	private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+	/**
+	 * Time index: rows, first and last time of each segment, read from the
+	 * headers
+	 */
+	private int[] rows = new int[0];
+	private double[] firstTimes = new double[0];
+	private double[] lastTimes = new double[0];
+
+	private int segmentRows;
+	private long rowCount;
+
+	/**
+	 * Receives the rows of a scan
+	 */
+	@FunctionalInterface
+	public interface RowConsumer {
+		/**
+		 * @param row    index of the row in the recording
+		 * @param values values of the row; the array is reused for the next row
+		 */
+		void onRow(long row, double[] values);
+	}
+
+	/**
+	 * @param directory folder of the recording
+	 * @throws IOException if the recording cannot be read
+	 */
+	public RecordingReader(final Path directory) throws IOException {
+		this.directory = directory;
+		this.columns = Collections.unmodifiableList(
+				Files.readAllLines(directory.resolve(RecordingFormat.COLUMNS_FILE), StandardCharsets.UTF_8));
+		refresh();
+	}
+
+	/**
+	 * Maps the new segments and reads the headers again to see the rows written
+	 * since the last call
+	 *
+	 * @throws IOException if a segment cannot be read
+	 */
+	public final void refresh() throws IOException {
+		Path path = RecordingFormat.segmentPath(directory, segments.size());
+		while (Files.exists(path)) {
+			final MappedByteBuffer segment;
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+			segment.order(RecordingFormat.ORDER);
+			if (segment.capacity() < RecordingFormat.HEADER_SIZE || segment.getInt(0) != RecordingFormat.MAGIC
+					|| segment.getInt(4) != RecordingFormat.VERSION
+					|| segment.getInt(RecordingFormat.COLUMNS_OFFSET) != columns.size()) {
+				throw new InspireException("Invalid recording segment " + path);
+			}
+			segmentRows = segment.getInt(RecordingFormat.CAPACITY_OFFSET);
+			segments.add(segment);
+			path = RecordingFormat.segmentPath(directory, segments.size());
+		}
+
+		final int count = segments.size();
+		rows = new int[count];
+		firstTimes = new double[count];
+		lastTimes = new double[count];
+		rowCount = 0;
+		for (int i = 0; i < count; i++) {
+			final MappedByteBuffer segment = segments.get(i);
+			rows[i] = segment.getInt(RecordingFormat.ROWS_OFFSET);
+			firstTimes[i] = segment.getDouble(RecordingFormat.FIRST_TIME_OFFSET);
+			lastTimes[i] = segment.getDouble(RecordingFormat.LAST_TIME_OFFSET);
+			rowCount += rows[i];
+		}
+	}
+
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @param name name of the column, e.g. "pressure:a" or "flow:R1"
+	 * @return index of the column, -1 if the recording does not have it
+	 */
+	public int getColumn(final String name) {
+		return columns.indexOf(name);
+	}
+
+	/**
+	 * @return rows readable since the last refresh
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return time of the first row, NaN if the recording is empty
+	 */
+	public double getStartTime() {
+		return rowCount == 0 ? Double.NaN : firstTimes[0];
+	}
+
+	/**
+	 * @return time of the last row readable since the last refresh, NaN if the
+	 *         recording is empty
+	 */
+	public double getEndTime() {
+		for (int i = rows.length - 1; i >= 0; i--) {
+			if (rows[i] > 0) {
+				return lastTimes[i];
+			}
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * @param row    index of the row in the recording
+	 * @param column index of the column
+	 * @return the recorded value
+	 */
+	public double getValue(final long row, final int column) {
+		checkRow(row);
+		if (column < 0 || column >= columns.size()) {
+			throw new IndexOutOfBoundsException("Column " + column);
+		}
+		return segments.get((int) (row / segmentRows))
+				.getDouble(RecordingFormat.valueOffset(segmentRows, column, (int) (row % segmentRows)));
+	}
+
+	/**
+	 * @param row index of the row in the recording
+	 * @return the simulation time of the row
+	 */
+	public double getTime(final long row) {
+		return getValue(row, RecordingFormat.TIME_COLUMN);
+	}
+
+	/**
+	 * @param time a simulation time
+	 * @return index of the first row at or after the time, the row count if all
+	 *         the rows are before it
+	 */
+	public long findRow(final double time) {
+		int low = 0;
+		int high = segments.size() - 1;
+		int segment = segments.size();
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			if (rows[mid] > 0 && lastTimes[mid] >= time) {
+				segment = mid;
+				high = mid - 1;
+			} else {
+				low = mid + 1;
+			}
+		}
+		if (segment == segments.size() || rows[segment] == 0) {
+			return rowCount;
+		}
+		final MappedByteBuffer buffer = segments.get(segment);
+		int first = 0;
+		int last = rows[segment] - 1;
+		while (first < last) {
+			final int mid = (first + last) >>> 1;
+			if (buffer.getDouble(RecordingFormat.valueOffset(segmentRows, RecordingFormat.TIME_COLUMN, mid)) < time) {
+				first = mid + 1;
+			} else {
+				last = mid;
+			}
+		}
+		return (long) segment * segmentRows + first;
+	}
+
+	/**
+	 * Copies consecutive values of a column, reading each segment in bulk
+	 *
+	 * @param column  index of the column
+	 * @param fromRow first row
+	 * @param dest    destination
+	 * @param offset  position in the destination
+	 * @param length  number of values
+	 */
+	public void read(final int column, final long fromRow, final double[] dest, final int offset, final int length) {
+		if (length == 0) {
+			return;
+		}
+		checkRow(fromRow);
+		checkRow(fromRow + length - 1);
+		long row = fromRow;
+		int copied = 0;
+		while (copied < length) {
+			final int segment = (int) (row / segmentRows);
+			final int segmentRow = (int) (row % segmentRows);
+			final int count = Math.min(length - copied, segmentRows - segmentRow);
+			final MappedByteBuffer view = segments.get(segment).duplicate();
+			view.order(RecordingFormat.ORDER);
+			view.position(RecordingFormat.valueOffset(segmentRows, column, segmentRow));
+			view.asDoubleBuffer().get(dest, offset + copied, count);
+			copied += count;
+			row += count;
+		}
+	}
+
+	/**
+	 * Passes the rows between two times to the consumer, in order
+	 *
+	 * @param fromTime first time, included
+	 * @param toTime   last time, included
+	 * @param consumer receiver of the rows
+	 * @return number of rows scanned
+	 */
+	public long scan(final double fromTime, final double toTime, final RowConsumer consumer) {
+		final double[] values = new double[columns.size()];
+		long row = findRow(fromTime);
+		final long first = row;
+		for (; row < rowCount; row++) {
+			final MappedByteBuffer segment = segments.get((int) (row / segmentRows));
+			final int segmentRow = (int) (row % segmentRows);
+			values[RecordingFormat.TIME_COLUMN] = segment
+					.getDouble(RecordingFormat.valueOffset(segmentRows, RecordingFormat.TIME_COLUMN, segmentRow));
+			if (values[RecordingFormat.TIME_COLUMN] > toTime) {
+				break;
+			}
+			for (int column = 1; column < values.length; column++) {
+				values[column] = segment.getDouble(RecordingFormat.valueOffset(segmentRows, column, segmentRow));
+			}
+			consumer.onRow(row, values);
+		}
+		return row - first;
+	}
+
+	/**
+	 * Writes the rows between two times as comma separated values with a header
+	 * line of the column names
+	 *
+	 * @param out      destination
+	 * @param fromTime first time, included
+	 * @param toTime   last time, included
+	 * @throws IOException if the destination cannot be written
+	 */
+	public void exportCsv(final Writer out, final double fromTime, final double toTime) throws IOException {
+		out.write(String.join(",", columns));
+		out.write('\n');
+		final StringBuilder line = new StringBuilder();
+		final IOException[] failure = new IOException[1];
+		scan(fromTime, toTime, (row, values) -> {
+			if (failure[0] != null) {
+				return;
+			}
+			line.setLength(0);
+			for (int column = 0; column < values.length; column++) {
+				if (column > 0) {
+					line.append(',');
+				}
+				line.append(values[column]);
+			}
+			line.append('\n');
+			try {
+				out.append(line);
+			} catch (IOException e) {
+				failure[0] = e;
+			}
+		});
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		out.flush();
+	}
+
+	private void checkRow(final long row) {
+		if (row < 0 || row >= rowCount) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+		}
+	}
+
+	/**
+	 * Releases the segments; the mappings are unmapped when they are collected
+	 */
+	@Override
+	public void close() {
+		segments.clear();
+		rows = new int[0];
+		firstTimes = new double[0];
+		lastTimes = new double[0];
+		rowCount = 0;
+	}
+}
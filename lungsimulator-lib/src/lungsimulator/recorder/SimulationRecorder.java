@@ -0,0 +1,251 @@
+package lungsimulator.recorder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import lungsimulator.SampleListener;
+import lungsimulator.exceptions.InspireException;
+import lungsimulator.utils.SpscRowQueue;
+
+/**
+ * Records every step of a simulation at full resolution in the columnar
+ * format described by {@link RecordingFormat}. The thread that publishes the
+ * samples only copies them in a single producer single consumer queue; a
+ * background thread writes the rows in memory mapped segments, so the heap
+ * does not grow with the length of the recording. If the writer falls behind and the queue
+ * fills up, rows are dropped and counted rather than delaying the simulation.
+ */
+public class SimulationRecorder implements SampleListener, Closeable {
+
+	/**
+	 * A segment of 2^16 rows holds about a minute of data at 1 kHz
+	 */
+	public static final int DEFAULT_SEGMENT_ROWS = 1 << 16;
+
+	/**
+	 * Room for about 8 seconds of data at 1 kHz
+	 */
+	public static final int DEFAULT_QUEUE_ROWS = 1 << 13;
+
+	/**
+	 * Rows written before the header is updated
+	 */
+	private static final int BATCH = 1024;
+
+	/**
+	 * Pause of the writer when the queue is empty
+	 */
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static final Logger LOGGER = Logger.getLogger(SimulationRecorder.class.getName());
+
+	private final Path directory;
+	private final int columns;
+	private final int segmentRows;
+	private final SpscRowQueue queue;
+	private final Thread writer;
+
+	private final AtomicLong recordedRows = new AtomicLong();
+	private final AtomicLong droppedRows = new AtomicLong();
+
+	private volatile boolean running = true;
+	private volatile IOException failure;
+
+	/**
+	 * Writer state
+	 */
+	private MappedByteBuffer segment;
+	private int segmentIndex = -1;
+	private int segmentRow;
+	private double lastTime;
+
+	/**
+	 * @param directory folder of the recording, created if missing; it must not
+	 *                  contain another recording
+	 * @param columns   names of the values of a sample, the first one is the
+	 *                  time
+	 * @throws IOException if the folder cannot be written
+	 */
+	public SimulationRecorder(final Path directory, final List<String> columns) throws IOException {
+		this(directory, columns, DEFAULT_SEGMENT_ROWS, DEFAULT_QUEUE_ROWS);
+	}
+
+	/**
+	 * @param directory   folder of the recording, created if missing; it must
+	 *                    not contain another recording
+	 * @param columns     names of the values of a sample, the first one is the
+	 *                    time
+	 * @param segmentRows rows of each segment file
+	 * @param queueRows   rows that can wait to be written
+	 * @throws IOException if the folder cannot be written
+	 */
+	public SimulationRecorder(final Path directory, final List<String> columns, final int segmentRows,
+			final int queueRows) throws IOException {
+		if (columns.isEmpty() || segmentRows <= 0
+				|| RecordingFormat.segmentSize(columns.size(), segmentRows) > Integer.MAX_VALUE) {
+			throw new InspireException("Invalid recording size");
+		}
+		this.directory = directory;
+		this.columns = columns.size();
+		this.segmentRows = segmentRows;
+		this.queue = new SpscRowQueue(this.columns, queueRows);
+
+		Files.createDirectories(directory);
+		if (Files.exists(directory.resolve(RecordingFormat.COLUMNS_FILE))) {
+			throw new InspireException("A recording already exists in " + directory);
+		}
+		Files.write(directory.resolve(RecordingFormat.COLUMNS_FILE), columns, StandardCharsets.UTF_8);
+
+		writer = new Thread(this::writeLoop, "simulation-recorder");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Queues the sample of a step; called on the thread that publishes the samples
+	 */
+	@Override
+	public void onSample(final double[] sample) {
+		if (!queue.offer(sample)) {
+			droppedRows.incrementAndGet();
+		}
+	}
+
+	private void writeLoop() {
+		final SpscRowQueue.RowHandler handler = this::writeRow;
+		try {
+			while (running || queue.size() > 0) {
+				final int written = queue.drain(handler, BATCH);
+				if (written > 0) {
+					commitHeader();
+					recordedRows.addAndGet(written);
+				} else {
+					LockSupport.parkNanos(IDLE_NANOS);
+				}
+			}
+			if (segment != null) {
+				commitHeader();
+				segment.force();
+			}
+		} catch (RecordingException e) {
+			failure = e.getCause();
+			LOGGER.log(Level.SEVERE, "Recording stopped", e.getCause());
+		}
+	}
+
+	private void writeRow(final double[] rows, final int offset, final int width) {
+		if (segment == null || segmentRow == segmentRows) {
+			try {
+				nextSegment(rows[offset + RecordingFormat.TIME_COLUMN]);
+			} catch (IOException e) {
+				throw new RecordingException(e);
+			}
+		}
+		for (int column = 0; column < width; column++) {
+			segment.putDouble(RecordingFormat.valueOffset(segmentRows, column, segmentRow), rows[offset + column]);
+		}
+		segmentRow++;
+		lastTime = rows[offset + RecordingFormat.TIME_COLUMN];
+	}
+
+	/**
+	 * Completes the current segment and maps the following one
+	 */
+	private void nextSegment(final double firstTime) throws IOException {
+		if (segment != null) {
+			commitHeader();
+			segment.force();
+		}
+		segmentIndex++;
+		try (FileChannel channel = FileChannel.open(RecordingFormat.segmentPath(directory, segmentIndex),
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			segment = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+					RecordingFormat.segmentSize(columns, segmentRows));
+		}
+		segment.order(RecordingFormat.ORDER);
+		segment.putInt(0, RecordingFormat.MAGIC);
+		segment.putInt(4, RecordingFormat.VERSION);
+		segment.putInt(RecordingFormat.COLUMNS_OFFSET, columns);
+		segment.putInt(RecordingFormat.CAPACITY_OFFSET, segmentRows);
+		segment.putInt(RecordingFormat.ROWS_OFFSET, 0);
+		segment.putInt(RecordingFormat.SEGMENT_OFFSET, segmentIndex);
+		segment.putLong(RecordingFormat.FIRST_ROW_OFFSET, (long) segmentIndex * segmentRows);
+		segment.putDouble(RecordingFormat.FIRST_TIME_OFFSET, firstTime);
+		segment.putDouble(RecordingFormat.LAST_TIME_OFFSET, firstTime);
+		segmentRow = 0;
+	}
+
+	/**
+	 * Makes the written rows visible to the readers
+	 */
+	private void commitHeader() {
+		if (segment != null) {
+			segment.putDouble(RecordingFormat.LAST_TIME_OFFSET, lastTime);
+			segment.putInt(RecordingFormat.ROWS_OFFSET, segmentRow);
+		}
+	}
+
+	/**
+	 * Writes the queued rows and completes the recording
+	 *
+	 * @throws IOException if the recording could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		running = false;
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return rows written in the segments and visible to the readers
+	 */
+	public long getRecordedRows() {
+		return recordedRows.get();
+	}
+
+	/**
+	 * @return rows lost because the writer could not keep up
+	 */
+	public long getDroppedRows() {
+		return droppedRows.get();
+	}
+
+	/**
+	 * Carries a failure of the writer out of the queue handler
+	 */
+	private static final class RecordingException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		RecordingException(final IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+}
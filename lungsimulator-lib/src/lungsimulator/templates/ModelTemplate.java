@@ -0,0 +1,148 @@
+package lungsimulator.templates;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.components.Archetype;
+import lungsimulator.components.Element;
+import lungsimulator.components.Patient;
+import lungsimulator.components.SimulatorParams;
+import lungsimulator.exceptions.InspireException;
+import lungsimulator.utils.Validator;
+
+/**
+ * Validated model compiled once and shared by the simulations that start from
+ * it: the patient model and the archetype are read only, the formulas of the
+ * elements are resolved into their values at time 0, and each simulation gets
+ * its own copy of the demographic data, which the user can edit. A simulation
+ * that needs another patient model or archetype replaces it instead of
+ * changing the shared one.
+ */
+public final class ModelTemplate {
+
+	/**
+	 * Name of the built-in model, null for a custom one
+	 */
+	private final String name;
+
+	private final Patient patient;
+
+	private final Archetype archetype;
+
+	/**
+	 * Demographic data the copies are made from
+	 */
+	private final SimulatorParams demographicData;
+
+	/**
+	 * Value of each element of the patient model at time 0, NaN if it has no
+	 * formula
+	 */
+	private final double[] initialValues;
+
+	private ModelTemplate(final String name, final Patient patient, final Archetype archetype,
+			final SimulatorParams demographicData) {
+		this.name = name;
+		this.patient = patient;
+		this.archetype = archetype;
+		this.demographicData = demographicData;
+		final List<Element> elements = patient.getElementsList();
+		initialValues = new double[elements.size()];
+		for (int i = 0; i < elements.size(); i++) {
+			final String value = CircuitBuilder.evaluateFormula(elements.get(i).getAssociatedFormula(),
+					archetype.getParameters(), "0");
+			initialValues[i] = value.isEmpty() ? Double.NaN : Double.parseDouble(value);
+		}
+	}
+
+	/**
+	 * Validates a model and compiles it
+	 *
+	 * @param name            name of the built-in model, null for a custom one
+	 * @param patient         patient model
+	 * @param archetype       archetype parameters
+	 * @param demographicData demographic data of the patient
+	 * @return compiled model, which does not share its collections with the
+	 *         given objects
+	 */
+	public static ModelTemplate compile(final String name, final Patient patient, final Archetype archetype,
+			final SimulatorParams demographicData) {
+		new Validator().evaluate(patient, archetype, demographicData);
+
+		final Patient sharedPatient = new Patient();
+		sharedPatient.setSchema(patient.getSchema());
+		sharedPatient.setElementsList(Collections.unmodifiableList(new ArrayList<>(patient.getElementsList())));
+
+		final Archetype sharedArchetype = new Archetype();
+		sharedArchetype.setSchema(archetype.getSchema());
+		sharedArchetype.setParameters(Collections.unmodifiableMap(new HashMap<>(archetype.getParameters())));
+
+		return new ModelTemplate(name, sharedPatient, sharedArchetype, copy(demographicData));
+	}
+
+	/**
+	 * @param patient   patient model of a simulation
+	 * @param archetype archetype of a simulation
+	 * @return true if the simulation still uses the model of the template
+	 */
+	public boolean isCompiledFrom(final Patient patient, final Archetype archetype) {
+		return this.patient == patient && this.archetype == archetype;
+	}
+
+	/**
+	 * Checks the demographic data of a simulation, the rest of the model being
+	 * validated at the compilation
+	 *
+	 * @param demographicData demographic data of the simulation
+	 */
+	public void validate(final SimulatorParams demographicData) {
+		if (demographicData == null) {
+			throw new InspireException("Demographic data file is not properly built");
+		}
+		demographicData.validate();
+	}
+
+	/**
+	 * @return new copy of the demographic data of the model
+	 */
+	public SimulatorParams newDemographicData() {
+		return copy(demographicData);
+	}
+
+	/**
+	 * @return name of the built-in model, null for a custom one
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return patient model, read only
+	 */
+	public Patient getPatient() {
+		return patient;
+	}
+
+	/**
+	 * @return archetype, read only
+	 */
+	public Archetype getArchetype() {
+		return archetype;
+	}
+
+	/**
+	 * @return value of each element of the patient model at time 0, NaN if it
+	 *         has no formula
+	 */
+	public double[] getInitialValues() {
+		return initialValues.clone();
+	}
+
+	private static SimulatorParams copy(final SimulatorParams demographicData) {
+		return new SimulatorParams(demographicData.getGender(), demographicData.getAge(),
+				demographicData.getHeight(), demographicData.getWeight());
+	}
+}
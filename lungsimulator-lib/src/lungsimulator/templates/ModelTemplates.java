@@ -0,0 +1,38 @@
+package lungsimulator.templates;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lungsimulator.utils.YamlReader;
+
+/**
+ * Templates of the built-in models, read and compiled the first time a
+ * simulation starts from them and then shared by all the simulations of the
+ * JVM
+ */
+public final class ModelTemplates {
+
+	private static final Map<String, ModelTemplate> BUILT_IN = new ConcurrentHashMap<>();
+
+	private ModelTemplates() {
+	}
+
+	/**
+	 * @param modelName name of the built-in model
+	 * @return template of the model
+	 * @throws IOException at least one of the files of the model can't be read
+	 */
+	public static ModelTemplate get(final String modelName) throws IOException {
+		final ModelTemplate template = BUILT_IN.get(modelName);
+		if (template != null) {
+			return template;
+		}
+		// two first simulations may both compile the model: one template is kept
+		final YamlReader yamlReader = new YamlReader(modelName);
+		final ModelTemplate compiled = ModelTemplate.compile(modelName, yamlReader.readPatientModel(),
+				yamlReader.readArchetypeParameters(), yamlReader.readDemographicData());
+		final ModelTemplate shared = BUILT_IN.putIfAbsent(modelName, compiled);
+		return shared == null ? compiled : shared;
+	}
+}
@@ -0,0 +1,89 @@
+package lungsimulator.utils;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Series of the latest values of a quantity: a list of Double backed by a
+ * fixed ring of primitive values, so that adding a value during a simulation
+ * step neither boxes it nor allocates. Once the capacity is reached, adding a
+ * value drops the oldest one. Values are boxed only when the list is read,
+ * e.g. by the charts.
+ */
+public class DoubleRingList extends AbstractList<Double> implements RandomAccess {
+
+	private final double[] values;
+
+	/**
+	 * Position of the oldest value
+	 */
+	private int head;
+
+	private int size;
+
+	/**
+	 * @param capacity maximum number of values kept
+	 */
+	public DoubleRingList(final int capacity) {
+		super();
+		values = new double[capacity];
+	}
+
+	/**
+	 * Appends a value, dropping the oldest one if the list is full
+	 *
+	 * @param value value to append
+	 */
+	public void push(final double value) {
+		if (size < values.length) {
+			values[(head + size) % values.length] = value;
+			size++;
+		} else {
+			values[head] = value;
+			head = (head + 1) % values.length;
+		}
+	}
+
+	/**
+	 * @param index position from the oldest value
+	 * @return the value without boxing it
+	 */
+	public double getDouble(final int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return values[(head + index) % values.length];
+	}
+
+	/**
+	 * @return the latest value
+	 */
+	public double getLast() {
+		return getDouble(size - 1);
+	}
+
+	@Override
+	public Double get(final int index) {
+		return getDouble(index);
+	}
+
+	/**
+	 * Same as push: the list never grows beyond its capacity
+	 */
+	@Override
+	public boolean add(final Double value) {
+		push(value);
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
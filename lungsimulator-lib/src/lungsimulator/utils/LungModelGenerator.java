@@ -0,0 +1,325 @@
+package lungsimulator.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
+
+import lungsimulator.components.Archetype;
+import lungsimulator.components.Element;
+import lungsimulator.components.Formula;
+import lungsimulator.components.Patient;
+
+/**
+ * Generates lung models of arbitrary size for scale tests: a bronchial tree
+ * with Horsfield ordering (Weibel's symmetric tree when the asymmetry is 0),
+ * where every terminal airway ends in an alveolar compliance towards the
+ * pleural node, and the chest wall closes the circuit on the ventilator.
+ *
+ * A branch of order n splits in two branches of order n - 1 and n - 1 -
+ * asymmetry; the trachea has the order given by the number of generations
+ * and branches of order 0 are terminal. The resistance of a branch grows by
+ * the resistance ratio at every order towards the periphery; the total
+ * alveolar compliance is split among the terminal units. With a variability
+ * greater than 0 each branch gets its own log-normally distributed value and
+ * archetype parameter, otherwise the branches of the same order share one
+ * parameter.
+ *
+ * The generated models pass the Validator with the bundled demographic data.
+ */
+public class LungModelGenerator {
+
+	/**
+	 * Nodes are laid out on rows of this length
+	 */
+	private static final int GRID = 1000;
+
+	/**
+	 * Name of the pressure points
+	 */
+	public static final String AIRWAY_OPENING = "Airway Opening";
+	public static final String ALVEOLI = "Alveoli";
+	public static final String PLEURAL = "Pleural Pressure";
+
+	private int schema = 5;
+	private int generations = 4;
+	private int asymmetry;
+	private double tracheaResistance = 0.5;
+	private double resistanceRatio = 1.6;
+	private double alveolarCompliance = 0.1;
+	private double chestWallCompliance = 0.2;
+	private double variability;
+	private long seed = 1;
+	private boolean timeDependentCompliance;
+	private double complianceAmplitude = 0.1;
+	private double breathPeriod = 4;
+
+	private transient Patient patient;
+	private transient Archetype archetype;
+
+	/**
+	 * Counters used while the tree is built
+	 */
+	private transient int nodeCount;
+	private transient int airwayCount;
+	private transient int alveolusCount;
+	private transient int terminalCount;
+	private transient Random random;
+	private transient List<Element> elements;
+	private transient Map<String, String> parameters;
+
+	/**
+	 * Builds the patient model and its archetype with the current settings
+	 */
+	public void generate() {
+		nodeCount = 0;
+		airwayCount = 0;
+		alveolusCount = 0;
+		random = new Random(seed);
+		elements = new ArrayList<>();
+		parameters = new HashMap<>();
+		terminalCount = countTerminals(generations);
+
+		final int ground = nodeCount++;
+		final int mouth = nodeCount++;
+		final int pleural = nodeCount++;
+
+		final Element ventilator = element("Ventilator", "ExternalVoltageElm", ground, mouth);
+		final Formula external = new Formula();
+		external.setIsExternal(true);
+		ventilator.setAssociatedFormula(external);
+		elements.add(ventilator);
+
+		addBranch(generations, mouth, pleural);
+
+		final Element chestWall = element("Chest Wall Compliance", "CapacitorElm", pleural, ground);
+		chestWall.setAssociatedFormula(formula("ccw", false));
+		chestWall.setShowLeft(true);
+		chestWall.setIdLeft(PLEURAL);
+		elements.add(chestWall);
+		parameters.put("ccw", format(chestWallCompliance));
+
+		if (timeDependentCompliance) {
+			parameters.put("camp", format(complianceAmplitude));
+			parameters.put("tbreath", format(breathPeriod));
+		}
+
+		patient = new Patient();
+		patient.setSchema(schema);
+		patient.setElementsList(elements);
+		archetype = new Archetype();
+		archetype.setSchema(schema);
+		archetype.setParameters(parameters);
+	}
+
+	private int countTerminals(final int order) {
+		if (order <= 0) {
+			return 1;
+		}
+		return countTerminals(order - 1) + countTerminals(order - 1 - asymmetry);
+	}
+
+	/**
+	 * Adds an airway of the given order from the parent node, then its
+	 * children or its alveolus
+	 */
+	private void addBranch(final int order, final int parent, final int pleural) {
+		final int node = nodeCount++;
+		final String name = "Airway " + airwayCount++;
+		final Element airway = element(name, "ResistorElm", parent, node);
+		final double resistance = tracheaResistance * Math.pow(resistanceRatio, generations - Math.max(order, 0));
+		airway.setAssociatedFormula(formula(parameter("r" + Math.max(order, 0), "r_" + (airwayCount - 1), resistance),
+				false));
+		if (parent == 1) {
+			airway.setShowLeft(true);
+			airway.setIdLeft(AIRWAY_OPENING);
+		}
+		elements.add(airway);
+
+		if (order > 0) {
+			addBranch(order - 1, node, pleural);
+			addBranch(order - 1 - asymmetry, node, pleural);
+			return;
+		}
+
+		final String alveolusName = "Alveolus " + alveolusCount++;
+		final Element alveolus = element(alveolusName, "CapacitorElm", node, pleural);
+		final String compliance = parameter("calv", "c_" + (alveolusCount - 1), alveolarCompliance / terminalCount);
+		alveolus.setAssociatedFormula(formula(compliance, timeDependentCompliance));
+		if (alveolusCount == 1) {
+			alveolus.setShowLeft(true);
+			alveolus.setIdLeft(ALVEOLI);
+		}
+		elements.add(alveolus);
+	}
+
+	/**
+	 * @return name of the parameter with the given value: shared by the
+	 *         branches of the same order, or of this branch only if the values
+	 *         are scattered
+	 */
+	private String parameter(final String shared, final String own, final double value) {
+		if (variability > 0) {
+			parameters.put(own, format(value * Math.exp(variability * random.nextGaussian())));
+			return own;
+		}
+		parameters.put(shared, format(value));
+		return shared;
+	}
+
+	private Formula formula(final String variable, final boolean timeDependent) {
+		final Formula formula = new Formula();
+		formula.setIsExternal(false);
+		formula.setIsTimeDependent(timeDependent);
+		if (timeDependent) {
+			formula.setFormula(variable + " * (1 + camp * SINR(2 * PI * TIME / tbreath))");
+			formula.setVariables(Arrays.asList(variable, "camp", "tbreath", "TIME"));
+		} else {
+			formula.setFormula(variable);
+			formula.setVariables(Arrays.asList(variable));
+		}
+		return formula;
+	}
+
+	private Element element(final String name, final String type, final int from, final int to) {
+		final Element element = new Element();
+		element.setElementName(name);
+		element.setType(type);
+		final Map<String, Integer> position = new HashMap<>();
+		position.put("x1", from % GRID);
+		position.put("y1", from / GRID);
+		position.put("x2", to % GRID);
+		position.put("y2", to / GRID);
+		element.setPosition(position);
+		return element;
+	}
+
+	private static String format(final double value) {
+		return String.format(Locale.ROOT, "%.6g", value);
+	}
+
+	/**
+	 * Writes the patient model in the YAML format read by YamlReader
+	 *
+	 * @param output stream to write to
+	 * @throws IOException if the stream cannot be written
+	 */
+	public void writePatientModel(final OutputStream output) throws IOException {
+		mapper().writeValue(output, getPatient());
+	}
+
+	/**
+	 * Writes the archetype in the YAML format read by YamlReader
+	 *
+	 * @param output stream to write to
+	 * @throws IOException if the stream cannot be written
+	 */
+	public void writeArchetype(final OutputStream output) throws IOException {
+		mapper().writeValue(output, getArchetype());
+	}
+
+	private static ObjectMapper mapper() {
+		final ObjectMapper objectMapper = new ObjectMapper(
+				new YAMLFactory().enable(YAMLGenerator.Feature.MINIMIZE_QUOTES));
+		objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+		objectMapper.addMixIn(Element.class, PositionOnly.class);
+		return objectMapper;
+	}
+
+	/**
+	 * Writes the coordinates only in the position map, as in the bundled models
+	 */
+	private abstract static class PositionOnly {
+		@JsonIgnore
+		abstract int getX();
+
+		@JsonIgnore
+		abstract int getY();
+
+		@JsonIgnore
+		abstract int getX1();
+
+		@JsonIgnore
+		abstract int getY1();
+	}
+
+	public Patient getPatient() {
+		if (patient == null) {
+			generate();
+		}
+		return patient;
+	}
+
+	public Archetype getArchetype() {
+		if (archetype == null) {
+			generate();
+		}
+		return archetype;
+	}
+
+	/**
+	 * @return number of terminal units of the tree with the current settings
+	 */
+	public int getTerminalCount() {
+		return countTerminals(generations);
+	}
+
+	public void setSchema(final int schema) {
+		this.schema = schema;
+	}
+
+	public void setGenerations(final int generations) {
+		this.generations = generations;
+	}
+
+	public void setAsymmetry(final int asymmetry) {
+		this.asymmetry = asymmetry;
+	}
+
+	public void setTracheaResistance(final double tracheaResistance) {
+		this.tracheaResistance = tracheaResistance;
+	}
+
+	public void setResistanceRatio(final double resistanceRatio) {
+		this.resistanceRatio = resistanceRatio;
+	}
+
+	public void setAlveolarCompliance(final double alveolarCompliance) {
+		this.alveolarCompliance = alveolarCompliance;
+	}
+
+	public void setChestWallCompliance(final double chestWallCompliance) {
+		this.chestWallCompliance = chestWallCompliance;
+	}
+
+	public void setVariability(final double variability) {
+		this.variability = variability;
+	}
+
+	public void setSeed(final long seed) {
+		this.seed = seed;
+	}
+
+	public void setTimeDependentCompliance(final boolean timeDependentCompliance) {
+		this.timeDependentCompliance = timeDependentCompliance;
+	}
+
+	public void setComplianceAmplitude(final double complianceAmplitude) {
+		this.complianceAmplitude = complianceAmplitude;
+	}
+
+	public void setBreathPeriod(final double breathPeriod) {
+		this.breathPeriod = breathPeriod;
+	}
+}
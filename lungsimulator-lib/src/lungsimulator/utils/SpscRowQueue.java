@@ -0,0 +1,138 @@
+package lungsimulator.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue of rows of doubles between one producer thread and one
+ * consumer thread. The rows are copied in and out of a ring allocated once,
+ * so neither side allocates; the two sides only share the head and tail
+ * counters, written with ordered stores as in the Disruptor. A full queue
+ * rejects the row instead of blocking the producer.
+ */
+public class SpscRowQueue {
+
+	private final int width;
+	private final int capacity;
+	private final int mask;
+	private final double[] rows;
+
+	/**
+	 * Rows taken by the consumer
+	 */
+	private final AtomicLong head = new AtomicLong();
+
+	/**
+	 * Rows published by the producer
+	 */
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * Last head seen by the producer and last tail seen by the consumer, to
+	 * read the counter of the other side only when needed
+	 */
+	private long cachedHead;
+	private long cachedTail;
+
+	/**
+	 * Receives the rows taken from the queue
+	 */
+	@FunctionalInterface
+	public interface RowHandler {
+		/**
+		 * @param rows   ring of the queue; the row is valid only during the call
+		 * @param offset position of the first value of the row
+		 * @param width  number of values of the row
+		 */
+		void onRow(double[] rows, int offset, int width);
+	}
+
+	/**
+	 * @param width    number of values of a row
+	 * @param capacity maximum number of rows, rounded up to a power of two
+	 */
+	public SpscRowQueue(final int width, final int capacity) {
+		this.width = width;
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.capacity = size;
+		this.mask = size - 1;
+		this.rows = new double[size * width];
+	}
+
+	/**
+	 * Copies a row in the queue; producer side
+	 *
+	 * @param row values, at least width of them
+	 * @return false if the queue is full and the row has been dropped
+	 */
+	public boolean offer(final double[] row) {
+		final long currentTail = tail.get();
+		if (currentTail - cachedHead >= capacity) {
+			cachedHead = head.get();
+			if (currentTail - cachedHead >= capacity) {
+				return false;
+			}
+		}
+		System.arraycopy(row, 0, rows, (int) (currentTail & mask) * width, width);
+		tail.lazySet(currentTail + 1);
+		return true;
+	}
+
+	/**
+	 * Copies the oldest row out of the queue; consumer side
+	 *
+	 * @param row destination, at least width values
+	 * @return false if the queue is empty
+	 */
+	public boolean poll(final double[] row) {
+		final long currentHead = head.get();
+		if (currentHead >= cachedTail) {
+			cachedTail = tail.get();
+			if (currentHead >= cachedTail) {
+				return false;
+			}
+		}
+		System.arraycopy(rows, (int) (currentHead & mask) * width, row, 0, width);
+		head.lazySet(currentHead + 1);
+		return true;
+	}
+
+	/**
+	 * Passes the available rows to the handler in a batch, then frees them all
+	 * at once; consumer side
+	 *
+	 * @param handler receiver of the rows
+	 * @param limit   maximum number of rows taken
+	 * @return number of rows taken
+	 */
+	public int drain(final RowHandler handler, final int limit) {
+		final long currentHead = head.get();
+		cachedTail = tail.get();
+		final int count = (int) Math.min(limit, cachedTail - currentHead);
+		for (int i = 0; i < count; i++) {
+			handler.onRow(rows, (int) ((currentHead + i) & mask) * width, width);
+		}
+		if (count > 0) {
+			head.lazySet(currentHead + count);
+		}
+		return count;
+	}
+
+	/**
+	 * @return number of rows waiting, approximate while the other side is
+	 *         working
+	 */
+	public int size() {
+		return (int) (tail.get() - head.get());
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+}
@@ -0,0 +1,435 @@
+package lungsimulator.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lungsimulator.components.Element;
+import lungsimulator.components.Formula;
+import lungsimulator.components.Patient;
+
+/**
+ * Lumps the identical branches of a patient model. Branches hanging from the
+ * same node with the same structure and the same formulas have the same
+ * pressures at every step, so only one of them is kept: its resistances are
+ * divided and its capacitances multiplied by the number of copies. The values
+ * of the removed elements are recovered from the kept ones.
+ *
+ * The airways are seen as a tree rooted at the airway opening. Its leaves end
+ * on the anchors: the terminals of the generators and the nodes that only
+ * join capacitors (e.g. the pleural space), which are shared by all the
+ * branches. Parts of the model that are not a tree are left as they are.
+ */
+public class SymmetryLumper {
+	/**
+	 * Type of the resistor element
+	 */
+	private static final String RESISTOR = "ResistorElm";
+
+	/**
+	 * Type of the capacitor element
+	 */
+	private static final String CAPACITOR = "CapacitorElm";
+
+	/**
+	 * Minimum number of capacitors that makes a node shared by the branches
+	 */
+	private static final int HUB_DEGREE = 3;
+
+	/**
+	 * Elements of the original patient model
+	 */
+	private final transient List<Element> elements;
+
+	/**
+	 * Node of the first and second post of each element
+	 */
+	private final transient int[] first;
+	private final transient int[] second;
+
+	/**
+	 * Elements incident to each node
+	 */
+	private final transient List<List<Integer>> incident = new ArrayList<>();
+
+	/**
+	 * True for the nodes shared by all the branches
+	 */
+	private transient boolean[] anchor;
+
+	/**
+	 * Branches (elements towards the leaves) of each node, sorted by signature
+	 */
+	private transient int[][] children;
+
+	/**
+	 * Signature of the branch starting with each element
+	 */
+	private transient int[] branchSig;
+
+	/**
+	 * Element that stands for each element, itself if it has been kept
+	 */
+	private final transient int[] representative;
+
+	/**
+	 * Number of original branches lumped in each kept element
+	 */
+	private final transient int[] copies;
+
+	/**
+	 * Name of the kept element for each element name
+	 */
+	private final transient Map<String, String> representativeNames = new HashMap<>();
+
+	/**
+	 * Number of copies for each kept element name
+	 */
+	private final transient Map<String, Integer> copiesByName = new HashMap<>();
+
+	/**
+	 * Model with the lumped elements only
+	 */
+	private final transient Patient lumpedPatient;
+
+	/**
+	 * Lumps the given patient model, which is left untouched
+	 *
+	 * @param patient patient model
+	 */
+	public SymmetryLumper(final Patient patient) {
+		elements = patient.getElementsList();
+		final int size = elements.size();
+		first = new int[size];
+		second = new int[size];
+		representative = new int[size];
+		copies = new int[size];
+		for (int e = 0; e < size; e++) {
+			representative[e] = e;
+			copies[e] = 1;
+		}
+
+		buildGraph();
+		for (final int root : findTreeRoots()) {
+			computeSignatures(root);
+			lump(root);
+		}
+
+		lumpedPatient = new Patient();
+		lumpedPatient.setSchema(patient.getSchema());
+		final List<Element> lumpedElements = new ArrayList<>();
+		for (int e = 0; e < size; e++) {
+			if (representative[e] == e) {
+				lumpedElements.add(copies[e] > 1 ? scaledElement(elements.get(e), copies[e]) : elements.get(e));
+				copiesByName.put(elements.get(e).getElementName(), copies[e]);
+			} else {
+				// follow the chain up to the element that has been kept
+				int kept = representative[e];
+				while (representative[kept] != kept) {
+					kept = representative[kept];
+				}
+				representative[e] = kept;
+			}
+			representativeNames.put(elements.get(e).getElementName(),
+					elements.get(representative[e]).getElementName());
+		}
+		lumpedPatient.setElementsList(lumpedElements);
+	}
+
+	private void buildGraph() {
+		final Map<Long, Integer> nodes = new HashMap<>();
+		for (int e = 0; e < elements.size(); e++) {
+			final Element element = elements.get(e);
+			first[e] = nodeIndex(nodes, element.getX(), element.getY());
+			second[e] = nodeIndex(nodes, element.getX1(), element.getY1());
+			incident.get(first[e]).add(e);
+			if (second[e] != first[e]) {
+				incident.get(second[e]).add(e);
+			}
+		}
+
+		anchor = new boolean[incident.size()];
+		for (int e = 0; e < elements.size(); e++) {
+			final String type = elements.get(e).getType();
+			if (!RESISTOR.equals(type) && !CAPACITOR.equals(type)) {
+				anchor[first[e]] = true;
+				anchor[second[e]] = true;
+			}
+		}
+		for (int n = 0; n < incident.size(); n++) {
+			boolean hub = incident.get(n).size() >= HUB_DEGREE;
+			for (int i = 0; hub && i < incident.get(n).size(); i++) {
+				hub = CAPACITOR.equals(elements.get(incident.get(n).get(i)).getType());
+			}
+			anchor[n] |= hub;
+		}
+	}
+
+	private int nodeIndex(final Map<Long, Integer> nodes, final int x, final int y) {
+		final long key = ((long) x << 32) | (y & 0xffffffffL);
+		Integer index = nodes.get(key);
+		if (index == null) {
+			index = incident.size();
+			nodes.put(key, index);
+			incident.add(new ArrayList<>());
+		}
+		return index;
+	}
+
+	private int other(final int e, final int node) {
+		return first[e] == node ? second[e] : first[e];
+	}
+
+	/**
+	 * Finds the connected parts of the model made of non anchor nodes that are
+	 * trees, and picks their root: the node attached to the least connected
+	 * anchor, i.e. the airway opening
+	 *
+	 * @return roots of the trees
+	 */
+	private List<Integer> findTreeRoots() {
+		final List<Integer> roots = new ArrayList<>();
+		final boolean[] visited = new boolean[incident.size()];
+		final Deque<Integer> queue = new ArrayDeque<>();
+		for (int start = 0; start < incident.size(); start++) {
+			if (anchor[start] || visited[start]) {
+				continue;
+			}
+			visited[start] = true;
+			queue.add(start);
+			int nodeCount = 0;
+			int edgeCount = 0;
+			int root = start;
+			int rootAnchorDegree = Integer.MAX_VALUE;
+			while (!queue.isEmpty()) {
+				final int node = queue.poll();
+				nodeCount++;
+				for (final int e : incident.get(node)) {
+					final int next = other(e, node);
+					if (anchor[next]) {
+						if (incident.get(next).size() < rootAnchorDegree) {
+							rootAnchorDegree = incident.get(next).size();
+							root = node;
+						}
+					} else {
+						// each internal element is seen from both its nodes
+						edgeCount++;
+						if (!visited[next]) {
+							visited[next] = true;
+							queue.add(next);
+						}
+					}
+				}
+			}
+			if (edgeCount / 2 == nodeCount - 1 && edgeCount % 2 == 0) {
+				roots.add(root);
+			}
+		}
+		return roots;
+	}
+
+	/**
+	 * Computes the signature of every branch of the tree, from the leaves up to
+	 * the root. Equal signatures mean equal structure, formulas and orientation.
+	 *
+	 * @param root root of the tree
+	 */
+	private void computeSignatures(final int root) {
+		if (children == null) {
+			children = new int[incident.size()][];
+			branchSig = new int[elements.size()];
+		}
+
+		// nodes in breadth-first order, with the element towards the parent
+		final List<Integer> order = new ArrayList<>();
+		final int[] parentElm = new int[incident.size()];
+		parentElm[root] = -1;
+		order.add(root);
+		for (int i = 0; i < order.size(); i++) {
+			final int node = order.get(i);
+			for (final int e : incident.get(node)) {
+				final int next = other(e, node);
+				if (e != parentElm[node] && !anchor[next]) {
+					parentElm[next] = e;
+					order.add(next);
+				}
+			}
+		}
+
+		final Map<String, Integer> signatures = new HashMap<>();
+		final int[] nodeSig = new int[incident.size()];
+		for (int i = order.size() - 1; i >= 0; i--) {
+			final int node = order.get(i);
+			final List<Integer> branches = new ArrayList<>();
+			for (final int e : incident.get(node)) {
+				if (e == parentElm[node]) {
+					continue;
+				}
+				final int next = other(e, node);
+				final String target = anchor[next] ? "A" + next : "N" + nodeSig[next];
+				branchSig[e] = intern(signatures, elementKey(e, node) + target);
+				branches.add(e);
+			}
+			branches.sort((a, b) -> Integer.compare(branchSig[a], branchSig[b]));
+			children[node] = branches.stream().mapToInt(Integer::intValue).toArray();
+
+			final int[] sigs = new int[children[node].length];
+			for (int j = 0; j < sigs.length; j++) {
+				sigs[j] = branchSig[children[node][j]];
+			}
+			nodeSig[node] = intern(signatures, Arrays.toString(sigs));
+		}
+	}
+
+	private int intern(final Map<String, Integer> signatures, final String key) {
+		final Integer sig = signatures.get(key);
+		if (sig != null) {
+			return sig;
+		}
+		signatures.put(key, signatures.size());
+		return signatures.size() - 1;
+	}
+
+	private String elementKey(final int e, final int parent) {
+		final Element element = elements.get(e);
+		final Formula formula = element.getAssociatedFormula();
+		final String type = element.getType();
+		if (!RESISTOR.equals(type) && !CAPACITOR.equals(type) || formula == null || formula.getFormula() == null
+				|| first[e] == second[e]) {
+			// never equal to another element
+			return "#" + e + "|";
+		}
+		return type + "|" + formula.getFormula() + "|" + (first[e] == parent ? ">" : "<") + "|";
+	}
+
+	/**
+	 * Visits the tree from the root and, at each node, keeps only one branch for
+	 * each group of branches with the same signature
+	 *
+	 * @param root root of the tree
+	 */
+	private void lump(final int root) {
+		final Deque<int[]> stack = new ArrayDeque<>();
+		stack.push(new int[] { root, 1 });
+		while (!stack.isEmpty()) {
+			final int[] item = stack.pop();
+			final int node = item[0];
+			final int multiplier = item[1];
+
+			final Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+			for (final int e : children[node]) {
+				groups.computeIfAbsent(branchSig[e], k -> new ArrayList<>()).add(e);
+			}
+			for (final List<Integer> group : groups.values()) {
+				final int kept = group.get(0);
+				final List<Integer> keptElements = branchElements(kept, node);
+				for (int i = 1; i < group.size(); i++) {
+					final List<Integer> removed = branchElements(group.get(i), node);
+					for (int j = 0; j < removed.size(); j++) {
+						representative[removed.get(j)] = keptElements.get(j);
+					}
+				}
+
+				copies[kept] = multiplier * group.size();
+				final int next = other(kept, node);
+				if (!anchor[next]) {
+					stack.push(new int[] { next, copies[kept] });
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lists the elements of a branch in signature order, so that the elements of
+	 * two branches with the same signature correspond one by one
+	 *
+	 * @param start  first element of the branch
+	 * @param parent node the branch hangs from
+	 * @return elements of the branch
+	 */
+	private List<Integer> branchElements(final int start, final int parent) {
+		final List<Integer> result = new ArrayList<>();
+		final Deque<int[]> stack = new ArrayDeque<>();
+		stack.push(new int[] { start, parent });
+		while (!stack.isEmpty()) {
+			final int[] item = stack.pop();
+			result.add(item[0]);
+			final int next = other(item[0], item[1]);
+			if (!anchor[next]) {
+				for (int i = children[next].length - 1; i >= 0; i--) {
+					stack.push(new int[] { children[next][i], next });
+				}
+			}
+		}
+		return result;
+	}
+
+	private Element scaledElement(final Element element, final int count) {
+		final Formula formula = element.getAssociatedFormula();
+		final Formula scaled = new Formula();
+		scaled.setIsTimeDependent(formula.getIsTimeDependent());
+		scaled.setIsExternal(formula.getIsExternal());
+		scaled.setVariables(formula.getVariables());
+		if (RESISTOR.equals(element.getType())) {
+			scaled.setFormula("(" + formula.getFormula() + ")/" + count);
+		} else {
+			scaled.setFormula("(" + formula.getFormula() + ")*" + count);
+		}
+
+		final Element lumped = new Element();
+		lumped.setElementName(element.getElementName());
+		lumped.setType(element.getType());
+		lumped.setAssociatedFormula(scaled);
+		lumped.setPosition(element.getPosition());
+		lumped.setX(element.getX());
+		lumped.setY(element.getY());
+		lumped.setX1(element.getX1());
+		lumped.setY1(element.getY1());
+		lumped.setShowLeft(element.isShowLeft());
+		lumped.setIdLeft(element.getIdLeft());
+		lumped.setShowRight(element.isShowRight());
+		lumped.setIdRight(element.getIdRight());
+		return lumped;
+	}
+
+	/**
+	 * @return the model without the lumped copies
+	 */
+	public Patient getLumpedPatient() {
+		return lumpedPatient;
+	}
+
+	/**
+	 * @return true if at least one branch has been lumped
+	 */
+	public boolean isLumped() {
+		return lumpedPatient.getElementsList().size() < elements.size();
+	}
+
+	/**
+	 * Returns the element of the lumped model that stands for an element of the
+	 * original one
+	 *
+	 * @param elementName name of an element of the original model
+	 * @return name of the kept element, the same name if it has been kept
+	 */
+	public String getRepresentative(final String elementName) {
+		return representativeNames.getOrDefault(elementName, elementName);
+	}
+
+	/**
+	 * Returns the number of original branches lumped in an element: its current
+	 * is the sum of their currents
+	 *
+	 * @param elementName name of an element of the lumped model
+	 * @return number of copies, 1 if the element has not been lumped
+	 */
+	public int getCopies(final String elementName) {
+		return copiesByName.getOrDefault(elementName, 1);
+	}
+}
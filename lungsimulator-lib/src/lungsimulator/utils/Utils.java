@@ -1,7 +1,6 @@
 package lungsimulator.utils;
 
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -19,6 +18,28 @@ public class Utils {
 	 */
 	public static final int MAXDATA = 50;
 
+	/**
+	 * Powers of ten that are exact as doubles
+	 */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * Largest mantissa that is exact as a double
+	 */
+	private static final long MAX_EXACT = 1L << 53;
+
+	/**
+	 * List initializer
+	 * 
+	 * @return series of MAXDATA values that starts with 0
+	 */
+	public static List<Double> initList() {
+		final DoubleRingList myList = new DoubleRingList(MAXDATA);
+		myList.push(0);
+		return myList;
+	}
+
 	/**
 	 * Map initializer
 	 * 
@@ -29,7 +50,7 @@ public class Utils {
 		final Map<String, List<Double>> myMap = new ConcurrentHashMap<>();
 
 		for (final String index : ids) {
-			myMap.put(index, new ArrayList<>(Arrays.asList(0.0)));
+			myMap.put(index, initList());
 		}
 
 		return myMap;
@@ -47,6 +68,11 @@ public class Utils {
 			final double value) {
 		final List<Double> myList = myMap.get(key);
 
+		if (myList instanceof DoubleRingList) {
+			((DoubleRingList) myList).push(value);
+			return myMap;
+		}
+
 		if (myList.size() >= MAXDATA) {
 			myList.remove(0);
 		}
@@ -65,6 +91,11 @@ public class Utils {
 	 * @return the updated list
 	 */
 	public static List<Double> updateDoubleList(final List<Double> myList, final double newValue) {
+		if (myList instanceof DoubleRingList) {
+			((DoubleRingList) myList).push(newValue);
+			return myList;
+		}
+
 		if (myList.size() >= MAXDATA) {
 			myList.remove(0);
 		}
@@ -73,4 +104,66 @@ public class Utils {
 
 		return myList;
 	}
+
+	/**
+	 * Rounds half away from zero without the BigDecimal of
+	 * Precision.round, so it can be called at every step; it may differ from it
+	 * by one unit of the last place for values that are exactly half way in
+	 * decimal but not in binary
+	 * 
+	 * @param value  value to round
+	 * @param places number of decimal places, at most 22
+	 * @return rounded value
+	 */
+	public static double round(final double value, final int places) {
+		final double scale = POWERS_OF_TEN[places];
+		final double scaled = Math.abs(value) * scale;
+		if (Double.isNaN(value) || Double.isInfinite(scaled) || scaled >= MAX_EXACT) {
+			return value;
+		}
+		return Math.copySign(Math.floor(scaled + 0.5) / scale, value);
+	}
+
+	/**
+	 * Parses a decimal number written in ASCII without allocating in the usual
+	 * case of a plain number with a few digits, which is parsed exactly as by
+	 * Double.parseDouble; other notations are passed on to it
+	 * 
+	 * @param bytes  buffer that contains the number
+	 * @param length number of bytes of the number
+	 * @return parsed value
+	 * @throws NumberFormatException if the bytes are not a number
+	 */
+	public static double parseDouble(final byte[] bytes, final int length) {
+		int index = 0;
+		final boolean negative = length > 0 && bytes[0] == '-';
+		if (negative || length > 0 && bytes[0] == '+') {
+			index++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int decimals = -1;
+		for (; index < length; index++) {
+			final byte current = bytes[index];
+			if (current >= '0' && current <= '9') {
+				mantissa = mantissa * 10 + current - '0';
+				digits++;
+				if (decimals >= 0) {
+					decimals++;
+				}
+				if (mantissa >= MAX_EXACT) {
+					break;
+				}
+			} else if (current == '.' && decimals < 0) {
+				decimals = 0;
+			} else {
+				break;
+			}
+		}
+		if (index < length || digits == 0 || decimals >= POWERS_OF_TEN.length) {
+			return Double.parseDouble(new String(bytes, 0, length, StandardCharsets.US_ASCII));
+		}
+		final double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+		return negative ? -value : value;
+	}
 }
@@ -28,6 +28,11 @@ public class YamlReader {
 	 */
 	private static final Logger LOGGER = Logger.getLogger(YamlReader.class.getName());
 
+	/**
+	 * Shared by the readers: a configured ObjectMapper is thread safe
+	 */
+	private static final ObjectMapper MAPPER = new ObjectMapper(new YAMLFactory());
+
 	/**
 	 * Init file paths according to a built-in model
 	 * 
@@ -70,11 +75,8 @@ public class YamlReader {
 
 		LOGGER.log(Level.INFO, "Loading patient model...");
 
-		// Instantiating a new ObjectMapper as a YAMLFactory
-		final ObjectMapper objectMapper = new ObjectMapper(new YAMLFactory());
-
 		// Mapping the lung model from the YAML file to the Patient class
-		final Patient patient = objectMapper.readValue(input, Patient.class);
+		final Patient patient = MAPPER.readValue(input, Patient.class);
 
 		LOGGER.log(Level.INFO, "Patient model successfully loaded");
 
@@ -115,11 +117,8 @@ public class YamlReader {
 
 		LOGGER.log(Level.INFO, "Loading archetype parameters...");
 
-		// Instantiating a new ObjectMapper as a YAMLFactory
-		final ObjectMapper objectMapper = new ObjectMapper(new YAMLFactory());
-
 		// Mapping the lung model from the YAML file to the Patient class
-		final Archetype archetype = objectMapper.readValue(input, Archetype.class);
+		final Archetype archetype = MAPPER.readValue(input, Archetype.class);
 
 		LOGGER.log(Level.INFO, "Archetype parameters successfully loaded");
 
@@ -161,11 +160,8 @@ public class YamlReader {
 
 		LOGGER.log(Level.INFO, "Loading demographic data...");
 
-		// Instantiating a new ObjectMapper as a YAMLFactory
-		final ObjectMapper objectMapper = new ObjectMapper(new YAMLFactory());
-
 		// Mapping the lung model from the YAML file to the Patient class
-		final SimulatorParams demographicData = objectMapper.readValue(input, SimulatorParams.class);
+		final SimulatorParams demographicData = MAPPER.readValue(input, SimulatorParams.class);
 
 		LOGGER.log(Level.INFO, "Demographic data successfully loaded");
 
@@ -0,0 +1,88 @@
+package lungsimulator.worker;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Worker processes started on this node, each in its own JVM with the class
+ * path of the current one: a stand-in for the workers of other nodes when
+ * developing or testing, and the way a node gives several cores to the
+ * simulations
+ */
+public class LocalWorkers implements Closeable {
+
+	/**
+	 * Wait for a worker process to exit when the workers are closed, in
+	 * milliseconds
+	 */
+	private static final long EXIT_MILLIS = 2000;
+
+	private final List<Process> processes = new ArrayList<>();
+
+	/**
+	 * Starts the worker processes; their output goes to the one of this process
+	 *
+	 * @param coordinator endpoint of the coordinator
+	 * @param count       number of processes
+	 * @param extraArgs   further arguments of {@link SimulationWorker#main}
+	 * @throws IOException a process can't be started
+	 */
+	public LocalWorkers(final String coordinator, final int count, final String... extraArgs) throws IOException {
+		final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		try {
+			for (int i = 0; i < count; i++) {
+				final List<String> command = new ArrayList<>();
+				command.add(java);
+				command.add("-cp");
+				command.add(System.getProperty("java.class.path"));
+				command.add(SimulationWorker.class.getName());
+				command.add(coordinator);
+				for (final String arg : extraArgs) {
+					command.add(arg);
+				}
+				processes.add(new ProcessBuilder(command).inheritIO().start());
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return number of worker processes still alive
+	 */
+	public int getAliveCount() {
+		int alive = 0;
+		for (final Process process : processes) {
+			if (process.isAlive()) {
+				alive++;
+			}
+		}
+		return alive;
+	}
+
+	/**
+	 * Stops the worker processes
+	 */
+	@Override
+	public void close() {
+		for (final Process process : processes) {
+			process.destroy();
+		}
+		for (final Process process : processes) {
+			try {
+				if (!process.waitFor(EXIT_MILLIS, TimeUnit.MILLISECONDS)) {
+					process.destroyForcibly();
+				}
+			} catch (InterruptedException e) {
+				process.destroyForcibly();
+				Thread.currentThread().interrupt();
+			}
+		}
+		processes.clear();
+	}
+}
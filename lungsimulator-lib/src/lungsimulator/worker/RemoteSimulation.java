@@ -0,0 +1,122 @@
+package lungsimulator.worker;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.LungSimulator;
+import lungsimulator.metrics.SimulationMetrics;
+import lungsimulator.metrics.SimulationMetrics.Counter;
+import lungsimulator.utils.SpscRowQueue;
+
+/**
+ * A simulation run by a worker on behalf of a local {@link LungSimulator}:
+ * the local simulation is set up but never solved, and the samples streamed
+ * by the worker take the place of those of its solver. They are passed to
+ * the sample listeners of the local circuit, i.e. history, breath metrics,
+ * alarms, recorder and broadcast, on the thread of the coordinator, and
+ * queued for the charts as in a {@link lungsimulator.pipeline.SimulationPipeline}.
+ */
+public class RemoteSimulation {
+
+	private final WorkerCoordinator coordinator;
+	private final String sessionId;
+	private final String workerName;
+	private final CircuitBuilder circuitBuilder;
+	private final SimulationMetrics metrics;
+
+	private final SpscRowQueue chartQueue;
+	private final double[] row;
+	private final double[] chartRow;
+	private final SpscRowQueue.RowHandler chartHandler = this::chart;
+
+	private volatile boolean running = true;
+	private volatile String endReason;
+
+	RemoteSimulation(final WorkerCoordinator coordinator, final String sessionId, final String workerName,
+			final LungSimulator lungSimulator, final int queueRows) {
+		this.coordinator = coordinator;
+		this.sessionId = sessionId;
+		this.workerName = workerName;
+		this.circuitBuilder = lungSimulator.getCircuitBuilder();
+		this.metrics = lungSimulator.getMetrics();
+		final int width = circuitBuilder.getSampleColumns().size();
+		chartQueue = new SpscRowQueue(width, queueRows);
+		row = new double[width];
+		chartRow = new double[width];
+	}
+
+	/**
+	 * Publishes rows streamed by the worker; called on the thread of the
+	 * coordinator
+	 *
+	 * @param rows values of the rows, one after the other
+	 */
+	void accept(final double[] rows) {
+		for (int offset = 0; offset + row.length <= rows.length; offset += row.length) {
+			System.arraycopy(rows, offset, row, 0, row.length);
+			circuitBuilder.publishSample(row);
+			if (!chartQueue.offer(row)) {
+				metrics.increment(Counter.DROPPED_UI_UPDATES);
+			}
+		}
+	}
+
+	/**
+	 * Marks the simulation as ended; called on the thread of the coordinator
+	 *
+	 * @param reason reason given by the worker or the coordinator
+	 */
+	void end(final String reason) {
+		endReason = reason;
+		running = false;
+	}
+
+	/**
+	 * Adds the samples received since the previous call to the chart series
+	 * and shows the last ventilator pressure in the local circuit; always
+	 * called by the same thread, usually the one of the user interface
+	 *
+	 * @return number of samples added
+	 */
+	public int publishCharts() {
+		final int added = chartQueue.drain(chartHandler, Integer.MAX_VALUE);
+		if (added > 0) {
+			circuitBuilder.updateVentilatorValue(chartRow[CircuitBuilder.VENTILATOR_COLUMN]);
+		}
+		return added;
+	}
+
+	/**
+	 * Asks the worker to stop the simulation
+	 */
+	public void stop() {
+		if (running) {
+			coordinator.stopSimulation(sessionId);
+		}
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return reason why the simulation ended, null while it is running
+	 */
+	public String getEndReason() {
+		return endReason;
+	}
+
+	public String getSessionId() {
+		return sessionId;
+	}
+
+	/**
+	 * @return name of the worker running the simulation
+	 */
+	public String getWorkerName() {
+		return workerName;
+	}
+
+	private void chart(final double[] rows, final int offset, final int width) {
+		System.arraycopy(rows, offset, chartRow, 0, width);
+		circuitBuilder.pushSeries(chartRow);
+	}
+}
@@ -0,0 +1,277 @@
+package lungsimulator.worker;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ.Socket;
+import org.zeromq.ZMsg;
+
+import lungsimulator.LungSimulator;
+import lungsimulator.exceptions.InspireException;
+import lungsimulator.metrics.SimulationMetrics.Counter;
+import lungsimulator.pipeline.Backpressure;
+import lungsimulator.pipeline.SimulationPipeline;
+import lungsimulator.utils.SpscRowQueue;
+
+/**
+ * Runs simulations on behalf of a {@link WorkerCoordinator}, usually in its
+ * own JVM and possibly on another node. The worker connects to the
+ * coordinator, reports its load, and for each session it is assigned builds a
+ * {@link LungSimulator}, steps it in real time through a
+ * {@link SimulationPipeline} and streams the samples back in batches. The
+ * elements of the solver share the {@code CirSim} of their JVM, so a worker
+ * runs one simulation at a time and a node runs a worker process per core it
+ * gives to the simulations, see {@link LocalWorkers}.
+ */
+public class SimulationWorker implements Runnable {
+
+	/**
+	 * Sessions run at the same time by a worker
+	 */
+	static final int CAPACITY = 1;
+
+	/**
+	 * Rows of a message at most
+	 */
+	private static final int BATCH_ROWS = 256;
+
+	/**
+	 * Rows waiting to be sent for a session
+	 */
+	private static final int QUEUE_ROWS = 4096;
+
+	/**
+	 * Wait for a message of the coordinator between two rounds of the sessions,
+	 * in milliseconds
+	 */
+	private static final int POLL_MILLIS = 1;
+
+	private static final Logger LOGGER = Logger.getLogger(SimulationWorker.class.getName());
+
+	private final String coordinator;
+
+	/**
+	 * Ventilator of all the sessions, null if each simulation asks its own
+	 * ventilator
+	 */
+	private final DoubleSupplier ventilator;
+
+	/**
+	 * Name of the worker in the logs of the coordinator
+	 */
+	private final String name;
+
+	/**
+	 * Sessions by id; used by the thread of the worker only
+	 */
+	private final Map<String, Session> sessions = new LinkedHashMap<>();
+
+	private volatile boolean running = true;
+
+	/**
+	 * @param coordinator endpoint of the coordinator, e.g. tcp://host:5570
+	 * @param ventilator  source of the ventilator pressure of the sessions,
+	 *                    NaN if missing; null to connect each simulation to
+	 *                    the ventilator of this node
+	 */
+	public SimulationWorker(final String coordinator, final DoubleSupplier ventilator) {
+		this.coordinator = coordinator;
+		this.ventilator = ventilator;
+		this.name = ManagementFactory.getRuntimeMXBean().getName() + "/" + System.identityHashCode(this);
+	}
+
+	/**
+	 * Serves the coordinator until {@link #stop()} is called or the thread is
+	 * interrupted; no other simulation may be solved in this JVM meanwhile
+	 */
+	@Override
+	public void run() {
+		try (ZContext context = new ZContext()) {
+			final Socket socket = context.createSocket(SocketType.DEALER);
+			socket.setReceiveTimeOut(POLL_MILLIS);
+			socket.setLinger(0);
+			socket.connect(coordinator);
+			send(socket, WorkerProtocol.REGISTER, String.valueOf(CAPACITY), name);
+
+			long nextHeartbeat = System.currentTimeMillis() + WorkerProtocol.HEARTBEAT_MILLIS;
+			while (running && !Thread.currentThread().isInterrupted()) {
+				final ZMsg message = ZMsg.recvMsg(socket);
+				if (message != null) {
+					handle(socket, message);
+				}
+				for (final Session session : sessions.values()) {
+					session.advance(socket);
+				}
+				final long now = System.currentTimeMillis();
+				if (now >= nextHeartbeat) {
+					// also registers the worker again with a restarted coordinator
+					send(socket, WorkerProtocol.LOAD, String.valueOf(sessions.size()), String.valueOf(CAPACITY),
+							name);
+					nextHeartbeat = now + WorkerProtocol.HEARTBEAT_MILLIS;
+				}
+			}
+
+			final Iterator<Session> iterator = sessions.values().iterator();
+			while (iterator.hasNext()) {
+				final Session session = iterator.next();
+				session.close();
+				send(socket, WorkerProtocol.ENDED, session.id, "Worker stopped");
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Stops the worker and its sessions
+	 */
+	public void stop() {
+		running = false;
+	}
+
+	private void handle(final Socket socket, final ZMsg message) {
+		final String type = WorkerProtocol.popText(message);
+		final String sessionId = WorkerProtocol.popText(message);
+		if (WorkerProtocol.START.equals(type)) {
+			final String model = WorkerProtocol.popText(message);
+			final double timeStep = Double.parseDouble(WorkerProtocol.popText(message));
+			if (sessions.size() >= CAPACITY) {
+				send(socket, WorkerProtocol.ENDED, sessionId, "Worker full");
+				return;
+			}
+			try {
+				final Session session = new Session(sessionId, model, timeStep);
+				sessions.put(sessionId, session);
+				send(socket, WorkerProtocol.COLUMNS, sessionId,
+						String.join(WorkerProtocol.COLUMN_SEPARATOR, session.getSampleColumns()));
+			} catch (IOException | InspireException e) {
+				if (LOGGER.isLoggable(Level.WARNING)) {
+					LOGGER.log(Level.WARNING, "Session " + sessionId + " not started", e);
+				}
+				send(socket, WorkerProtocol.ENDED, sessionId, "Model " + model + " not loaded: " + e.getMessage());
+			}
+		} else if (WorkerProtocol.STOP.equals(type)) {
+			final Session session = sessions.remove(sessionId);
+			if (session != null) {
+				session.close();
+				send(socket, WorkerProtocol.ENDED, sessionId, "Stopped");
+			}
+		}
+	}
+
+	private static void send(final Socket socket, final String... frames) {
+		final ZMsg message = new ZMsg();
+		for (final String frame : frames) {
+			message.add(frame);
+		}
+		message.send(socket);
+	}
+
+	/**
+	 * A simulation run for the coordinator
+	 */
+	private final class Session {
+		private final String id;
+		private final LungSimulator lungSimulator;
+		private final SimulationPipeline pipeline;
+		private final double timeStep;
+		private final int width;
+
+		/**
+		 * Samples from the derived values stage of the pipeline to the thread of
+		 * the worker
+		 */
+		private final SpscRowQueue outgoing;
+		private final SpscRowQueue.RowHandler batchHandler = this::batch;
+		private final double[] batch;
+		private int batchValues;
+
+		private final long start = System.nanoTime();
+		private double lastT;
+
+		Session(final String id, final String model, final double timeStep) throws IOException {
+			this.id = id;
+			this.timeStep = timeStep;
+			lungSimulator = new LungSimulator();
+			lungSimulator.initSchema(model);
+			lungSimulator.modelValidation();
+			lungSimulator.simulationSetUp();
+			width = lungSimulator.getCircuitBuilder().getSampleColumns().size();
+			outgoing = new SpscRowQueue(width, QUEUE_ROWS);
+			batch = new double[BATCH_ROWS * width];
+			lungSimulator.getCircuitBuilder().addSampleListener(sample -> {
+				if (!outgoing.offer(sample)) {
+					lungSimulator.getMetrics().increment(Counter.PIPELINE_DROPS);
+				}
+			});
+			pipeline = ventilator == null ? new SimulationPipeline(lungSimulator, timeStep)
+					: new SimulationPipeline(lungSimulator, ventilator, timeStep, Backpressure.BLOCK,
+							SimulationPipeline.DEFAULT_QUEUE_ROWS);
+			pipeline.start();
+		}
+
+		List<String> getSampleColumns() {
+			return lungSimulator.getCircuitBuilder().getSampleColumns();
+		}
+
+		/**
+		 * Executes the step if it is due and sends the samples ready
+		 */
+		void advance(final Socket socket) {
+			final double initialT = (System.nanoTime() - start) / 1e9;
+			if (initialT - lastT >= timeStep) {
+				pipeline.step(initialT, timeStep);
+				// keeps the chart queue of the pipeline empty
+				pipeline.publishCharts();
+				lastT = initialT;
+			}
+			while (outgoing.drain(batchHandler, BATCH_ROWS) > 0) {
+				final ZMsg message = new ZMsg();
+				message.add(WorkerProtocol.SAMPLES);
+				message.add(id);
+				message.add(WorkerProtocol.encode(batch, batchValues));
+				message.send(socket);
+				batchValues = 0;
+			}
+		}
+
+		private void batch(final double[] rows, final int offset, final int rowWidth) {
+			System.arraycopy(rows, offset, batch, batchValues, rowWidth);
+			batchValues += rowWidth;
+		}
+
+		void close() {
+			pipeline.stop();
+		}
+	}
+
+	/**
+	 * Starts a worker: {@code SimulationWorker <coordinator endpoint>
+	 * [-ventilator <cmH2O>]}, the option replacing the ventilator of the node
+	 * with a constant pressure, e.g. for tests
+	 *
+	 * @param args command line arguments
+	 */
+	public static void main(final String[] args) {
+		if (args.length < 1) {
+			throw new InspireException(
+					"Usage: SimulationWorker <coordinator endpoint> [-ventilator <cmH2O>]");
+		}
+		DoubleSupplier ventilator = null;
+		if (args.length == 3 && "-ventilator".equals(args[1])) {
+			final double pressure = Double.parseDouble(args[2]);
+			ventilator = () -> pressure;
+		}
+		final SimulationWorker worker = new SimulationWorker(args[0], ventilator);
+		Runtime.getRuntime().addShutdownHook(new Thread(worker::stop));
+		worker.run();
+	}
+}
@@ -0,0 +1,351 @@
+package lungsimulator.worker;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ.Socket;
+import org.zeromq.ZMsg;
+
+import lungsimulator.LungSimulator;
+import lungsimulator.exceptions.InspireException;
+import lungsimulator.pipeline.SimulationPipeline;
+
+/**
+ * Tier of the user interface that hands the simulations to
+ * {@link SimulationWorker}s: the workers connect to the endpoint of the
+ * coordinator and report their load, each simulation is assigned to the live
+ * worker with the lowest load, and the samples it streams back are published
+ * to the local simulation through a {@link RemoteSimulation}. A worker that
+ * stops reporting is dropped, and its simulations end.
+ */
+public class WorkerCoordinator implements Closeable {
+
+	/**
+	 * Wait for a message of the workers before the commands are sent, in
+	 * milliseconds
+	 */
+	private static final int POLL_MILLIS = 10;
+
+	private static final Logger LOGGER = Logger.getLogger(WorkerCoordinator.class.getName());
+
+	private final ZContext context;
+	private final Socket socket;
+	private final String endpoint;
+	private final Thread thread;
+
+	/**
+	 * Workers by identity; guarded by this
+	 */
+	private final Map<String, Worker> workers = new HashMap<>();
+
+	/**
+	 * Running simulations by session id
+	 */
+	private final Map<String, Assignment> assignments = new ConcurrentHashMap<>();
+
+	/**
+	 * Messages to the workers, sent by the thread of the coordinator
+	 */
+	private final Queue<ZMsg> commands = new ConcurrentLinkedQueue<>();
+
+	private volatile boolean running = true;
+
+	/**
+	 * Binds the coordinator and starts its thread
+	 *
+	 * @param endpoint endpoint the workers connect to, e.g. tcp://*:5570; the
+	 *                 port * binds to a free port
+	 */
+	public WorkerCoordinator(final String endpoint) {
+		context = new ZContext();
+		socket = context.createSocket(SocketType.ROUTER);
+		socket.setReceiveTimeOut(POLL_MILLIS);
+		socket.setLinger(0);
+		if (endpoint.endsWith(":*")) {
+			final int port = socket.bindToRandomPort(endpoint.substring(0, endpoint.length() - 2));
+			this.endpoint = endpoint.substring(0, endpoint.length() - 1) + port;
+		} else {
+			socket.bind(endpoint);
+			this.endpoint = endpoint;
+		}
+		thread = new Thread(this::serve, "worker-coordinator");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Runs a simulation on the live worker with the lowest load
+	 *
+	 * @param lungSimulator local simulation of a built-in model, set up; its
+	 *                      sample listeners receive the samples of the worker
+	 * @param timeStep      time step of the simulation, in seconds
+	 * @return simulation running on the worker
+	 */
+	public RemoteSimulation startSimulation(final LungSimulator lungSimulator, final double timeStep) {
+		final String model = lungSimulator.getSchemaName();
+		if (model == null) {
+			throw new InspireException("Only the built-in models can run on a worker");
+		}
+		final String sessionId = UUID.randomUUID().toString();
+		final Worker worker;
+		final RemoteSimulation remote;
+		synchronized (this) {
+			worker = leastLoaded();
+			if (worker == null) {
+				throw new InspireException("No simulation worker available");
+			}
+			worker.sessions++;
+			remote = new RemoteSimulation(this, sessionId, worker.name, lungSimulator,
+					SimulationPipeline.DEFAULT_QUEUE_ROWS);
+			assignments.put(sessionId, new Assignment(remote, worker.identity,
+					lungSimulator.getCircuitBuilder().getSampleColumns()));
+		}
+		command(worker.identity, WorkerProtocol.START, sessionId, model, String.valueOf(timeStep));
+		if (LOGGER.isLoggable(Level.INFO)) {
+			LOGGER.log(Level.INFO, "Session " + sessionId + " of " + model + " assigned to " + worker.name);
+		}
+		return remote;
+	}
+
+	/**
+	 * @return number of live workers
+	 */
+	public synchronized int getWorkerCount() {
+		return workers.size();
+	}
+
+	/**
+	 * @return number of simulations running on the workers
+	 */
+	public int getSessionCount() {
+		return assignments.size();
+	}
+
+	/**
+	 * @return endpoint the workers connect to, with the port bound
+	 */
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * Stops the simulations and the coordinator
+	 */
+	@Override
+	public void close() {
+		running = false;
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		context.close();
+	}
+
+	/**
+	 * Asks the worker of a session to stop it
+	 *
+	 * @param sessionId id of the session
+	 */
+	void stopSimulation(final String sessionId) {
+		final Assignment assignment = assignments.get(sessionId);
+		if (assignment != null) {
+			command(assignment.workerIdentity, WorkerProtocol.STOP, sessionId);
+		}
+	}
+
+	private void command(final String identity, final String... frames) {
+		final ZMsg message = new ZMsg();
+		message.add(identity.getBytes(StandardCharsets.ISO_8859_1));
+		for (final String frame : frames) {
+			message.add(frame);
+		}
+		commands.add(message);
+	}
+
+	/**
+	 * Loop of the thread of the coordinator, the only one using the socket
+	 */
+	private void serve() {
+		while (running) {
+			ZMsg message = ZMsg.recvMsg(socket);
+			while (message != null) {
+				try {
+					handle(message);
+				} catch (RuntimeException e) {
+					// a malformed message or a failing sample listener must not
+					// stop the other simulations
+					if (LOGGER.isLoggable(Level.WARNING)) {
+						LOGGER.log(Level.WARNING, "Message of a worker not handled", e);
+					}
+				}
+				message = ZMsg.recvMsg(socket, false);
+			}
+			ZMsg command = commands.poll();
+			while (command != null) {
+				command.send(socket);
+				command = commands.poll();
+			}
+			dropLostWorkers();
+		}
+		for (final Map.Entry<String, Assignment> entry : assignments.entrySet()) {
+			final ZMsg stop = new ZMsg();
+			stop.add(entry.getValue().workerIdentity.getBytes(StandardCharsets.ISO_8859_1));
+			stop.add(WorkerProtocol.STOP);
+			stop.add(entry.getKey());
+			stop.send(socket);
+			entry.getValue().remote.end("Coordinator closed");
+		}
+		assignments.clear();
+	}
+
+	private void handle(final ZMsg message) {
+		final String identity = new String(message.pop().getData(), StandardCharsets.ISO_8859_1);
+		final String type = WorkerProtocol.popText(message);
+		if (WorkerProtocol.REGISTER.equals(type) || WorkerProtocol.LOAD.equals(type)) {
+			if (WorkerProtocol.LOAD.equals(type)) {
+				// sessions counted by the coordinator
+				WorkerProtocol.popText(message);
+			}
+			final int capacity = Integer.parseInt(WorkerProtocol.popText(message));
+			final String name = WorkerProtocol.popText(message);
+			synchronized (this) {
+				final Worker worker = workers.computeIfAbsent(identity, key -> {
+					if (LOGGER.isLoggable(Level.INFO)) {
+						LOGGER.log(Level.INFO, "Worker " + name + " registered, capacity " + capacity);
+					}
+					return new Worker(key, name);
+				});
+				worker.capacity = capacity;
+				worker.lastSeen = System.currentTimeMillis();
+			}
+			return;
+		}
+
+		final String sessionId = WorkerProtocol.popText(message);
+		final Assignment assignment = assignments.get(sessionId);
+		if (assignment == null) {
+			return;
+		}
+		seen(identity);
+		if (WorkerProtocol.SAMPLES.equals(type)) {
+			assignment.remote.accept(WorkerProtocol.decode(message.pop().getData()));
+		} else if (WorkerProtocol.COLUMNS.equals(type)) {
+			final List<String> columns = Arrays
+					.asList(WorkerProtocol.popText(message).split(WorkerProtocol.COLUMN_SEPARATOR));
+			if (!columns.equals(assignment.columns)) {
+				command(identity, WorkerProtocol.STOP, sessionId);
+				end(sessionId, "The model of the worker differs from the local one");
+			}
+		} else if (WorkerProtocol.ENDED.equals(type)) {
+			end(sessionId, WorkerProtocol.popText(message));
+		}
+	}
+
+	private synchronized void seen(final String identity) {
+		final Worker worker = workers.get(identity);
+		if (worker != null) {
+			worker.lastSeen = System.currentTimeMillis();
+		}
+	}
+
+	private void end(final String sessionId, final String reason) {
+		final Assignment assignment = assignments.remove(sessionId);
+		if (assignment == null) {
+			return;
+		}
+		synchronized (this) {
+			final Worker worker = workers.get(assignment.workerIdentity);
+			if (worker != null) {
+				worker.sessions--;
+			}
+		}
+		assignment.remote.end(reason);
+	}
+
+	private void dropLostWorkers() {
+		final long now = System.currentTimeMillis();
+		final List<Worker> lost = new ArrayList<>();
+		synchronized (this) {
+			final Iterator<Worker> iterator = workers.values().iterator();
+			while (iterator.hasNext()) {
+				final Worker worker = iterator.next();
+				if (now - worker.lastSeen > WorkerProtocol.WORKER_TIMEOUT_MILLIS) {
+					iterator.remove();
+					lost.add(worker);
+				}
+			}
+		}
+		for (final Worker worker : lost) {
+			if (LOGGER.isLoggable(Level.WARNING)) {
+				LOGGER.log(Level.WARNING, "Worker " + worker.name + " lost");
+			}
+			assignments.forEach((sessionId, assignment) -> {
+				if (assignment.workerIdentity.equals(worker.identity)) {
+					end(sessionId, "Worker lost");
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return live worker with free capacity and the lowest ratio of sessions to
+	 *         capacity, null if none; called holding this
+	 */
+	private Worker leastLoaded() {
+		Worker best = null;
+		for (final Worker worker : workers.values()) {
+			if (worker.sessions < worker.capacity
+					&& (best == null || (double) worker.sessions / worker.capacity < (double) best.sessions
+							/ best.capacity)) {
+				best = worker;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * A worker connected to the coordinator; guarded by the coordinator
+	 */
+	private static final class Worker {
+		private final String identity;
+		private final String name;
+		private int capacity;
+		private int sessions;
+		private long lastSeen;
+
+		Worker(final String identity, final String name) {
+			this.identity = identity;
+			this.name = name;
+		}
+	}
+
+	/**
+	 * A simulation and the worker running it
+	 */
+	private static final class Assignment {
+		private final RemoteSimulation remote;
+		private final String workerIdentity;
+		private final List<String> columns;
+
+		Assignment(final RemoteSimulation remote, final String workerIdentity, final List<String> columns) {
+			this.remote = remote;
+			this.workerIdentity = workerIdentity;
+			this.columns = columns;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package lungsimulator.worker;
+
+import java.nio.ByteBuffer;
+
+import org.zeromq.ZMQ;
+import org.zeromq.ZMsg;
+
+/**
+ * Messages between the workers and the coordinator, as ZMQ multipart messages
+ * whose first frame is the type:
+ * <ul>
+ * <li>worker to coordinator: {@value #REGISTER} capacity, name; {@value #LOAD}
+ * running sessions, capacity, name, once per {@link #HEARTBEAT_MILLIS};
+ * {@value #COLUMNS} session, sample columns separated by
+ * {@value #COLUMN_SEPARATOR}; {@value #SAMPLES} session, rows of doubles;
+ * {@value #ENDED} session, reason</li>
+ * <li>coordinator to worker: {@value #START} session, model, time step;
+ * {@value #STOP} session</li>
+ * </ul>
+ */
+final class WorkerProtocol {
+
+	static final String REGISTER = "REGISTER";
+	static final String LOAD = "LOAD";
+	static final String COLUMNS = "COLUMNS";
+	static final String SAMPLES = "SAMPLES";
+	static final String ENDED = "ENDED";
+	static final String START = "START";
+	static final String STOP = "STOP";
+
+	static final String COLUMN_SEPARATOR = "\n";
+
+	/**
+	 * Time between two load reports of a worker
+	 */
+	static final long HEARTBEAT_MILLIS = 1000;
+
+	/**
+	 * A worker silent for this time is considered lost
+	 */
+	static final long WORKER_TIMEOUT_MILLIS = 3 * HEARTBEAT_MILLIS;
+
+	private WorkerProtocol() {
+	}
+
+	/**
+	 * Takes a text frame; unlike {@link ZMsg#popString()}, it does not turn the
+	 * frames with control characters, e.g. the column separator, into hex
+	 *
+	 * @param message message whose next frame is text
+	 * @return text of the frame, null if the message has no more frames
+	 */
+	static String popText(final ZMsg message) {
+		final byte[] data = message.isEmpty() ? null : message.pop().getData();
+		return data == null ? null : new String(data, ZMQ.CHARSET);
+	}
+
+	/**
+	 * @param rows  values of the rows, one after the other
+	 * @param count number of values
+	 * @return values in big endian order
+	 */
+	static byte[] encode(final double[] rows, final int count) {
+		final ByteBuffer buffer = ByteBuffer.allocate(count * Double.BYTES);
+		for (int i = 0; i < count; i++) {
+			buffer.putDouble(rows[i]);
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * @param bytes values in big endian order
+	 * @return values of the rows
+	 */
+	static double[] decode(final byte[] bytes) {
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		final double[] values = new double[bytes.length / Double.BYTES];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = buffer.getDouble();
+		}
+		return values;
+	}
+}
@@ -0,0 +1,96 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import lungsimulator.alarms.AlarmEngine;
+import lungsimulator.alarms.AlarmRule;
+import lungsimulator.exceptions.InspireException;
+
+public class TestAlarmEngine {
+
+	private static final List<String> COLUMNS = Arrays.asList("time", "ventilator", "flow:a");
+
+	private static final double TIME_STEP = 0.001;
+
+	/**
+	 * Changes of the alarms: name, raised, time
+	 */
+	private final List<Object[]> events = new ArrayList<>();
+
+	private AlarmEngine engine(final AlarmRule... rules) {
+		final AlarmEngine engine = new AlarmEngine(COLUMNS, Arrays.asList(rules));
+		engine.addAlarmListener((rule, raised, time) -> events.add(new Object[] { rule.getName(), raised, time }));
+		return engine;
+	}
+
+	private static void run(final AlarmEngine engine, final int from, final int to, final double pressure,
+			final double flow) {
+		for (int step = from; step < to; step++) {
+			engine.onSample(new double[] { step * TIME_STEP, pressure, flow });
+		}
+	}
+
+	@Test
+	public void raisesAfterTheHoldTime() {
+		final AlarmEngine engine = engine(AlarmRule.above("High pressure", "ventilator", 40, 0.2));
+		// 150 ms above the threshold are not enough
+		run(engine, 0, 1000, 15, 0);
+		run(engine, 1000, 1150, 45, 0);
+		run(engine, 1150, 2000, 15, 0);
+		assertTrue(events.isEmpty());
+
+		run(engine, 2000, 2500, 45, 0);
+		assertTrue(engine.isRaised(0));
+		assertEquals(1, events.size());
+		assertEquals(true, events.get(0)[1]);
+		assertEquals(2.2, (double) events.get(0)[2], 1e-9);
+
+		run(engine, 2500, 2600, 15, 0);
+		assertFalse(engine.isRaised(0));
+		assertTrue(engine.getRaisedRules().isEmpty());
+		assertEquals(2, events.size());
+		assertEquals(false, events.get(1)[1]);
+		assertEquals(2.5, (double) events.get(1)[2], 1e-9);
+	}
+
+	@Test
+	public void raisesAnApnea() {
+		final AlarmEngine engine = engine(AlarmRule.below("Apnea", "flow:a", 0.005, 10));
+		run(engine, 0, 9_000, 5, -0.1);
+		run(engine, 9_000, 10_000, 15, 0.5);
+		run(engine, 10_000, 19_999, 5, 0);
+		assertTrue(events.isEmpty());
+		run(engine, 19_999, 20_001, 5, 0);
+		assertEquals(1, events.size());
+		assertEquals("Apnea", engine.getRaisedRules().get(0).getName());
+	}
+
+	@Test
+	public void raisesWhenTheFlowDropsFromItsPeak() {
+		final AlarmEngine engine = engine(AlarmRule.belowPeakFraction("Flow drop", "flow:a", 0.25, 0));
+		for (int breath = 0; breath < 2; breath++) {
+			// the flow decays from its peak of 1 L/s, then reverses
+			final int start = breath * 3000;
+			for (int step = 0; step < 3000; step++) {
+				final double flow = step < 1000 ? Math.exp(-step * TIME_STEP / 0.25) : -0.2;
+				engine.onSample(new double[] { (start + step) * TIME_STEP, 15, flow });
+			}
+		}
+		assertEquals(4, events.size());
+		// e^(-t / 0.25) < 0.25 after 0.25 ln 4 s
+		assertEquals(0.25 * Math.log(4), (double) events.get(0)[2], 2 * TIME_STEP);
+		assertEquals(false, events.get(1)[1]);
+		assertEquals(3 + 0.25 * Math.log(4), (double) events.get(2)[2], 2 * TIME_STEP);
+	}
+
+	@Test(expected = InspireException.class)
+	public void rejectsAnUnknownColumn() {
+		engine(AlarmRule.above("High pressure", "pressure:missing", 40, 0.2));
+	}
+}
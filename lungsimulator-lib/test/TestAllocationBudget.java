@@ -0,0 +1,150 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.math3.util.Precision;
+import org.junit.Test;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.alarms.AlarmEngine;
+import lungsimulator.alarms.AlarmRule;
+import lungsimulator.components.Archetype;
+import lungsimulator.components.Patient;
+import lungsimulator.metrics.BreathAnalyzer;
+import lungsimulator.utils.DoubleRingList;
+import lungsimulator.utils.LungModelGenerator;
+import lungsimulator.utils.Utils;
+import lungsimulator.utils.YamlReader;
+import simulator.CirSim;
+
+public class TestAllocationBudget {
+
+	private static final double TIME_STEP = 0.01;
+
+	/**
+	 * Enough steps for the JIT to compile the step and for escape analysis to
+	 * remove its temporary objects
+	 */
+	private static final int WARMUP_STEPS = 30000;
+	private static final int MEASURED_STEPS = 2000;
+	private static final int WINDOWS = 10;
+	private static final int ALARM_RULES = 300;
+
+	private static com.sun.management.ThreadMXBean threads() {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+		return threads;
+	}
+
+	/**
+	 * Same sequence of calls as LungSimulator.miniSimulation, without the
+	 * ventilator connection
+	 */
+	private static void step(final CircuitBuilder builder, final CirSim cirSim, final int step) {
+		final double time = step * TIME_STEP;
+		builder.updateVentilatorValue(step % 300 < 100 ? 15 : 5);
+		cirSim.setTimeStep(TIME_STEP);
+		cirSim.setT(time);
+		cirSim.analyzeCircuit();
+		assertTrue(cirSim.loopAndContinue(false));
+		builder.updateData(time);
+	}
+
+	/**
+	 * @return lowest number of bytes allocated per step over a few windows of
+	 *         steps after the warm up
+	 */
+	private static double bytesPerStep(final CircuitBuilder builder, final CirSim cirSim) {
+		final com.sun.management.ThreadMXBean threads = threads();
+		final long thread = Thread.currentThread().getId();
+		int step = 0;
+		for (; step < WARMUP_STEPS; step++) {
+			step(builder, cirSim, step);
+		}
+		long best = Long.MAX_VALUE;
+		for (int window = 0; window < WINDOWS && best > 0; window++) {
+			final long before = threads.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < MEASURED_STEPS; i++, step++) {
+				step(builder, cirSim, step);
+			}
+			best = Math.min(best, threads.getThreadAllocatedBytes(thread) - before);
+		}
+		return (double) best / MEASURED_STEPS;
+	}
+
+	private static void assertAllocationFree(final String name, final Patient patient, final Archetype archetype,
+			final boolean lumping) {
+		final CircuitBuilder builder = new CircuitBuilder();
+		builder.setSymmetryLumping(lumping);
+		final CirSim cirSim = builder.buildCircuitSimulator(patient, archetype);
+		// the breaths are measured at every step too
+		assertTrue(name, builder.getAirwayFlowColumn() >= 0);
+		final BreathAnalyzer analyzer = new BreathAnalyzer(CircuitBuilder.VENTILATOR_COLUMN,
+				builder.getAirwayFlowColumn(), builder.isAirwayFlowReversed());
+		builder.addSampleListener(analyzer);
+		// and hundreds of alarm rules
+		final List<AlarmRule> rules = new ArrayList<>();
+		final List<String> columns = builder.getSampleColumns();
+		for (int i = 0; rules.size() < ALARM_RULES; i++) {
+			final String column = columns.get(1 + i % (columns.size() - 1));
+			rules.add(AlarmRule.above("above " + i, column, i % 20, 0.1));
+			rules.add(AlarmRule.below("below " + i, column, i % 20, 0.1));
+			rules.add(AlarmRule.belowPeakFraction("peak " + i, column, 0.5, 0));
+		}
+		final AlarmEngine alarms = new AlarmEngine(columns, rules);
+		builder.addSampleListener(alarms);
+		assertEquals(name, 0, bytesPerStep(builder, cirSim), 0);
+		assertTrue(name, analyzer.getLatest().isValid());
+	}
+
+	@Test
+	public void bundledLinearModelsDoNotAllocate() throws IOException {
+		for (final String model : Arrays.asList("Albanese", "Baker", "Al-Naggar", "Campbell-Brown")) {
+			final YamlReader yamlReader = new YamlReader(model);
+			assertAllocationFree(model, yamlReader.readPatientModel(), yamlReader.readArchetypeParameters(), false);
+		}
+	}
+
+	@Test
+	public void lumpedTreeDoesNotAllocate() {
+		final LungModelGenerator generator = new LungModelGenerator();
+		generator.setGenerations(5);
+		assertAllocationFree("tree", generator.getPatient(), generator.getArchetype(), true);
+	}
+
+	@Test
+	public void ringKeepsTheLatestValues() {
+		final List<Double> series = Utils.initList();
+		for (int i = 1; i < 2 * Utils.MAXDATA; i++) {
+			Utils.updateDoubleList(series, i);
+		}
+		assertEquals(Utils.MAXDATA, series.size());
+		assertEquals(Utils.MAXDATA, series.get(0), 0);
+		assertEquals(2 * Utils.MAXDATA - 1, ((DoubleRingList) series).getLast(), 0);
+	}
+
+	@Test
+	public void roundMatchesPrecision() {
+		for (final double value : new double[] { 0, 1.2345, -1.2345, 0.0005, -0.0005, 12.3456789, -7.0001, 1e-9,
+				123456.78951 }) {
+			assertEquals(String.valueOf(value), Precision.round(value, 3), Utils.round(value, 3), 0);
+		}
+	}
+
+	@Test
+	public void parsesTheVentilatorReplies() {
+		for (final String reply : new String[] { "10", "0", "-3.25", "+7.5", "12.000001", "1e3", "NaN" }) {
+			final byte[] bytes = Arrays.copyOf(reply.getBytes(StandardCharsets.US_ASCII), 64);
+			assertEquals(reply, Double.parseDouble(reply), Utils.parseDouble(bytes, reply.length()), 0);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.metrics.BreathAnalyzer;
+import lungsimulator.metrics.BreathMetrics;
+import lungsimulator.utils.YamlReader;
+import simulator.CirSim;
+
+public class TestBreathAnalyzer {
+
+	private static final double PEEP = 5;
+
+	private static final double INSPIRATORY_PRESSURE = 15;
+
+	/**
+	 * Pressure controlled breaths: 1 s of inspiration, 2 s of expiration
+	 */
+	private static double ventilator(final double time) {
+		return time % 3 < 1 ? INSPIRATORY_PRESSURE : PEEP;
+	}
+
+	@Test
+	public void measuresTheBreathsOfALung() {
+		// a single compartment of 0.02 L/cmH2O behind 5 cmH2O/L/s, at 1 kHz: the
+		// flow stops before the end of the inspiration
+		final double compliance = 0.02;
+		final double resistance = 5;
+		final double timeStep = 0.001;
+		final BreathAnalyzer analyzer = new BreathAnalyzer(1, 2, false);
+		assertFalse(analyzer.getLatest().isValid());
+
+		double alveolarPressure = PEEP;
+		for (int step = 0; step <= 30_000; step++) {
+			final double time = step * timeStep;
+			final double pressure = ventilator(time);
+			final double flow = (pressure - alveolarPressure) / resistance;
+			analyzer.onSample(new double[] { time, pressure, flow });
+			alveolarPressure += flow * timeStep / compliance;
+		}
+
+		final BreathMetrics breath = analyzer.getLatest();
+		assertTrue(breath.isValid());
+		assertEquals(9, breath.getBreathCount());
+		final double tidalVolume = compliance * (INSPIRATORY_PRESSURE - PEEP) * (1 - Math.exp(-10));
+		assertEquals(tidalVolume, breath.getTidalVolume(), 0.005);
+		assertEquals(INSPIRATORY_PRESSURE, breath.getPeakPressure(), 0);
+		assertEquals(INSPIRATORY_PRESSURE, breath.getPlateauPressure(), 0);
+		assertEquals(PEEP, breath.getPeep(), 0);
+		assertEquals(20, breath.getRespiratoryRate(), 0.1);
+		assertEquals(0.5, breath.getIeRatio(), 0.01);
+		assertEquals(tidalVolume / (INSPIRATORY_PRESSURE - PEEP), breath.getDynamicCompliance(), 0.001);
+	}
+
+	@Test
+	public void findsTheAirwayFlowOfAModel() throws IOException {
+		final YamlReader yamlReader = new YamlReader("Albanese");
+		final CircuitBuilder builder = new CircuitBuilder();
+		final CirSim cirSim = builder.buildCircuitSimulator(yamlReader.readPatientModel(),
+				yamlReader.readArchetypeParameters());
+		assertEquals(builder.getFlowColumn("Mouth to Larynx Resistance"), builder.getAirwayFlowColumn());
+		final BreathAnalyzer analyzer = new BreathAnalyzer(CircuitBuilder.VENTILATOR_COLUMN,
+				builder.getAirwayFlowColumn(), builder.isAirwayFlowReversed());
+		builder.addSampleListener(analyzer);
+
+		final double timeStep = 0.01;
+		for (int step = 0; step < 3000; step++) {
+			final double time = step * timeStep;
+			builder.updateVentilatorValue(ventilator(time));
+			cirSim.setTimeStep(timeStep);
+			cirSim.setT(time);
+			cirSim.analyzeCircuit();
+			assertTrue(cirSim.loopAndContinue(false));
+			builder.updateData(time);
+		}
+
+		final BreathMetrics breath = analyzer.getLatest();
+		assertTrue(breath.getBreathCount() >= 8);
+		assertTrue(breath.getTidalVolume() > 0);
+		assertEquals(INSPIRATORY_PRESSURE, breath.getPeakPressure(), 1e-6);
+		assertEquals(PEEP, breath.getPeep(), 1e-6);
+		assertEquals(20, breath.getRespiratoryRate(), 0.5);
+		assertEquals(0.5, breath.getIeRatio(), 0.05);
+	}
+}
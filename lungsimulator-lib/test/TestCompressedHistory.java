@@ -0,0 +1,153 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.history.CompressedHistory;
+import lungsimulator.utils.Utils;
+import lungsimulator.utils.YamlReader;
+import simulator.CirSim;
+
+public class TestCompressedHistory {
+
+	private static final List<String> COLUMNS = Arrays.asList("time", "ventilator", "pressure:a", "flow:b");
+
+	private static final int BLOCK_ROWS = 64;
+
+	/**
+	 * Times with a jitter that needs every size of delta-of-delta, values with
+	 * repeats, small changes and random bits
+	 */
+	private static double[][] samples(final int rows) {
+		final Random random = new Random(7);
+		final double[][] samples = new double[rows][];
+		long tick = 0;
+		for (int i = 0; i < rows; i++) {
+			final int jitter = i % 5;
+			if (jitter == 0) {
+				tick += 1000;
+			} else if (jitter == 1) {
+				tick += 1000 + random.nextInt(100);
+			} else if (jitter == 2) {
+				tick += 1200;
+			} else {
+				tick += 1000 + random.nextInt(3000);
+			}
+			if (i % 97 == 0) {
+				tick += 1L << 40;
+			}
+			samples[i] = new double[] { tick / CompressedHistory.DEFAULT_TICKS_PER_SECOND, i % 300 < 100 ? 15 : 5,
+					Math.sin(i / 10.0), random.nextDouble() * (random.nextBoolean() ? -1e6 : 1e-6) };
+		}
+		return samples;
+	}
+
+	private static CompressedHistory fill(final double[][] samples, final long retainedRows) {
+		final CompressedHistory history = new CompressedHistory(COLUMNS, retainedRows, BLOCK_ROWS,
+				CompressedHistory.DEFAULT_TICKS_PER_SECOND, CompressedHistory.LOSSLESS);
+		for (final double[] sample : samples) {
+			history.append(sample);
+		}
+		return history;
+	}
+
+	@Test
+	public void decodesEveryValueExactly() {
+		final double[][] samples = samples(1000);
+		final CompressedHistory history = fill(samples, 1 << 20);
+		assertEquals(samples.length, history.getRowCount());
+		assertEquals(samples.length, history.count(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY));
+
+		final double[] times = new double[samples.length];
+		final double[] values = new double[samples.length];
+		for (int column = 0; column < COLUMNS.size(); column++) {
+			assertEquals(samples.length,
+					history.read(column, samples[0][0], samples[samples.length - 1][0], times, values));
+			for (int i = 0; i < samples.length; i++) {
+				assertEquals(samples[i][0], times[i], 1e-9);
+				if (column > 0) {
+					assertEquals(Double.doubleToRawLongBits(samples[i][column]), Double.doubleToRawLongBits(values[i]));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void readsARangeAcrossBlocks() {
+		final double[][] samples = samples(500);
+		final CompressedHistory history = fill(samples, 1 << 20);
+		final int first = 100;
+		final int last = 470;
+		final double from = samples[first][0];
+		final double to = samples[last][0];
+		assertEquals(last - first + 1, history.count(from, to));
+
+		final double[] times = new double[1000];
+		final double[] values = new double[1000];
+		assertEquals(last - first + 1, history.read(2, from, to, times, values));
+		for (int i = first; i <= last; i++) {
+			assertEquals(samples[i][2], values[i - first], 0);
+		}
+
+		final double[] small = new double[10];
+		assertEquals(small.length, history.read(2, from, to, small, new double[small.length]));
+		assertEquals(from, small[0], 1e-9);
+	}
+
+	@Test
+	public void discardsTheOldestBlocks() {
+		final double[][] samples = samples(1000);
+		final CompressedHistory history = fill(samples, 4 * BLOCK_ROWS);
+		assertTrue(history.getRowCount() <= 5 * BLOCK_ROWS);
+		final int oldest = samples.length - (int) history.getRowCount();
+		assertEquals(samples[oldest][0], history.getStartTime(), 1e-9);
+		assertEquals(samples[samples.length - 1][0], history.getEndTime(), 1e-9);
+
+		final double[] times = new double[1];
+		final double[] values = new double[1];
+		assertEquals(1, history.read(3, 0, Double.POSITIVE_INFINITY, times, values));
+		assertEquals(samples[oldest][3], values[0], 0);
+
+		history.clear();
+		assertEquals(0, history.getRowCount());
+		assertEquals(0, history.read(3, 0, Double.POSITIVE_INFINITY, times, values));
+	}
+
+	@Test
+	public void compressesASimulation() throws IOException {
+		final YamlReader yamlReader = new YamlReader("Albanese");
+		final CircuitBuilder builder = new CircuitBuilder();
+		final CirSim cirSim = builder.buildCircuitSimulator(yamlReader.readPatientModel(),
+				yamlReader.readArchetypeParameters());
+		final CompressedHistory history = new CompressedHistory(builder.getSampleColumns(), 1 << 20);
+		builder.addSampleListener(history);
+		final double timeStep = 0.01;
+		final int steps = 6000;
+		for (int step = 0; step < steps; step++) {
+			final double time = step * timeStep;
+			builder.updateVentilatorValue(step % 300 < 100 ? 15 : 5);
+			cirSim.setTimeStep(timeStep);
+			cirSim.setT(time);
+			cirSim.analyzeCircuit();
+			assertTrue(cirSim.loopAndContinue(false));
+			builder.updateData(time);
+		}
+
+		final long rawBytes = (long) steps * builder.getSampleColumns().size() * Double.BYTES;
+		assertTrue(history.getCompressedBytes() + " of " + rawBytes, history.getCompressedBytes() * 4 < rawBytes);
+
+		final int column = builder.getPressureColumn(builder.getPressureIds().get(0));
+		final double[] times = new double[1];
+		final double[] values = new double[1];
+		assertEquals(1, history.read(column, (steps - 1) * timeStep, Double.POSITIVE_INFINITY, times, values));
+		assertEquals(builder.getInitdataPressure().get(builder.getPressureIds().get(0)).get(Utils.MAXDATA - 1),
+				values[0], 1e-3);
+		assertEquals(0, values[0] * 4096 - Math.rint(values[0] * 4096), 0);
+	}
+}
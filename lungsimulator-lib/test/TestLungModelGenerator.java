@@ -0,0 +1,121 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.components.Archetype;
+import lungsimulator.components.Patient;
+import lungsimulator.utils.LungModelGenerator;
+import lungsimulator.utils.Validator;
+import lungsimulator.utils.YamlReader;
+import simulator.CirSim;
+
+public class TestLungModelGenerator {
+
+	private static final int GENERATIONS = 6;
+
+	private void validate(final LungModelGenerator generator) throws IOException {
+		new Validator().evaluate(generator.getPatient(), generator.getArchetype(),
+				new YamlReader("Jain").readDemographicData());
+	}
+
+	private CircuitBuilder simulate(final Patient patient, final Archetype archetype) {
+		final CircuitBuilder builder = new CircuitBuilder();
+		final CirSim cirSim = builder.buildCircuitSimulator(patient, archetype);
+		cirSim.setTimeStep(0.01);
+		for (int step = 0; step < 40; step++) {
+			builder.updateVentilatorValue(step < 20 ? 10 : 0);
+			if (builder.isTimeDependentCir()) {
+				builder.updateCircuitSimulator(archetype, step * 0.01);
+			}
+			cirSim.setT(step * 0.01);
+			cirSim.analyzeCircuit();
+			assertTrue(cirSim.loopAndContinue(false));
+			builder.updateData(step * 0.01);
+		}
+		return builder;
+	}
+
+	@Test
+	public void symmetricTreeIsValid() throws IOException {
+		final LungModelGenerator generator = new LungModelGenerator();
+		generator.setGenerations(GENERATIONS);
+		validate(generator);
+
+		// ventilator, 2^(n+1) - 1 airways, 2^n alveoli, chest wall
+		assertEquals(1 << GENERATIONS, generator.getTerminalCount());
+		assertEquals(3 * (1 << GENERATIONS) + 1, generator.getPatient().getElementsList().size());
+		// one resistance per order, the alveolar and the chest wall compliances
+		assertEquals(GENERATIONS + 3, generator.getArchetype().getParameters().size());
+	}
+
+	@Test
+	public void asymmetricScatteredTreeIsValid() throws IOException {
+		final LungModelGenerator generator = new LungModelGenerator();
+		generator.setGenerations(GENERATIONS);
+		generator.setAsymmetry(1);
+		generator.setVariability(0.2);
+		generator.setTimeDependentCompliance(true);
+		validate(generator);
+
+		// Fibonacci number of terminal units
+		assertEquals(21, generator.getTerminalCount());
+		assertEquals(3 * 21 + 1, generator.getPatient().getElementsList().size());
+		// one parameter per branch, plus the chest wall, the amplitude and period
+		assertEquals(2 * 21 - 1 + 21 + 3, generator.getArchetype().getParameters().size());
+
+		final CircuitBuilder builder = simulate(generator.getPatient(), generator.getArchetype());
+		assertTrue(builder.isTimeDependentCir());
+		final List<Double> alveoli = builder.getInitdataPressure().get(LungModelGenerator.ALVEOLI);
+		assertFalse(alveoli.isEmpty());
+		for (final double pressure : alveoli) {
+			assertTrue(Double.isFinite(pressure));
+		}
+	}
+
+	@Test
+	public void sameSeedSameModel() {
+		final LungModelGenerator first = new LungModelGenerator();
+		first.setVariability(0.3);
+		final LungModelGenerator second = new LungModelGenerator();
+		second.setVariability(0.3);
+		assertEquals(first.getArchetype().getParameters(), second.getArchetype().getParameters());
+
+		second.setSeed(2);
+		second.generate();
+		assertFalse(first.getArchetype().getParameters().equals(second.getArchetype().getParameters()));
+	}
+
+	@Test
+	public void yamlRoundTrip() throws IOException {
+		final LungModelGenerator generator = new LungModelGenerator();
+		generator.setGenerations(3);
+		generator.setAsymmetry(1);
+		generator.setTimeDependentCompliance(true);
+
+		final ByteArrayOutputStream patientYaml = new ByteArrayOutputStream();
+		generator.writePatientModel(patientYaml);
+		final ByteArrayOutputStream archetypeYaml = new ByteArrayOutputStream();
+		generator.writeArchetype(archetypeYaml);
+
+		final YamlReader reader = new YamlReader("Jain");
+		final Patient patient = reader.readPatientModel(new ByteArrayInputStream(patientYaml.toByteArray()));
+		final Archetype archetype = reader
+				.readArchetypeParameters(new ByteArrayInputStream(archetypeYaml.toByteArray()));
+		new Validator().evaluate(patient, archetype, reader.readDemographicData());
+		assertEquals(generator.getArchetype().getParameters(), archetype.getParameters());
+
+		final List<Double> expected = simulate(generator.getPatient(), generator.getArchetype())
+				.getInitdataPressure().get(LungModelGenerator.PLEURAL);
+		final List<Double> actual = simulate(patient, archetype).getInitdataPressure()
+				.get(LungModelGenerator.PLEURAL);
+		assertEquals(expected, actual);
+	}
+}
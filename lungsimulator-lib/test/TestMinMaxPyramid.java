@@ -0,0 +1,127 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import lungsimulator.history.CompressedHistory;
+import lungsimulator.history.MinMaxPyramid;
+
+public class TestMinMaxPyramid {
+
+	private static final List<String> COLUMNS = Arrays.asList("time", "ventilator", "pressure:a");
+
+	private static final double TIME_STEP = 0.001;
+
+	/**
+	 * Ten minutes at 1 kHz
+	 */
+	private static final int SAMPLES = 600_000;
+
+	private static final int POINTS = 1000;
+
+	/**
+	 * A breathing pressure with a narrow spike every 7 seconds, which a chart
+	 * must not lose
+	 */
+	private static double[] sample(final int i) {
+		final double time = i * TIME_STEP;
+		final double spike = i % 7000 == 3500 ? 40 : 0;
+		return new double[] { time, i % 3000 < 1000 ? 15 : 5, 10 + 5 * Math.sin(2 * Math.PI * time / 3) + spike };
+	}
+
+	private static void fill(final MinMaxPyramid pyramid, final CompressedHistory history, final int samples) {
+		for (int i = 0; i < samples; i++) {
+			final double[] sample = sample(i);
+			pyramid.append(sample);
+			if (history != null) {
+				history.append(sample);
+			}
+		}
+	}
+
+	private static double[] extremes(final double[] values, final int count) {
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < count; i++) {
+			min = Math.min(min, values[i]);
+			max = Math.max(max, values[i]);
+		}
+		return new double[] { min, max };
+	}
+
+	private static double[] expectedExtremes(final int first, final int last) {
+		final double[] values = new double[last - first + 1];
+		for (int i = first; i <= last; i++) {
+			values[i - first] = sample(i)[2];
+		}
+		return extremes(values, values.length);
+	}
+
+	private static void assertChart(final double[] times, final double[] values, final int count, final int first,
+			final int last) {
+		assertTrue("points " + count, count > POINTS / 8 && count <= POINTS);
+		for (int i = 1; i < count; i++) {
+			assertTrue(times[i] >= times[i - 1]);
+		}
+		// the first bucket may start before the range
+		final double bucket = 8.0 * (last - first) / POINTS * TIME_STEP;
+		assertTrue(times[0] <= first * TIME_STEP + 1e-9 && times[0] > first * TIME_STEP - bucket);
+		assertEquals(last * TIME_STEP, times[count - 1], 1e-9);
+		final double[] expected = expectedExtremes(first, last);
+		final double[] actual = extremes(values, count);
+		assertTrue(actual[0] <= expected[0] && actual[1] >= expected[1]);
+		assertEquals(expected[1], actual[1], 0);
+	}
+
+	@Test
+	public void keepsTheSamplesOfShortRanges() {
+		final MinMaxPyramid pyramid = new MinMaxPyramid(COLUMNS);
+		fill(pyramid, null, 500);
+		final double[] times = new double[POINTS];
+		final double[] values = new double[POINTS];
+		assertEquals(101, pyramid.read(2, 100 * TIME_STEP, 200 * TIME_STEP, times, values));
+		for (int i = 0; i <= 100; i++) {
+			assertEquals((100 + i) * TIME_STEP, times[i], 0);
+			assertEquals(sample(100 + i)[2], values[i], 0);
+		}
+	}
+
+	@Test
+	public void drawsTenMinutesFromAThousandPoints() {
+		final MinMaxPyramid pyramid = new MinMaxPyramid(COLUMNS);
+		fill(pyramid, null, SAMPLES);
+		final double[] times = new double[POINTS];
+		final double[] values = new double[POINTS];
+		final int count = pyramid.read(2, 0, SAMPLES * TIME_STEP, times, values);
+		assertChart(times, values, count, 0, SAMPLES - 1);
+
+		// a zoom on the last minute, served by a finer level
+		final int first = SAMPLES - 60_000;
+		final int zoomed = pyramid.read(2, first * TIME_STEP, SAMPLES * TIME_STEP, times, values);
+		assertChart(times, values, zoomed, first, SAMPLES - 1);
+	}
+
+	@Test
+	public void fallsBackToTheHistoryForOldRanges() {
+		final MinMaxPyramid pyramid = new MinMaxPyramid(COLUMNS);
+		final CompressedHistory history = new CompressedHistory(COLUMNS, SAMPLES, CompressedHistory.DEFAULT_BLOCK_ROWS,
+				CompressedHistory.DEFAULT_TICKS_PER_SECOND, CompressedHistory.LOSSLESS);
+		fill(pyramid, history, SAMPLES);
+		final double[] times = new double[POINTS];
+		final double[] values = new double[POINTS];
+
+		// ten seconds from the first minute: the fine levels no longer retain them
+		final int first = 30_000;
+		final int last = 40_000;
+		assertEquals(-1, pyramid.read(2, first * TIME_STEP, last * TIME_STEP, times, values));
+		final int count = history.readExtremes(2, first * TIME_STEP, last * TIME_STEP, times, values);
+		assertChart(times, values, count, first, last);
+
+		assertEquals(POINTS, history.readExtremes(2, (last - POINTS + 1) * TIME_STEP, last * TIME_STEP, times,
+				values));
+		assertEquals(sample(last)[2], values[POINTS - 1], 0);
+	}
+}
@@ -0,0 +1,104 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import lungsimulator.LungSimulator;
+import lungsimulator.components.Archetype;
+import lungsimulator.templates.ModelTemplate;
+import lungsimulator.templates.ModelTemplates;
+
+public class TestModelTemplates {
+
+	private static final double TIME_STEP = 0.01;
+
+	private static LungSimulator simulator(final String model) throws IOException {
+		final LungSimulator lungSimulator = new LungSimulator();
+		lungSimulator.initSchema(model);
+		lungSimulator.modelValidation();
+		return lungSimulator;
+	}
+
+	/**
+	 * Sets up and runs a simulation
+	 *
+	 * @return samples of the steps
+	 */
+	private static List<double[]> run(final LungSimulator lungSimulator, final int steps) {
+		lungSimulator.simulationSetUp();
+		final List<double[]> samples = new ArrayList<>();
+		lungSimulator.getCircuitBuilder().addSampleListener(sample -> samples.add(sample.clone()));
+		for (int step = 0; step < steps; step++) {
+			lungSimulator.getCircuitBuilder().updateVentilatorValue(step % 100 < 40 ? 15 : 5);
+			lungSimulator.solveStep(step * TIME_STEP, TIME_STEP, System.nanoTime());
+		}
+		return samples;
+	}
+
+	@Test
+	public void simulationsShareTheModelButNotTheDemographicData() throws IOException {
+		final LungSimulator first = simulator("Albanese");
+		final LungSimulator second = simulator("Albanese");
+		assertSame(ModelTemplates.get("Albanese"), ModelTemplates.get("Albanese"));
+		assertSame(first.getPatient(), second.getPatient());
+		assertSame(first.getArchetype(), second.getArchetype());
+
+		assertNotSame(first.getDemographicData(), second.getDemographicData());
+		final double weight = second.getDemographicData().getWeight();
+		first.getDemographicData().setWeight(weight + 10);
+		assertEquals(weight, second.getDemographicData().getWeight(), 0);
+		assertEquals(weight, ModelTemplates.get("Albanese").newDemographicData().getWeight(), 0);
+	}
+
+	@Test
+	public void sharedModelIsReadOnly() throws IOException {
+		final ModelTemplate template = ModelTemplates.get("Albanese");
+		try {
+			template.getArchetype().getParameters().put("x", "1");
+			fail("Archetype changed");
+		} catch (UnsupportedOperationException e) {
+			assertNull(template.getArchetype().getParameters().get("x"));
+		}
+		try {
+			template.getPatient().getElementsList().clear();
+			fail("Patient changed");
+		} catch (UnsupportedOperationException e) {
+			assertTrue(template.getPatient().getElementsList().size() > 1);
+		}
+		final double[] values = template.getInitialValues();
+		values[0] = -1;
+		assertTrue(template.getInitialValues()[0] != -1);
+	}
+
+	@Test
+	public void compiledModelSimulatesLikeTheResolvedOne() throws IOException {
+		for (final String model : new String[] { "Albanese", "Jain" }) {
+			final LungSimulator compiled = simulator(model);
+			// a copy of the archetype makes the simulation resolve the formulas
+			final LungSimulator resolved = simulator(model);
+			final Archetype archetype = new Archetype();
+			archetype.setSchema(resolved.getArchetype().getSchema());
+			archetype.setParameters(new HashMap<>(resolved.getArchetype().getParameters()));
+			resolved.setArchetype(archetype);
+			final List<double[]> expected = run(resolved, 300);
+			assertEquals("Jain".equals(model), resolved.getCircuitBuilder().isTimeDependentCir());
+
+			final List<double[]> actual = run(compiled, 300);
+			assertEquals("Jain".equals(model), compiled.getCircuitBuilder().isTimeDependentCir());
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertArrayEquals(expected.get(i), actual.get(i), 0);
+			}
+		}
+	}
+}
@@ -0,0 +1,115 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.LungSimulator;
+import lungsimulator.alarms.AlarmRule;
+import lungsimulator.broadcast.SimulationFrame;
+import lungsimulator.broadcast.SimulationHub;
+
+public class TestSimulationHub {
+
+	private static final double TIME_STEP = 0.01;
+
+	private static LungSimulator simulator() throws IOException {
+		final LungSimulator lungSimulator = new LungSimulator();
+		lungSimulator.initSchema("Albanese");
+		lungSimulator.simulationSetUp();
+		return lungSimulator;
+	}
+
+	private static void run(final LungSimulator lungSimulator, final int firstStep, final int steps) {
+		for (int step = firstStep; step < firstStep + steps; step++) {
+			lungSimulator.getCircuitBuilder().updateVentilatorValue(15);
+			lungSimulator.solveStep(step * TIME_STEP, TIME_STEP, System.nanoTime());
+		}
+	}
+
+	@Test
+	public void observersReadEveryFrameAtTheirOwnPace() throws IOException {
+		final LungSimulator lungSimulator = simulator();
+		final SimulationHub hub = lungSimulator.startBroadcast();
+		assertSame(hub, lungSimulator.startBroadcast());
+
+		// a fast observer reads after every step, a slow one at the end
+		final List<SimulationFrame> fast = new ArrayList<>();
+		long fastSequence = 0;
+		for (int step = 0; step < 100; step++) {
+			run(lungSimulator, step, 1);
+			final int read = fast.size();
+			assertTrue(hub.read(fastSequence, fast));
+			assertEquals(read + 1, fast.size());
+			fastSequence = fast.get(fast.size() - 1).getSequence();
+		}
+		final List<SimulationFrame> slow = new ArrayList<>();
+		assertTrue(hub.read(0, slow));
+
+		assertEquals(100, hub.getLastSequence());
+		assertEquals(100, slow.size());
+		for (int i = 0; i < slow.size(); i++) {
+			assertSame(fast.get(i), slow.get(i));
+			assertEquals(i + 1, slow.get(i).getSequence());
+			assertEquals(15, slow.get(i).getValue(CircuitBuilder.VENTILATOR_COLUMN), 0);
+		}
+		final int flowColumn = hub.getFlowColumn(hub.getFlowIds().get(0));
+		assertEquals(lungSimulator.getCircuitBuilder().getFlowColumn(hub.getFlowIds().get(0)), flowColumn);
+		assertEquals(lungSimulator.getCircuitBuilder().getSampleColumns(), hub.getSampleColumns());
+
+		// setting up the circuit again ends the broadcast
+		lungSimulator.simulationSetUp();
+		assertTrue(hub.isClosed());
+		assertNull(lungSimulator.getHub());
+	}
+
+	@Test
+	public void slowObserverIsToldOfLostFrames() throws IOException {
+		final LungSimulator lungSimulator = simulator();
+		final SimulationHub hub = new SimulationHub(lungSimulator, 16);
+		final double[] sample = new double[hub.getSampleColumns().size()];
+		for (int step = 1; step <= 30; step++) {
+			sample[0] = step * TIME_STEP;
+			hub.onSample(sample);
+		}
+
+		final List<SimulationFrame> frames = new ArrayList<>();
+		assertFalse(hub.read(5, frames));
+		assertEquals(16, frames.size());
+		assertEquals(15, frames.get(0).getSequence());
+		assertEquals(30 * TIME_STEP, frames.get(15).getTime(), 1e-12);
+
+		frames.clear();
+		assertTrue(hub.read(20, frames));
+		assertEquals(10, frames.size());
+		frames.clear();
+		assertTrue(hub.read(30, frames));
+		assertTrue(frames.isEmpty());
+	}
+
+	@Test
+	public void framesShareTheAlarmsUntilTheyChange() throws IOException {
+		final LungSimulator lungSimulator = simulator();
+		final List<String> columns = lungSimulator.getCircuitBuilder().getSampleColumns();
+		lungSimulator.setAlarmRules(Collections.singletonList(
+				AlarmRule.above("High ventilator pressure", columns.get(CircuitBuilder.VENTILATOR_COLUMN), 10, 0)));
+		final SimulationHub hub = lungSimulator.startBroadcast();
+		run(lungSimulator, 0, 3);
+
+		final List<SimulationFrame> frames = new ArrayList<>();
+		hub.read(0, frames);
+		assertEquals(3, frames.size());
+		assertEquals(1, frames.get(2).getRaisedAlarms().size());
+		assertEquals("High ventilator pressure", frames.get(2).getRaisedAlarms().get(0).getName());
+		assertSame(frames.get(1).getRaisedAlarms(), frames.get(2).getRaisedAlarms());
+		assertFalse(frames.get(2).getBreath().isValid());
+	}
+}
@@ -0,0 +1,59 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import lungsimulator.metrics.LatencyHistogram;
+import lungsimulator.metrics.SimulationMetrics;
+import lungsimulator.metrics.SimulationMetrics.Counter;
+import lungsimulator.metrics.SimulationMetrics.Phase;
+
+public class TestSimulationMetrics {
+
+	@Test
+	public void percentilesWithinPrecision() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 100_000; value++) {
+			histogram.record(value * 1000);
+		}
+		final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(100_000, snapshot.getCount());
+		assertEquals(100_000_000, snapshot.getMaxNanos());
+		assertEquals(50_000_000, snapshot.getValueAtPercentile(50), 50_000_000 / 64.0);
+		assertEquals(99_000_000, snapshot.getValueAtPercentile(99), 99_000_000 / 64.0);
+		assertEquals(100_000_000, snapshot.getValueAtPercentile(100));
+		assertTrue(snapshot.getValueAtPercentile(50) >= 50_000_000);
+	}
+
+	@Test
+	public void smallValuesAreExact() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 0; value < 128; value++) {
+			histogram.record(value);
+		}
+		assertEquals(63, histogram.snapshot().getValueAtPercentile(50));
+	}
+
+	@Test
+	public void intervalSnapshots() {
+		final SimulationMetrics metrics = new SimulationMetrics();
+		metrics.record(Phase.STEP, 5_000_000);
+		metrics.increment(Counter.DEADLINE_MISSES);
+		SimulationMetrics.Snapshot interval = metrics.intervalSnapshot();
+		assertEquals(1, interval.getPhase(Phase.STEP).getCount());
+		assertEquals(1, interval.getCount(Counter.DEADLINE_MISSES));
+
+		metrics.record(Phase.STEP, 1_000_000);
+		metrics.record(Phase.STEP, 2_000_000);
+		interval = metrics.intervalSnapshot();
+		assertEquals(2, interval.getPhase(Phase.STEP).getCount());
+		assertEquals(0, interval.getCount(Counter.DEADLINE_MISSES));
+		assertEquals(2.0, interval.getPhase(Phase.STEP).getMaxMillis(), 2.0 / 64);
+
+		final SimulationMetrics.Snapshot total = metrics.snapshot();
+		assertEquals(3, total.getPhase(Phase.STEP).getCount());
+		assertEquals(5.0, total.getPhase(Phase.STEP).getMaxMillis(), 0);
+		assertEquals(0, total.getPhase(Phase.SOLVER).getCount());
+		assertEquals(0, total.getPhase(Phase.SOLVER).getValueAtPercentile(99));
+	}
+}
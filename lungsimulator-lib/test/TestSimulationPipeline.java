@@ -0,0 +1,111 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.Test;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.LungSimulator;
+import lungsimulator.metrics.SimulationMetrics.Counter;
+import lungsimulator.pipeline.Backpressure;
+import lungsimulator.pipeline.SimulationPipeline;
+import lungsimulator.utils.Utils;
+
+public class TestSimulationPipeline {
+
+	private static final double TIME_STEP = 0.001;
+
+	/**
+	 * Small enough to fill up while the listener falls behind
+	 */
+	private static final int QUEUE_ROWS = 256;
+
+	private static LungSimulator simulator() throws IOException {
+		final LungSimulator lungSimulator = new LungSimulator();
+		lungSimulator.initSchema("Albanese");
+		lungSimulator.simulationSetUp();
+		return lungSimulator;
+	}
+
+	/**
+	 * Runs the steps as fast as possible, with a listener slower than the
+	 * solver
+	 */
+	private static int run(final LungSimulator lungSimulator, final Backpressure backpressure, final int steps)
+			throws InterruptedException {
+		final AtomicInteger seen = new AtomicInteger();
+		lungSimulator.getCircuitBuilder().addSampleListener(sample -> {
+			seen.incrementAndGet();
+			final long end = System.nanoTime() + 20_000;
+			while (System.nanoTime() < end) {
+				Thread.onSpinWait();
+			}
+		});
+		final SimulationPipeline pipeline = new SimulationPipeline(lungSimulator, () -> 15, TIME_STEP, backpressure,
+				QUEUE_ROWS);
+		pipeline.start();
+		assertTrue(pipeline.isRunning());
+
+		// the charts take the samples on their own thread
+		final AtomicBoolean charting = new AtomicBoolean(true);
+		final Thread charts = new Thread(() -> {
+			while (charting.get()) {
+				pipeline.publishCharts();
+				LockSupport.parkNanos(100_000);
+			}
+		});
+		charts.start();
+		for (int step = 0; step < steps; step++) {
+			pipeline.step(step * TIME_STEP, TIME_STEP);
+		}
+		pipeline.stop();
+		assertFalse(pipeline.isRunning());
+		assertEquals(0, pipeline.getQueuedSamples());
+		charting.set(false);
+		charts.join();
+		pipeline.publishCharts();
+		return seen.get();
+	}
+
+	@Test
+	public void blockingPipelineDerivesEverySample() throws IOException, InterruptedException {
+		final LungSimulator lungSimulator = simulator();
+		final int steps = 2000;
+		assertEquals(steps, run(lungSimulator, Backpressure.BLOCK, steps));
+		assertEquals(steps, lungSimulator.getHistory().getRowCount());
+		assertEquals(0, lungSimulator.getMetrics().getCount(Counter.PIPELINE_DROPS));
+		final List<Double> timeline = lungSimulator.getCircuitBuilder().getTimeline();
+		assertEquals(Utils.MAXDATA, timeline.size());
+		assertEquals(Utils.round((steps - 1) * TIME_STEP, 2), timeline.get(Utils.MAXDATA - 1), 0);
+		assertEquals(15, lungSimulator.getCircuitBuilder().getCurrentVentValue(), 0);
+	}
+
+	@Test
+	public void droppingPipelineNeverWaits() throws IOException, InterruptedException {
+		final LungSimulator lungSimulator = simulator();
+		final int steps = 2000;
+		final int seen = run(lungSimulator, Backpressure.DROP, steps);
+		final long dropped = lungSimulator.getMetrics().getCount(Counter.PIPELINE_DROPS);
+		assertTrue(dropped > 0);
+		assertEquals(steps, seen + dropped);
+		assertEquals(seen, lungSimulator.getHistory().getRowCount());
+	}
+
+	@Test
+	public void circuitUpdatesItsListenersAfterThePipeline() throws IOException, InterruptedException {
+		final LungSimulator lungSimulator = simulator();
+		run(lungSimulator, Backpressure.BLOCK, 10);
+		final CircuitBuilder builder = lungSimulator.getCircuitBuilder();
+		final long rows = lungSimulator.getHistory().getRowCount();
+		builder.updateData(1);
+		assertEquals(rows + 1, lungSimulator.getHistory().getRowCount());
+		final List<Double> timeline = builder.getTimeline();
+		assertEquals(1, timeline.get(timeline.size() - 1), 0);
+	}
+}
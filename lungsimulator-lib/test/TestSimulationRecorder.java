@@ -0,0 +1,206 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.recorder.RecordingReader;
+import lungsimulator.recorder.SimulationRecorder;
+import lungsimulator.utils.SpscRowQueue;
+import lungsimulator.utils.YamlReader;
+import simulator.CirSim;
+
+public class TestSimulationRecorder {
+
+	private static final List<String> COLUMNS = Arrays.asList("time", "ventilator", "pressure:a");
+
+	/**
+	 * Small segments, so that the recordings span many of them
+	 */
+	private static final int SEGMENT_ROWS = 100;
+
+	private static final int ROWS = 1050;
+
+	private static final double TIME_STEP = 0.001;
+
+	private Path directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("recording");
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	private static double[] row(final int i) {
+		return new double[] { i * TIME_STEP, i % 7, -i };
+	}
+
+	private Path record(final int rows) throws IOException {
+		final Path recording = directory.resolve("synthetic");
+		try (SimulationRecorder recorder = new SimulationRecorder(recording, COLUMNS, SEGMENT_ROWS, rows)) {
+			for (int i = 0; i < rows; i++) {
+				recorder.onSample(row(i));
+			}
+			assertEquals(0, recorder.getDroppedRows());
+		}
+		return recording;
+	}
+
+	@Test
+	public void readsEveryRowBack() throws IOException {
+		try (RecordingReader reader = new RecordingReader(record(ROWS))) {
+			assertEquals(COLUMNS, reader.getColumns());
+			assertEquals(ROWS, reader.getRowCount());
+			assertEquals(0, reader.getStartTime(), 0);
+			assertEquals((ROWS - 1) * TIME_STEP, reader.getEndTime(), 0);
+			for (int i = 0; i < ROWS; i++) {
+				for (int column = 0; column < COLUMNS.size(); column++) {
+					assertEquals(row(i)[column], reader.getValue(i, column), 0);
+				}
+			}
+
+			final double[] values = new double[250];
+			reader.read(reader.getColumn("pressure:a"), 180, values, 0, values.length);
+			for (int i = 0; i < values.length; i++) {
+				assertEquals(-(180 + i), values[i], 0);
+			}
+		}
+		try (Stream<Path> files = Files.list(directory.resolve("synthetic"))) {
+			assertEquals(ROWS / SEGMENT_ROWS + 1, files.filter(path -> path.toString().endsWith(".dat")).count());
+		}
+	}
+
+	@Test
+	public void findsRowsByTime() throws IOException {
+		try (RecordingReader reader = new RecordingReader(record(ROWS))) {
+			assertEquals(0, reader.findRow(-1));
+			assertEquals(0, reader.findRow(0));
+			assertEquals(100, reader.findRow(100 * TIME_STEP));
+			assertEquals(534, reader.findRow(533.5 * TIME_STEP));
+			assertEquals(ROWS - 1, reader.findRow((ROWS - 1) * TIME_STEP));
+			assertEquals(ROWS, reader.findRow(ROWS * TIME_STEP));
+		}
+	}
+
+	@Test
+	public void scansAndExportsARange() throws IOException {
+		try (RecordingReader reader = new RecordingReader(record(ROWS))) {
+			final long[] expected = { 195 };
+			final long scanned = reader.scan(195 * TIME_STEP, 404.5 * TIME_STEP, (row, values) -> {
+				assertEquals(expected[0]++, row);
+				assertArrayEquals(row((int) row), values, 0);
+			});
+			assertEquals(210, scanned);
+
+			final StringWriter csv = new StringWriter();
+			reader.exportCsv(csv, 2 * TIME_STEP, 3.5 * TIME_STEP);
+			assertEquals("time,ventilator,pressure:a\n0.002,2.0,-2.0\n0.003,3.0,-3.0\n", csv.toString());
+		}
+	}
+
+	@Test
+	public void readerFollowsAGrowingRecording() throws IOException {
+		final Path recording = directory.resolve("growing");
+		try (SimulationRecorder recorder = new SimulationRecorder(recording, COLUMNS, SEGMENT_ROWS, 512)) {
+			for (int i = 0; i < 150; i++) {
+				recorder.onSample(row(i));
+			}
+			while (recorder.getRecordedRows() < 150) {
+				Thread.yield();
+			}
+			try (RecordingReader reader = new RecordingReader(recording)) {
+				long rows = reader.getRowCount();
+				while (rows < 150) {
+					reader.refresh();
+					rows = reader.getRowCount();
+				}
+				for (int i = 150; i < 320; i++) {
+					recorder.onSample(row(i));
+				}
+				while (reader.getRowCount() < 320) {
+					reader.refresh();
+				}
+				assertEquals(-319, reader.getValue(319, 2), 0);
+			}
+		}
+	}
+
+	@Test
+	public void recordsTheSimulationSteps() throws IOException {
+		final YamlReader yamlReader = new YamlReader("Albanese");
+		final CircuitBuilder builder = new CircuitBuilder();
+		final CirSim cirSim = builder.buildCircuitSimulator(yamlReader.readPatientModel(),
+				yamlReader.readArchetypeParameters());
+		final Path recording = directory.resolve("simulation");
+		final int steps = 500;
+		final double timeStep = 0.01;
+		final double[] lastSample = new double[builder.getSampleColumns().size()];
+		try (SimulationRecorder recorder = new SimulationRecorder(recording, builder.getSampleColumns(),
+				SEGMENT_ROWS, 1024)) {
+			builder.addSampleListener(recorder);
+			builder.addSampleListener(sample -> System.arraycopy(sample, 0, lastSample, 0, sample.length));
+			for (int step = 0; step < steps; step++) {
+				final double time = step * timeStep;
+				builder.updateVentilatorValue(step % 300 < 100 ? 15 : 5);
+				cirSim.setTimeStep(timeStep);
+				cirSim.setT(time);
+				cirSim.analyzeCircuit();
+				assertTrue(cirSim.loopAndContinue(false));
+				builder.updateData(time);
+			}
+			builder.removeSampleListener(recorder);
+			assertEquals(0, recorder.getDroppedRows());
+		}
+
+		try (RecordingReader reader = new RecordingReader(recording)) {
+			assertEquals(builder.getSampleColumns(), reader.getColumns());
+			assertEquals(steps, reader.getRowCount());
+			for (int column = 0; column < lastSample.length; column++) {
+				assertEquals(lastSample[column], reader.getValue(steps - 1, column), 0);
+			}
+			final String flow = reader.getColumns().stream().filter(name -> name.startsWith("flow:")).findFirst()
+					.get();
+			assertFalse(reader.getColumn(flow) < 0);
+			assertEquals(builder.getFlowColumn(flow.substring("flow:".length())), reader.getColumn(flow));
+		}
+	}
+
+	@Test
+	public void queueRejectsRowsWhenFull() {
+		final SpscRowQueue queue = new SpscRowQueue(2, 3);
+		assertEquals(4, queue.getCapacity());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(queue.offer(new double[] { i, -i }));
+		}
+		assertFalse(queue.offer(new double[] { 4, -4 }));
+
+		final double[] row = new double[2];
+		assertTrue(queue.poll(row));
+		assertArrayEquals(new double[] { 0, 0 }, row, 0);
+		assertTrue(queue.offer(new double[] { 4, -4 }));
+
+		final double[] sum = new double[1];
+		assertEquals(4, queue.drain((rows, offset, width) -> sum[0] += rows[offset] - rows[offset + 1], 10));
+		assertEquals(2 * (1 + 2 + 3 + 4), sum[0], 0);
+		assertFalse(queue.poll(row));
+	}
+}
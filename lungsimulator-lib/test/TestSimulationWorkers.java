@@ -0,0 +1,149 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.LungSimulator;
+import lungsimulator.exceptions.InspireException;
+import lungsimulator.worker.LocalWorkers;
+import lungsimulator.worker.RemoteSimulation;
+import lungsimulator.worker.WorkerCoordinator;
+
+public class TestSimulationWorkers {
+
+	private static final double TIME_STEP = 0.01;
+
+	private static final long TIMEOUT_MILLIS = 20_000;
+
+	private static LungSimulator simulator() throws IOException {
+		final LungSimulator lungSimulator = new LungSimulator();
+		lungSimulator.initSchema("Albanese");
+		lungSimulator.simulationSetUp();
+		return lungSimulator;
+	}
+
+	private static void await(final BooleanSupplier condition) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (!condition.getAsBoolean()) {
+			assertTrue("Timed out", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Counts the samples reaching the listeners of a local simulation, in time
+	 * order; a sample out of order stops the count
+	 */
+	private static AtomicInteger countSamples(final LungSimulator lungSimulator) {
+		final AtomicInteger samples = new AtomicInteger();
+		final double[] lastTime = { -1 };
+		lungSimulator.getCircuitBuilder().addSampleListener(sample -> {
+			if (sample[CircuitBuilder.TIME_COLUMN] > lastTime[0] && lastTime[0] != Double.MAX_VALUE) {
+				samples.incrementAndGet();
+				lastTime[0] = sample[CircuitBuilder.TIME_COLUMN];
+			} else {
+				lastTime[0] = Double.MAX_VALUE;
+			}
+		});
+		return samples;
+	}
+
+	@Test
+	public void sessionsAreBalancedAndStreamedBack() throws IOException, InterruptedException {
+		try (WorkerCoordinator coordinator = new WorkerCoordinator("tcp://127.0.0.1:*");
+				LocalWorkers workers = new LocalWorkers(coordinator.getEndpoint(), 2, "-ventilator", "15")) {
+			await(() -> coordinator.getWorkerCount() == 2);
+			assertEquals(2, workers.getAliveCount());
+
+			final LungSimulator firstSimulator = simulator();
+			final LungSimulator secondSimulator = simulator();
+			final AtomicInteger firstSamples = countSamples(firstSimulator);
+			final AtomicInteger secondSamples = countSamples(secondSimulator);
+			final RemoteSimulation firstRemote = coordinator.startSimulation(firstSimulator, TIME_STEP);
+			final RemoteSimulation secondRemote = coordinator.startSimulation(secondSimulator, TIME_STEP);
+			assertNotEquals(firstRemote.getWorkerName(), secondRemote.getWorkerName());
+			assertEquals(2, coordinator.getSessionCount());
+			try {
+				coordinator.startSimulation(simulator(), TIME_STEP);
+				fail("Every worker is busy");
+			} catch (InspireException e) {
+				assertEquals(2, coordinator.getSessionCount());
+			}
+
+			await(() -> firstSamples.get() >= 20 && secondSamples.get() >= 20);
+			assertTrue(firstRemote.publishCharts() > 0);
+			assertEquals(15, firstSimulator.getCircuitBuilder().getCurrentVentValue(), 1e-9);
+
+			firstRemote.stop();
+			await(() -> !firstRemote.isRunning());
+			assertEquals("Stopped", firstRemote.getEndReason());
+			assertTrue(secondRemote.isRunning());
+			assertEquals(1, coordinator.getSessionCount());
+
+			// the session of the stopped simulation is free again
+			final RemoteSimulation thirdRemote = coordinator.startSimulation(simulator(), TIME_STEP);
+			assertEquals(firstRemote.getWorkerName(), thirdRemote.getWorkerName());
+		}
+	}
+
+	@Test
+	public void customModelsAndMissingWorkersAreRejected() throws IOException {
+		try (WorkerCoordinator coordinator = new WorkerCoordinator("tcp://127.0.0.1:*")) {
+			final LungSimulator lungSimulator = simulator();
+			try {
+				coordinator.startSimulation(lungSimulator, TIME_STEP);
+				fail("No worker");
+			} catch (InspireException e) {
+				assertEquals(0, coordinator.getSessionCount());
+			}
+
+			final String patient = new String(
+					LungSimulator.class.getResourceAsStream("/resourcereader/lung-model-Albanese.yaml").readAllBytes(),
+					StandardCharsets.UTF_8);
+			try (InputStream input = new ByteArrayInputStream(patient.getBytes(StandardCharsets.UTF_8))) {
+				lungSimulator.initCustomPatient(input);
+			}
+			try {
+				coordinator.startSimulation(lungSimulator, TIME_STEP);
+				fail("Custom model");
+			} catch (InspireException e) {
+				assertFalse(e.getMessage().isEmpty());
+			}
+		}
+	}
+
+	@Test
+	public void lostWorkersEndTheirSessions() throws IOException, InterruptedException {
+		try (WorkerCoordinator coordinator = new WorkerCoordinator("tcp://127.0.0.1:*")) {
+			// closed by the test itself, again in case of failure
+			final LocalWorkers workers = new LocalWorkers(coordinator.getEndpoint(), 1, "-ventilator", "15");
+			try {
+				await(() -> coordinator.getWorkerCount() == 1);
+
+				final LungSimulator lungSimulator = simulator();
+				final AtomicInteger samples = countSamples(lungSimulator);
+				final RemoteSimulation remote = coordinator.startSimulation(lungSimulator, TIME_STEP);
+				await(() -> samples.get() >= 20);
+
+				workers.close();
+				assertEquals(0, workers.getAliveCount());
+				await(() -> !remote.isRunning());
+				await(() -> coordinator.getWorkerCount() == 0);
+				assertEquals(0, coordinator.getSessionCount());
+			} finally {
+				workers.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,107 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Socket;
+
+import lungsimulator.LungSimulator;
+import lungsimulator.metrics.SimulationMetrics.Counter;
+
+public class TestSpeculativeStepping {
+
+	private static final double TIME_STEP = 0.01;
+
+	private static final int STEPS = 300;
+
+	/**
+	 * Pressure changes of the ventilator in {@value #STEPS} steps, counting
+	 * the first reply
+	 */
+	private static final int PRESSURE_CHANGES = 6;
+
+	private ZContext context;
+	private Thread ventilator;
+	private final AtomicBoolean serving = new AtomicBoolean(true);
+
+	/**
+	 * Replies of the ventilator, the n-th reply being the pressure of the n-th
+	 * step
+	 */
+	private final AtomicInteger replies = new AtomicInteger();
+
+	/**
+	 * Starts a ventilator with a square pressure, 15 for 40 steps and 5 for 60
+	 */
+	@Before
+	public void startVentilator() {
+		context = new ZContext();
+		final Socket socket = context.createSocket(SocketType.REP);
+		socket.setReceiveTimeOut(10);
+		socket.setLinger(0);
+		socket.bind("tcp://*:5555");
+		ventilator = new Thread(() -> {
+			while (serving.get()) {
+				if (socket.recv() != null) {
+					final int step = replies.getAndIncrement();
+					socket.send((step % 100 < 40 ? "15.0" : "5.0").getBytes(ZMQ.CHARSET), 0);
+				}
+			}
+		});
+		ventilator.start();
+	}
+
+	@After
+	public void stopVentilator() throws InterruptedException {
+		serving.set(false);
+		ventilator.join();
+		context.close();
+	}
+
+	private List<double[]> run(final boolean speculative, final LungSimulator lungSimulator) throws IOException {
+		lungSimulator.initSchema("Albanese");
+		lungSimulator.modelValidation();
+		lungSimulator.simulationSetUp();
+		lungSimulator.setSpeculative(speculative);
+		replies.set(0);
+		final List<double[]> samples = new ArrayList<>();
+		lungSimulator.getCircuitBuilder().addSampleListener(sample -> samples.add(sample.clone()));
+		for (int step = 0; step < STEPS; step++) {
+			lungSimulator.miniSimulation(step * TIME_STEP, TIME_STEP);
+		}
+		return samples;
+	}
+
+	@Test
+	public void speculativeStepsGiveTheSameSamples() throws IOException {
+		final LungSimulator plain = new LungSimulator();
+		final List<double[]> expected = run(false, plain);
+		assertEquals(0, plain.getMetrics().getCount(Counter.SPECULATION_MISSES));
+
+		final LungSimulator speculative = new LungSimulator();
+		final List<double[]> actual = run(true, speculative);
+		assertEquals(STEPS, actual.size());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals(expected.get(i), actual.get(i), 0);
+		}
+	}
+
+	@Test
+	public void onlyThePressureChangesAreSolvedAgain() throws IOException {
+		final LungSimulator speculative = new LungSimulator();
+		run(true, speculative);
+		assertEquals(PRESSURE_CHANGES, speculative.getMetrics().getCount(Counter.SPECULATION_MISSES));
+		assertEquals(0, speculative.getMetrics().getCount(Counter.CONVERGENCE_FAILURES));
+	}
+}
@@ -0,0 +1,155 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.components.Archetype;
+import lungsimulator.components.Element;
+import lungsimulator.components.Formula;
+import lungsimulator.components.Patient;
+import lungsimulator.utils.SymmetryLumper;
+import simulator.CirSim;
+
+public class TestSymmetryLumping {
+
+	private static final int GENERATIONS = 4;
+
+	private Element element(final String name, final String type, final String formula, final int x, final int y,
+			final int x1, final int y1) {
+		final Formula elementFormula = new Formula();
+		elementFormula.setFormula(formula);
+		elementFormula.setVariables(Arrays.asList(formula));
+		final Element element = new Element();
+		element.setElementName(name);
+		element.setType(type);
+		element.setAssociatedFormula(elementFormula);
+		element.setX(x);
+		element.setY(y);
+		element.setX1(x1);
+		element.setY1(y1);
+		return element;
+	}
+
+	/**
+	 * Symmetric bronchial tree: the generator is between the airway opening (0,
+	 * 100) and the ground (0, 200), the alveoli share the pleural node (0, 300)
+	 */
+	private Patient weibelPatient() {
+		final List<Element> elements = new ArrayList<>();
+		elements.add(element("Ventilator", "DCVoltageElm", "pv", 0, 200, 0, 100));
+		elements.add(element("Mouth", "ResistorElm", "rm", 0, 100, 1, 0));
+		for (int gen = 1; gen <= GENERATIONS; gen++) {
+			for (int i = 0; i < 1 << (gen - 1); i++) {
+				for (int child = 0; child < 2; child++) {
+					final Element airway = element("R" + gen + "_" + (2 * i + child), "ResistorElm", "r" + gen, gen,
+							i, gen + 1, 2 * i + child);
+					airway.setShowRight(true);
+					airway.setIdRight("P" + gen + "_" + (2 * i + child));
+					elements.add(airway);
+				}
+			}
+		}
+		for (int i = 0; i < 1 << GENERATIONS; i++) {
+			elements.add(element("C" + i, "CapacitorElm", "ca", GENERATIONS + 1, i, 0, 300));
+		}
+		elements.add(element("Chest wall", "CapacitorElm", "cw", 0, 300, 0, 200));
+
+		final Patient patient = new Patient();
+		patient.setElementsList(elements);
+		return patient;
+	}
+
+	private Archetype archetype() {
+		final Map<String, String> parameters = new HashMap<>();
+		parameters.put("pv", "10");
+		parameters.put("rm", "1.021");
+		for (int gen = 1; gen <= GENERATIONS; gen++) {
+			parameters.put("r" + gen, String.valueOf(0.3 + 0.2 * gen));
+		}
+		parameters.put("ca", "0.0131");
+		parameters.put("cw", "0.2445");
+		final Archetype archetype = new Archetype();
+		archetype.setParameters(parameters);
+		return archetype;
+	}
+
+	private CircuitBuilder simulate(final boolean lumping) {
+		final CircuitBuilder builder = new CircuitBuilder();
+		builder.setSymmetryLumping(lumping);
+		final CirSim cirSim = builder.buildCircuitSimulator(weibelPatient(), archetype());
+		cirSim.setTimeStep(0.01);
+		for (int step = 0; step < 40; step++) {
+			cirSim.setT(step * 0.01);
+			cirSim.analyzeCircuit();
+			cirSim.loopAndContinue(false);
+			builder.updateData(step * 0.01);
+		}
+		return builder;
+	}
+
+	@Test
+	public void lumpsIdenticalBranches() {
+		final SymmetryLumper lumper = new SymmetryLumper(weibelPatient());
+		assertTrue(lumper.isLumped());
+		// generator, mouth, one airway per generation, one alveolus, chest wall
+		assertEquals(GENERATIONS + 4, lumper.getLumpedPatient().getElementsList().size());
+		assertEquals(1 << GENERATIONS, lumper.getCopies(lumper.getRepresentative("C5")));
+		assertEquals(lumper.getRepresentative("R2_0"), lumper.getRepresentative("R2_3"));
+	}
+
+	@Test
+	public void lumpedMatchesFull() {
+		final CircuitBuilder full = simulate(false);
+		final CircuitBuilder lumped = simulate(true);
+
+		assertTrue(lumped.getElements().size() < full.getElements().size());
+		assertEquals(full.getFlowIds(), lumped.getFlowIds());
+		assertEquals(full.getPressureIds(), lumped.getPressureIds());
+		for (final String id : full.getFlowIds()) {
+			final List<Double> expected = full.getInitdataFlow().get(id);
+			final List<Double> actual = lumped.getInitdataFlow().get(id);
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(id, expected.get(i), actual.get(i), 2e-3);
+			}
+		}
+		for (final String id : full.getPressureIds()) {
+			final List<Double> expected = full.getInitdataPressure().get(id);
+			final List<Double> actual = lumped.getInitdataPressure().get(id);
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(id, expected.get(i), actual.get(i), 2e-3);
+			}
+		}
+	}
+
+	@Test
+	public void elementsAreEditedByTheirPositionInThePatientModel() {
+		final CircuitBuilder full = simulate(false);
+		final CircuitBuilder lumped = simulate(true);
+		assertEquals(full.getBranchIds(), lumped.getBranchIds());
+		for (int i = 0; i < full.getBranchIds().size(); i++) {
+			assertEquals(full.getBranchIds().get(i), full.getElementValue(i), lumped.getElementValue(i), 1e-12);
+			assertEquals(full.getElementUnit(i), lumped.getElementUnit(i));
+		}
+		assertEquals(full.getVentilatorBranch(), lumped.getVentilatorBranch());
+
+		// an airway removed by the lumping edits its kept twin, and so every
+		// airway of its generation
+		final List<String> ids = lumped.getBranchIds();
+		final int removed = ids.indexOf("R3_2");
+		// past the end of the lumped circuit
+		assertTrue(lumped.getElements().size() <= removed);
+		lumped.updateElementValue(2.5, removed);
+		assertEquals(2.5, lumped.getElementValue(removed), 1e-12);
+		assertEquals(2.5, lumped.getElementValue(ids.indexOf("R3_0")), 1e-12);
+		assertEquals(full.getElementValue(ids.indexOf("R2_1")), lumped.getElementValue(ids.indexOf("R2_1")), 1e-12);
+		assertEquals(full.getElementValue(ids.indexOf("Chest wall")),
+				lumped.getElementValue(ids.indexOf("Chest wall")), 1e-12);
+	}
+}
@@ -4,12 +4,18 @@ package gui;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
+import javax.swing.SwingUtilities;
+
 import lungsimulator.LungSimulator;
+import lungsimulator.pipeline.SimulationPipeline;
 import modelselection.SelectModelView;
 import simulationsection.SimulationView;
+import utils.GraphicConstants;
 
 /**
  * Manages graphic interface flow
@@ -62,11 +68,21 @@ public class GraphicUserInterface {
 	}
 
 	/**
-	 * Init simulation view
+	 * Init simulation view, built on the event dispatch thread, and runs the
+	 * simulation on the calling thread
 	 */
 	public void showSimulationView() {
-		final SimulationView simulationView = new SimulationView(lungSimulator);
-		final boolean isTimeDependent = lungSimulator.getCircuitBuilder().isTimeDependentCir();
+		final AtomicReference<SimulationView> viewReference = new AtomicReference<>();
+		try {
+			SwingUtilities.invokeAndWait(() -> viewReference.set(new SimulationView(lungSimulator)));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (InvocationTargetException e) {
+			LOGGER.info("Simulation view error");
+			return;
+		}
+		final SimulationView simulationView = viewReference.get();
 
 		// moment of time (in seconds) where simulation starts
 		final double tStart = System.currentTimeMillis() / 1000.0;
@@ -75,21 +91,21 @@ public class GraphicUserInterface {
 		double ntStart;
 		double initialT;
 
+		// the ventilator, the derived values and the charts run in their own stages
+		final SimulationPipeline pipeline = new SimulationPipeline(lungSimulator, step);
+		pipeline.start();
+		final Thread publisher = new Thread(() -> publishLoop(pipeline, simulationView), "simulation-publisher");
+		publisher.setDaemon(true);
+		publisher.start();
+
 		while (simulationView.isWindowIsOpen()) {
 			if (simulationView.getStateOfExecution()) {
 				ntStart = System.currentTimeMillis() / 1000.0;
 				initialT = ntStart - tStart;
 				// wait for step seconds until next resolution
 				if (initialT - lastT >= step) {
-					// update backend
-					lungSimulator.miniSimulation(initialT, step);
-
-					// update frontend
-					if (isTimeDependent) {
-						simulationView.updateTimeDependentElms();
-					}
-					simulationView.updateVentilator(lungSimulator.getCircuitBuilder().getCurrentVentValue());
-					simulationView.updateCharts(lungSimulator);
+					// update backend; the frontend is updated by the publisher
+					pipeline.step(initialT, step);
 					lastT = initialT;
 				} else {
 					try {
@@ -100,6 +116,34 @@ public class GraphicUserInterface {
 				}
 			}
 		}
+		publisher.interrupt();
+		try {
+			publisher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		pipeline.stop();
+	}
+
+	/**
+	 * Publishing stage: adds the samples queued by the pipeline to the chart
+	 * series and publishes a snapshot of them, rendered on the event dispatch
+	 * thread, at the display rate; the solver thread never waits for it
+	 * 
+	 * @param pipeline       running simulation
+	 * @param simulationView view the snapshots are published to
+	 */
+	private void publishLoop(final SimulationPipeline pipeline, final SimulationView simulationView) {
+		while (simulationView.isWindowIsOpen() && !Thread.currentThread().isInterrupted()) {
+			if (pipeline.publishCharts() > 0) {
+				simulationView.publish(lungSimulator);
+			}
+			try {
+				Thread.sleep(GraphicConstants.RENDER_PERIOD);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
 }
@@ -0,0 +1,78 @@
+package simulationsection;
+
+import java.awt.Dimension;
+
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.DefaultTableModel;
+
+import lungsimulator.metrics.BreathMetrics;
+import utils.GraphicConstants;
+
+/**
+ * Manages the table with the clinical values of the last breath
+ */
+public class BreathSection {
+	/**
+	 * Table columns
+	 */
+	private static final String[] COLUMNS = { "Breath", "Value" };
+
+	/**
+	 * Table rows
+	 */
+	private static final String[] ROWS = { "Tidal volume [mL]", "Peak pressure [cmH2O]", "Plateau pressure [cmH2O]",
+			"PEEP [cmH2O]", "Respiratory rate [1/min]", "I:E", "Dynamic compliance [mL/cmH2O]" };
+
+	/**
+	 * Table content
+	 */
+	private final transient DefaultTableModel model;
+
+	/**
+	 * Init breath section
+	 * @param rightPanel panel where the table has to be added
+	 */
+	public BreathSection(final JPanel rightPanel) {
+		model = new DefaultTableModel(COLUMNS, 0) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean isCellEditable(final int row, final int column) {
+				return false;
+			}
+		};
+		for (final String row : ROWS) {
+			model.addRow(new Object[] { row, "" });
+		}
+
+		final JTable table = new JTable(model);
+		table.setFillsViewportHeight(true);
+		final JScrollPane scrollPane = new JScrollPane(table);
+		scrollPane.setMaximumSize(new Dimension(GraphicConstants.PLOTWIDTH, 150));
+		rightPanel.add(scrollPane);
+	}
+
+	/**
+	 * Update table values
+	 * @param snapshot values of the last step
+	 */
+	public void updateBreath(final SimulationSnapshot snapshot) {
+		final BreathMetrics breath = snapshot.getBreath();
+		if (breath == null) {
+			return;
+		}
+		model.setValueAt(format(breath.getTidalVolume() * 1000), 0, 1);
+		model.setValueAt(format(breath.getPeakPressure()), 1, 1);
+		model.setValueAt(format(breath.getPlateauPressure()), 2, 1);
+		model.setValueAt(format(breath.getPeep()), 3, 1);
+		model.setValueAt(format(breath.getRespiratoryRate()), 4, 1);
+		model.setValueAt("1:" + format(1 / breath.getIeRatio()), 5, 1);
+		model.setValueAt(format(breath.getDynamicCompliance() * 1000), 6, 1);
+	}
+
+	private static String format(final double value) {
+		return Double.isNaN(value) || Double.isInfinite(value) ? "-" : String.format("%.1f", value);
+	}
+}
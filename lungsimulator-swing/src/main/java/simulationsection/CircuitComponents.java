@@ -6,7 +6,6 @@ import java.util.Map;
 
 import javax.swing.JPanel;
 
-import components.CircuitElm;
 import lungsimulator.CircuitBuilder;
 import lungsimulator.LungSimulator;
 
@@ -57,22 +56,22 @@ public class CircuitComponents {
 			timeDependentElms = circuitBuilder.getTimeDependentElm();
 		}
 
-		final int index = circuitBuilder.getVentilatorIndex();
+		final int index = circuitBuilder.getVentilatorBranch();
 
-		if (circuitBuilder.getElements() != null) {
-			for (final CircuitElm element : circuitBuilder.getElements()) {
-				final CircuitElementRow cer = new CircuitElementRow(lungSimulator, leftPanel, element.getId(),
-						element.getValue(), element.getUnit(), index == count, count, yInit);
+		// one row for each element of the patient model, lumped or not
+		for (final String id : circuitBuilder.getBranchIds()) {
+			final CircuitElementRow cer = new CircuitElementRow(lungSimulator, leftPanel, id,
+					circuitBuilder.getElementValue(count), circuitBuilder.getElementUnit(count), index == count,
+					count, yInit);
 
-				if (index == count) {
-					ventilator = cer;
-				}
+			if (index == count) {
+				ventilator = cer;
+			}
 
-				count++;
+			count++;
 
-				components.put(element.getId(), cer);
-				yInit += 28;
-			}
+			components.put(id, cer);
+			yInit += 28;
 		}
 
 	}
@@ -87,11 +86,12 @@ public class CircuitComponents {
 
 	/**
 	 * Updates time dependent elements
+	 * @param snapshot values of the last step
 	 */
-	public void updateTimeDependentElms() {
+	public void updateTimeDependentElms(final SimulationSnapshot snapshot) {
 		for (final Map.Entry<String, CircuitElementRow> entry : components.entrySet()) {
 			if (timeDependentElms.contains(entry.getKey())) {
-				entry.getValue().updateElmValue();
+				entry.getValue().updateElmValue(snapshot);
 			}
 		}
 
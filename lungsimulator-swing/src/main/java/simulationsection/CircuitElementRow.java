@@ -119,9 +119,10 @@ public class CircuitElementRow {
 
 	/**
 	 * Updates element value 
+	 * @param snapshot values of the last step
 	 */
-	public void updateElmValue() {
-		elementValue.setValue(lungSimulator.getCircuitBuilder().getElementValue(posNumber));
+	public void updateElmValue(final SimulationSnapshot snapshot) {
+		elementValue.setValue(snapshot.getElementValue(posNumber));
 	}
 
 }
@@ -18,7 +18,7 @@ public class ControlButtons {
 	/**
 	 * State of the simulation
 	 */
-	private transient boolean state;
+	private transient volatile boolean state;
 
 	/**
 	 * Coordinate helper
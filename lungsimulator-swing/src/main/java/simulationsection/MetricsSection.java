@@ -0,0 +1,77 @@
+package simulationsection;
+
+import java.awt.Dimension;
+
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.DefaultTableModel;
+
+import lungsimulator.metrics.LatencyHistogram;
+import lungsimulator.metrics.SimulationMetrics;
+import lungsimulator.metrics.SimulationMetrics.Counter;
+import lungsimulator.metrics.SimulationMetrics.Phase;
+import utils.GraphicConstants;
+
+/**
+ * Manages the table with the latencies of the simulation steps and the
+ * counters of the anomalies
+ */
+public class MetricsSection {
+	/**
+	 * Table columns
+	 */
+	private static final String[] COLUMNS = { "Metric", "p50 [ms]", "p99 [ms]", "max [ms]" };
+
+	/**
+	 * Table content: a row for each phase, then a row for each counter
+	 */
+	private final transient DefaultTableModel model;
+
+	/**
+	 * Init metrics section
+	 * @param rightPanel panel where the table has to be added
+	 */
+	public MetricsSection(final JPanel rightPanel) {
+		model = new DefaultTableModel(COLUMNS, 0) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean isCellEditable(final int row, final int column) {
+				return false;
+			}
+		};
+		for (final Phase phase : Phase.values()) {
+			model.addRow(new Object[] { phase.getLabel(), "", "", "" });
+		}
+		for (final Counter counter : Counter.values()) {
+			model.addRow(new Object[] { counter.getLabel(), "", "", "" });
+		}
+
+		final JTable table = new JTable(model);
+		table.setFillsViewportHeight(true);
+		final JScrollPane scrollPane = new JScrollPane(table);
+		scrollPane.setMaximumSize(new Dimension(GraphicConstants.PLOTWIDTH, 200));
+		rightPanel.add(scrollPane);
+	}
+
+	/**
+	 * Update table values
+	 * @param snapshot values of the last step
+	 */
+	public void updateMetrics(final SimulationSnapshot snapshot) {
+		final SimulationMetrics.Snapshot metrics = snapshot.getMetrics();
+		int row = 0;
+		for (final Phase phase : Phase.values()) {
+			final LatencyHistogram.Snapshot latency = metrics.getPhase(phase);
+			model.setValueAt(String.format("%.2f", latency.getMillisAtPercentile(50)), row, 1);
+			model.setValueAt(String.format("%.2f", latency.getMillisAtPercentile(99)), row, 2);
+			model.setValueAt(String.format("%.2f", latency.getMaxMillis()), row, 3);
+			row++;
+		}
+		for (final Counter counter : Counter.values()) {
+			model.setValueAt(metrics.getCount(counter), row, 1);
+			row++;
+		}
+	}
+}
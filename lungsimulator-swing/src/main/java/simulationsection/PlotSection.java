@@ -1,15 +1,19 @@
 package simulationsection;
 
 import java.awt.Dimension;
+import java.awt.event.AdjustmentEvent;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.io.IOException;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 
+import javax.swing.BoxLayout;
 import javax.swing.JComboBox;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JScrollBar;
 
 import org.knowm.xchart.BitmapEncoder;
 import org.knowm.xchart.BitmapEncoder.BitmapFormat;
@@ -20,11 +24,14 @@ import org.knowm.xchart.style.Styler.LegendPosition;
 import org.knowm.xchart.style.markers.Marker;
 import org.knowm.xchart.style.markers.SeriesMarkers;
 
+import lungsimulator.CircuitBuilder;
 import lungsimulator.LungSimulator;
+import lungsimulator.history.CompressedHistory;
 import utils.GraphicConstants;
 
 /**
- * Manages the plot section in the simulation view
+ * Manages the plot section in the simulation view; used on the event dispatch
+ * thread only
  */
 public class PlotSection {
 	/**
@@ -57,6 +64,50 @@ public class PlotSection {
 	 */
 	private transient String pressureChoice;
 	
+	/**
+	 * Position in the history of the session, in milliseconds
+	 */
+	private final transient JScrollBar historyBar;
+	
+	/**
+	 * Length of the chart window, in seconds; 0 to show the last steps kept by
+	 * the backend
+	 */
+	private transient double historyWindow;
+	
+	/**
+	 * Buffers of the points read for a chart series
+	 */
+	private final transient double[] chartTimes = new double[GraphicConstants.CHART_POINTS];
+	private final transient double[] chartValues = new double[GraphicConstants.CHART_POINTS];
+	
+	/**
+	 * True while the charts follow the last values; false when the user scrolls
+	 * back in the history
+	 */
+	private transient boolean live = true;
+	
+	/**
+	 * Last snapshot rendered, null before the first step
+	 */
+	private transient SimulationSnapshot lastSnapshot;
+	
+	/**
+	 * True while the history bar is updated by the program rather than by the
+	 * user
+	 */
+	private transient boolean adjustingHistory;
+	
+	/**
+	 * Backend access
+	 */
+	private final transient LungSimulator lungSimulator;
+	
+	/**
+	 * True if ventilator data has to be shown
+	 */
+	private final transient boolean showVentilator;
+	
 	/**
 	 * Counter for saved images
 	 */
@@ -75,6 +126,8 @@ public class PlotSection {
 	 */
 	public PlotSection(final LungSimulator lungSimulator, final JPanel rightPanel, final boolean showVentilator) {
 		imageCounter = 1;
+		this.lungSimulator = lungSimulator;
+		this.showVentilator = showVentilator;
 		
 		final List<String> flowIds = lungSimulator.getCircuitBuilder().getFlowIds();
 		flowChoice = flowIds.get(0);
@@ -102,9 +155,7 @@ public class PlotSection {
 				if (event.getStateChange() == ItemEvent.SELECTED) {
 					flowChoice = (String) event.getItem();
 					flowChart.setTitle(GraphicConstants.FLOWSERIES + " in " + flowChoice);
-					flowChart.updateXYSeries(GraphicConstants.FLOWSERIES,
-							lungSimulator.getCircuitBuilder().getTimeline(),
-							lungSimulator.getCircuitBuilder().getInitdataFlow().get(flowChoice), null);
+					refresh();
 				}
 			}
 		});
@@ -140,28 +191,81 @@ public class PlotSection {
 				if (event.getStateChange() == ItemEvent.SELECTED) {
 					pressureChoice = (String) event.getItem();
 					pressureChart.setTitle(GraphicConstants.PRESSURE_TITLE + " in " + pressureChoice);
-					pressureChart.updateXYSeries(GraphicConstants.PRESSURESERIES,
-							lungSimulator.getCircuitBuilder().getTimeline(),
-							lungSimulator.getCircuitBuilder().getInitdataPressure().get(pressureChoice), null);
+					refresh();
 				}
 			}
 		});
 		
 		presConstructor = new XChartPanel<>(pressureChart);
 		rightPanel.add(presConstructor);
+		
+		// Scroll-back in the history of the session
+		historyBar = new JScrollBar(JScrollBar.HORIZONTAL, 0, 0, 0, 0);
+		historyBar.addAdjustmentListener(this::historyMoved);
+		
+		final JComboBox<String> windowList = new JComboBox<>(GraphicConstants.HISTORY_WINDOWS);
+		windowList.addItemListener(event -> {
+			if (event.getStateChange() == ItemEvent.SELECTED) {
+				final int index = windowList.getSelectedIndex();
+				historyWindow = index == 0 ? 0 : Double.parseDouble(GraphicConstants.HISTORY_WINDOWS[index]);
+				updateHistoryBar();
+				refresh();
+			}
+		});
+		
+		final JPanel historyPanel = new JPanel();
+		historyPanel.setLayout(new BoxLayout(historyPanel, BoxLayout.X_AXIS));
+		historyPanel.setMaximumSize(new Dimension(GraphicConstants.PLOTWIDTH, 30));
+		historyPanel.add(new JLabel("History "));
+		historyPanel.add(historyBar);
+		historyPanel.add(new JLabel(" Window [s] "));
+		historyPanel.add(windowList);
+		rightPanel.add(historyPanel);
 	}
 
 	/**
 	 * Update charts values
-	 * @param lungSimulator backend access
-	 * @param showVentilator true if ventilator values have to be shown
+	 * @param snapshot values of the last step
+	 */
+	public void updateCharts(final SimulationSnapshot snapshot) {
+		lastSnapshot = snapshot;
+		updateHistoryBar();
+		if (live) {
+			// otherwise the charts keep showing the window chosen in the history
+			showLive();
+		}
+	}
+	
+	/**
+	 * Redraws the charts after a change of the chosen series or window
+	 */
+	private void refresh() {
+		if (live) {
+			showLive();
+		} else {
+			showHistory();
+		}
+	}
+	
+	/**
+	 * Shows the last values: the last steps of the snapshot, or the chosen
+	 * window of the history
 	 */
-	public void updateCharts(final LungSimulator lungSimulator, final boolean showVentilator) {
-		final List<Double> timeline = lungSimulator.getCircuitBuilder().getTimeline();
+	private void showLive() {
+		if (historyWindow > 0 && lungSimulator.getHistory() != null) {
+			final double end = lungSimulator.getHistory().getEndTime();
+			showWindow(end - historyWindow, end);
+			return;
+		}
+		if (lastSnapshot == null) {
+			return;
+		}
+		
+		final double[] timeline = lastSnapshot.getTimeline();
 		
 		//update flowChart
-		final List<Double> dataFlow = lungSimulator.getCircuitBuilder().getInitdataFlow().get(flowChoice);
-		final double absFlow = Collections.max(dataFlow);
+		final double[] dataFlow = lastSnapshot.getFlow(flowChoice);
+		final double absFlow = max(dataFlow);
 		flowChart.getStyler().setYAxisMax(absFlow);
 		flowChart.getStyler().setYAxisMin(-absFlow);
 		flowChart.updateXYSeries(GraphicConstants.FLOWSERIES, timeline, dataFlow, null);
@@ -169,15 +273,15 @@ public class PlotSection {
 		flowConstructor.repaint();
 		
 		//update pressureChart
-		final List<Double> ventPressure = lungSimulator.getCircuitBuilder().getInitdataVentilatorPressure();
-		final List<Double> dataPressure = lungSimulator.getCircuitBuilder().getInitdataPressure().get(pressureChoice);
+		final double[] ventPressure = lastSnapshot.getVentilatorPressure();
+		final double[] dataPressure = lastSnapshot.getPressure(pressureChoice);
 		
 		if (showVentilator) {
-			pressureChart.getStyler().setYAxisMax(Collections.max(ventPressure));
+			pressureChart.getStyler().setYAxisMax(max(ventPressure));
 			pressureChart.updateXYSeries("Ventilator Pressure", timeline,
 					ventPressure, null);
 		}else {
-			pressureChart.getStyler().setYAxisMax(Collections.max(dataPressure));
+			pressureChart.getStyler().setYAxisMax(max(dataPressure));
 		}
 		
 		pressureChart.updateXYSeries(GraphicConstants.PRESSURESERIES, timeline, dataPressure, null);
@@ -185,6 +289,114 @@ public class PlotSection {
 		presConstructor.repaint();
 	}
 	
+	/**
+	 * Extends the history bar to the last values; while live, the bar stays at
+	 * the end
+	 */
+	private void updateHistoryBar() {
+		final CompressedHistory history = lungSimulator.getHistory();
+		if (history == null || history.getRowCount() == 0) {
+			return;
+		}
+		final int start = (int) (history.getStartTime() * 1000);
+		final int end = (int) (history.getEndTime() * 1000);
+		final int extent = Math.min((int) (windowLength() * 1000), end - start);
+		final int value = live ? end - extent : Math.max(start, Math.min(historyBar.getValue(), end - extent));
+		adjustingHistory = true;
+		historyBar.setValues(value, extent, start, end);
+		historyBar.setBlockIncrement(Math.max(1, extent));
+		historyBar.setUnitIncrement(Math.max(1, extent / 10));
+		adjustingHistory = false;
+	}
+	
+	/**
+	 * Shows the chosen window of the history, or returns to the last values
+	 * when the bar reaches the end
+	 * @param event change of the history bar
+	 */
+	private void historyMoved(final AdjustmentEvent event) {
+		if (adjustingHistory) {
+			return;
+		}
+		live = historyBar.getValue() + historyBar.getVisibleAmount() >= historyBar.getMaximum();
+		refresh();
+	}
+	
+	/**
+	 * @return length of the window in seconds, the span of the last steps if
+	 *         they are shown
+	 */
+	private double windowLength() {
+		if (historyWindow > 0) {
+			return historyWindow;
+		}
+		if (lastSnapshot == null || lastSnapshot.getTimeline().length == 0) {
+			return 0;
+		}
+		final double[] timeline = lastSnapshot.getTimeline();
+		return timeline[timeline.length - 1] - timeline[0];
+	}
+	
+	/**
+	 * Shows the window of the history chosen with the bar
+	 */
+	private void showHistory() {
+		final double from = historyBar.getValue() / 1000.0;
+		showWindow(from, from + windowLength());
+	}
+	
+	/**
+	 * Draws a window of the session from at most CHART_POINTS points per
+	 * series, downsampled to the extremes of buckets for long windows
+	 * @param from first time of the window
+	 * @param to last time of the window
+	 */
+	private void showWindow(final double from, final double to) {
+		if (lungSimulator.getHistory() == null) {
+			return;
+		}
+		final CircuitBuilder circuitBuilder = lungSimulator.getCircuitBuilder();
+		
+		final int flowCount = lungSimulator.readChartSeries(circuitBuilder.getFlowColumn(flowChoice), from, to,
+				chartTimes, chartValues);
+		if (flowCount == 0) {
+			return;
+		}
+		final double[] dataFlow = Arrays.copyOf(chartValues, flowCount);
+		final double absFlow = max(dataFlow);
+		flowChart.getStyler().setYAxisMax(absFlow);
+		flowChart.getStyler().setYAxisMin(-absFlow);
+		flowChart.updateXYSeries(GraphicConstants.FLOWSERIES, Arrays.copyOf(chartTimes, flowCount), dataFlow, null);
+		flowConstructor.revalidate();
+		flowConstructor.repaint();
+		
+		final int pressureCount = lungSimulator.readChartSeries(circuitBuilder.getPressureColumn(pressureChoice),
+				from, to, chartTimes, chartValues);
+		final double[] pressureTimes = Arrays.copyOf(chartTimes, pressureCount);
+		final double[] dataPressure = Arrays.copyOf(chartValues, pressureCount);
+		if (showVentilator) {
+			final int ventCount = lungSimulator.readChartSeries(CircuitBuilder.VENTILATOR_COLUMN, from, to, chartTimes,
+					chartValues);
+			final double[] ventPressure = Arrays.copyOf(chartValues, ventCount);
+			pressureChart.getStyler().setYAxisMax(max(ventPressure));
+			pressureChart.updateXYSeries("Ventilator Pressure", Arrays.copyOf(chartTimes, ventCount), ventPressure,
+					null);
+		} else {
+			pressureChart.getStyler().setYAxisMax(max(dataPressure));
+		}
+		pressureChart.updateXYSeries(GraphicConstants.PRESSURESERIES, pressureTimes, dataPressure, null);
+		presConstructor.revalidate();
+		presConstructor.repaint();
+	}
+	
+	private static double max(final double[] values) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (final double value : values) {
+			max = Math.max(max, value);
+		}
+		return max;
+	}
+	
 	/**
 	 * Saves charts images
 	 */
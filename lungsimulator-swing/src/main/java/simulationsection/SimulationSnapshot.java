@@ -0,0 +1,134 @@
+package simulationsection;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.LungSimulator;
+import lungsimulator.metrics.BreathAnalyzer;
+import lungsimulator.metrics.BreathMetrics;
+import lungsimulator.metrics.SimulationMetrics;
+
+/**
+ * Values shown by the simulation view after a step, copied on the publisher
+ * thread of the user interface, right after it adds the samples of the
+ * pipeline to the series, so that the event dispatch thread renders them
+ * without reading the series of the backend. The arrays and the breath must
+ * not be modified.
+ */
+public final class SimulationSnapshot {
+
+	private final double[] timeline;
+	private final double[] ventilatorPressure;
+	private final Map<String, double[]> flows;
+	private final Map<String, double[]> pressures;
+	private final double ventilatorValue;
+
+	/**
+	 * Value of each element of the patient model, for a single branch
+	 */
+	private final double[] elementValues;
+
+	/**
+	 * Last complete breath, null if none
+	 */
+	private final BreathMetrics breath;
+
+	/**
+	 * Latencies and counters of the steps
+	 */
+	private final SimulationMetrics.Snapshot metrics;
+
+	private SimulationSnapshot(final LungSimulator lungSimulator) {
+		final CircuitBuilder circuitBuilder = lungSimulator.getCircuitBuilder();
+		timeline = copy(circuitBuilder.getTimeline());
+		ventilatorPressure = copy(circuitBuilder.getInitdataVentilatorPressure());
+		flows = copy(circuitBuilder.getInitdataFlow());
+		pressures = copy(circuitBuilder.getInitdataPressure());
+		ventilatorValue = circuitBuilder.getCurrentVentValue();
+		elementValues = new double[circuitBuilder.getBranchIds().size()];
+		for (int i = 0; i < elementValues.length; i++) {
+			elementValues[i] = circuitBuilder.getElementValue(i);
+		}
+		final BreathAnalyzer analyzer = lungSimulator.getBreathAnalyzer();
+		final BreathMetrics latest = analyzer == null ? null : analyzer.getLatest();
+		breath = latest != null && latest.isValid() ? latest : null;
+		metrics = lungSimulator.getMetrics().snapshot();
+	}
+
+	/**
+	 * Copies the values of the last steps; called by the publisher thread,
+	 * which is the one that updates the series
+	 * 
+	 * @param lungSimulator backend access
+	 * @return snapshot of the simulation
+	 */
+	public static SimulationSnapshot capture(final LungSimulator lungSimulator) {
+		return new SimulationSnapshot(lungSimulator);
+	}
+
+	private static double[] copy(final List<Double> series) {
+		final double[] values = new double[series.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = series.get(i);
+		}
+		return values;
+	}
+
+	private static Map<String, double[]> copy(final Map<String, List<Double>> series) {
+		final Map<String, double[]> values = new HashMap<>();
+		for (final Map.Entry<String, List<Double>> entry : series.entrySet()) {
+			values.put(entry.getKey(), copy(entry.getValue()));
+		}
+		return values;
+	}
+
+	public double[] getTimeline() {
+		return timeline;
+	}
+
+	public double[] getVentilatorPressure() {
+		return ventilatorPressure;
+	}
+
+	/**
+	 * @param id flow id
+	 * @return values of the last steps
+	 */
+	public double[] getFlow(final String id) {
+		return flows.get(id);
+	}
+
+	/**
+	 * @param id pressure id
+	 * @return values of the last steps
+	 */
+	public double[] getPressure(final String id) {
+		return pressures.get(id);
+	}
+
+	public double getVentilatorValue() {
+		return ventilatorValue;
+	}
+
+	/**
+	 * @param index position of the element in the patient model, see
+	 *              {@link CircuitBuilder#getBranchIds()}
+	 * @return value of the element
+	 */
+	public double getElementValue(final int index) {
+		return elementValues[index];
+	}
+
+	/**
+	 * @return last complete breath, null if none
+	 */
+	public BreathMetrics getBreath() {
+		return breath;
+	}
+
+	public SimulationMetrics.Snapshot getMetrics() {
+		return metrics;
+	}
+}
@@ -9,16 +9,21 @@ import javax.swing.JFrame;
 import javax.swing.JPanel;
 
 import lungsimulator.LungSimulator;
+import lungsimulator.metrics.SimulationMetrics.Counter;
+import utils.GraphicConstants;
+import utils.RenderCoalescer;
 
 /**
- * Manages the simulation view
+ * Manages the simulation view; it is built and rendered on the event dispatch
+ * thread, while the publishing stage of the simulation only publishes
+ * snapshots
  */
 public class SimulationView {
 
 	/**
 	 * Show if the frame state (open or close)
 	 */
-	private transient boolean windowIsOpen;
+	private transient volatile boolean windowIsOpen;
 
 	/**
 	 * Circuit component section
@@ -35,11 +40,34 @@ public class SimulationView {
 	 */
 	private final transient PlotSection plotSection;
 
+	/**
+	 * Metrics section
+	 */
+	private final transient MetricsSection metricsSection;
+
+	/**
+	 * Backend access
+	 */
+	private final transient LungSimulator lungSimulator;
+
+	/**
+	 * Renders the latest snapshot of the simulation at the display rate
+	 */
+	private final transient RenderCoalescer<SimulationSnapshot> renderCoalescer;
+
+	/**
+	 * Breath section
+	 */
+	private final transient BreathSection breathSection;
+
 	/**
 	 * Init the simulation view
 	 * @param lungSimulator backend access
 	 */
 	public SimulationView(final LungSimulator lungSimulator) {
+		this.lungSimulator = lungSimulator;
+		renderCoalescer = new RenderCoalescer<>(this::render, GraphicConstants.RENDER_PERIOD);
+
 		// frame configuration
 		final JFrame frame = new JFrame();
 		frame.setExtendedState(JFrame.MAXIMIZED_BOTH); // fullscreen option
@@ -51,6 +79,7 @@ public class SimulationView {
 			@Override
 			public void windowClosing(final WindowEvent event) {
 				windowIsOpen = false;
+				renderCoalescer.stop();
 			}
 		});
 
@@ -69,11 +98,14 @@ public class SimulationView {
 		rightPanel.setLayout(new BoxLayout(rightPanel, BoxLayout.Y_AXIS));
 
 		plotSection = new PlotSection(lungSimulator, rightPanel, true);
+		breathSection = new BreathSection(rightPanel);
+		metricsSection = new MetricsSection(rightPanel);
 
 		frame.getContentPane().add(rightPanel);
 		frame.getContentPane().setLayout(new GridLayout(1, 2, 0, 0));
 		// frame.pack();
 		frame.setVisible(true);
+		renderCoalescer.start();
 	}
 
 	public boolean isWindowIsOpen() {
@@ -89,25 +121,28 @@ public class SimulationView {
 	}
 
 	/**
-	 * Updates time dependent elements
-	 */
-	public void updateTimeDependentElms() {
-		circuitComponents.updateTimeDependentElms();
-	}
-
-	/**
-	 * Updates ventilator value
-	 * @param currentVentValue current ventilator value
+	 * Publishes the values of the last step, to be rendered on the event
+	 * dispatch thread; called by the publishing stage after the chart series
+	 * have been updated
+	 * @param lungSimulator backend access
 	 */
-	public void updateVentilator(final double currentVentValue) {
-		circuitComponents.updateVentilator(currentVentValue);
+	public void publish(final LungSimulator lungSimulator) {
+		if (renderCoalescer.publish(SimulationSnapshot.capture(lungSimulator))) {
+			lungSimulator.getMetrics().increment(Counter.DROPPED_UI_UPDATES);
+		}
 	}
 
 	/**
-	 * Updates chars values
-	 * @param lungSimulator backend access
+	 * Updates the view with a snapshot; on the event dispatch thread
+	 * @param snapshot values of the last step
 	 */
-	public void updateCharts(final LungSimulator lungSimulator) {
-		plotSection.updateCharts(lungSimulator, true);
+	private void render(final SimulationSnapshot snapshot) {
+		if (lungSimulator.getCircuitBuilder().isTimeDependentCir()) {
+			circuitComponents.updateTimeDependentElms(snapshot);
+		}
+		circuitComponents.updateVentilator(snapshot.getVentilatorValue());
+		plotSection.updateCharts(snapshot);
+		breathSection.updateBreath(snapshot);
+		metricsSection.updateMetrics(snapshot);
 	}
 }
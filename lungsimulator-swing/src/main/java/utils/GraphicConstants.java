@@ -98,6 +98,23 @@ public final class GraphicConstants {
 	 */
 	public static final int PLOTHEIGTH = 400;
 	
+	/**
+	 * Chart windows: the last steps kept by the backend, or a length in seconds
+	 * drawn from the downsampled history
+	 */
+	public static final String[] HISTORY_WINDOWS = { "Last steps", "10", "30", "60", "300", "600" };
+	
+	/**
+	 * Maximum number of points drawn by a chart series
+	 */
+	public static final int CHART_POINTS = 1000;
+	
+	/**
+	 * Minimum time between two renderings of the simulation view, in
+	 * milliseconds: about the refresh rate of a display
+	 */
+	public static final int RENDER_PERIOD = 16;
+	
 	private GraphicConstants() {}
 
 }
@@ -0,0 +1,62 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import javax.swing.Timer;
+
+/**
+ * Hands the snapshots published by the simulation to the event
+ * dispatch thread. Only the latest snapshot is kept: a timer on the event
+ * dispatch thread renders it at most once per period, and the snapshots
+ * published in between are dropped, so the simulation never waits for the
+ * charts.
+ *
+ * @param <T> immutable snapshot
+ */
+public class RenderCoalescer<T> {
+
+	/**
+	 * Latest snapshot not rendered yet, null if none
+	 */
+	private final AtomicReference<T> latest = new AtomicReference<>();
+
+	/**
+	 * Timer of the renderings, on the event dispatch thread
+	 */
+	private final Timer timer;
+
+	/**
+	 * @param renderer     called on the event dispatch thread with the latest
+	 *                     snapshot
+	 * @param periodMillis minimum time between two renderings
+	 */
+	public RenderCoalescer(final Consumer<T> renderer, final int periodMillis) {
+		timer = new Timer(periodMillis, event -> {
+			final T snapshot = latest.getAndSet(null);
+			if (snapshot != null) {
+				renderer.accept(snapshot);
+			}
+		});
+		timer.setCoalesce(true);
+	}
+
+	/**
+	 * Replaces the snapshot waiting to be rendered; called by any thread
+	 *
+	 * @param snapshot values to render
+	 * @return true if the previous snapshot had not been rendered and has been
+	 *         dropped
+	 */
+	public boolean publish(final T snapshot) {
+		return latest.getAndSet(snapshot) != null;
+	}
+
+	public void start() {
+		timer.start();
+	}
+
+	public void stop() {
+		timer.stop();
+	}
+}
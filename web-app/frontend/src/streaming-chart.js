@@ -0,0 +1,241 @@
+import { LitElement, html, css } from 'lit';
+
+/**
+ * Colors of the series, in order
+ */
+const COLORS = ['#008ffb', '#00e396', '#feb019'];
+
+/**
+ * Grid lines of each axis
+ */
+const TICKS = 5;
+
+/**
+ * Margins of the plot area, in pixels
+ */
+const MARGIN = { left: 70, right: 15, top: 30, bottom: 40 };
+
+/**
+ * Line chart of series sharing a time axis, drawn on a canvas. The server sends
+ * all the points once with setData and then only the new ones with append; the
+ * points falling out of the window are dropped here, so a push carries a few
+ * numbers instead of whole series.
+ */
+class StreamingChart extends LitElement {
+  static get properties() {
+    return {
+      /** title of the y-axis */
+      label: { type: String },
+      /** names of the series, in the order of the values */
+      seriesNames: { type: Array },
+      /** seconds kept before the last point, 0 to keep them all */
+      window: { type: Number },
+      /** maximum number of points kept, 0 for no limit */
+      capacity: { type: Number },
+    };
+  }
+
+  static get styles() {
+    return css`
+      :host {
+        display: block;
+        width: 100%;
+        height: 350px;
+      }
+      canvas {
+        display: block;
+        width: 100%;
+        height: 100%;
+      }
+    `;
+  }
+
+  constructor() {
+    super();
+    this.label = '';
+    this.seriesNames = [];
+    this.window = 0;
+    this.capacity = 0;
+    this.times = [];
+    this.values = [];
+    this.drawPending = false;
+  }
+
+  render() {
+    return html`<canvas></canvas>`;
+  }
+
+  firstUpdated() {
+    this.canvas = this.renderRoot.querySelector('canvas');
+    this.resizeObserver = new ResizeObserver(() => this.requestDraw());
+    this.resizeObserver.observe(this);
+  }
+
+  updated() {
+    this.trim();
+    this.requestDraw();
+  }
+
+  disconnectedCallback() {
+    super.disconnectedCallback();
+    if (this.resizeObserver) {
+      this.resizeObserver.disconnect();
+    }
+  }
+
+  /**
+   * Replaces the points of the chart
+   * @param times x-axis values
+   * @param series y-axis values of each series
+   */
+  setData(times, ...series) {
+    this.times = Array.from(times);
+    this.values = series.map((values) => Array.from(values));
+    this.trim();
+    this.requestDraw();
+  }
+
+  /**
+   * Adds points after the last ones
+   * @param times x-axis values
+   * @param series y-axis values of each series
+   */
+  append(times, ...series) {
+    for (let i = 0; i < times.length; i++) {
+      this.times.push(times[i]);
+    }
+    series.forEach((values, s) => {
+      const target = this.values[s] || (this.values[s] = []);
+      for (let i = 0; i < values.length; i++) {
+        target.push(values[i]);
+      }
+    });
+    this.trim();
+    this.requestDraw();
+  }
+
+  /**
+   * Drops the points outside the window and beyond the capacity
+   */
+  trim() {
+    const size = this.times.length;
+    let drop = this.capacity > 0 ? Math.max(0, size - this.capacity) : 0;
+    if (this.window > 0 && size > 0) {
+      const start = this.times[size - 1] - this.window;
+      while (drop < size && this.times[drop] < start) {
+        drop++;
+      }
+    }
+    if (drop > 0) {
+      this.times.splice(0, drop);
+      this.values.forEach((values) => values.splice(0, drop));
+    }
+  }
+
+  /**
+   * Draws the chart at the next frame, once however many pushes arrive
+   */
+  requestDraw() {
+    if (!this.drawPending) {
+      this.drawPending = true;
+      requestAnimationFrame(() => this.draw());
+    }
+  }
+
+  draw() {
+    this.drawPending = false;
+    const canvas = this.canvas;
+    if (!canvas) {
+      return;
+    }
+    const ratio = window.devicePixelRatio || 1;
+    const width = this.clientWidth;
+    const height = this.clientHeight;
+    if (canvas.width !== Math.round(width * ratio) || canvas.height !== Math.round(height * ratio)) {
+      canvas.width = Math.round(width * ratio);
+      canvas.height = Math.round(height * ratio);
+    }
+    const ctx = canvas.getContext('2d');
+    ctx.setTransform(ratio, 0, 0, ratio, 0, 0);
+    ctx.clearRect(0, 0, width, height);
+
+    const plotWidth = width - MARGIN.left - MARGIN.right;
+    const plotHeight = height - MARGIN.top - MARGIN.bottom;
+    const size = this.times.length;
+    if (size === 0 || plotWidth <= 0 || plotHeight <= 0) {
+      return;
+    }
+
+    const xMin = this.times[0];
+    const xSpan = this.times[size - 1] > xMin ? this.times[size - 1] - xMin : 1;
+    let yMin = Infinity;
+    let yMax = -Infinity;
+    this.values.forEach((values) => {
+      for (let i = 0; i < values.length; i++) {
+        if (values[i] < yMin) yMin = values[i];
+        if (values[i] > yMax) yMax = values[i];
+      }
+    });
+    if (!(yMax > yMin)) {
+      yMin -= 1;
+      yMax += 1;
+    }
+    const ySpan = yMax - yMin;
+    const x = (time) => MARGIN.left + ((time - xMin) / xSpan) * plotWidth;
+    const y = (value) => MARGIN.top + ((yMax - value) / ySpan) * plotHeight;
+
+    // grid and axes
+    ctx.font = '12px sans-serif';
+    ctx.lineWidth = 1;
+    ctx.strokeStyle = '#e0e0e0';
+    ctx.fillStyle = '#555';
+    for (let i = 0; i <= TICKS; i++) {
+      const value = yMin + (ySpan * i) / TICKS;
+      const py = y(value);
+      ctx.beginPath();
+      ctx.moveTo(MARGIN.left, py);
+      ctx.lineTo(MARGIN.left + plotWidth, py);
+      ctx.stroke();
+      ctx.textAlign = 'right';
+      ctx.fillText(value.toFixed(2), MARGIN.left - 6, py + 4);
+
+      const time = xMin + (xSpan * i) / TICKS;
+      ctx.textAlign = 'center';
+      ctx.fillText(time.toFixed(1), x(time), MARGIN.top + plotHeight + 16);
+    }
+    ctx.fillText('Time [s]', MARGIN.left + plotWidth / 2, height - 4);
+    ctx.save();
+    ctx.translate(14, MARGIN.top + plotHeight / 2);
+    ctx.rotate(-Math.PI / 2);
+    ctx.fillText(this.label, 0, 0);
+    ctx.restore();
+
+    // series and legend
+    ctx.lineWidth = 2;
+    ctx.textAlign = 'left';
+    let legendX = MARGIN.left;
+    this.values.forEach((values, s) => {
+      const color = COLORS[s % COLORS.length];
+      ctx.strokeStyle = color;
+      ctx.beginPath();
+      const count = Math.min(size, values.length);
+      for (let i = 0; i < count; i++) {
+        if (i === 0) {
+          ctx.moveTo(x(this.times[i]), y(values[i]));
+        } else {
+          ctx.lineTo(x(this.times[i]), y(values[i]));
+        }
+      }
+      ctx.stroke();
+
+      const name = this.seriesNames[s] || '';
+      ctx.fillStyle = color;
+      ctx.fillRect(legendX, 10, 10, 10);
+      ctx.fillStyle = '#555';
+      ctx.fillText(name, legendX + 14, 19);
+      legendX += 24 + ctx.measureText(name).width;
+    });
+  }
+}
+
+customElements.define('streaming-chart', StreamingChart);
@@ -0,0 +1,104 @@
+package charts;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vaadin.flow.component.Composite;
+import com.vaadin.flow.component.HasComponents;
+import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.grid.GridVariant;
+import com.vaadin.flow.component.html.H4;
+import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+
+import lungsimulator.LungSimulator;
+import lungsimulator.metrics.BreathAnalyzer;
+import lungsimulator.metrics.BreathMetrics;
+
+/**
+ * Shows the clinical values of the last breath
+ */
+public class BreathSection extends Composite<VerticalLayout> implements HasComponents {
+	/**
+	 * For serialization purpose
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * A row of the table: name and formatted value of a metric
+	 */
+	public static class BreathRow {
+		private final String name;
+		private final String value;
+
+		BreathRow(final String name, final String value) {
+			this.name = name;
+			this.value = value;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+
+	/**
+	 * Table with a row for each metric
+	 */
+	private final Grid<BreathRow> grid;
+
+	/**
+	 * Last breath, reused at every update
+	 */
+	private final transient BreathMetrics breath = new BreathMetrics();
+
+	/**
+	 * Init the breath section
+	 */
+	public BreathSection() {
+		grid = new Grid<>();
+		grid.addColumn(BreathRow::getName).setHeader("Breath");
+		grid.addColumn(BreathRow::getValue).setHeader("Value");
+		grid.addThemeVariants(GridVariant.LUMO_COMPACT);
+		grid.setAllRowsVisible(true);
+		add(new H4("Breath metrics"), grid);
+	}
+
+	/**
+	 * Updates the table values
+	 *
+	 * @param lungSimulator backend access
+	 */
+	public void updateBreath(final LungSimulator lungSimulator) {
+		final BreathAnalyzer analyzer = lungSimulator.getBreathAnalyzer();
+		if (analyzer != null) {
+			updateBreath(analyzer.copyLatest(breath));
+		}
+	}
+
+	/**
+	 * Updates the table values
+	 *
+	 * @param lastBreath last complete breath
+	 */
+	public void updateBreath(final BreathMetrics lastBreath) {
+		if (!lastBreath.isValid()) {
+			return;
+		}
+		final List<BreathRow> rows = new ArrayList<>();
+		rows.add(new BreathRow("Tidal volume [mL]", format(lastBreath.getTidalVolume() * 1000)));
+		rows.add(new BreathRow("Peak pressure [cmH2O]", format(lastBreath.getPeakPressure())));
+		rows.add(new BreathRow("Plateau pressure [cmH2O]", format(lastBreath.getPlateauPressure())));
+		rows.add(new BreathRow("PEEP [cmH2O]", format(lastBreath.getPeep())));
+		rows.add(new BreathRow("Respiratory rate [1/min]", format(lastBreath.getRespiratoryRate())));
+		rows.add(new BreathRow("I:E", "1:" + format(1 / lastBreath.getIeRatio())));
+		rows.add(new BreathRow("Dynamic compliance [mL/cmH2O]", format(lastBreath.getDynamicCompliance() * 1000)));
+		grid.setItems(rows);
+	}
+
+	private static String format(final double value) {
+		return Double.isNaN(value) || Double.isInfinite(value) ? "-" : String.format("%.1f", value);
+	}
+}
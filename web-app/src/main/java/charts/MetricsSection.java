@@ -0,0 +1,101 @@
+package charts;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vaadin.flow.component.Composite;
+import com.vaadin.flow.component.HasComponents;
+import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.grid.GridVariant;
+import com.vaadin.flow.component.html.H4;
+import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+
+import lungsimulator.LungSimulator;
+import lungsimulator.metrics.LatencyHistogram;
+import lungsimulator.metrics.SimulationMetrics;
+import lungsimulator.metrics.SimulationMetrics.Counter;
+import lungsimulator.metrics.SimulationMetrics.Phase;
+
+/**
+ * Shows the latencies of the simulation steps and the counters of the
+ * anomalies
+ */
+public class MetricsSection extends Composite<VerticalLayout> implements HasComponents {
+	/**
+	 * For serialization purpose
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * A row of the table: latencies in milliseconds for a phase, the value in
+	 * p50 for a counter
+	 */
+	public static class MetricRow {
+		private final String name;
+		private final String p50;
+		private final String p99;
+		private final String max;
+
+		MetricRow(final String name, final String p50, final String p99, final String max) {
+			this.name = name;
+			this.p50 = p50;
+			this.p99 = p99;
+			this.max = max;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getP50() {
+			return p50;
+		}
+
+		public String getP99() {
+			return p99;
+		}
+
+		public String getMax() {
+			return max;
+		}
+	}
+
+	/**
+	 * Table with a row for each phase and for each counter
+	 */
+	private final Grid<MetricRow> grid;
+
+	/**
+	 * Init the metrics section
+	 */
+	public MetricsSection() {
+		grid = new Grid<>();
+		grid.addColumn(MetricRow::getName).setHeader("Metric");
+		grid.addColumn(MetricRow::getP50).setHeader("p50 [ms]");
+		grid.addColumn(MetricRow::getP99).setHeader("p99 [ms]");
+		grid.addColumn(MetricRow::getMax).setHeader("max [ms]");
+		grid.addThemeVariants(GridVariant.LUMO_COMPACT);
+		grid.setAllRowsVisible(true);
+		add(new H4("Simulation metrics"), grid);
+	}
+
+	/**
+	 * Updates the table values
+	 *
+	 * @param lungSimulator backend access
+	 */
+	public void updateMetrics(final LungSimulator lungSimulator) {
+		final SimulationMetrics.Snapshot snapshot = lungSimulator.getMetrics().snapshot();
+		final List<MetricRow> rows = new ArrayList<>();
+		for (final Phase phase : Phase.values()) {
+			final LatencyHistogram.Snapshot latency = snapshot.getPhase(phase);
+			rows.add(new MetricRow(phase.getLabel(), String.format("%.2f", latency.getMillisAtPercentile(50)),
+					String.format("%.2f", latency.getMillisAtPercentile(99)),
+					String.format("%.2f", latency.getMaxMillis())));
+		}
+		for (final Counter counter : Counter.values()) {
+			rows.add(new MetricRow(counter.getLabel(), String.valueOf(snapshot.getCount(counter)), "", ""));
+		}
+		grid.setItems(rows);
+	}
+}
@@ -0,0 +1,94 @@
+package charts;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import com.vaadin.flow.component.Composite;
+import com.vaadin.flow.component.HasComponents;
+import com.vaadin.flow.component.combobox.ComboBox;
+import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+
+import lungsimulator.CircuitBuilder;
+import lungsimulator.broadcast.SimulationFrame;
+import lungsimulator.utils.Utils;
+
+/**
+ * Chart of a shared simulation: the observer chooses the id to show, and the
+ * chart is fed with the frames of the simulation
+ */
+public class ObserverPlotSection extends Composite<VerticalLayout> implements HasComponents {
+	/**
+	 * Chart of the chosen id
+	 */
+	private final transient StreamingChart myChart;
+
+	/**
+	 * True if the ventilator values are shown with the series
+	 */
+	private final transient boolean hasVentilator;
+
+	/**
+	 * Column of the frames that is shown on the plot
+	 */
+	private transient int shownColumn;
+
+	/**
+	 * Set up the plot section
+	 * @param idsList ids that can be shown
+	 * @param frameColumn column of the frames of an id
+	 * @param seriesName name of the series
+	 * @param hasVentilator true if the ventilator values are shown
+	 * @param choiceListener called when the observer chooses another id, to
+	 *            redraw the chart
+	 */
+	public ObserverPlotSection(final List<String> idsList, final ToIntFunction<String> frameColumn,
+			final String seriesName, final boolean hasVentilator, final Runnable choiceListener) {
+		this.hasVentilator = hasVentilator;
+		shownColumn = frameColumn.applyAsInt(idsList.get(0));
+
+		final ComboBox<String> ids = new ComboBox<>();
+		ids.setItems(idsList);
+		ids.setAllowCustomValue(false);
+		ids.setValue(idsList.get(0));
+		ids.setWidth("900px");
+		ids.addValueChangeListener(event -> {
+			if (event.getValue() != null) {
+				shownColumn = frameColumn.applyAsInt(event.getValue());
+				choiceListener.run();
+			}
+		});
+		add(ids);
+
+		myChart = new StreamingChart(seriesName, hasVentilator);
+		myChart.setWidthFull();
+		myChart.setWindow(0, Utils.MAXDATA);
+		add(myChart);
+	}
+
+	/**
+	 * Shows the values of frames
+	 * @param frames frames of the simulation, oldest first
+	 * @param replace true to replace the points of the chart, false to add
+	 *            the frames after them
+	 */
+	public void show(final List<SimulationFrame> frames, final boolean replace) {
+		final int first = replace ? Math.max(0, frames.size() - Utils.MAXDATA) : 0;
+		final int count = frames.size() - first;
+		final double[] times = new double[count];
+		final double[] values = new double[count];
+		final double[] ventValues = hasVentilator ? new double[count] : null;
+		for (int i = 0; i < count; i++) {
+			final SimulationFrame frame = frames.get(first + i);
+			times[i] = frame.getTime();
+			values[i] = frame.getValue(shownColumn);
+			if (ventValues != null) {
+				ventValues[i] = frame.getValue(CircuitBuilder.VENTILATOR_COLUMN);
+			}
+		}
+		if (replace) {
+			myChart.setData(times, values, ventValues, count);
+		} else {
+			myChart.append(times, values, ventValues, count);
+		}
+	}
+}
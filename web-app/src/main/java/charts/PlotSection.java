@@ -1,14 +1,24 @@
 package charts;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.function.ToIntFunction;
 
 import com.vaadin.flow.component.Composite;
 import com.vaadin.flow.component.HasComponents;
+import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.combobox.ComboBox;
 import com.vaadin.flow.component.notification.Notification;
+import com.vaadin.flow.component.orderedlayout.FlexComponent;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 
+import lungsimulator.CircuitBuilder;
+import lungsimulator.LungSimulator;
+import lungsimulator.history.CompressedHistory;
+import lungsimulator.utils.Utils;
+
 /**
  * Manages plot section of the simulation view
  */
@@ -16,13 +26,76 @@ public class PlotSection extends Composite<VerticalLayout> implements HasCompone
 	/**
 	 * Final chart object
 	 */
-	private final transient ApexChartComponent myChart;
+	private final transient StreamingChart myChart;
 
 	/**
 	 * Current value that is shown on the plot
 	 */
 	private transient String shownElm;
 
+	/**
+	 * Lengths in seconds of the history windows that can be shown; 0 shows the
+	 * last steps
+	 */
+	private static final List<Integer> HISTORY_WINDOWS = Arrays.asList(0, 10, 30, 60, 300, 600);
+
+	/**
+	 * Maximum number of points drawn for a history window
+	 */
+	private static final int CHART_POINTS = 1000;
+
+	/**
+	 * Simulation of the session, which keeps the history
+	 */
+	private final transient LungSimulator lungSimulator;
+
+	/**
+	 * Column of the history of an id
+	 */
+	private final transient ToIntFunction<String> historyColumn;
+
+	/**
+	 * True if the ventilator values are shown with the series
+	 */
+	private final transient boolean hasVentilator;
+
+	/**
+	 * True while the chart follows the last values; false when the user goes
+	 * back in the history
+	 */
+	private transient boolean live = true;
+
+	/**
+	 * Length of the history window, in seconds
+	 */
+	private transient int historyWindow = HISTORY_WINDOWS.get(0);
+
+	/**
+	 * End of the history window shown, in seconds
+	 */
+	private transient double historyEnd;
+
+	/**
+	 * Time of the last point sent to the browser while live; NaN when the whole
+	 * chart has to be sent again
+	 */
+	private transient double lastPushedTime = Double.NaN;
+
+	/**
+	 * Times of the points of a history window
+	 */
+	private final transient double[] chartTimes = new double[CHART_POINTS];
+
+	/**
+	 * Values of the points of a history window
+	 */
+	private final transient double[] chartValues = new double[CHART_POINTS];
+
+	/**
+	 * Ventilator values of the points of a history window
+	 */
+	private final transient double[] chartVentValues = new double[CHART_POINTS];
+
 	/**
 	 * Set up the plot section
 	 * @param idsList ids that has to be shown in the combo box
@@ -30,10 +103,15 @@ public class PlotSection extends Composite<VerticalLayout> implements HasCompone
 	 * @param yvalues y-axis values
 	 * @param yvaluesVent y-axis ventilator values 
 	 * @param seriesName name of the series 
+	 * @param lungSimulator simulation of the session, which keeps the history
+	 * @param historyColumn column of the history of an id
 	 */
 	public PlotSection(final List<String> idsList, final List<Double> timeline, final Map<String, List<Double>> yvalues, final List<Double> yvaluesVent,
-			final String seriesName) {
+			final String seriesName, final LungSimulator lungSimulator, final ToIntFunction<String> historyColumn) {
 		shownElm = idsList.get(0); //primo della lista come default
+		this.lungSimulator = lungSimulator;
+		this.historyColumn = historyColumn;
+		this.hasVentilator = yvaluesVent != null;
 
 		final ComboBox<String> ids = new ComboBox<>();
 		ids.setItems(idsList);
@@ -47,10 +125,11 @@ public class PlotSection extends Composite<VerticalLayout> implements HasCompone
 
 			if (newId != null) {
 				shownElm = newId;
-				if (yvaluesVent == null) {
-					updateChart(timeline, yvalues, null);
-				} else {
+				lastPushedTime = Double.NaN;
+				if (live) {
 					updateChart(timeline, yvalues, yvaluesVent);
+				} else {
+					showHistory();
 				}
 			} else {
 				Notification.show("Please pick a valid option for " + seriesName + " field");
@@ -62,25 +141,168 @@ public class PlotSection extends Composite<VerticalLayout> implements HasCompone
 		add(ids);
 		
 		// settare grafico
-				if (yvaluesVent == null) {
-					myChart = new ApexChartComponent(timeline, yvalues.get(shownElm), seriesName);
+		myChart = new StreamingChart(seriesName, hasVentilator);
+		myChart.setWidthFull();
+		add(myChart);
+		updateChart(timeline, yvalues, yvaluesVent);
+
+		// scroll-back in the history of the session
+		final ComboBox<Integer> windows = new ComboBox<>("History window [s]");
+		windows.setItems(HISTORY_WINDOWS);
+		windows.setItemLabelGenerator(window -> window == 0 ? "Last steps" : String.valueOf(window));
+		windows.setAllowCustomValue(false);
+		windows.setValue(historyWindow);
+		windows.addValueChangeListener(event -> {
+			if (event.getValue() != null) {
+				historyWindow = event.getValue();
+				lastPushedTime = Double.NaN;
+				if (live) {
+					updateChart(timeline, yvalues, yvaluesVent);
 				} else {
-					myChart = new ApexChartComponent(timeline, yvalues.get(shownElm), seriesName);
+					showHistory();
 				}
-		add(myChart);
+			}
+		});
+		final Button back = new Button("<<", event -> moveHistory(-1));
+		final Button forward = new Button(">>", event -> moveHistory(1));
+		final Button toLive = new Button("Live", event -> {
+			live = true;
+			lastPushedTime = Double.NaN;
+		});
+		final HorizontalLayout historyControls = new HorizontalLayout(windows, back, forward, toLive);
+		historyControls.setDefaultVerticalComponentAlignment(FlexComponent.Alignment.END);
+		add(historyControls);
+	}
+
+	/**
+	 * Moves the history window by its length, back to the history from the last
+	 * values or forward up to them
+	 * @param direction -1 to go back, 1 to go forward
+	 */
+	private void moveHistory(final int direction) {
+		final CompressedHistory history = lungSimulator.getHistory();
+		if (history == null || history.getRowCount() == 0) {
+			return;
+		}
+		final double start = history.getStartTime();
+		final double end = history.getEndTime();
+		if (live) {
+			if (direction > 0) {
+				return;
+			}
+			historyEnd = end;
+		}
+		final double window = windowLength();
+		lastPushedTime = Double.NaN;
+		historyEnd = Math.max(start + window, historyEnd + direction * window);
+		live = historyEnd >= end;
+		if (!live) {
+			showHistory();
+		}
 	}
 
 	/**
-	 * Update chart values
+	 * Length of the history window in seconds; the last steps are moved by the
+	 * length of the timeline
+	 * @return window length
+	 */
+	private double windowLength() {
+		if (historyWindow > 0) {
+			return historyWindow;
+		}
+		final List<Double> timeline = lungSimulator.getCircuitBuilder().getTimeline();
+		return timeline.get(timeline.size() - 1) - timeline.get(0);
+	}
+
+	/**
+	 * Shows the history window chosen by the user
+	 */
+	private void showHistory() {
+		myChart.setWindow(0, 0);
+		showWindow(historyEnd - windowLength(), historyEnd);
+	}
+
+	/**
+	 * Draws a range of the history from at most {@link #CHART_POINTS} points,
+	 * which keep the extremes of the values
+	 * @param from start of the range, in seconds
+	 * @param to end of the range, in seconds
+	 */
+	private void showWindow(final double from, final double to) {
+		final int count = lungSimulator.readChartSeries(historyColumn.applyAsInt(shownElm), from, to, chartTimes,
+				chartValues);
+		if (count == 0) {
+			return;
+		}
+		double[] ventValues = null;
+		if (hasVentilator) {
+			lungSimulator.readChartSeries(CircuitBuilder.VENTILATOR_COLUMN, from, to, chartTimes, chartVentValues);
+			ventValues = chartVentValues;
+		}
+		myChart.setData(chartTimes, chartValues, ventValues, count);
+	}
+
+	/**
+	 * Update chart values: sends to the browser only the points added since the
+	 * previous update, or the whole chart after a change of the view
 	 * @param timeline x-axis values
 	 * @param yvalues y-axis values
 	 * @param yvaluesVent y-axis ventilator values
 	 */
 	public void updateChart(final List<Double> timeline, final Map<String, List<Double>> yvalues, final List<Double> yvaluesVent) {		
-		if (yvaluesVent == null) {
-			myChart.updateChart(timeline, yvalues.get(shownElm), null);
+		if (!live) {
+			// the chart keeps showing the window chosen in the history
+			return;
+		}
+		final int first = firstNewPoint(timeline);
+		if (first == 0) {
+			showLive(timeline, yvalues.get(shownElm), yvaluesVent);
+		} else if (first < timeline.size()) {
+			myChart.append(timeline, yvalues.get(shownElm), yvaluesVent, first);
+			lastPushedTime = timeline.get(timeline.size() - 1);
+		}
+	}
+
+	/**
+	 * Position of the first point of the timeline that the browser has not
+	 * received
+	 * @param timeline x-axis values
+	 * @return 0 if the whole chart has to be sent, e.g. because some points
+	 *         were overwritten before being sent or the simulation restarted;
+	 *         the size of the timeline if there is nothing new
+	 */
+	private int firstNewPoint(final List<Double> timeline) {
+		if (Double.isNaN(lastPushedTime) || timeline.get(timeline.size() - 1) < lastPushedTime) {
+			return 0;
+		}
+		int first = timeline.size();
+		while (first > 0 && timeline.get(first - 1) > lastPushedTime) {
+			first--;
+		}
+		return first;
+	}
+
+	/**
+	 * Sends the whole chart of the last values: the last steps, or the chosen
+	 * window of the history, which the browser then shifts as points are
+	 * appended
+	 * @param timeline x-axis values
+	 * @param values y-axis values
+	 * @param yvaluesVent y-axis ventilator values
+	 */
+	private void showLive(final List<Double> timeline, final List<Double> values, final List<Double> yvaluesVent) {
+		final CompressedHistory history = lungSimulator.getHistory();
+		if (historyWindow > 0 && history != null && history.getRowCount() > 0) {
+			final double end = history.getEndTime();
+			myChart.setWindow(historyWindow, 0);
+			showWindow(end - historyWindow, end);
+			// the history is written before the chart series: the points up to
+			// its end are already drawn
+			lastPushedTime = end;
 		} else {
-			myChart.updateChart(timeline, yvalues.get(shownElm), yvaluesVent);
+			myChart.setWindow(historyWindow, historyWindow > 0 ? 0 : Utils.MAXDATA);
+			myChart.setData(timeline, values, yvaluesVent);
+			lastPushedTime = timeline.get(timeline.size() - 1);
 		}
 	}
 }
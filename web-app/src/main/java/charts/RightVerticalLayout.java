@@ -35,9 +35,11 @@ public class RightVerticalLayout extends Composite<VerticalLayout> implements Ha
 		add(plotWrapper);
 		getContent().setFlexGrow(1, plotWrapper);
 		
-		flowChart = new PlotSection(lungSimulator.getCircuitBuilder().getFlowIds(), lungSimulator.getCircuitBuilder().getTimeline(), lungSimulator.getCircuitBuilder().getInitdataFlow(), null, "Flow");
+		flowChart = new PlotSection(lungSimulator.getCircuitBuilder().getFlowIds(), lungSimulator.getCircuitBuilder().getTimeline(), lungSimulator.getCircuitBuilder().getInitdataFlow(), null, "Flow",
+				lungSimulator, lungSimulator.getCircuitBuilder()::getFlowColumn);
 		plotWrapper.add(flowChart);
-		pressureChart = new PlotSection(lungSimulator.getCircuitBuilder().getPressureIds(), lungSimulator.getCircuitBuilder().getTimeline(), lungSimulator.getCircuitBuilder().getInitdataPressure(), lungSimulator.getCircuitBuilder().getInitdataVentilatorPressure(), "Pressure");
+		pressureChart = new PlotSection(lungSimulator.getCircuitBuilder().getPressureIds(), lungSimulator.getCircuitBuilder().getTimeline(), lungSimulator.getCircuitBuilder().getInitdataPressure(), lungSimulator.getCircuitBuilder().getInitdataVentilatorPressure(), "Pressure",
+				lungSimulator, lungSimulator.getCircuitBuilder()::getPressureColumn);
 		plotWrapper.add(pressureChart);
 	}
 
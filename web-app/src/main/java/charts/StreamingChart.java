@@ -0,0 +1,134 @@
+package charts;
+
+import java.util.List;
+
+import com.vaadin.flow.component.Component;
+import com.vaadin.flow.component.HasSize;
+import com.vaadin.flow.component.Tag;
+import com.vaadin.flow.component.dependency.JsModule;
+
+import elemental.json.Json;
+import elemental.json.JsonArray;
+
+/**
+ * Chart of a series, and of the ventilator values if shown, which keeps its
+ * points in the browser: the whole series is sent once, then each update
+ * sends only the points added since the previous one and the browser drops
+ * the points outside the window
+ */
+@Tag("streaming-chart")
+@JsModule("./src/streaming-chart.js")
+public class StreamingChart extends Component implements HasSize {
+
+	/**
+	 * Builds the chart
+	 *
+	 * @param seriesName    name of the series that has to be shown
+	 * @param hasVentilator true if the ventilator values are shown
+	 */
+	public StreamingChart(final String seriesName, final boolean hasVentilator) {
+		getElement().setProperty("label", seriesName);
+		final JsonArray names = Json.createArray();
+		names.set(0, seriesName);
+		if (hasVentilator) {
+			names.set(1, "Ventilator");
+		}
+		getElement().setPropertyJson("seriesNames", names);
+	}
+
+	/**
+	 * Sets the points kept by the browser
+	 *
+	 * @param seconds  time kept before the last point, 0 for no limit
+	 * @param capacity number of points kept, 0 for no limit
+	 */
+	public void setWindow(final double seconds, final int capacity) {
+		getElement().setProperty("window", seconds);
+		getElement().setProperty("capacity", capacity);
+	}
+
+	/**
+	 * Replaces the points of the chart with the last steps
+	 *
+	 * @param timeline    x-axis values
+	 * @param yvalues     y-axis values
+	 * @param yvaluesVent y-axis ventilator values, null if not shown
+	 */
+	public void setData(final List<Double> timeline, final List<Double> yvalues, final List<Double> yvaluesVent) {
+		send("setData", timeline, yvalues, yvaluesVent, 0);
+	}
+
+	/**
+	 * Adds the last steps from a position, the previous ones being already in
+	 * the chart
+	 *
+	 * @param timeline    x-axis values
+	 * @param yvalues     y-axis values
+	 * @param yvaluesVent y-axis ventilator values, null if not shown
+	 * @param first       position of the first new value
+	 */
+	public void append(final List<Double> timeline, final List<Double> yvalues, final List<Double> yvaluesVent,
+			final int first) {
+		send("append", timeline, yvalues, yvaluesVent, first);
+	}
+
+	/**
+	 * Replaces the points of the chart with values decoded from the history
+	 *
+	 * @param times       x-axis values
+	 * @param yvalues     y-axis values
+	 * @param yvaluesVent y-axis ventilator values, null if not shown
+	 * @param count       number of values
+	 */
+	public void setData(final double[] times, final double[] yvalues, final double[] yvaluesVent, final int count) {
+		if (yvaluesVent == null) {
+			getElement().callJsFunction("setData", toJson(times, count), toJson(yvalues, count));
+		} else {
+			getElement().callJsFunction("setData", toJson(times, count), toJson(yvalues, count),
+					toJson(yvaluesVent, count));
+		}
+	}
+
+	/**
+	 * Adds values after the points of the chart
+	 *
+	 * @param times       x-axis values
+	 * @param yvalues     y-axis values
+	 * @param yvaluesVent y-axis ventilator values, null if not shown
+	 * @param count       number of values
+	 */
+	public void append(final double[] times, final double[] yvalues, final double[] yvaluesVent, final int count) {
+		if (yvaluesVent == null) {
+			getElement().callJsFunction("append", toJson(times, count), toJson(yvalues, count));
+		} else {
+			getElement().callJsFunction("append", toJson(times, count), toJson(yvalues, count),
+					toJson(yvaluesVent, count));
+		}
+	}
+
+	private void send(final String function, final List<Double> timeline, final List<Double> yvalues,
+			final List<Double> yvaluesVent, final int first) {
+		if (yvaluesVent == null) {
+			getElement().callJsFunction(function, toJson(timeline, first), toJson(yvalues, first));
+		} else {
+			getElement().callJsFunction(function, toJson(timeline, first), toJson(yvalues, first),
+					toJson(yvaluesVent, first));
+		}
+	}
+
+	private static JsonArray toJson(final List<Double> values, final int first) {
+		final JsonArray array = Json.createArray();
+		for (int i = first; i < values.size(); i++) {
+			array.set(i - first, values.get(i));
+		}
+		return array;
+	}
+
+	private static JsonArray toJson(final double[] values, final int count) {
+		final JsonArray array = Json.createArray();
+		for (int i = 0; i < count; i++) {
+			array.set(i, values[i]);
+		}
+		return array;
+	}
+}
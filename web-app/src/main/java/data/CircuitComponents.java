@@ -8,7 +8,6 @@ import com.vaadin.flow.component.Composite;
 import com.vaadin.flow.component.HasComponents;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 
-import components.CircuitElm;
 import lungsimulator.CircuitBuilder;
 import lungsimulator.LungSimulator;
 
@@ -45,22 +44,23 @@ public class CircuitComponents extends Composite<VerticalLayout> implements HasC
 			timeDependentElms = circuitBuilder.getTimeDependentElm();
 		}
 
-		final int index = circuitBuilder.getVentilatorIndex();
+		final int index = circuitBuilder.getVentilatorBranch();
 
-		final List<CircuitElm> circuitElements = circuitBuilder.getElements();
+		// one row for each element of the patient model, lumped or not
+		final List<String> branchIds = circuitBuilder.getBranchIds();
 		CircuitElementRow cer;
 		
-		for (int i = 0; i < circuitElements.size(); i++) {
-			final CircuitElm element = circuitElements.get(i);
+		for (int i = 0; i < branchIds.size(); i++) {
+			final String id = branchIds.get(i);
 			
-			cer = new CircuitElementRow(lungSimulator, element.getId(), element.getValue(),
-					element.getUnit(), index == i, i);
+			cer = new CircuitElementRow(lungSimulator, id, circuitBuilder.getElementValue(i),
+					circuitBuilder.getElementUnit(i), index == i, i);
 			
 			if (index == i) {
 				ventilator = cer;
 			}
 
-			components.put(element.getId(), cer);
+			components.put(id, cer);
 			add(cer);
 		}
 	}
@@ -0,0 +1,174 @@
+package view;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.vaadin.flow.component.Composite;
+import com.vaadin.flow.component.HasComponents;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.combobox.ComboBox;
+import com.vaadin.flow.component.html.Div;
+import com.vaadin.flow.component.html.H2;
+import com.vaadin.flow.component.html.Span;
+import com.vaadin.flow.component.notification.Notification;
+import com.vaadin.flow.component.orderedlayout.FlexComponent;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
+import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.router.Route;
+import com.vaadin.flow.shared.Registration;
+
+import charts.BreathSection;
+import charts.ObserverPlotSection;
+import lungsimulator.alarms.AlarmRule;
+import lungsimulator.broadcast.SimulationFrame;
+import lungsimulator.broadcast.SimulationHub;
+import lungsimulator.utils.Utils;
+
+/**
+ * Read-only view of a simulation shared by another session. The browser polls
+ * the server, and each poll sends only the frames published since the
+ * previous one, so an observer costs a serialisation of its own choice of
+ * values and never slows down the simulation.
+ */
+@Route("observe")
+public class ObserverView extends Composite<VerticalLayout> implements HasComponents {
+	/**
+	 * Time between two polls of the browser, in milliseconds
+	 */
+	private static final int POLL_INTERVAL = 300;
+
+	/**
+	 * Broadcast of the observed simulation, null if none
+	 */
+	private transient SimulationHub hub;
+
+	/**
+	 * Sequence of the last frame shown
+	 */
+	private transient long lastSequence;
+
+	/**
+	 * Frames read at a poll, reused
+	 */
+	private final transient List<SimulationFrame> frames = new ArrayList<>();
+
+	/**
+	 * Section of the charts of the observed simulation
+	 */
+	private final Div plotWrapper = new Div();
+
+	private transient ObserverPlotSection flowChart;
+
+	private transient ObserverPlotSection pressureChart;
+
+	/**
+	 * Section where the values of the last breath are displayed
+	 */
+	private final BreathSection breathSection = new BreathSection();
+
+	/**
+	 * Raised alarms
+	 */
+	private final Span alarms = new Span();
+
+	/**
+	 * Registration of the poll listener, while attached
+	 */
+	private transient Registration pollRegistration;
+
+	/**
+	 * Builds the observer view
+	 */
+	public ObserverView() {
+		final ComboBox<String> simulations = new ComboBox<>("Shared simulation");
+		simulations.setItems(SharedSimulations.getNames());
+		simulations.setAllowCustomValue(false);
+		simulations.addValueChangeListener(event -> {
+			if (event.getValue() != null) {
+				observe(event.getValue());
+			}
+		});
+		final Button refresh = new Button("Refresh", event -> simulations.setItems(SharedSimulations.getNames()));
+		final HorizontalLayout controls = new HorizontalLayout(simulations, refresh);
+		controls.setDefaultVerticalComponentAlignment(FlexComponent.Alignment.END);
+
+		add(new H2("INSPIRE - Observer"), controls, alarms, plotWrapper, breathSection);
+
+		addAttachListener(event -> {
+			final UI userInterface = event.getUI();
+			userInterface.setPollInterval(POLL_INTERVAL);
+			pollRegistration = userInterface.addPollListener(poll -> update());
+		});
+		addDetachListener(event -> {
+			pollRegistration.remove();
+			event.getUI().setPollInterval(-1);
+		});
+	}
+
+	/**
+	 * Starts observing a shared simulation
+	 * @param name name of the shared simulation
+	 */
+	private void observe(final String name) {
+		hub = SharedSimulations.get(name);
+		lastSequence = 0;
+		plotWrapper.removeAll();
+		if (hub == null) {
+			Notification.show("The simulation " + name + " is no longer shared");
+			return;
+		}
+		flowChart = new ObserverPlotSection(hub.getFlowIds(), hub::getFlowColumn, "Flow", false, this::redraw);
+		pressureChart = new ObserverPlotSection(hub.getPressureIds(), hub::getPressureColumn, "Pressure", true,
+				this::redraw);
+		plotWrapper.add(flowChart, pressureChart);
+		redraw();
+	}
+
+	/**
+	 * Shows the last frames kept by the hub
+	 */
+	private void redraw() {
+		frames.clear();
+		hub.read(Math.max(0, hub.getLastSequence() - Utils.MAXDATA), frames);
+		show(true);
+	}
+
+	/**
+	 * Adds the frames published since the previous poll
+	 */
+	private void update() {
+		if (hub == null) {
+			return;
+		}
+		if (hub.isClosed()) {
+			Notification.show("The simulation is no longer shared");
+			hub = null;
+			return;
+		}
+		frames.clear();
+		final boolean complete = hub.read(lastSequence, frames);
+		show(!complete);
+	}
+
+	/**
+	 * Shows the frames read from the hub
+	 * @param replace true to replace the points of the charts
+	 */
+	private void show(final boolean replace) {
+		if (frames.isEmpty()) {
+			return;
+		}
+		flowChart.show(frames, replace);
+		pressureChart.show(frames, replace);
+
+		final SimulationFrame last = frames.get(frames.size() - 1);
+		breathSection.updateBreath(last.getBreath());
+		final List<AlarmRule> raised = last.getRaisedAlarms();
+		alarms.setText(raised.isEmpty() ? "" : "Alarms: "
+				+ raised.stream().map(AlarmRule::getName).collect(Collectors.joining(", ")));
+		lastSequence = last.getSequence();
+		frames.clear();
+	}
+}
@@ -0,0 +1,65 @@
+package view;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lungsimulator.broadcast.SimulationHub;
+
+/**
+ * Simulations shared by their sessions with the observers of the application,
+ * by name
+ */
+public final class SharedSimulations {
+
+	private static final Map<String, SimulationHub> HUBS = new ConcurrentHashMap<>();
+
+	private SharedSimulations() {
+	}
+
+	/**
+	 * Shares a simulation, replacing a closed one with the same name
+	 * @param name name shown to the observers
+	 * @param hub broadcast of the simulation
+	 * @return false if the name is used by another running simulation
+	 */
+	public static boolean share(final String name, final SimulationHub hub) {
+		final SimulationHub shared = HUBS.compute(name,
+				(key, current) -> current == null || current.isClosed() ? hub : current);
+		return shared == hub;
+	}
+
+	/**
+	 * Stops sharing a simulation
+	 * @param name name shown to the observers
+	 * @param hub broadcast of the simulation
+	 */
+	public static void unshare(final String name, final SimulationHub hub) {
+		HUBS.remove(name, hub);
+	}
+
+	/**
+	 * @param name name shown to the observers
+	 * @return broadcast of the simulation, null if not shared
+	 */
+	public static SimulationHub get(final String name) {
+		final SimulationHub hub = HUBS.get(name);
+		return hub == null || hub.isClosed() ? null : hub;
+	}
+
+	/**
+	 * @return names of the shared simulations, sorted
+	 */
+	public static List<String> getNames() {
+		final List<String> names = new ArrayList<>();
+		HUBS.forEach((name, hub) -> {
+			if (!hub.isClosed()) {
+				names.add(name);
+			}
+		});
+		Collections.sort(names);
+		return names;
+	}
+}
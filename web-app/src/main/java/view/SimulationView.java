@@ -1,21 +1,37 @@
 package view;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
 import com.vaadin.flow.component.Composite;
 import com.vaadin.flow.component.HasComponents;
 import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.button.ButtonVariant;
 import com.vaadin.flow.component.html.Div;
 import com.vaadin.flow.component.html.H2;
 import com.vaadin.flow.component.html.H4;
+import com.vaadin.flow.component.notification.Notification;
+import com.vaadin.flow.component.orderedlayout.FlexComponent;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.textfield.TextField;
 import com.vaadin.flow.server.VaadinSession;
 
+import charts.BreathSection;
+import charts.MetricsSection;
 import charts.RightVerticalLayout;
 import data.CircuitComponents;
 import data.DemographicComponents;
 import lungsimulator.LungSimulator;
+import lungsimulator.exceptions.InspireException;
+import lungsimulator.metrics.SimulationMetrics.Counter;
+import lungsimulator.metrics.SimulationMetrics.Phase;
+import lungsimulator.pipeline.SimulationPipeline;
+import lungsimulator.worker.RemoteSimulation;
+import lungsimulator.worker.WorkerCoordinator;
 
 /**
  * Manages the simulation data that has to be shown
@@ -36,6 +52,45 @@ public class SimulationView extends Composite<HorizontalLayout> implements HasCo
 	 */
 	private final transient RightVerticalLayout plotSection;
 
+	/**
+	 * Section where the simulation metrics are displayed
+	 */
+	private final transient MetricsSection metricsSection;
+
+	/**
+	 * Section where the values of the last breath are displayed
+	 */
+	private final transient BreathSection breathSection;
+
+	/**
+	 * True from the scheduling of an update of the user interface to its
+	 * acknowledgement by the browser: a session has at most an update in
+	 * flight, the following steps being coalesced into the next one
+	 */
+	private final transient AtomicBoolean updatePending = new AtomicBoolean();
+
+	/**
+	 * Time between two updates of the user interface, in nanoseconds, adapted
+	 * to the round trip of the updates of this session
+	 */
+	private transient volatile long pushInterval = INITIAL_PUSH_INTERVAL;
+
+	/**
+	 * Time at which the pending update has been scheduled, in nanoseconds
+	 */
+	private transient long pushScheduled;
+
+	/**
+	 * Smoothed round trip of the updates, in nanoseconds; 0 before the first
+	 * acknowledgement
+	 */
+	private transient long smoothedRoundTrip;
+
+	/**
+	 * True while the browser tab is hidden: no update is pushed
+	 */
+	private transient volatile boolean pageHidden;
+
 	/**
 	 * Button to start the simulation
 	 */
@@ -46,16 +101,59 @@ public class SimulationView extends Composite<HorizontalLayout> implements HasCo
 	 */
 	private final transient Button stop;
 
+	/**
+	 * Button to share the simulation with observers
+	 */
+	private final transient Button share;
+
+	/**
+	 * Name under which the simulation is shared, null if not shared
+	 */
+	private transient String sharedName;
+
 	/**
 	 * Flag to manage simulation execution: true when start button is clicked, false
 	 * when stop button is pressed
 	 */
-	private transient boolean flag;
+	private transient volatile boolean flag;
+
+	/**
+	 * Push interval before the first round trip is measured
+	 */
+	private static final long INITIAL_PUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(300);
+
+	/**
+	 * Shortest push interval: a simulation step
+	 */
+	private static final long MIN_PUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
 
 	/**
-	 * User interface is updated every shownDataStep cycles
+	 * Longest push interval, for very slow clients
 	 */
-	private final static int SHOWNDATASTEP = 3;
+	private static final long MAX_PUSH_INTERVAL = TimeUnit.SECONDS.toNanos(2);
+
+	/**
+	 * The push interval is this multiple of the round trip, so that a client
+	 * spends at most about half of its time receiving updates
+	 */
+	private static final int ROUND_TRIPS_PER_PUSH = 2;
+
+	/**
+	 * An update not acknowledged within this time, in nanoseconds, is
+	 * considered lost, e.g. after a reconnection, and does not block the
+	 * following ones
+	 */
+	private static final long ACKNOWLEDGE_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+	/**
+	 * Weight of a new round trip in the smoothed one
+	 */
+	private static final double ROUND_TRIP_WEIGHT = 0.2;
+
+	/**
+	 * Length of a simulation step, in seconds
+	 */
+	private static final double STEP_LENGTH = 0.1;
 
 	/**
 	 * Builds the simulation view
@@ -88,6 +186,14 @@ public class SimulationView extends Composite<HorizontalLayout> implements HasCo
 
 		leftSide.add(new HorizontalLayout(start, stop));
 
+		// other sessions can observe the simulation at /observe
+		final TextField shareName = new TextField("Share as");
+		shareName.setValue("Classroom");
+		share = new Button("Share", e -> toggleSharing(shareName.getValue()));
+		final HorizontalLayout shareControls = new HorizontalLayout(shareName, share);
+		shareControls.setDefaultVerticalComponentAlignment(FlexComponent.Alignment.END);
+		leftSide.add(shareControls);
+
 		final H4 demoTitle = new H4("Demographic data");
 		leftSide.add(demoTitle);
 		leftSide.add(new DemographicComponents(lungSimulator));
@@ -95,8 +201,55 @@ public class SimulationView extends Composite<HorizontalLayout> implements HasCo
 		final VerticalLayout rightSide = new VerticalLayout();
 		plotSection = new RightVerticalLayout(lungSimulator);
 		rightSide.add(plotSection);
+		breathSection = new BreathSection();
+		rightSide.add(breathSection);
+		metricsSection = new MetricsSection();
+		rightSide.add(metricsSection);
 
 		add(leftSide, rightSide);
+
+		// the updates are suspended while the tab is hidden
+		getElement().addEventListener("page-visibility", event -> {
+			pageHidden = event.getEventData().getBoolean("event.detail.hidden");
+		}).addEventData("event.detail.hidden");
+		getElement().executeJs("const view = this;"
+				+ "const notify = () => view.dispatchEvent("
+				+ "new CustomEvent('page-visibility', { detail: { hidden: document.hidden } }));"
+				+ "document.addEventListener('visibilitychange', notify); notify();");
+
+		// a simulation without user interface is stopped
+		addDetachListener(event -> {
+			flag = false;
+			if (sharedName != null) {
+				toggleSharing(sharedName);
+			}
+		});
+	}
+
+	/**
+	 * Shares the simulation with the observers, or stops sharing it
+	 * @param name name shown to the observers
+	 */
+	private void toggleSharing(final String name) {
+		if (sharedName == null) {
+			if (name == null || name.isBlank()) {
+				Notification.show("Please choose a name for the shared simulation");
+				return;
+			}
+			if (SharedSimulations.share(name, lungSimulator.startBroadcast())) {
+				sharedName = name;
+				share.setText("Stop sharing");
+				Notification.show("Observers can follow " + name + " at /observe");
+			} else {
+				lungSimulator.stopBroadcast();
+				Notification.show("The name " + name + " is already used");
+			}
+		} else {
+			SharedSimulations.unshare(sharedName, lungSimulator.getHub());
+			lungSimulator.stopBroadcast();
+			sharedName = null;
+			share.setText("Share");
+		}
 	}
 
 	/**
@@ -104,7 +257,7 @@ public class SimulationView extends Composite<HorizontalLayout> implements HasCo
 	 */
 	public void simulationManager() {
 		// moment of time (in seconds) where the simulation starts
-		double tStart = System.currentTimeMillis() / 1000.0;
+		final double tStart = System.currentTimeMillis() / 1000.0;
 		final boolean isTimeDependent = lungSimulator.getCircuitBuilder().isTimeDependentCir();
 
 		stop.setVisible(true);
@@ -119,49 +272,163 @@ public class SimulationView extends Composite<HorizontalLayout> implements HasCo
 		 * of user interaction, a Server Push must be performed
 		 */
 		new Thread(() -> {
+			final WorkerCoordinator coordinator = WorkerTier.getCoordinator();
+			if (coordinator == null || lungSimulator.getSchemaName() == null
+					|| !runOnWorker(coordinator, userInterface, isTimeDependent)) {
+				runLocally(tStart, userInterface, isTimeDependent);
+			}
+		}).start();
+	}
+
+	/**
+	 * Solves the simulation in this session
+	 * @param tStart moment of time (in seconds) where the simulation starts
+	 * @param userInterface user interface of the session
+	 * @param isTimeDependent true if the circuit has time dependent elements
+	 */
+	private void runLocally(final double tStart, final UI userInterface, final boolean isTimeDependent) {
+		/*
+		 * A simulation step is defined by three parameters: initialT: the instant of
+		 * time where the step begins; stepLength: the length of a step (i.e. 0.1
+		 * seconds) lastT: the instant of time where the step ends
+		 */
+		double lastT = 0;
+
+		// the ventilator, the derived values and the charts run in their own stages
+		final SimulationPipeline pipeline = new SimulationPipeline(lungSimulator, STEP_LENGTH);
+		pipeline.start();
+
+		long nextPush = System.nanoTime();
+
+		while (flag) {
+			final double ntStart = System.currentTimeMillis() / 1000.0;
 			/*
-			 * A simulation step is defined by three parameters: initialT: the instant of
-			 * time where the step begins; stepLength: the length of a step (i.e. 0.1
-			 * seconds) lastT: the instant of time where the step ends
+			 * initialT is given by the difference between the current instant of time
+			 * (ntStart) and the instant of time where the entire simulation has begun
+			 * (tStart)
 			 */
-			double lastT = 0;
-			final double stepLength = 0.1;
-
-			int count = 0;
-
-			while (flag) {
-				final double ntStart = System.currentTimeMillis() / 1000.0;
-				/*
-				 * initialT is given by the difference between the current instant of time
-				 * (ntStart) and the instant of time where the entire simulation has begun
-				 * (tStart)
-				 */
-				final double initialT = ntStart - tStart;
-
-				// a step is performed after stepLength seconds
-				if (initialT - lastT >= stepLength) {
-					count++;
-					lungSimulator.miniSimulation(initialT, stepLength);
-
-					/*
-					 * Updating the interface is quite burdensome, so to avoid a crash it is updated
-					 * every three steps (about every 3*stepLength seconds)
-					 */
-					if (count == SHOWNDATASTEP) {
-						userInterface.access(() -> {
-							if (isTimeDependent) {
-								circuitSection.updateTimeDependentElms();
-							}
-							circuitSection
-									.updateVentilator(lungSimulator.getCircuitBuilder().getCurrentVentValue());
-							plotSection.updateChart(lungSimulator);
-						});
-						count = 0;
-					}
-					lastT = initialT;
-				}
+			final double initialT = ntStart - tStart;
+
+			// a step is performed after stepLength seconds
+			if (initialT - lastT >= STEP_LENGTH) {
+				pipeline.step(initialT, STEP_LENGTH);
+				nextPush = schedulePush(userInterface, pipeline::publishCharts, isTimeDependent, nextPush);
+				lastT = initialT;
 			}
-		}).start();
+		}
+		pipeline.stop();
+	}
+
+	/**
+	 * Runs the simulation on a worker of the coordinator, whose samples reach
+	 * the listeners and the charts of this session
+	 * @param coordinator coordinator of the workers
+	 * @param userInterface user interface of the session
+	 * @param isTimeDependent true if the circuit has time dependent elements
+	 * @return false if no worker can run the simulation
+	 */
+	private boolean runOnWorker(final WorkerCoordinator coordinator, final UI userInterface,
+			final boolean isTimeDependent) {
+		final RemoteSimulation remote;
+		try {
+			remote = coordinator.startSimulation(lungSimulator, STEP_LENGTH);
+		} catch (InspireException e) {
+			return false;
+		}
+
+		long nextPush = System.nanoTime();
+		while (flag && remote.isRunning()) {
+			nextPush = schedulePush(userInterface, remote::publishCharts, isTimeDependent, nextPush);
+			LockSupport.parkNanos(MIN_PUSH_INTERVAL / 2);
+		}
+		remote.stop();
+
+		if (flag) {
+			// ended by the worker
+			flag = false;
+			try {
+				userInterface.access(() -> {
+					Notification.show("Simulation ended: " + remote.getEndReason());
+					stop.setVisible(false);
+					start.setEnabled(true);
+				});
+			} catch (UIDetachedException e) {
+				// nobody to notify
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Pushes an update to the user interface if it is due. The user interface is
+	 * updated at the pace of the browser: an update is pushed only after the
+	 * previous one has been acknowledged, and no sooner than the push interval
+	 * adapted to the round trips
+	 * @param userInterface user interface of the session
+	 * @param charts adds the new samples to the chart series
+	 * @param isTimeDependent true if the circuit has time dependent elements
+	 * @param nextPush time of the next update, in nanoseconds
+	 * @return time of the next update, in nanoseconds
+	 */
+	private long schedulePush(final UI userInterface, final Runnable charts, final boolean isTimeDependent,
+			final long nextPush) {
+		final long now = System.nanoTime();
+		if (now - nextPush < 0 || pageHidden) {
+			return nextPush;
+		}
+		if (updatePending.get() && now - pushScheduled > ACKNOWLEDGE_TIMEOUT) {
+			updatePending.set(false);
+		}
+		if (updatePending.compareAndSet(false, true)) {
+			pushScheduled = now;
+			try {
+				userInterface.access(() -> pushUpdate(userInterface, charts, isTimeDependent, now));
+			} catch (UIDetachedException e) {
+				flag = false;
+			}
+		} else {
+			lungSimulator.getMetrics().increment(Counter.DROPPED_UI_UPDATES);
+		}
+		return now + pushInterval;
+	}
+
+	/**
+	 * Updates the user interface with the values of the last steps; executed
+	 * with the lock of the session
+	 * @param userInterface user interface of the session
+	 * @param charts adds the new samples to the chart series
+	 * @param isTimeDependent true if the circuit has time dependent elements
+	 * @param scheduled time at which the update has been scheduled, in nanoseconds
+	 */
+	private void pushUpdate(final UI userInterface, final Runnable charts, final boolean isTimeDependent,
+			final long scheduled) {
+		if (isTimeDependent) {
+			circuitSection.updateTimeDependentElms();
+		}
+		circuitSection.updateVentilator(lungSimulator.getCircuitBuilder().getCurrentVentValue());
+		charts.run();
+		plotSection.updateChart(lungSimulator);
+		breathSection.updateBreath(lungSimulator);
+		metricsSection.updateMetrics(lungSimulator);
+
+		// the browser answers after applying the changes of this round trip
+		userInterface.getPage().executeJs("return 0;").then(result -> acknowledged(scheduled),
+				error -> acknowledged(scheduled));
+	}
+
+	/**
+	 * Adapts the push interval to the round trip of an update and allows the
+	 * next one
+	 * @param scheduled time at which the update has been scheduled, in nanoseconds
+	 */
+	private void acknowledged(final long scheduled) {
+		final long roundTrip = System.nanoTime() - scheduled;
+		lungSimulator.getMetrics().record(Phase.UI_PUSH, roundTrip);
+		smoothedRoundTrip = smoothedRoundTrip == 0 ? roundTrip
+				: (long) (smoothedRoundTrip + ROUND_TRIP_WEIGHT * (roundTrip - smoothedRoundTrip));
+		pushInterval = Math.max(MIN_PUSH_INTERVAL,
+				Math.min(MAX_PUSH_INTERVAL, ROUND_TRIPS_PER_PUSH * smoothedRoundTrip));
+		updatePending.set(false);
 	}
 
 }
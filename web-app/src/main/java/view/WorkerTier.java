@@ -0,0 +1,30 @@
+package view;
+
+import lungsimulator.worker.WorkerCoordinator;
+
+/**
+ * Coordinator of the simulation workers of the application, bound to the
+ * endpoint of the system property {@value #ENDPOINT_PROPERTY}, e.g.
+ * tcp://*:5570; without it the simulations run in the sessions
+ */
+public final class WorkerTier {
+
+	public static final String ENDPOINT_PROPERTY = "inspire.coordinator";
+
+	private static WorkerCoordinator coordinator;
+
+	private WorkerTier() {
+	}
+
+	/**
+	 * @return coordinator of the workers, null if the simulations run in the
+	 *         sessions
+	 */
+	public static synchronized WorkerCoordinator getCoordinator() {
+		final String endpoint = System.getProperty(ENDPOINT_PROPERTY);
+		if (coordinator == null && endpoint != null && !endpoint.isBlank()) {
+			coordinator = new WorkerCoordinator(endpoint);
+		}
+		return coordinator;
+	}
+}